@@ -0,0 +1,101 @@
+package com.github.stephanenicolas.mimic.agent;
+
+import java.io.File;
+import java.lang.instrument.Instrumentation;
+import java.util.Properties;
+
+import com.github.stephanenicolas.mimic.MimicProcessor;
+
+/**
+ * Entry point of the Mimic java agent. It mimics classes annotated by
+ * {@link com.github.stephanenicolas.mimic.annotations.Mimic} when they are
+ * loaded, instead of at build time. Add it to the command line of the JVM :
+ * <pre>
+ * java -javaagent:mimic-agent.jar[=mimic.inlining=true,mimic.privateCopies=true] ...
+ * </pre>
+ * Arguments are a comma separated list of the properties of
+ * {@link MimicProcessor}. Options related to builds, like
+ * {@link MimicProcessor#PROPERTY_INDEX_DIRECTORY}, are ignored, and
+ * {@link MimicProcessor#PROPERTY_SHARE_TEMPLATE_CODE} is rejected.
+ *
+ * <p>
+ * The agent jar also transforms jars, for instance fat jars in a release
+ * pipeline, without extracting them :
+ * <pre>
+ * java -jar mimic-agent.jar input.jar output.jar [mimic.cacheDirectory=cache,...]
+ * </pre>
+ * See {@link MimicProcessor#transformJar(File, File)}.
+ * </p>
+ *
+ * @author SNI
+ */
+public final class MimicAgent {
+
+    /** Input jar, output jar and properties. */
+    private static final int MAIN_ARGUMENT_COUNT = 3;
+
+    private MimicAgent() {
+    }
+
+    /**
+     * Invoked by the JVM before the main method of the application.
+     * @param agentArgs the arguments of the agent, can be null.
+     * @param instrumentation provided by the JVM.
+     * @throws Exception if the arguments are invalid.
+     */
+    public static void premain(String agentArgs, Instrumentation instrumentation) throws Exception {
+        instrumentation.addTransformer(createTransformer(agentArgs));
+    }
+
+    /**
+     * Invoked by the JVM when the agent is attached to a running JVM. Only
+     * classes loaded afterwards are mimicing their template.
+     * @param agentArgs the arguments of the agent, can be null.
+     * @param instrumentation provided by the JVM.
+     * @throws Exception if the arguments are invalid.
+     */
+    public static void agentmain(String agentArgs, Instrumentation instrumentation) throws Exception {
+        premain(agentArgs, instrumentation);
+    }
+
+    /**
+     * Transforms a jar into another jar.
+     * @param args the input jar, the output jar, and optionally the properties of {@link MimicProcessor}, as for the agent.
+     * @throws Exception if the arguments are invalid or if a jar can't be read or written.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2 && args.length != MAIN_ARGUMENT_COUNT) {
+            throw new IllegalArgumentException("Usage: java -jar mimic-agent.jar input.jar output.jar [key=value,...]");
+        }
+        MimicProcessor processor = new MimicProcessor();
+        processor.configure(parseArguments(args.length == MAIN_ARGUMENT_COUNT ? args[2] : null));
+        processor.transformJar(new File(args[0]), new File(args[1]));
+    }
+
+    static MimicClassFileTransformer createTransformer(String agentArgs) throws Exception {
+        MimicProcessor processor = new MimicProcessor();
+        processor.configure(parseArguments(agentArgs));
+        if (processor.isSharingTemplateCode()) {
+            // classes are defined by their own class loaders, the agent can't define generated classes next to them
+            throw new IllegalArgumentException("The mimic agent doesn't support " + MimicProcessor.PROPERTY_SHARE_TEMPLATE_CODE
+                    + ", use it at build time or to transform jars");
+        }
+        return new MimicClassFileTransformer(processor);
+    }
+
+    static Properties parseArguments(String agentArgs) {
+        Properties properties = new Properties();
+        if (agentArgs == null) {
+            return properties;
+        }
+        for (String argument : agentArgs.split(",")) {
+            int separatorIndex = argument.indexOf('=');
+            if (separatorIndex > 0) {
+                properties.setProperty(argument.substring(0, separatorIndex).trim(), argument.substring(separatorIndex + 1).trim());
+            } else if (argument.trim().length() != 0) {
+                throw new IllegalArgumentException("Invalid argument of the mimic agent, expected key=value: " + argument);
+            }
+        }
+        return properties;
+    }
+}
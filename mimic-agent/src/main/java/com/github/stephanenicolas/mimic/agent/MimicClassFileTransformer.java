@@ -0,0 +1,88 @@
+package com.github.stephanenicolas.mimic.agent;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.ref.WeakReference;
+import java.security.ProtectionDomain;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+
+import javassist.ClassPool;
+import javassist.LoaderClassPath;
+import lombok.extern.java.Log;
+
+import com.github.stephanenicolas.mimic.MimicAnnotationScanner;
+import com.github.stephanenicolas.mimic.MimicProcessor;
+
+/**
+ * Mimics classes when they are loaded. Classes are filtered by scanning their
+ * constant pool, so that the classes that don't use Mimic are never parsed by
+ * javassist. Templates and ancestors of a class are resolved through its
+ * class loader, using one {@link ClassPool} per class loader.
+ *
+ * @author SNI
+ */
+@Log
+public class MimicClassFileTransformer implements ClassFileTransformer {
+
+    private final MimicProcessor processor;
+    private final Map<ClassLoader, ClassPool> pools = new WeakHashMap<ClassLoader, ClassPool>();
+
+    public MimicClassFileTransformer(MimicProcessor processor) {
+        this.processor = processor;
+    }
+
+    @Override
+    public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined, ProtectionDomain protectionDomain,
+            byte[] classfileBuffer) {
+        // the shape of classes that are already defined can't change anymore
+        if (loader == null || classBeingRedefined != null || !MimicAnnotationScanner.hasMimicAnnotation(classfileBuffer)) {
+            return null;
+        }
+        ClassPool pool = getClassPool(loader);
+        try {
+            // class pools are not thread safe
+            synchronized (pool) {
+                byte[] bytecode = processor.transformBytecode(pool, classfileBuffer);
+                if (bytecode != null) {
+                    log.fine("Class " + className + " mimiced when loaded");
+                }
+                return bytecode;
+            }
+        } catch (Exception e) {
+            // exceptions thrown by transformers are ignored by the JVM
+            log.log(Level.SEVERE, "Class " + className + " could not be mimiced", e);
+            return null;
+        }
+    }
+
+    private synchronized ClassPool getClassPool(ClassLoader loader) {
+        ClassPool pool = pools.get(loader);
+        if (pool == null) {
+            pool = new LoaderClassPool(loader);
+            pools.put(loader, pool);
+        }
+        return pool;
+    }
+
+    /**
+     * Resolves classes through a class loader. It doesn't prevent the class
+     * loader from being collected. Annotations are read from class files, so
+     * the class loader may define its own copy of the mimic annotations.
+     */
+    private static final class LoaderClassPool extends ClassPool {
+        private final WeakReference<ClassLoader> loader;
+
+        private LoaderClassPool(ClassLoader loader) {
+            super(true);
+            this.loader = new WeakReference<ClassLoader>(loader);
+            insertClassPath(new LoaderClassPath(loader));
+        }
+
+        @Override
+        public ClassLoader getClassLoader() {
+            ClassLoader classLoader = loader.get();
+            return classLoader == null ? super.getClassLoader() : classLoader;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.github.stephanenicolas.mimic.agent;
+
+public class Counter {
+    private int count;
+
+    public int increment() {
+        return ++count;
+    }
+}
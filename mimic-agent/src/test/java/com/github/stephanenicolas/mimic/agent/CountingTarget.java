@@ -0,0 +1,7 @@
+package com.github.stephanenicolas.mimic.agent;
+
+import com.github.stephanenicolas.mimic.annotations.Mimic;
+
+@Mimic(sourceClass = Counter.class)
+public class CountingTarget {
+}
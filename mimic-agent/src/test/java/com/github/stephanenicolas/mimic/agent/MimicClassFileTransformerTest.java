@@ -0,0 +1,175 @@
+package com.github.stephanenicolas.mimic.agent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.Properties;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.stephanenicolas.mimic.annotations.Mimic;
+
+public class MimicClassFileTransformerTest {
+
+    private MimicClassFileTransformer transformer;
+
+    @Before
+    public void setUp() throws Exception {
+        transformer = MimicAgent.createTransformer(null);
+    }
+
+    @Test
+    public void testTransform() throws Exception {
+        // GIVEN
+        ClassLoader loader = new TransformingClassLoader(transformer, CountingTarget.class.getName(), null);
+
+        // WHEN
+        Class<?> targetClass = loader.loadClass(CountingTarget.class.getName());
+
+        // THEN
+        Object target = targetClass.newInstance();
+        Method incrementMethod = targetClass.getMethod("increment");
+        assertEquals(1, incrementMethod.invoke(target));
+        assertEquals(2, incrementMethod.invoke(target));
+    }
+
+    @Test
+    public void testTransform_with_loader_defining_its_own_annotations() throws Exception {
+        // GIVEN
+        TransformingClassLoader loader = new TransformingClassLoader(transformer, CountingTarget.class.getName(),
+                Mimic.class.getPackage().getName() + ".");
+
+        // WHEN
+        Class<?> targetClass = loader.loadClass(CountingTarget.class.getName());
+
+        // THEN
+        assertNotSame(Mimic.class, loader.loadClass(Mimic.class.getName()));
+        Object target = targetClass.newInstance();
+        Method incrementMethod = targetClass.getMethod("increment");
+        assertEquals(1, incrementMethod.invoke(target));
+        assertEquals(2, incrementMethod.invoke(target));
+    }
+
+    @Test
+    public void testTransform_without_mimic_annotation() throws Exception {
+        // GIVEN
+        byte[] bytecode = readClassFile(Counter.class.getName());
+
+        // WHEN
+        byte[] transformedBytecode = transformer.transform(getClass().getClassLoader(), "com/github/stephanenicolas/mimic/agent/Counter",
+                null, null, bytecode);
+
+        // THEN
+        assertNull(transformedBytecode);
+    }
+
+    @Test
+    public void testTransform_when_class_is_redefined() throws Exception {
+        // GIVEN
+        byte[] bytecode = readClassFile(CountingTarget.class.getName());
+
+        // WHEN
+        byte[] transformedBytecode = transformer.transform(getClass().getClassLoader(),
+                "com/github/stephanenicolas/mimic/agent/CountingTarget", CountingTarget.class, null, bytecode);
+
+        // THEN
+        assertNull(transformedBytecode);
+    }
+
+    @Test
+    public void testParseArguments() throws Exception {
+        // GIVEN
+        String agentArgs = "mimic.inlining=true, mimic.privateCopies = false";
+
+        // WHEN
+        Properties properties = MimicAgent.parseArguments(agentArgs);
+
+        // THEN
+        assertEquals(2, properties.size());
+        assertEquals("true", properties.getProperty("mimic.inlining"));
+        assertEquals("false", properties.getProperty("mimic.privateCopies"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseArguments_with_invalid_argument() throws Exception {
+        // GIVEN
+        String agentArgs = "mimic.inlining";
+
+        // WHEN
+        MimicAgent.parseArguments(agentArgs);
+
+        // THEN
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCreateTransformer_with_share_template_code() throws Exception {
+        // GIVEN
+        String agentArgs = "mimic.shareTemplateCode=true";
+
+        // WHEN
+        MimicAgent.createTransformer(agentArgs);
+
+        // THEN
+    }
+
+    private static byte[] readClassFile(String className) throws IOException {
+        InputStream in = MimicClassFileTransformerTest.class.getClassLoader().getResourceAsStream(className.replace('.', '/') + ".class");
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int count = in.read(buffer); count != -1; count = in.read(buffer)) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Defines a class itself, and passes it through a transformer, like the JVM does when an agent is installed.
+     * It can also define its own copy of the classes of a package, like a child first class loader.
+     */
+    private static final class TransformingClassLoader extends ClassLoader {
+        private final MimicClassFileTransformer transformer;
+        private final String className;
+        private final String isolatedPackagePrefix;
+
+        private TransformingClassLoader(MimicClassFileTransformer transformer, String className, String isolatedPackagePrefix) {
+            super(MimicClassFileTransformerTest.class.getClassLoader());
+            this.transformer = transformer;
+            this.className = className;
+            this.isolatedPackagePrefix = isolatedPackagePrefix;
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            boolean isIsolated = isolatedPackagePrefix != null && name.startsWith(isolatedPackagePrefix);
+            if (!name.equals(className) && !isIsolated) {
+                return super.loadClass(name, resolve);
+            }
+            Class<?> clazz = findLoadedClass(name);
+            if (clazz == null) {
+                try {
+                    byte[] bytecode = readClassFile(name);
+                    if (!isIsolated) {
+                        bytecode = transformer.transform(this, name.replace('.', '/'), null, null, bytecode);
+                        if (bytecode == null) {
+                            throw new ClassNotFoundException(name + " was not mimiced");
+                        }
+                    }
+                    clazz = defineClass(name, bytecode, 0, bytecode.length);
+                } catch (IOException e) {
+                    throw new ClassNotFoundException(name, e);
+                }
+            }
+            return clazz;
+        }
+    }
+}
@@ -39,4 +39,12 @@ public @interface Mimic {
     /** Defines which fields are copied, and how. If not defined, they are all copied.*/
     MimicField[] mimicFields() default { };
 
+    /**
+     * Other templates to mimic, in order, after {@link #sourceClass()}. The
+     * class is woven and written once for all of them. Templates must not
+     * declare the same fields, nor the same methods unless the class
+     * declares them too.
+     */
+    MimicTemplate[] mixins() default { };
+
 }
@@ -9,12 +9,24 @@ import java.lang.annotation.Target;
 /** Defines how to mimic methods. Can only be used inside {@link Mimic}. */
 public @interface MimicMethod {
 
-    /** The name of the method to mimic. Due to an issue in javassist (#9 on github), one of the overloads will be picked here.*/
+    /** The name of the method to mimic. All its overloads are mimiced this way, unless {@link #signature()} is defined.*/
     String methodName();
 
+    /**
+     * The descriptor of the overload of {@link #methodName()} to mimic this way, for instance <code>(ILjava/lang/String;)V</code>.
+     * Defaults to all overloads. A descriptor-qualified {@link MimicMethod} takes precedence over one that only names the method.
+     */
+    String signature() default "";
+
     /** The mode of mimicing. Defaults to {@link MimicMode.AFTER_SUPER}.*/
     MimicMode mode() default MimicMode.AFTER_SUPER;
 
     /** The method after or before which to inject mimiced code. Only used for {@link MimicMode#AFTER} and  {@link MimicMode#BEFORE}*/
     String insertionMethod() default "";
+
+    /**
+     * The descriptor of the insertion method, for instance <code>()V</code>. Only calls to this overload of
+     * {@link #insertionMethod()}, declared or inherited, are insertion points. Defaults to all overloads.
+     */
+    String insertionMethodSignature() default "";
 }
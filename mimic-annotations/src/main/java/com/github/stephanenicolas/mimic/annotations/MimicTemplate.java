@@ -0,0 +1,28 @@
+package com.github.stephanenicolas.mimic.annotations;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+@Target({ })
+@Retention(RetentionPolicy.CLASS)
+/**
+ * Defines a template mixed into a class, in addition to
+ * {@link Mimic#sourceClass()}. Can only be used inside {@link Mimic}. The
+ * interfaces, fields, constructors and methods of the template are all
+ * mimiced.
+ * @author SNI
+ */
+public @interface MimicTemplate {
+    /** The class to mimic. */
+    Class<?> sourceClass();
+
+    /** Defines which methods are copied, and how. If not defined, they are all copied, using default mimic mode.*/
+    MimicMethod[] mimicMethods() default { };
+
+    /** Default mimic mode for all methods. */
+    MimicMode defaultMimicMode() default MimicMode.AFTER_SUPER;
+
+    /** Defines which fields are copied. If not defined, they are all copied.*/
+    MimicField[] mimicFields() default { };
+}
@@ -0,0 +1,610 @@
+package com.github.stephanenicolas.mimic.apt;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.MirroredTypeException;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+import com.github.stephanenicolas.mimic.annotations.Mimic;
+import com.github.stephanenicolas.mimic.annotations.MimicField;
+import com.github.stephanenicolas.mimic.annotations.MimicMethod;
+import com.github.stephanenicolas.mimic.annotations.MimicMode;
+import com.sun.source.tree.BlockTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.ImportTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.TypeParameterTree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.Trees;
+
+/**
+ * Writes the base class of a class annotated by {@link Mimic}. The base class
+ * extends the superclass of the template, implements its interfaces, and
+ * contains a copy of its source code : fields, initializers, constructors,
+ * methods and nested types. Only the fields selected by
+ * {@link Mimic#mimicFields()} are copied, if any. The annotated class inherits all of them, and
+ * template code runs with {@code this} being the annotated class, as when
+ * classes are post processed.
+ * <p>
+ * Template code is inserted relative to the calls the annotated class makes
+ * to its superclass, which is the base class :
+ * <ul>
+ * <li>a template method that the annotated class doesn't declare is simply
+ * inherited. The same for constructors, whose template code runs before the
+ * code of the annotated class constructors.</li>
+ * <li>{@link MimicMode#BEFORE_SUPER}, {@link MimicMode#AFTER_SUPER} and
+ * {@link MimicMode#REPLACE_SUPER} : the base class overrides the method, and
+ * calls the copy of the template method, {@code _copy_<method>}, before,
+ * after or instead of the overridden method.</li>
+ * <li>{@link MimicMode#BEFORE} and {@link MimicMode#AFTER} : the base class
+ * overrides the insertion method and calls the copy before or after it.
+ * Contrary to post processing, the copy runs around every call of the
+ * insertion method, not only the calls of the mimiced method. Only template
+ * methods without parameters can be inserted that way.</li>
+ * <li>{@link MimicMode#AT_BEGINNING} and {@link MimicMode#BEFORE_RETURN}
+ * modify the code of the annotated class itself and can't be expressed.</li>
+ * </ul>
+ *
+ * @author SNI
+ */
+final class BaseClassWriter {
+
+    private static final String COPY_PREFIX = "_copy_";
+    private static final String RESULT = "mimicResult";
+    private static final String INDENT = "    ";
+
+    private final Trees trees;
+    private final Types types;
+    private final Elements elements;
+    private final TypeElement target;
+    private final Mimic mimic;
+    private final TypeElement template;
+    private final String packageName;
+    private final String simpleName;
+    private final StringBuilder source = new StringBuilder();
+    private final List<ExecutableElement> copiedConstructors = new ArrayList<ExecutableElement>();
+    /** Calls to copies of template methods, around each insertion method. */
+    private final Map<ExecutableElement, InsertionPoint> insertionPoints = new LinkedHashMap<ExecutableElement, InsertionPoint>();
+
+    BaseClassWriter(ProcessingEnvironment processingEnv, Trees trees, TypeElement target) throws UnexpressibleMimicException {
+        this.trees = trees;
+        this.types = processingEnv.getTypeUtils();
+        this.elements = processingEnv.getElementUtils();
+        this.target = target;
+        this.mimic = target.getAnnotation(Mimic.class);
+        this.template = resolveTemplate();
+        this.packageName = elements.getPackageOf(target).getQualifiedName().toString();
+        this.simpleName = MimicAnnotationProcessor.BASE_CLASS_PREFIX + getNestedName(target);
+    }
+
+    /** @return the fully qualified name of the base class. */
+    String getQualifiedName() {
+        return packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+    }
+
+    /** @return the class mimiced by the annotated class. */
+    TypeElement getTemplate() {
+        return template;
+    }
+
+    private TypeElement resolveTemplate() throws UnexpressibleMimicException {
+        TypeMirror templateType;
+        try {
+            templateType = elements.getTypeElement(mimic.sourceClass().getCanonicalName()).asType();
+        } catch (MirroredTypeException e) {
+            templateType = e.getTypeMirror();
+        }
+        if (templateType.getKind() != TypeKind.DECLARED) {
+            throw new UnexpressibleMimicException("The template of " + target + " must be a class.", target);
+        }
+        return (TypeElement) types.asElement(templateType);
+    }
+
+    /**
+     * @return the source code of the base class.
+     * @throws UnexpressibleMimicException if the mimic can't be expressed by a
+     *             base class.
+     */
+    String write() throws UnexpressibleMimicException {
+        String superclassName = target.getSuperclass().toString();
+        if (!superclassName.equals(simpleName) && !superclassName.equals(getQualifiedName())) {
+            throw new UnexpressibleMimicException(target + " must extend " + simpleName + ", the base class generated from " + template + ".", target);
+        }
+        TreePath templatePath = trees.getPath(template);
+        if (templatePath == null) {
+            throw new UnexpressibleMimicException("The template " + template + " must be compiled along with " + target
+                    + ", its source code is copied into " + simpleName + ".", target);
+        }
+        if (!template.getTypeParameters().isEmpty()) {
+            throw new UnexpressibleMimicException("The template " + template + " of " + target + " can't be generic.", target);
+        }
+        if (mimic.mixins().length != 0) {
+            throw new UnexpressibleMimicException("The mixins of " + target + " can't be expressed by a base class, as a class has a single "
+                    + "superclass. Use post processing to mimic several templates.", target);
+        }
+
+        writeHeader(templatePath.getCompilationUnit());
+        writeClassDeclaration();
+        for (Tree member : ((ClassTree) templatePath.getLeaf()).getMembers()) {
+            writeMember(new TreePath(templatePath, member));
+        }
+        writeSuperclassConstructors();
+        writeInsertionPoints();
+        source.append("}\n");
+        return source.toString();
+    }
+
+    private void writeHeader(CompilationUnitTree compilationUnit) {
+        source.append("// Generated by mimic-apt from ").append(template.getQualifiedName()).append(", do not edit.\n");
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n");
+        }
+        source.append('\n');
+        // the template code is copied as it is written, its names must resolve the same way
+        for (ImportTree importTree : compilationUnit.getImports()) {
+            source.append(importTree.toString().trim()).append('\n');
+        }
+        String templatePackageName = elements.getPackageOf(template).getQualifiedName().toString();
+        if (!templatePackageName.isEmpty() && !templatePackageName.equals(packageName)) {
+            source.append("import ").append(templatePackageName).append(".*;\n");
+        }
+        source.append('\n');
+    }
+
+    private void writeClassDeclaration() {
+        if (target.getModifiers().contains(Modifier.PUBLIC)) {
+            source.append("public ");
+        }
+        source.append("abstract class ").append(simpleName);
+        TypeMirror superclass = template.getSuperclass();
+        if (superclass.getKind() == TypeKind.DECLARED && !types.isSameType(superclass, elements.getTypeElement(Object.class.getName()).asType())) {
+            source.append(" extends ").append(superclass);
+        }
+        if (mimic.isMimicingInterfaces() && !template.getInterfaces().isEmpty()) {
+            source.append(" implements ").append(join(template.getInterfaces()));
+        }
+        source.append(" {\n\n");
+    }
+
+    private void writeMember(TreePath path) throws UnexpressibleMimicException {
+        Tree member = path.getLeaf();
+        switch (member.getKind()) {
+            case VARIABLE:
+                if (mimic.isMimicingFields()) {
+                    writeField((VariableTree) member);
+                }
+                break;
+            case BLOCK:
+                if (((BlockTree) member).isStatic() ? mimic.isMimicingFields() : mimic.isMimicingConstructors()) {
+                    writeCode(member);
+                }
+                break;
+            case METHOD:
+                ExecutableElement method = (ExecutableElement) trees.getElement(path);
+                if (method.getKind() == ElementKind.CONSTRUCTOR) {
+                    if (mimic.isMimicingConstructors()) {
+                        writeConstructor((MethodTree) member, method);
+                    }
+                } else if (mimic.isMimicingMethods()) {
+                    writeMethod((MethodTree) member, method);
+                }
+                break;
+            default:
+                // nested types
+                writeCode(member);
+                break;
+        }
+    }
+
+    private void writeField(VariableTree field) throws UnexpressibleMimicException {
+        if (!isSelected(field)) {
+            return;
+        }
+        for (VariableElement fieldInTarget : ElementFilter.fieldsIn(target.getEnclosedElements())) {
+            if (fieldInTarget.getSimpleName().contentEquals(field.getName())) {
+                throw new UnexpressibleMimicException(String.format("Class %s already has a field named %s", target, field.getName()), fieldInTarget);
+            }
+        }
+        writeCode(field);
+    }
+
+    /** @return whether a field is selected by {@link Mimic#mimicFields()}, which selects all fields when empty. */
+    private boolean isSelected(VariableTree field) {
+        MimicField[] mimicFields = mimic.mimicFields();
+        for (MimicField mimicField : mimicFields) {
+            if (field.getName().contentEquals(mimicField.fieldName())) {
+                return true;
+            }
+        }
+        return mimicFields.length == 0;
+    }
+
+    private void writeConstructor(MethodTree constructor, ExecutableElement constructorElement) {
+        copiedConstructors.add(constructorElement);
+        source.append(INDENT).append(indent(constructor.getModifiers())).append(' ');
+        source.append(typeParameters(constructor.getTypeParameters())).append(simpleName);
+        source.append('(').append(join(constructor.getParameters())).append(')').append(throwsClause(constructor.getThrows()));
+        source.append(' ').append(indent(constructor.getBody())).append("\n\n");
+    }
+
+    private void writeMethod(MethodTree method, ExecutableElement methodElement) throws UnexpressibleMimicException {
+        ExecutableElement methodInTarget = findMethod(target, methodElement);
+        if (methodInTarget == null || methodElement.getModifiers().contains(Modifier.STATIC)) {
+            writeCode(method);
+            return;
+        }
+        MimicMethod mimicMethod = getMimicMethod(methodElement);
+        MimicMode mimicMode = mimicMethod == null ? mimic.defaultMimicMode() : mimicMethod.mode();
+        switch (mimicMode) {
+            case BEFORE_SUPER:
+            case AFTER_SUPER:
+            case REPLACE_SUPER:
+                ExecutableElement overriddenMethod = findOverriddenMethod(methodElement);
+                if (overriddenMethod == null || overriddenMethod.getModifiers().contains(Modifier.ABSTRACT)) {
+                    // the super call of the annotated class runs the template code
+                    writeCode(method);
+                } else {
+                    writeCopy(method);
+                    writeOverride(method, methodElement, mimicMode);
+                }
+                break;
+            case BEFORE:
+            case AFTER:
+                addInsertions(methodElement, mimicMethod, mimicMode);
+                writeCopy(method);
+                break;
+            default:
+                throw new UnexpressibleMimicException(String.format("MimicMode.%s of %s.%s can't be expressed by a base class, as %s declares %s. "
+                        + "Use BEFORE_SUPER, AFTER_SUPER or REPLACE_SUPER, or post process classes.", mimicMode, template, methodElement, target,
+                        methodInTarget), methodInTarget);
+        }
+    }
+
+    private void writeCopy(MethodTree method) {
+        source.append(INDENT).append("private ").append(typeParameters(method.getTypeParameters())).append(method.getReturnType()).append(' ');
+        source.append(COPY_PREFIX).append(method.getName()).append('(').append(join(method.getParameters())).append(')');
+        source.append(throwsClause(method.getThrows())).append(' ').append(indent(method.getBody())).append("\n\n");
+    }
+
+    private void writeOverride(MethodTree method, ExecutableElement methodElement, MimicMode mimicMode) {
+        source.append(INDENT).append(indent(method.getModifiers())).append(' ');
+        source.append(typeParameters(method.getTypeParameters())).append(method.getReturnType()).append(' ').append(method.getName());
+        source.append('(').append(join(method.getParameters())).append(')').append(throwsClause(method.getThrows())).append(" {\n");
+        String arguments = arguments(methodElement);
+        String copyCall = COPY_PREFIX + method.getName() + "(" + arguments + ");";
+        String superCall = "super." + method.getName() + "(" + arguments + ");";
+        boolean isVoid = methodElement.getReturnType().getKind() == TypeKind.VOID;
+        switch (mimicMode) {
+            case BEFORE_SUPER:
+                writeStatement(copyCall);
+                writeStatement(isVoid ? superCall : "return " + superCall);
+                break;
+            case AFTER_SUPER:
+                writeStatement(isVoid ? superCall : method.getReturnType() + " " + RESULT + " = " + superCall);
+                writeStatement(copyCall);
+                if (!isVoid) {
+                    writeStatement("return " + RESULT + ";");
+                }
+                break;
+            default:
+                writeStatement(isVoid ? copyCall : "return " + copyCall);
+                break;
+        }
+        source.append(INDENT).append("}\n\n");
+    }
+
+    private void addInsertions(ExecutableElement method, MimicMethod mimicMethod, MimicMode mimicMode) throws UnexpressibleMimicException {
+        String insertionMethodName = mimicMethod == null ? "" : mimicMethod.insertionMethod();
+        if (!method.getParameters().isEmpty()) {
+            throw new UnexpressibleMimicException(String.format("MimicMode.%s of %s.%s can't be expressed by a base class, "
+                    + "only template methods without parameters can be inserted around %s.", mimicMode, template, method, insertionMethodName), target);
+        }
+        List<ExecutableElement> insertionMethods = findInsertionMethods(insertionMethodName, mimicMethod == null ? "" : mimicMethod
+                .insertionMethodSignature());
+        if (insertionMethods.isEmpty()) {
+            throw new UnexpressibleMimicException(String.format("No overridable method %s in the superclasses of %s to insert %s.%s.", insertionMethodName,
+                    template, template, method), target);
+        }
+        String copyCall = COPY_PREFIX + method.getSimpleName() + "();";
+        for (ExecutableElement insertionMethod : insertionMethods) {
+            if (findMethod(template, insertionMethod) != null) {
+                throw new UnexpressibleMimicException(String.format("The template %s can't override %s, as %s.%s is inserted around it.", template,
+                        insertionMethod, template, method), target);
+            }
+            InsertionPoint insertionPoint = insertionPoints.get(insertionMethod);
+            if (insertionPoint == null) {
+                insertionPoint = new InsertionPoint();
+                insertionPoints.put(insertionMethod, insertionPoint);
+            }
+            (mimicMode == MimicMode.BEFORE ? insertionPoint.before : insertionPoint.after).add(copyCall);
+        }
+    }
+
+    private void writeInsertionPoints() {
+        for (Map.Entry<ExecutableElement, InsertionPoint> entry : insertionPoints.entrySet()) {
+            ExecutableElement method = entry.getKey();
+            source.append(INDENT);
+            for (Modifier modifier : method.getModifiers()) {
+                if (modifier == Modifier.PUBLIC || modifier == Modifier.PROTECTED) {
+                    source.append(modifier).append(' ');
+                }
+            }
+            source.append(method.getReturnType()).append(' ').append(method.getSimpleName());
+            source.append('(').append(parameters(method)).append(')').append(throwsClause(method.getThrownTypes())).append(" {\n");
+            boolean isVoid = method.getReturnType().getKind() == TypeKind.VOID;
+            String superCall = "super." + method.getSimpleName() + "(" + arguments(method) + ");";
+            for (String statement : entry.getValue().before) {
+                writeStatement(statement);
+            }
+            writeStatement(isVoid ? superCall : method.getReturnType() + " " + RESULT + " = " + superCall);
+            for (String statement : entry.getValue().after) {
+                writeStatement(statement);
+            }
+            if (!isVoid) {
+                writeStatement("return " + RESULT + ";");
+            }
+            source.append(INDENT).append("}\n\n");
+        }
+    }
+
+    /**
+     * Annotated classes keep on calling the constructors of the superclass of
+     * the template, even those the template doesn't declare.
+     */
+    private void writeSuperclassConstructors() {
+        if (template.getSuperclass().getKind() != TypeKind.DECLARED) {
+            return;
+        }
+        TypeElement superclass = (TypeElement) types.asElement(template.getSuperclass());
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(superclass.getEnclosedElements())) {
+            if (constructor.getModifiers().contains(Modifier.PRIVATE) || hasConstructor(copiedConstructors, constructor)) {
+                continue;
+            }
+            source.append(INDENT);
+            for (Modifier modifier : constructor.getModifiers()) {
+                source.append(modifier).append(' ');
+            }
+            source.append(simpleName).append('(').append(parameters(constructor)).append(')').append(throwsClause(constructor.getThrownTypes()));
+            source.append(" {\n");
+            writeStatement("super(" + arguments(constructor) + ");");
+            source.append(INDENT).append("}\n\n");
+        }
+    }
+
+    private void writeCode(Tree tree) {
+        String code = indent(tree);
+        source.append(INDENT).append(code);
+        if (!code.endsWith(";") && !code.endsWith("}")) {
+            source.append(';');
+        }
+        source.append("\n\n");
+    }
+
+    private void writeStatement(String statement) {
+        source.append(INDENT).append(INDENT).append(statement).append('\n');
+    }
+
+    /** @return the mimic method of a template method, a descriptor-qualified one first. */
+    private MimicMethod getMimicMethod(ExecutableElement method) {
+        MimicMethod namedMimicMethod = null;
+        for (MimicMethod mimicMethod : mimic.mimicMethods()) {
+            if (method.getSimpleName().contentEquals(mimicMethod.methodName())) {
+                if (mimicMethod.signature().isEmpty()) {
+                    namedMimicMethod = mimicMethod;
+                } else if (mimicMethod.signature().equals(getDescriptor(method))) {
+                    return mimicMethod;
+                }
+            }
+        }
+        return namedMimicMethod;
+    }
+
+    /** @return the JVM descriptor of a method, as in {@link MimicMethod#signature()}. */
+    private String getDescriptor(ExecutableElement method) {
+        StringBuilder descriptor = new StringBuilder("(");
+        for (VariableElement parameter : method.getParameters()) {
+            appendDescriptor(descriptor, types.erasure(parameter.asType()));
+        }
+        descriptor.append(')');
+        appendDescriptor(descriptor, types.erasure(method.getReturnType()));
+        return descriptor.toString();
+    }
+
+    private void appendDescriptor(StringBuilder descriptor, TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+                descriptor.append('Z');
+                break;
+            case BYTE:
+                descriptor.append('B');
+                break;
+            case CHAR:
+                descriptor.append('C');
+                break;
+            case SHORT:
+                descriptor.append('S');
+                break;
+            case INT:
+                descriptor.append('I');
+                break;
+            case LONG:
+                descriptor.append('J');
+                break;
+            case FLOAT:
+                descriptor.append('F');
+                break;
+            case DOUBLE:
+                descriptor.append('D');
+                break;
+            case VOID:
+                descriptor.append('V');
+                break;
+            case ARRAY:
+                descriptor.append('[');
+                appendDescriptor(descriptor, ((ArrayType) type).getComponentType());
+                break;
+            default:
+                String binaryName = elements.getBinaryName((TypeElement) types.asElement(type)).toString();
+                descriptor.append('L').append(binaryName.replace('.', '/')).append(';');
+                break;
+        }
+    }
+
+    private ExecutableElement findMethod(TypeElement type, ExecutableElement method) {
+        for (ExecutableElement candidate : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            if (candidate.getSimpleName().equals(method.getSimpleName()) && hasSameParameters(candidate, method)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private ExecutableElement findOverriddenMethod(ExecutableElement method) {
+        for (TypeElement type = getSuperclass(template); type != null; type = getSuperclass(type)) {
+            for (ExecutableElement candidate : ElementFilter.methodsIn(type.getEnclosedElements())) {
+                if (elements.overrides(method, candidate, template)) {
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the most derived methods of the superclasses of the template
+     *         that can be overridden, with a name and, unless it is empty, a
+     *         descriptor.
+     */
+    private List<ExecutableElement> findInsertionMethods(String name, String descriptor) {
+        List<ExecutableElement> insertionMethods = new ArrayList<ExecutableElement>();
+        for (TypeElement type = getSuperclass(template); type != null; type = getSuperclass(type)) {
+            for (ExecutableElement candidate : ElementFilter.methodsIn(type.getEnclosedElements())) {
+                if (candidate.getSimpleName().contentEquals(name) && (descriptor.isEmpty() || descriptor.equals(getDescriptor(candidate)))
+                        && isOverridable(candidate) && !isOverridden(insertionMethods, candidate)) {
+                    insertionMethods.add(candidate);
+                }
+            }
+        }
+        return insertionMethods;
+    }
+
+    private boolean isOverridable(ExecutableElement method) {
+        for (Modifier modifier : method.getModifiers()) {
+            if (modifier == Modifier.PRIVATE || modifier == Modifier.STATIC || modifier == Modifier.FINAL || modifier == Modifier.ABSTRACT) {
+                return false;
+            }
+        }
+        return method.getTypeParameters().isEmpty();
+    }
+
+    private boolean isOverridden(List<ExecutableElement> methods, ExecutableElement method) {
+        for (ExecutableElement candidate : methods) {
+            if (candidate.getSimpleName().equals(method.getSimpleName()) && hasSameParameters(candidate, method)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasConstructor(List<ExecutableElement> constructors, ExecutableElement constructor) {
+        for (ExecutableElement candidate : constructors) {
+            if (hasSameParameters(candidate, constructor)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasSameParameters(ExecutableElement method, ExecutableElement otherMethod) {
+        List<? extends VariableElement> parameters = method.getParameters();
+        List<? extends VariableElement> otherParameters = otherMethod.getParameters();
+        if (parameters.size() != otherParameters.size()) {
+            return false;
+        }
+        for (int i = 0; i < parameters.size(); i++) {
+            if (!types.isSameType(types.erasure(parameters.get(i).asType()), types.erasure(otherParameters.get(i).asType()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private TypeElement getSuperclass(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        return superclass.getKind() == TypeKind.DECLARED ? (TypeElement) types.asElement(superclass) : null;
+    }
+
+    private static String getNestedName(TypeElement type) {
+        Element enclosingElement = type.getEnclosingElement();
+        if (enclosingElement instanceof TypeElement) {
+            return getNestedName((TypeElement) enclosingElement) + "_" + type.getSimpleName();
+        }
+        return type.getSimpleName().toString();
+    }
+
+    /** @return the source code of a tree of the template, indented as a member of the base class. */
+    private static String indent(Tree tree) {
+        return tree.toString().trim().replace("\n", "\n" + INDENT);
+    }
+
+    private static String parameters(ExecutableElement method) {
+        StringBuilder parameters = new StringBuilder();
+        List<? extends VariableElement> parameterElements = method.getParameters();
+        for (int i = 0; i < parameterElements.size(); i++) {
+            String type = parameterElements.get(i).asType().toString();
+            if (method.isVarArgs() && i == parameterElements.size() - 1) {
+                type = type.substring(0, type.length() - "[]".length()) + "...";
+            }
+            parameters.append(i == 0 ? "" : ", ").append(type).append(' ').append(parameterElements.get(i).getSimpleName());
+        }
+        return parameters.toString();
+    }
+
+    private static String arguments(ExecutableElement method) {
+        StringBuilder arguments = new StringBuilder();
+        for (VariableElement parameter : method.getParameters()) {
+            arguments.append(arguments.length() == 0 ? "" : ", ").append(parameter.getSimpleName());
+        }
+        return arguments.toString();
+    }
+
+    private static String typeParameters(List<? extends TypeParameterTree> typeParameters) {
+        return typeParameters.isEmpty() ? "" : "<" + join(typeParameters) + "> ";
+    }
+
+    private static String throwsClause(List<?> thrownTypes) {
+        return thrownTypes.isEmpty() ? "" : " throws " + join(thrownTypes);
+    }
+
+    private static String join(List<?> items) {
+        StringBuilder joined = new StringBuilder();
+        for (Object item : items) {
+            joined.append(joined.length() == 0 ? "" : ", ").append(item);
+        }
+        return joined.toString();
+    }
+
+    /** Calls to copies of template methods around an insertion method. */
+    private static final class InsertionPoint {
+        private final List<String> before = new ArrayList<String>();
+        private final List<String> after = new ArrayList<String>();
+    }
+}
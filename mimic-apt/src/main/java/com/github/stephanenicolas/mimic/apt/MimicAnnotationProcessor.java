@@ -0,0 +1,94 @@
+package com.github.stephanenicolas.mimic.apt;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+import com.sun.source.util.Trees;
+
+/**
+ * Mimics classes at compile time, without any post processing of class
+ * files. For a class {@code Target} annotated by
+ * {@link com.github.stephanenicolas.mimic.annotations.Mimic}, the processor
+ * generates the class {@code Mimic_Target}, a copy of the template that
+ * {@code Target} must extend :
+ *
+ * <pre>
+ * &#064;Mimic(sourceClass = Template.class)
+ * public class Target extends Mimic_Target {
+ * </pre>
+ *
+ * The template must be compiled along with the classes mimicing it, as its
+ * source code is copied. See {@link BaseClassWriter} for the mimic modes
+ * that can be expressed that way. Anything that can't is reported as a
+ * compilation error.
+ *
+ * @author SNI
+ */
+@SupportedAnnotationTypes("com.github.stephanenicolas.mimic.annotations.Mimic")
+public class MimicAnnotationProcessor extends AbstractProcessor {
+
+    /** Prefix of the names of generated base classes. */
+    public static final String BASE_CLASS_PREFIX = "Mimic_";
+
+    private Trees trees;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        trees = Trees.instance(processingEnv);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() != ElementKind.CLASS) {
+                    error("@Mimic can only annotate classes.", element);
+                    continue;
+                }
+                try {
+                    generateBaseClass((TypeElement) element);
+                } catch (UnexpressibleMimicException e) {
+                    error(e.getMessage(), e.getElement());
+                } catch (IOException e) {
+                    error("Impossible to write the base class of " + element + ": " + e.getMessage(), element);
+                }
+            }
+        }
+        return true;
+    }
+
+    private void generateBaseClass(TypeElement target) throws UnexpressibleMimicException, IOException {
+        BaseClassWriter baseClassWriter = new BaseClassWriter(processingEnv, trees, target);
+        String source = baseClassWriter.write();
+        JavaFileObject sourceFile = processingEnv.getFiler().createSourceFile(baseClassWriter.getQualifiedName(), target,
+                baseClassWriter.getTemplate());
+        Writer writer = sourceFile.openWriter();
+        try {
+            writer.write(source);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void error(String message, Element element) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
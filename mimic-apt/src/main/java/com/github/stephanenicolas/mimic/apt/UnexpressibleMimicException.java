@@ -0,0 +1,26 @@
+package com.github.stephanenicolas.mimic.apt;
+
+import javax.lang.model.element.Element;
+
+/**
+ * Thrown when a mimic can't be expressed by a generated base class. It is
+ * reported as a compilation error on {@link #getElement()}.
+ *
+ * @author SNI
+ */
+public class UnexpressibleMimicException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient Element element;
+
+    public UnexpressibleMimicException(String message, Element element) {
+        super(message);
+        this.element = element;
+    }
+
+    /** @return the element the error is reported on. */
+    public Element getElement() {
+        return element;
+    }
+}
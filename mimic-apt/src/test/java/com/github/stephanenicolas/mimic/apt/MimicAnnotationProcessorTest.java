@@ -0,0 +1,386 @@
+package com.github.stephanenicolas.mimic.apt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaCompiler.CompilationTask;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MimicAnnotationProcessorTest {
+
+    private static final String SUPERCLASS = "package sample;\n"
+            + "public class Base {\n"
+            + "    public final java.util.List<String> calls = new java.util.ArrayList<String>();\n"
+            + "    public Base() {\n"
+            + "    }\n"
+            + "    public Base(String call) {\n"
+            + "        calls.add(call);\n"
+            + "    }\n"
+            + "    public void foo() {\n"
+            + "        calls.add(\"super\");\n"
+            + "    }\n"
+            + "    public int bar() {\n"
+            + "        calls.add(\"bar\");\n"
+            + "        return 1;\n"
+            + "    }\n"
+            + "}\n";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File outputDir;
+    private DiagnosticCollector<JavaFileObject> diagnostics;
+
+    @Before
+    public void setUp() throws Exception {
+        outputDir = temporaryFolder.newFolder("classes");
+        diagnostics = new DiagnosticCollector<JavaFileObject>();
+    }
+
+    @Test
+    public void testProcess_copies_template() throws Exception {
+        // GIVEN
+        String template = "package sample;\n"
+                + "public class Template extends Base implements Runnable {\n"
+                + "    private int count = 1;\n"
+                + "    public Template() {\n"
+                + "        calls.add(\"template constructor\");\n"
+                + "    }\n"
+                + "    public void run() {\n"
+                + "        count++;\n"
+                + "    }\n"
+                + "    public int getCount() {\n"
+                + "        return count;\n"
+                + "    }\n"
+                + "}\n";
+        String target = "package sample;\n"
+                + "@com.github.stephanenicolas.mimic.annotations.Mimic(sourceClass = Template.class)\n"
+                + "public class Target extends Mimic_Target {\n"
+                + "    public Target() {\n"
+                + "        calls.add(\"target constructor\");\n"
+                + "    }\n"
+                + "}\n";
+
+        // WHEN
+        ClassLoader classLoader = compile(source("Base", SUPERCLASS), source("Template", template), source("Target", target));
+
+        // THEN
+        Object instance = classLoader.loadClass("sample.Target").newInstance();
+        assertTrue(instance instanceof Runnable);
+        ((Runnable) instance).run();
+        assertEquals(2, instance.getClass().getMethod("getCount").invoke(instance));
+        assertEquals(Arrays.asList("template constructor", "target constructor"), getCalls(instance));
+    }
+
+    @Test
+    public void testProcess_keeps_superclass_constructors() throws Exception {
+        // GIVEN
+        String template = "package sample;\n"
+                + "public class Template extends Base {\n"
+                + "}\n";
+        String target = "package sample;\n"
+                + "@com.github.stephanenicolas.mimic.annotations.Mimic(sourceClass = Template.class)\n"
+                + "public class Target extends Mimic_Target {\n"
+                + "    public Target() {\n"
+                + "        super(\"base constructor\");\n"
+                + "    }\n"
+                + "}\n";
+
+        // WHEN
+        ClassLoader classLoader = compile(source("Base", SUPERCLASS), source("Template", template), source("Target", target));
+
+        // THEN
+        Object instance = classLoader.loadClass("sample.Target").newInstance();
+        assertEquals(Arrays.asList("base constructor"), getCalls(instance));
+    }
+
+    @Test
+    public void testProcess_with_after_super() throws Exception {
+        // GIVEN
+        String target = "package sample;\n"
+                + "@com.github.stephanenicolas.mimic.annotations.Mimic(sourceClass = Template.class)\n"
+                + "public class Target extends Mimic_Target {\n"
+                + "    public void foo() {\n"
+                + "        calls.add(\"before\");\n"
+                + "        super.foo();\n"
+                + "        calls.add(\"after\");\n"
+                + "    }\n"
+                + "}\n";
+
+        // WHEN
+        Object instance = compileAndCallFoo(target);
+
+        // THEN
+        assertEquals(Arrays.asList("before", "super", "template", "after"), getCalls(instance));
+    }
+
+    @Test
+    public void testProcess_with_before_super() throws Exception {
+        // GIVEN
+        String target = "package sample;\n"
+                + "@com.github.stephanenicolas.mimic.annotations.Mimic(sourceClass = Template.class, "
+                + "defaultMimicMode = com.github.stephanenicolas.mimic.annotations.MimicMode.BEFORE_SUPER)\n"
+                + "public class Target extends Mimic_Target {\n"
+                + "    public void foo() {\n"
+                + "        super.foo();\n"
+                + "        calls.add(\"after\");\n"
+                + "    }\n"
+                + "}\n";
+
+        // WHEN
+        Object instance = compileAndCallFoo(target);
+
+        // THEN
+        assertEquals(Arrays.asList("template", "super", "after"), getCalls(instance));
+    }
+
+    @Test
+    public void testProcess_with_replace_super() throws Exception {
+        // GIVEN
+        String target = "package sample;\n"
+                + "import com.github.stephanenicolas.mimic.annotations.*;\n"
+                + "@Mimic(sourceClass = Template.class, mimicMethods = {@MimicMethod(methodName = \"foo\", mode = MimicMode.REPLACE_SUPER)})\n"
+                + "public class Target extends Mimic_Target {\n"
+                + "    public void foo() {\n"
+                + "        super.foo();\n"
+                + "        calls.add(\"after\");\n"
+                + "    }\n"
+                + "}\n";
+
+        // WHEN
+        Object instance = compileAndCallFoo(target);
+
+        // THEN
+        assertEquals(Arrays.asList("template", "after"), getCalls(instance));
+    }
+
+    @Test
+    public void testProcess_with_signature_of_another_overload() throws Exception {
+        // GIVEN
+        String target = "package sample;\n"
+                + "import com.github.stephanenicolas.mimic.annotations.*;\n"
+                + "@Mimic(sourceClass = Template.class, "
+                + "mimicMethods = {@MimicMethod(methodName = \"foo\", signature = \"(I)V\", mode = MimicMode.REPLACE_SUPER)})\n"
+                + "public class Target extends Mimic_Target {\n"
+                + "    public void foo() {\n"
+                + "        super.foo();\n"
+                + "    }\n"
+                + "}\n";
+
+        // WHEN
+        Object instance = compileAndCallFoo(target);
+
+        // THEN
+        assertEquals(Arrays.asList("super", "template"), getCalls(instance));
+    }
+
+    @Test
+    public void testProcess_with_before_insertion_method() throws Exception {
+        // GIVEN
+        String target = "package sample;\n"
+                + "import com.github.stephanenicolas.mimic.annotations.*;\n"
+                + "@Mimic(sourceClass = Template.class, "
+                + "mimicMethods = {@MimicMethod(methodName = \"foo\", mode = MimicMode.BEFORE, insertionMethod = \"bar\")})\n"
+                + "public class Target extends Mimic_Target {\n"
+                + "    public void foo() {\n"
+                + "        calls.add(\"before\");\n"
+                + "        bar();\n"
+                + "    }\n"
+                + "}\n";
+
+        // WHEN
+        Object instance = compileAndCallFoo(target);
+
+        // THEN
+        assertEquals(Arrays.asList("before", "template", "bar"), getCalls(instance));
+    }
+
+    @Test
+    public void testProcess_with_at_beginning_fails() throws Exception {
+        // GIVEN
+        String target = "package sample;\n"
+                + "@com.github.stephanenicolas.mimic.annotations.Mimic(sourceClass = Template.class, "
+                + "defaultMimicMode = com.github.stephanenicolas.mimic.annotations.MimicMode.AT_BEGINNING)\n"
+                + "public class Target extends Mimic_Target {\n"
+                + "    public void foo() {\n"
+                + "    }\n"
+                + "}\n";
+
+        // WHEN
+        boolean success = compileTask(source("Base", SUPERCLASS), source("Template", fooTemplate()), source("Target", target)).call();
+
+        // THEN
+        assertFalse(success);
+        assertError("MimicMode.AT_BEGINNING of sample.Template.foo() can't be expressed by a base class");
+    }
+
+    @Test
+    public void testProcess_without_extending_base_class_fails() throws Exception {
+        // GIVEN
+        String target = "package sample;\n"
+                + "@com.github.stephanenicolas.mimic.annotations.Mimic(sourceClass = Template.class)\n"
+                + "public class Target extends Base {\n"
+                + "}\n";
+
+        // WHEN
+        boolean success = compileTask(source("Base", SUPERCLASS), source("Template", fooTemplate()), source("Target", target)).call();
+
+        // THEN
+        assertFalse(success);
+        assertError("sample.Target must extend Mimic_Target");
+    }
+
+    @Test
+    public void testProcess_with_compiled_template_fails() throws Exception {
+        // GIVEN
+        String target = "package sample;\n"
+                + "@com.github.stephanenicolas.mimic.annotations.Mimic(sourceClass = java.util.Random.class)\n"
+                + "public class Target extends Mimic_Target {\n"
+                + "}\n";
+
+        // WHEN
+        boolean success = compileTask(source("Target", target)).call();
+
+        // THEN
+        assertFalse(success);
+        assertError("The template java.util.Random must be compiled along with sample.Target");
+    }
+
+    @Test
+    public void testProcess_with_mimic_fields() throws Exception {
+        // GIVEN
+        String template = "package sample;\n"
+                + "public class Template {\n"
+                + "    private int foo = 1;\n"
+                + "    private int bar = 2;\n"
+                + "    public int getFoo() {\n"
+                + "        return foo;\n"
+                + "    }\n"
+                + "}\n";
+        String target = "package sample;\n"
+                + "import com.github.stephanenicolas.mimic.annotations.*;\n"
+                + "@Mimic(sourceClass = Template.class, mimicFields = {@MimicField(fieldName = \"foo\")})\n"
+                + "public class Target extends Mimic_Target {\n"
+                + "}\n";
+
+        // WHEN
+        ClassLoader classLoader = compile(source("Template", template), source("Target", target));
+
+        // THEN
+        Class<?> targetClass = classLoader.loadClass("sample.Target");
+        assertEquals(1, targetClass.getSuperclass().getDeclaredFields().length);
+        assertEquals(1, targetClass.getMethod("getFoo").invoke(targetClass.newInstance()));
+    }
+
+    @Test
+    public void testProcess_with_mixins_fails() throws Exception {
+        // GIVEN
+        String target = "package sample;\n"
+                + "import com.github.stephanenicolas.mimic.annotations.*;\n"
+                + "@Mimic(sourceClass = Template.class, mixins = {@MimicTemplate(sourceClass = Base.class)})\n"
+                + "public class Target extends Mimic_Target {\n"
+                + "}\n";
+
+        // WHEN
+        boolean success = compileTask(source("Base", SUPERCLASS), source("Template", fooTemplate()), source("Target", target)).call();
+
+        // THEN
+        assertFalse(success);
+        assertError("The mixins of sample.Target can't be expressed by a base class");
+    }
+
+    @Test
+    public void testProcess_with_field_collision_fails() throws Exception {
+        // GIVEN
+        String template = "package sample;\n"
+                + "public class Template {\n"
+                + "    private int foo;\n"
+                + "}\n";
+        String target = "package sample;\n"
+                + "@com.github.stephanenicolas.mimic.annotations.Mimic(sourceClass = Template.class)\n"
+                + "public class Target extends Mimic_Target {\n"
+                + "    private int foo;\n"
+                + "}\n";
+
+        // WHEN
+        boolean success = compileTask(source("Template", template), source("Target", target)).call();
+
+        // THEN
+        assertFalse(success);
+        assertError("Class sample.Target already has a field named foo");
+    }
+
+    private Object compileAndCallFoo(String target) throws Exception {
+        ClassLoader classLoader = compile(source("Base", SUPERCLASS), source("Template", fooTemplate()), source("Target", target));
+        Object instance = classLoader.loadClass("sample.Target").newInstance();
+        instance.getClass().getMethod("foo").invoke(instance);
+        return instance;
+    }
+
+    private static String fooTemplate() {
+        return "package sample;\n"
+                + "public class Template extends Base {\n"
+                + "    @Override\n"
+                + "    public void foo() {\n"
+                + "        calls.add(\"template\");\n"
+                + "    }\n"
+                + "}\n";
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> getCalls(Object instance) throws Exception {
+        return (List<String>) instance.getClass().getField("calls").get(instance);
+    }
+
+    private ClassLoader compile(JavaFileObject... sources) throws Exception {
+        boolean success = compileTask(sources).call();
+        assertTrue(diagnostics.getDiagnostics().toString(), success);
+        return new URLClassLoader(new URL[] {outputDir.toURI().toURL() }, getClass().getClassLoader());
+    }
+
+    private CompilationTask compileTask(JavaFileObject... sources) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        List<String> options = new ArrayList<String>(Arrays.asList("-d", outputDir.getAbsolutePath(), "-s", outputDir.getAbsolutePath(),
+                "-classpath", System.getProperty("java.class.path")));
+        CompilationTask task = compiler.getTask(null, null, diagnostics, options, null, Arrays.asList(sources));
+        task.setProcessors(Arrays.asList(new MimicAnnotationProcessor()));
+        return task;
+    }
+
+    private void assertError(String message) {
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR && diagnostic.getMessage(null).contains(message)) {
+                return;
+            }
+        }
+        throw new AssertionError("No error " + message + " in " + diagnostics.getDiagnostics());
+    }
+
+    private static JavaFileObject source(String simpleName, final String code) {
+        return new SimpleJavaFileObject(URI.create("string:///sample/" + simpleName + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return code;
+            }
+        };
+    }
+}
@@ -0,0 +1,30 @@
+package com.github.stephanenicolas.mimic.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Defines classes woven by benchmarks.
+ *
+ * @author SNI
+ */
+final class BytecodeClassLoader extends ClassLoader {
+    private final Map<String, byte[]> classfiles = new HashMap<String, byte[]>();
+
+    BytecodeClassLoader() {
+        super(BytecodeClassLoader.class.getClassLoader());
+    }
+
+    void put(String name, byte[] classfile) {
+        classfiles.put(name, classfile);
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        byte[] classfile = classfiles.get(name);
+        if (classfile == null) {
+            throw new ClassNotFoundException(name);
+        }
+        return defineClass(name, classfile, 0, classfile.length);
+    }
+}
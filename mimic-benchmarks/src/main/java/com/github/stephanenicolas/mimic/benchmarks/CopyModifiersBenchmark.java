@@ -0,0 +1,138 @@
+package com.github.stephanenicolas.mimic.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.stephanenicolas.mimic.MimicCreator;
+import com.github.stephanenicolas.mimic.annotations.MimicMethod;
+import com.github.stephanenicolas.mimic.annotations.MimicMode;
+
+/**
+ * Measures the invocation of {@code _copy_} methods, when they are public and
+ * when they are private. A base class and 3 of its subclasses mimic the same
+ * template : public copies are overridden by the subclasses, and the call
+ * site invoking the copy in the base class becomes megamorphic. Private
+ * copies are bound statically.
+ * <p>
+ * The inlining decisions of the JIT for {@code _copy_apply} explain the
+ * difference. A private copy is invoked through {@code invokespecial} : its
+ * call site has a single target, and the copy, a few bytes long, is under
+ * {@code -XX:MaxInlineSize}, so C2 inlines it. A public copy is invoked
+ * through {@code invokevirtual} from the base class with 4 receiver types,
+ * more than the 2 that C2 inlines from a type profile : the call site stays
+ * a virtual call. {@link #applyPrintingInlining(WovenState)} runs in a fork
+ * printing these decisions, {@code _copy_apply} should be reported as
+ * inlined with private copies, and as a virtual call with public ones.
+ * {@link #applyWithoutInliningCopies(WovenState)} runs in a fork where no
+ * {@code _copy_} method is inlined : the generated classes can't carry
+ * {@code @CompilerControl}, so a compile command is used instead. Private
+ * copies then only save the virtual dispatch.
+ *
+ * @author SNI
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CopyModifiersBenchmark {
+
+    private static final String PACKAGE = "com.github.stephanenicolas.mimic.benchmarks.generated.";
+    private static final int SUB_CLASS_COUNT = 3;
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    /** A hierarchy of woven classes. */
+    @State(Scope.Thread)
+    public static class WovenState {
+        @Param({"false", "true" })
+        public boolean privateCopies;
+
+        private Operation[] operations;
+        private int argument = 1;
+
+        @Setup(Level.Trial)
+        public void weave() throws Exception {
+            operations = CopyModifiersBenchmark.weave(privateCopies);
+        }
+    }
+
+    @Benchmark
+    public int apply(WovenState state) {
+        int result = 0;
+        for (Operation operation : state.operations) {
+            result += operation.apply(state.argument);
+        }
+        return result;
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {"-XX:+UnlockDiagnosticVMOptions", "-XX:+PrintInlining" })
+    public int applyPrintingInlining(WovenState state) {
+        return apply(state);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-XX:CompileCommand=dontinline,*::_copy_*")
+    public int applyWithoutInliningCopies(WovenState state) {
+        return apply(state);
+    }
+
+    private static Operation[] weave(boolean privateCopies) throws Exception {
+        int id = COUNTER.incrementAndGet();
+        ClassPool pool = new ClassPool(true);
+        pool.appendClassPath(new LoaderClassPath(CopyModifiersBenchmark.class.getClassLoader()));
+
+        CtClass template = pool.makeClass(PACKAGE + "CountingTemplate" + id);
+        template.addField(CtField.make("protected int counter;", template));
+        template.addMethod(CtNewMethod.make("public int apply(int a) { counter += a; return counter; }", template));
+
+        MimicCreator mimicCreator = new MimicCreator();
+        mimicCreator.setPrivateCopies(privateCopies);
+        BytecodeClassLoader classLoader = new BytecodeClassLoader();
+
+        CtClass base = pool.makeClass(PACKAGE + "CountingBase" + id);
+        base.addInterface(pool.get(Operation.class.getName()));
+        base.addConstructor(CtNewConstructor.defaultConstructor(base));
+        base.addMethod(CtNewMethod.make("public int apply(int a) { return a; }", base));
+        mimicCreator.mimicFields(template, base);
+        mimicCreator.mimicMethods(template, base, MimicMode.BEFORE_RETURN, new MimicMethod[0]);
+        classLoader.put(base.getName(), base.toBytecode());
+
+        String[] classNames = new String[SUB_CLASS_COUNT + 1];
+        classNames[0] = base.getName();
+        for (int i = 1; i <= SUB_CLASS_COUNT; i++) {
+            CtClass sub = pool.makeClass(PACKAGE + "CountingSub" + i + "_" + id, base);
+            sub.addConstructor(CtNewConstructor.defaultConstructor(sub));
+            sub.addMethod(CtNewMethod.make("public int apply(int a) { return super.apply(a) + " + i + "; }", sub));
+            mimicCreator.mimicMethods(template, sub, MimicMode.BEFORE_RETURN, new MimicMethod[0]);
+            classLoader.put(sub.getName(), sub.toBytecode());
+            classNames[i] = sub.getName();
+        }
+
+        Operation[] operations = new Operation[classNames.length];
+        for (int i = 0; i < classNames.length; i++) {
+            operations[i] = (Operation) classLoader.loadClass(classNames[i]).newInstance();
+        }
+        return operations;
+    }
+}
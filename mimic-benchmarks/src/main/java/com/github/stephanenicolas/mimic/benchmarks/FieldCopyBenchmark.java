@@ -0,0 +1,104 @@
+package com.github.stephanenicolas.mimic.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javassist.ByteArrayClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.stephanenicolas.mimic.MimicCreator;
+
+/**
+ * Measures the copy of the fields of large templates, like generated view
+ * holders or data binding classes, into targets at the bottom of a
+ * hierarchy. The names of the fields of the hierarchy are collected once per
+ * target, so the time per operation should grow linearly with
+ * {@code fieldCount} and barely depend on {@code depth}.
+ *
+ * @author SNI
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldCopyBenchmark {
+
+    private static final String PACKAGE = "com.github.stephanenicolas.mimic.benchmarks.generated.fields.";
+    private static final int FIELDS_PER_ANCESTOR = 10;
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    /** A template with many fields and a target at the bottom of a hierarchy. */
+    @State(Scope.Thread)
+    public static class LargeTemplateState {
+        @Param({"200", "500" })
+        public int fieldCount;
+
+        @Param({"1", "20" })
+        public int depth;
+
+        private final Map<String, byte[]> classfiles = new HashMap<String, byte[]>();
+        private String templateName;
+        private String targetName;
+        private CtClass template;
+        private CtClass target;
+
+        @Setup(Level.Trial)
+        public void generate() throws Exception {
+            int id = COUNTER.incrementAndGet();
+            templateName = PACKAGE + "Template" + id;
+            targetName = PACKAGE + "Target" + id;
+            ClassPool pool = new ClassPool(true);
+
+            CtClass ancestor = pool.getCtClass(Object.class.getName());
+            for (int i = 0; i < depth; i++) {
+                ancestor = pool.makeClass(PACKAGE + "Ancestor" + id + "_" + i, ancestor);
+                for (int j = 0; j < FIELDS_PER_ANCESTOR; j++) {
+                    ancestor.addField(CtField.make("protected int level" + i + "_" + j + ";", ancestor));
+                }
+                classfiles.put(ancestor.getName(), ancestor.toBytecode());
+            }
+
+            CtClass template = pool.makeClass(templateName);
+            for (int i = 0; i < fieldCount; i++) {
+                template.addField(CtField.make("private int field" + i + ";", template));
+            }
+            CtClass target = pool.makeClass(targetName, ancestor);
+            classfiles.put(template.getName(), template.toBytecode());
+            classfiles.put(target.getName(), target.toBytecode());
+        }
+
+        @Setup(Level.Invocation)
+        public void loadClasses() throws Exception {
+            ClassPool pool = new ClassPool(true);
+            for (Map.Entry<String, byte[]> entry : classfiles.entrySet()) {
+                pool.insertClassPath(new ByteArrayClassPath(entry.getKey(), entry.getValue()));
+            }
+            template = pool.get(templateName);
+            target = pool.get(targetName);
+        }
+    }
+
+    @Benchmark
+    public CtClass mimicFields(LargeTemplateState state) throws Exception {
+        new MimicCreator().mimicFields(state.template, state.target);
+        return state.target;
+    }
+}
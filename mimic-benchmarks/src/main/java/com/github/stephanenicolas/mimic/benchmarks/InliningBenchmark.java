@@ -0,0 +1,100 @@
+package com.github.stephanenicolas.mimic.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.stephanenicolas.mimic.MimicCreator;
+import com.github.stephanenicolas.mimic.annotations.MimicMethod;
+import com.github.stephanenicolas.mimic.annotations.MimicMode;
+
+/**
+ * Compares the cost of invoking a mimicked method, when the code of the
+ * template is invoked through a {@code _copy_} method, and when it is inlined
+ * into the target method.
+ *
+ * @author SNI
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InliningBenchmark {
+
+    private static final String PACKAGE = "com.github.stephanenicolas.mimic.benchmarks.generated.";
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    /** The same target, woven with and without inlining. */
+    @State(Scope.Thread)
+    public static class WovenState {
+        @Param({"AT_BEGINNING", "BEFORE_RETURN", "AFTER_SUPER" })
+        public MimicMode mode;
+
+        private Operation delegated;
+        private Operation inlined;
+        private int argument = 1;
+
+        @Setup(Level.Trial)
+        public void weave() throws Exception {
+            delegated = InliningBenchmark.weave(mode, false);
+            inlined = InliningBenchmark.weave(mode, true);
+        }
+    }
+
+    @Benchmark
+    public int delegated(WovenState state) {
+        return state.delegated.apply(state.argument);
+    }
+
+    @Benchmark
+    public int inlined(WovenState state) {
+        return state.inlined.apply(state.argument);
+    }
+
+    private static Operation weave(MimicMode mode, boolean inliningCopies) throws Exception {
+        int id = COUNTER.incrementAndGet();
+        ClassPool pool = new ClassPool(true);
+        pool.appendClassPath(new LoaderClassPath(InliningBenchmark.class.getClassLoader()));
+
+        CtClass ancestor = pool.makeClass(PACKAGE + "OperationAncestor" + id);
+        ancestor.addInterface(pool.get(Operation.class.getName()));
+        ancestor.addMethod(CtNewMethod.make("public int apply(int a) { return a; }", ancestor));
+
+        CtClass template = pool.makeClass(PACKAGE + "OperationTemplate" + id);
+        template.addField(CtField.make("private int counter;", template));
+        template.addMethod(CtNewMethod.make("public int apply(int a) { counter += a; return counter ^ a; }", template));
+
+        CtClass target = pool.makeClass(PACKAGE + "OperationTarget" + id, ancestor);
+        target.addField(CtField.make("private int total;", target));
+        target.addMethod(CtNewMethod.make("public int apply(int a) { total += a; return super.apply(a) + total; }", target));
+
+        MimicCreator mimicCreator = new MimicCreator();
+        mimicCreator.setInliningCopies(inliningCopies);
+        mimicCreator.mimicFields(template, target);
+        mimicCreator.mimicMethods(template, target, mode, new MimicMethod[0]);
+
+        BytecodeClassLoader classLoader = new BytecodeClassLoader();
+        classLoader.put(ancestor.getName(), ancestor.toBytecode());
+        classLoader.put(target.getName(), target.toBytecode());
+        return (Operation) classLoader.loadClass(target.getName()).newInstance();
+    }
+}
@@ -0,0 +1,163 @@
+package com.github.stephanenicolas.mimic.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javassist.ByteArrayClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewMethod;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.stephanenicolas.mimic.MimicCreator;
+import com.github.stephanenicolas.mimic.annotations.MimicMethod;
+import com.github.stephanenicolas.mimic.annotations.MimicMode;
+
+/**
+ * Shows how the lookup of insertion methods scales with the depth of the
+ * hierarchy of the target, like the deep hierarchies of Android components.
+ * Every template method is inserted after a call to an overload of an
+ * insertion method declared by the root of the hierarchy. The hierarchy is
+ * walked once per target, so the average time per operation should barely
+ * depend on {@code depth}.
+ *
+ * @author SNI
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InsertionMethodLookupBenchmark {
+
+    private static final String PACKAGE = "com.github.stephanenicolas.mimic.benchmarks.generated.lookup.";
+    private static final String HOOK_METHOD_NAME = "hook";
+    private static final String HOOK_METHOD_SIGNATURE = "(I)V";
+    private static final int METHOD_COUNT = 50;
+    private static final int METHODS_PER_ANCESTOR = 20;
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    /** A template and a target at the bottom of a deep hierarchy. */
+    @State(Scope.Thread)
+    public static class DeepHierarchyState {
+        @Param({"1", "10", "50" })
+        public int depth;
+
+        @Param({"false", "true" })
+        public boolean withSignature;
+
+        private final Map<String, byte[]> classfiles = new HashMap<String, byte[]>();
+        private String templateName;
+        private String targetName;
+        private MimicMethod[] mimicMethods;
+        private CtClass template;
+        private CtClass target;
+
+        @Setup(Level.Trial)
+        public void generate() throws Exception {
+            int id = COUNTER.incrementAndGet();
+            templateName = PACKAGE + "Template" + id;
+            targetName = PACKAGE + "Target" + id;
+            ClassPool pool = new ClassPool(true);
+
+            CtClass ancestor = pool.makeClass(PACKAGE + "Ancestor" + id + "_0");
+            ancestor.addField(CtField.make("protected int total;", ancestor));
+            ancestor.addMethod(CtNewMethod.make("public void " + HOOK_METHOD_NAME + "() { total--; }", ancestor));
+            ancestor.addMethod(CtNewMethod.make("public void " + HOOK_METHOD_NAME + "(int a) { total -= a; }", ancestor));
+            classfiles.put(ancestor.getName(), ancestor.toBytecode());
+            for (int i = 1; i < depth; i++) {
+                ancestor = pool.makeClass(PACKAGE + "Ancestor" + id + "_" + i, ancestor);
+                for (int j = 0; j < METHODS_PER_ANCESTOR; j++) {
+                    ancestor.addMethod(CtNewMethod.make("public void level" + i + "_" + j + "(int a) { total += a; }", ancestor));
+                }
+                classfiles.put(ancestor.getName(), ancestor.toBytecode());
+            }
+
+            CtClass template = pool.makeClass(templateName);
+            template.addField(CtField.make("private int counter;", template));
+            CtClass target = pool.makeClass(targetName, ancestor);
+            mimicMethods = new MimicMethod[METHOD_COUNT];
+            for (int i = 0; i < METHOD_COUNT; i++) {
+                template.addMethod(CtNewMethod.make("public void on" + i + "(int a) { counter += a; }", template));
+                target.addMethod(CtNewMethod.make("public void on" + i + "(int a) { " + HOOK_METHOD_NAME + "(a); }", target));
+                mimicMethods[i] = new MimicMethodLiteral("on" + i, HOOK_METHOD_NAME, withSignature ? HOOK_METHOD_SIGNATURE : "");
+            }
+            classfiles.put(template.getName(), template.toBytecode());
+            classfiles.put(target.getName(), target.toBytecode());
+        }
+
+        @Setup(Level.Invocation)
+        public void loadClasses() throws Exception {
+            ClassPool pool = new ClassPool(true);
+            for (Map.Entry<String, byte[]> entry : classfiles.entrySet()) {
+                pool.insertClassPath(new ByteArrayClassPath(entry.getKey(), entry.getValue()));
+            }
+            template = pool.get(templateName);
+            target = pool.get(targetName);
+        }
+    }
+
+    @Benchmark
+    public CtClass mimicMethods(DeepHierarchyState state) throws Exception {
+        new MimicCreator().mimicMethods(state.template, state.target, MimicMode.AFTER, state.mimicMethods);
+        return state.target;
+    }
+
+    /** An instance of {@link MimicMethod}, as if it had been read from a class file. */
+    private static final class MimicMethodLiteral implements MimicMethod {
+        private final String methodName;
+        private final String insertionMethod;
+        private final String insertionMethodSignature;
+
+        private MimicMethodLiteral(String methodName, String insertionMethod, String insertionMethodSignature) {
+            this.methodName = methodName;
+            this.insertionMethod = insertionMethod;
+            this.insertionMethodSignature = insertionMethodSignature;
+        }
+
+        @Override
+        public Class<? extends java.lang.annotation.Annotation> annotationType() {
+            return MimicMethod.class;
+        }
+
+        @Override
+        public String methodName() {
+            return methodName;
+        }
+
+        @Override
+        public String signature() {
+            return "";
+        }
+
+        @Override
+        public MimicMode mode() {
+            return MimicMode.AFTER;
+        }
+
+        @Override
+        public String insertionMethod() {
+            return insertionMethod;
+        }
+
+        @Override
+        public String insertionMethodSignature() {
+            return insertionMethodSignature;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.github.stephanenicolas.mimic.benchmarks;
+
+import java.lang.annotation.Annotation;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javassist.ByteArrayClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewMethod;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.stephanenicolas.mimic.MimicCreator;
+import com.github.stephanenicolas.mimic.annotations.MimicMethod;
+import com.github.stephanenicolas.mimic.annotations.MimicMode;
+
+/**
+ * Measures the instrumentation of long target methods, like the lifecycle
+ * methods of Android components : every method of the target invokes many
+ * other methods before reaching its insertion point, so each walk of its
+ * bytecode visits many method calls.
+ *
+ * @author SNI
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InstrumentationBenchmark {
+
+    private static final String PACKAGE = "com.github.stephanenicolas.mimic.benchmarks.generated.instrumentation.";
+    private static final String HOOK_METHOD_NAME = "hook";
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    /** A template and a target with long methods. */
+    @State(Scope.Thread)
+    public static class LongMethodsState {
+        @Param({"1", "10", "50" })
+        public int methodCount;
+
+        @Param({"10", "200" })
+        public int callCount;
+
+        @Param({"BEFORE_SUPER", "AFTER" })
+        public MimicMode mode;
+
+        private final Map<String, byte[]> classfiles = new HashMap<String, byte[]>();
+        private String templateName;
+        private String targetName;
+        private MimicMethod[] mimicMethods;
+        private CtClass template;
+        private CtClass target;
+
+        @Setup(Level.Trial)
+        public void generate() throws Exception {
+            int id = COUNTER.incrementAndGet();
+            templateName = PACKAGE + "Template" + id;
+            targetName = PACKAGE + "Target" + id;
+            ClassPool pool = new ClassPool(true);
+
+            CtClass ancestor = pool.makeClass(PACKAGE + "Ancestor" + id);
+            CtClass template = pool.makeClass(templateName);
+            template.addField(CtField.make("private int counter;", template));
+            for (int i = 0; i < methodCount; i++) {
+                ancestor.addMethod(CtNewMethod.make("public void on" + i + "(int a) { }", ancestor));
+                template.addMethod(CtNewMethod.make("public void on" + i + "(int a) { counter += a; }", template));
+            }
+
+            CtClass target = pool.makeClass(targetName, ancestor);
+            target.addField(CtField.make("private int total;", target));
+            target.addMethod(CtNewMethod.make("public void " + HOOK_METHOD_NAME + "(int a) { total -= a; }", target));
+            for (int i = 0; i < callCount; i++) {
+                target.addMethod(CtNewMethod.make("public void step" + i + "(int a) { total += a; }", target));
+            }
+            mimicMethods = new MimicMethod[mode == MimicMode.AFTER ? methodCount : 0];
+            for (int i = 0; i < methodCount; i++) {
+                StringBuilder body = new StringBuilder("public void on" + i + "(int a) {");
+                for (int j = 0; j < callCount; j++) {
+                    body.append(" step").append(j).append("(a);");
+                }
+                body.append(mode == MimicMode.AFTER ? " " + HOOK_METHOD_NAME + "(a); }" : " super.on" + i + "(a); }");
+                target.addMethod(CtNewMethod.make(body.toString(), target));
+                if (mode == MimicMode.AFTER) {
+                    mimicMethods[i] = new MimicMethodLiteral("on" + i, mode, HOOK_METHOD_NAME);
+                }
+            }
+            for (CtClass clazz : new CtClass[] {ancestor, template, target}) {
+                classfiles.put(clazz.getName(), clazz.toBytecode());
+            }
+        }
+
+        @Setup(Level.Invocation)
+        public void loadClasses() throws Exception {
+            ClassPool pool = new ClassPool(true);
+            for (Map.Entry<String, byte[]> entry : classfiles.entrySet()) {
+                pool.insertClassPath(new ByteArrayClassPath(entry.getKey(), entry.getValue()));
+            }
+            template = pool.get(templateName);
+            target = pool.get(targetName);
+        }
+    }
+
+    @Benchmark
+    public CtClass mimicMethods(LongMethodsState state) throws Exception {
+        new MimicCreator().mimicMethods(state.template, state.target, state.mode, state.mimicMethods);
+        return state.target;
+    }
+
+    /** An instance of {@link MimicMethod}, as if it had been read from a class file. */
+    private static final class MimicMethodLiteral implements MimicMethod {
+        private final String methodName;
+        private final MimicMode mode;
+        private final String insertionMethod;
+
+        private MimicMethodLiteral(String methodName, MimicMode mode, String insertionMethod) {
+            this.methodName = methodName;
+            this.mode = mode;
+            this.insertionMethod = insertionMethod;
+        }
+
+        @Override
+        public Class<? extends Annotation> annotationType() {
+            return MimicMethod.class;
+        }
+
+        @Override
+        public String methodName() {
+            return methodName;
+        }
+
+        @Override
+        public MimicMode mode() {
+            return mode;
+        }
+
+        @Override
+        public String signature() {
+            return "";
+        }
+
+        @Override
+        public String insertionMethod() {
+            return insertionMethod;
+        }
+
+        @Override
+        public String insertionMethodSignature() {
+            return "";
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.github.stephanenicolas.mimic.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Enumeration;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewMethod;
+import javassist.bytecode.ClassFile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.stephanenicolas.mimic.MimicProcessor;
+import com.github.stephanenicolas.mimic.annotations.MimicMode;
+
+/**
+ * Measures the transformation of a fat jar of 20,000 classes, of which 50 are
+ * annotated : by streaming it into another jar, with
+ * {@link MimicProcessor#transformJar(File, File)}, and by extracting it,
+ * transforming the extracted directory and compressing it again, as a
+ * release pipeline would do with the javassist maven plugin.
+ *
+ * @author SNI
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JarTransformBenchmark {
+
+    private static final String PACKAGE = "com.github.stephanenicolas.mimic.benchmarks.generated.jar.";
+    private static final int CLASS_COUNT = 20000;
+    private static final int MODULE_COUNT = 50;
+    private static final int METHOD_COUNT = 20;
+    private static final int CONSTRUCTOR_COUNT = 2;
+    private static final int BUFFER_SIZE = 8192;
+
+    /** A fat jar, and the files written by each iteration. */
+    @State(Scope.Benchmark)
+    public static class JarState {
+        private File directory;
+        private File inputJar;
+        private File outputJar;
+        private File explodedDir;
+
+        @Setup(Level.Trial)
+        public void generate() throws Exception {
+            directory = createTempDirectory("mimic-jar");
+            File modulesDir = new File(directory, "modules");
+            for (int i = 0; i < MODULE_COUNT; i++) {
+                SyntheticModule.create(METHOD_COUNT, CONSTRUCTOR_COUNT, MimicMode.AFTER_SUPER).writeTo(modulesDir);
+            }
+            inputJar = new File(directory, "input.jar");
+            outputJar = new File(directory, "output.jar");
+            explodedDir = new File(directory, "exploded");
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+            JarOutputStream out = new JarOutputStream(new FileOutputStream(inputJar));
+            try {
+                byte[] prototype = createPrototype();
+                for (int i = 0; i < CLASS_COUNT; i++) {
+                    ClassFile classFile = new ClassFile(new DataInputStream(new ByteArrayInputStream(prototype)));
+                    classFile.renameClass(PACKAGE + "Prototype", PACKAGE + "Class" + i);
+                    out.putNextEntry(new JarEntry(classFile.getName().replace('.', '/') + ".class"));
+                    classFile.write(new DataOutputStream(out));
+                    out.closeEntry();
+                }
+                putDirectory(out, modulesDir, "", buffer);
+            } finally {
+                out.close();
+            }
+        }
+
+        @Setup(Level.Iteration)
+        public void clean() {
+            delete(explodedDir);
+            if (outputJar.exists() && !outputJar.delete()) {
+                throw new IllegalStateException("Impossible to delete " + outputJar);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() {
+            delete(directory);
+        }
+
+        private static byte[] createPrototype() throws Exception {
+            CtClass prototype = new ClassPool(true).makeClass(PACKAGE + "Prototype");
+            prototype.addField(CtField.make("private int count;", prototype));
+            prototype.addMethod(CtNewMethod.make("public int getCount() { return count; }", prototype));
+            prototype.addMethod(CtNewMethod.make("public String toString() { return \"Prototype \" + count; }", prototype));
+            return prototype.toBytecode();
+        }
+
+        private static void putDirectory(JarOutputStream out, File directory, String path, byte[] buffer) throws IOException {
+            File[] children = directory.listFiles();
+            if (children == null) {
+                return;
+            }
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    putDirectory(out, child, path + child.getName() + "/", buffer);
+                } else {
+                    out.putNextEntry(new JarEntry(path + child.getName()));
+                    copy(new FileInputStream(child), out, buffer);
+                    out.closeEntry();
+                }
+            }
+        }
+
+        private static void delete(File file) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    delete(child);
+                }
+            }
+            if (file.exists() && !file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    @Benchmark
+    public File streaming(JarState state) throws Exception {
+        new MimicProcessor().transformJar(state.inputJar, state.outputJar);
+        return state.outputJar;
+    }
+
+    @Benchmark
+    public File explodeTransformRepack(JarState state) throws Exception {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        JarFile jarFile = new JarFile(state.inputJar);
+        try {
+            for (Enumeration<JarEntry> entries = jarFile.entries(); entries.hasMoreElements();) {
+                JarEntry entry = entries.nextElement();
+                File file = new File(state.explodedDir, entry.getName());
+                if (!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs()) {
+                    throw new IOException("Impossible to create directory " + file.getParentFile());
+                }
+                OutputStream out = new FileOutputStream(file);
+                try {
+                    copy(jarFile.getInputStream(entry), out, buffer);
+                } finally {
+                    out.close();
+                }
+            }
+        } finally {
+            jarFile.close();
+        }
+
+        // just like the javassist maven plugin, that exposes the classes to transform via the context class loader
+        Thread.currentThread().setContextClassLoader(new URLClassLoader(new URL[] {state.explodedDir.toURI().toURL() },
+                JarTransformBenchmark.class.getClassLoader()));
+        new MimicProcessor().transform(state.explodedDir.getAbsolutePath(), state.explodedDir.getAbsolutePath());
+
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(state.outputJar));
+        try {
+            JarState.putDirectory(out, state.explodedDir, "", buffer);
+        } finally {
+            out.close();
+        }
+        return state.outputJar;
+    }
+
+    private static void copy(InputStream in, OutputStream out, byte[] buffer) throws IOException {
+        try {
+            for (int count = in.read(buffer); count != -1; count = in.read(buffer)) {
+                out.write(buffer, 0, count);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static File createTempDirectory(String prefix) throws IOException {
+        File directory = File.createTempFile(prefix, "");
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("Impossible to create temp directory " + directory);
+        }
+        return directory;
+    }
+}
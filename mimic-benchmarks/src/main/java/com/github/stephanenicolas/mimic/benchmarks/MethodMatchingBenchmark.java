@@ -0,0 +1,75 @@
+package com.github.stephanenicolas.mimic.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.stephanenicolas.mimic.MimicCreator;
+import com.github.stephanenicolas.mimic.annotations.MimicMethod;
+import com.github.stephanenicolas.mimic.annotations.MimicMode;
+
+/**
+ * Shows how the matching of template methods against target methods scales
+ * with the size of both classes. Template and target both have
+ * {@code methodCount} methods, and only a tenth of them are shared, so that
+ * most of the time is spent matching and copying rather than instrumenting.
+ * The average time per operation should grow linearly with
+ * {@code methodCount}.
+ *
+ * @author SNI
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MethodMatchingBenchmark {
+
+    /** Template and target of the same size, sharing a tenth of their methods. */
+    @State(Scope.Thread)
+    public static class MatchingState {
+        private static final int CONSTRUCTOR_COUNT = 1;
+        private static final int OVERRIDDEN_RATIO = 10;
+
+        @Param({"100", "500", "1000", "2000", "5000" })
+        public int methodCount;
+
+        private SyntheticModule module;
+        private MimicMethod[] mimicMethods;
+        private CtClass template;
+        private CtClass target;
+
+        @Setup(Level.Trial)
+        public void createModule() throws Exception {
+            module = SyntheticModule.create(methodCount, CONSTRUCTOR_COUNT, MimicMode.AT_BEGINNING, methodCount / OVERRIDDEN_RATIO);
+            mimicMethods = module.getMimicMethods();
+        }
+
+        @Setup(Level.Invocation)
+        public void loadClasses() throws Exception {
+            ClassPool pool = module.newClassPool();
+            template = pool.get(module.getTemplateName());
+            target = pool.get(module.getTargetName());
+        }
+    }
+
+    @Benchmark
+    public CtClass mimicMethods(MatchingState state) throws Exception {
+        new MimicCreator().mimicMethods(state.template, state.target, MimicMode.AT_BEGINNING, state.mimicMethods);
+        return state.target;
+    }
+}
@@ -0,0 +1,109 @@
+package com.github.stephanenicolas.mimic.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.stephanenicolas.mimic.MimicCreator;
+import com.github.stephanenicolas.mimic.annotations.MimicMethod;
+import com.github.stephanenicolas.mimic.annotations.MimicMode;
+
+/**
+ * Measures the throughput of {@link MimicCreator} on synthetic templates of
+ * growing size, for every {@link MimicMode}. Each invocation weaves pristine
+ * classes, loaded in a fresh {@link ClassPool}.
+ *
+ * @author SNI
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MimicCreatorBenchmark {
+
+    /** Template and target sharing a growing number of methods. */
+    @State(Scope.Thread)
+    public static class MethodsState {
+        private static final int CONSTRUCTOR_COUNT = 2;
+
+        @Param({"10", "100", "1000", "5000" })
+        public int methodCount;
+
+        @Param
+        public MimicMode mode;
+
+        private SyntheticModule module;
+        private MimicMethod[] mimicMethods;
+        private CtClass template;
+        private CtClass target;
+
+        @Setup(Level.Trial)
+        public void createModule() throws Exception {
+            module = SyntheticModule.create(methodCount, CONSTRUCTOR_COUNT, mode);
+            mimicMethods = module.getMimicMethods();
+        }
+
+        @Setup(Level.Invocation)
+        public void loadClasses() throws Exception {
+            ClassPool pool = module.newClassPool();
+            template = pool.get(module.getTemplateName());
+            target = pool.get(module.getTargetName());
+        }
+    }
+
+    /** Template and target sharing a growing number of constructor overloads. */
+    @State(Scope.Thread)
+    public static class ConstructorsState {
+        @Param({"2", "16", "64" })
+        public int constructorCount;
+
+        private SyntheticModule module;
+        private CtClass template;
+        private CtClass target;
+
+        @Setup(Level.Trial)
+        public void createModule() throws Exception {
+            module = SyntheticModule.create(0, constructorCount, MimicMode.AFTER_SUPER);
+        }
+
+        @Setup(Level.Invocation)
+        public void loadClasses() throws Exception {
+            ClassPool pool = module.newClassPool();
+            template = pool.get(module.getTemplateName());
+            target = pool.get(module.getTargetName());
+        }
+    }
+
+    @Benchmark
+    public CtClass mimicClass(MethodsState state) throws Exception {
+        new MimicCreator().mimicClass(state.template, state.target, state.mode, state.mimicMethods);
+        return state.target;
+    }
+
+    @Benchmark
+    public CtClass mimicMethods(MethodsState state) throws Exception {
+        new MimicCreator().mimicMethods(state.template, state.target, state.mode, state.mimicMethods);
+        return state.target;
+    }
+
+    @Benchmark
+    public CtClass mimicConstructors(ConstructorsState state) throws Exception {
+        new MimicCreator().mimicConstructors(state.template, state.target);
+        return state.target;
+    }
+}
@@ -0,0 +1,127 @@
+package com.github.stephanenicolas.mimic.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.TimeUnit;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.NotFoundException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.stephanenicolas.mimic.MimicException;
+import com.github.stephanenicolas.mimic.MimicProcessor;
+import com.github.stephanenicolas.mimic.annotations.MimicMode;
+
+/**
+ * Measures the throughput of {@link MimicProcessor#applyTransformations}, as
+ * invoked by the javassist maven plugin for every class annotated with
+ * {@code Mimic}, including the parsing of the annotation, and the throughput
+ * of the transformation of a whole directory, depending on parallelism.
+ *
+ * @author SNI
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MimicProcessorBenchmark {
+
+    /** An annotated target, using the default mimic mode. */
+    @State(Scope.Thread)
+    public static class ProcessorState {
+        private static final int CONSTRUCTOR_COUNT = 2;
+
+        @Param({"10", "100", "1000", "5000" })
+        public int methodCount;
+
+        private SyntheticModule module;
+        private ExposedMimicProcessor processor;
+        private CtClass target;
+
+        @Setup(Level.Trial)
+        public void createModule() throws Exception {
+            module = SyntheticModule.create(methodCount, CONSTRUCTOR_COUNT, MimicMode.AFTER_SUPER);
+            module.appendTo(ClassPool.getDefault());
+            processor = new ExposedMimicProcessor();
+        }
+
+        @Setup(Level.Invocation)
+        public void loadClasses() throws Exception {
+            target = module.newClassPool().get(module.getTargetName());
+        }
+    }
+
+    /** A directory containing many annotated targets, each with its own template. */
+    @State(Scope.Thread)
+    public static class DirectoryState {
+        private static final int MODULE_COUNT = 200;
+        private static final int METHOD_COUNT = 20;
+        private static final int CONSTRUCTOR_COUNT = 2;
+
+        @Param({"1", "2", "4", "8" })
+        public int parallelism;
+
+        private File inputDir;
+        private File outputDir;
+        private ClassLoader classLoader;
+        private MimicProcessor processor;
+
+        @Setup(Level.Trial)
+        public void createModules() throws Exception {
+            inputDir = createTempDirectory("input");
+            outputDir = createTempDirectory("output");
+            for (int i = 0; i < MODULE_COUNT; i++) {
+                SyntheticModule.create(METHOD_COUNT, CONSTRUCTOR_COUNT, MimicMode.AFTER_SUPER).writeTo(inputDir);
+            }
+            classLoader = new URLClassLoader(new URL[] {inputDir.toURI().toURL() }, MimicProcessorBenchmark.class.getClassLoader());
+            processor = new MimicProcessor();
+            processor.setParallelism(parallelism);
+        }
+
+        private static File createTempDirectory(String prefix) throws IOException {
+            File directory = File.createTempFile(prefix, "");
+            if (!directory.delete() || !directory.mkdir()) {
+                throw new IOException("Impossible to create temp directory " + directory);
+            }
+            return directory;
+        }
+    }
+
+    @Benchmark
+    public File transformDirectory(DirectoryState state) {
+        // just like the javassist maven plugin, that exposes the classes to transform via the context class loader
+        Thread.currentThread().setContextClassLoader(state.classLoader);
+        state.processor.transform(state.inputDir.getAbsolutePath(), state.outputDir.getAbsolutePath());
+        return state.outputDir;
+    }
+
+    @Benchmark
+    public CtClass applyTransformations(ProcessorState state) throws Exception {
+        state.processor.transform(state.target);
+        return state.target;
+    }
+
+    /** Gives access to the transformation of a single class. */
+    private static final class ExposedMimicProcessor extends MimicProcessor {
+        private void transform(CtClass target) throws ClassNotFoundException, NotFoundException, CannotCompileException, MimicException {
+            applyTransformations(target);
+        }
+    }
+}
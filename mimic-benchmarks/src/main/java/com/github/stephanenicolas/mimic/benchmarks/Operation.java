@@ -0,0 +1,11 @@
+package com.github.stephanenicolas.mimic.benchmarks;
+
+/**
+ * Implemented by woven classes, so that benchmarks can invoke them without
+ * reflection.
+ *
+ * @author SNI
+ */
+public interface Operation {
+    int apply(int a);
+}
@@ -0,0 +1,257 @@
+package com.github.stephanenicolas.mimic.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.bytecode.AnnotationsAttribute;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.annotation.Annotation;
+import javassist.bytecode.annotation.ClassMemberValue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.stephanenicolas.mimic.MimicAnnotationScanner;
+import com.github.stephanenicolas.mimic.MimicProcessor;
+import com.github.stephanenicolas.mimic.annotations.Mimic;
+
+/**
+ * Measures how fast the classes annotated by {@link Mimic} are found among
+ * 50,000 classes, of which 1 in 200 is annotated : by building a
+ * {@link CtClass} for every class, like the javassist maven plugin does, and
+ * by scanning the constant pool of class files. Classes are read from a
+ * directory, as in builds, and from a jar.
+ *
+ * @author SNI
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PreFilterBenchmark {
+
+    private static final String PACKAGE = "com.github.stephanenicolas.mimic.benchmarks.generated.filter.";
+    private static final int CLASS_COUNT = 50000;
+    private static final int ANNOTATED_CLASS_PERIOD = 200;
+    private static final int BUFFER_SIZE = 8192;
+
+    /** A directory and a jar containing the same classes. */
+    @State(Scope.Benchmark)
+    public static class ClassesState {
+        private File directory;
+        private File jar;
+        private final List<String> classNames = new ArrayList<String>();
+
+        @Setup(Level.Trial)
+        public void generate() throws Exception {
+            directory = File.createTempFile("mimic-filter", "");
+            if (!directory.delete() || !directory.mkdir()) {
+                throw new IOException("Impossible to create directory " + directory);
+            }
+            jar = File.createTempFile("mimic-filter", ".jar");
+            byte[] prototype = createPrototype();
+            String prototypeName = PACKAGE + "Prototype";
+
+            JarOutputStream jarOut = new JarOutputStream(new FileOutputStream(jar));
+            try {
+                for (int i = 0; i < CLASS_COUNT; i++) {
+                    ClassFile classFile = new ClassFile(new DataInputStream(new ByteArrayInputStream(prototype)));
+                    String className = PACKAGE + "Class" + i;
+                    classFile.renameClass(prototypeName, className);
+                    if (i % ANNOTATED_CLASS_PERIOD == 0) {
+                        addMimicAnnotation(classFile);
+                    }
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    classFile.write(new DataOutputStream(out));
+                    byte[] bytecode = out.toByteArray();
+
+                    String path = className.replace('.', '/') + ".class";
+                    File file = new File(directory, path);
+                    if (!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs()) {
+                        throw new IOException("Impossible to create directory " + file.getParentFile());
+                    }
+                    FileOutputStream fileOut = new FileOutputStream(file);
+                    try {
+                        fileOut.write(bytecode);
+                    } finally {
+                        fileOut.close();
+                    }
+                    jarOut.putNextEntry(new JarEntry(path));
+                    jarOut.write(bytecode);
+                    jarOut.closeEntry();
+                    classNames.add(className);
+                }
+            } finally {
+                jarOut.close();
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() {
+            delete(directory);
+            if (!jar.delete()) {
+                jar.deleteOnExit();
+            }
+        }
+
+        private void delete(File file) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    delete(child);
+                }
+            }
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    @Benchmark
+    public int directoryWithCtClass(ClassesState state) throws Exception {
+        ExposedMimicProcessor processor = new ExposedMimicProcessor();
+        ClassPool pool = new ClassPool(true);
+        pool.appendClassPath(state.directory.getAbsolutePath());
+        int annotatedCount = 0;
+        for (String className : state.classNames) {
+            CtClass candidateClass = pool.get(className);
+            if (processor.shouldTransform(candidateClass)) {
+                annotatedCount++;
+            }
+            candidateClass.detach();
+        }
+        return annotatedCount;
+    }
+
+    @Benchmark
+    public int directoryWithScanner(ClassesState state) throws Exception {
+        int annotatedCount = 0;
+        for (String className : state.classNames) {
+            File classFile = new File(state.directory, className.replace('.', File.separatorChar) + ".class");
+            if (MimicAnnotationScanner.hasMimicAnnotation(classFile)) {
+                annotatedCount++;
+            }
+        }
+        return annotatedCount;
+    }
+
+    @Benchmark
+    public int jarWithCtClass(ClassesState state) throws Exception {
+        ExposedMimicProcessor processor = new ExposedMimicProcessor();
+        ClassPool pool = new ClassPool(true);
+        int annotatedCount = 0;
+        JarFile jarFile = new JarFile(state.jar);
+        try {
+            for (Enumeration<JarEntry> entries = jarFile.entries(); entries.hasMoreElements();) {
+                InputStream in = jarFile.getInputStream(entries.nextElement());
+                try {
+                    CtClass candidateClass = pool.makeClass(in);
+                    if (processor.shouldTransform(candidateClass)) {
+                        annotatedCount++;
+                    }
+                    candidateClass.detach();
+                } finally {
+                    in.close();
+                }
+            }
+        } finally {
+            jarFile.close();
+        }
+        return annotatedCount;
+    }
+
+    @Benchmark
+    public int jarWithScanner(ClassesState state) throws Exception {
+        int annotatedCount = 0;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        JarFile jarFile = new JarFile(state.jar);
+        try {
+            for (Enumeration<JarEntry> entries = jarFile.entries(); entries.hasMoreElements();) {
+                InputStream in = jarFile.getInputStream(entries.nextElement());
+                try {
+                    if (MimicAnnotationScanner.hasMimicAnnotation(readFully(in, buffer))) {
+                        annotatedCount++;
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+        } finally {
+            jarFile.close();
+        }
+        return annotatedCount;
+    }
+
+    /** A class with a realistic constant pool : fields, methods, constants and invocations. */
+    private static byte[] createPrototype() throws Exception {
+        ClassPool pool = new ClassPool(true);
+        CtClass prototype = pool.makeClass(PACKAGE + "Prototype");
+        prototype.addField(CtField.make("private int count;", prototype));
+        prototype.addField(CtField.make("private String name;", prototype));
+        prototype.addField(CtField.make("private java.util.List items = new java.util.ArrayList();", prototype));
+        prototype.addField(CtField.make("private long total;", prototype));
+        prototype.addConstructor(CtNewConstructor.defaultConstructor(prototype));
+        prototype.addMethod(CtNewMethod.make("public int getCount() { return count; }", prototype));
+        prototype.addMethod(CtNewMethod.make("public void setName(String name) { this.name = name.trim(); }", prototype));
+        prototype.addMethod(CtNewMethod.make("public void add(Object item) { items.add(item); count++; total += 1234567890123L; }",
+                prototype));
+        prototype.addMethod(CtNewMethod.make("public String toString() { return \"Prototype \" + name + \" \" + count + \" \" + 2.5d; }",
+                prototype));
+        return prototype.toBytecode();
+    }
+
+    private static void addMimicAnnotation(ClassFile classFile) {
+        ConstPool constPool = classFile.getConstPool();
+        AnnotationsAttribute attribute = new AnnotationsAttribute(constPool, AnnotationsAttribute.invisibleTag);
+        Annotation annotation = new Annotation(Mimic.class.getName(), constPool);
+        annotation.addMemberValue("sourceClass", new ClassMemberValue(Object.class.getName(), constPool));
+        attribute.setAnnotation(annotation);
+        classFile.addAttribute(attribute);
+    }
+
+    private static byte[] readFully(InputStream in, byte[] buffer) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int count = in.read(buffer); count != -1; count = in.read(buffer)) {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+
+    /** Gives access to the filter of the processor. */
+    private static final class ExposedMimicProcessor extends MimicProcessor {
+        @Override
+        protected boolean shouldTransform(CtClass candidateClass) throws Exception {
+            return super.shouldTransform(candidateClass);
+        }
+    }
+}
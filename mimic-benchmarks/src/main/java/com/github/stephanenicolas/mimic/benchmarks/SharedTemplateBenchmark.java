@@ -0,0 +1,156 @@
+package com.github.stephanenicolas.mimic.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.stephanenicolas.mimic.MimicCreator;
+import com.github.stephanenicolas.mimic.annotations.MimicMethod;
+import com.github.stephanenicolas.mimic.annotations.MimicMode;
+
+/**
+ * Measures the footprint of many classes mimicing the same template, when
+ * the code of the template is copied into each of them and when it is
+ * shared in a helper class. 500 targets are woven and loaded, then invoked
+ * until the JIT compiled them. The template method repeats a block of code
+ * {@code blockCount} times, and accesses its field through a local. Next to the time of an invocation of every
+ * target, the {@code metaspaceBytes} counter reports the metaspace used by
+ * loading the targets, and the {@code codeCacheBytes} counter the code cache
+ * used since then, mostly by the JIT compiling them.
+ *
+ * @author SNI
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SharedTemplateBenchmark {
+
+    private static final String PACKAGE = "com.github.stephanenicolas.mimic.benchmarks.generated.";
+    private static final int TARGET_COUNT = 500;
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    /** Targets of the same template, loaded in a class loader of their own. */
+    @State(Scope.Benchmark)
+    public static class WovenState {
+        @Param({"false", "true" })
+        public boolean sharingTemplateCode;
+
+        @Param({"1", "20" })
+        public int blockCount;
+
+        private Operation[] operations;
+        private long metaspaceBytes;
+        private long codeCacheBaseline;
+        private int argument = 1;
+
+        @Setup(Level.Trial)
+        public void weave() throws Exception {
+            BytecodeClassLoader classLoader = SharedTemplateBenchmark.weave(sharingTemplateCode, blockCount);
+            long metaspaceBaseline = getUsedBytes("Metaspace", "Compressed Class Space");
+            codeCacheBaseline = getUsedBytes("Code");
+            operations = new Operation[TARGET_COUNT];
+            for (int i = 0; i < TARGET_COUNT; i++) {
+                operations[i] = (Operation) classLoader.loadClass(getTargetName(i)).newInstance();
+            }
+            metaspaceBytes = getUsedBytes("Metaspace", "Compressed Class Space") - metaspaceBaseline;
+        }
+    }
+
+    /** Memory used by the targets, reported next to the time of invocations. */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class MemoryCounters {
+        public long metaspaceBytes;
+        public long codeCacheBytes;
+
+        // JMH resets counters after iteration setups
+        @TearDown(Level.Iteration)
+        public void measure(WovenState state) {
+            metaspaceBytes = state.metaspaceBytes;
+            codeCacheBytes = getUsedBytes("Code") - state.codeCacheBaseline;
+        }
+    }
+
+    @Benchmark
+    public int apply(WovenState state, MemoryCounters counters) {
+        int result = 0;
+        for (Operation operation : state.operations) {
+            result += operation.apply(state.argument);
+        }
+        return result;
+    }
+
+    private static BytecodeClassLoader weave(boolean sharingTemplateCode, int blockCount) throws Exception {
+        int id = COUNTER.incrementAndGet();
+        ClassPool pool = new ClassPool(true);
+        pool.appendClassPath(new LoaderClassPath(SharedTemplateBenchmark.class.getClassLoader()));
+
+        CtClass template = pool.makeClass(PACKAGE + "SharedTemplate" + id);
+        template.addField(CtField.make("protected int counter;", template));
+        StringBuilder body = new StringBuilder("public int apply(int a) { int c = counter; for (int i = 0; i < 8; i++) {");
+        for (int i = 0; i < blockCount; i++) {
+            body.append(" c = c * 31 + a + ").append(i).append("; if ((c & 1) == 0) { c ^= i; } else { c += i * i; }");
+        }
+        template.addMethod(CtNewMethod.make(body.append(" } counter = c; return c; }").toString(), template));
+
+        MimicCreator mimicCreator = new MimicCreator();
+        mimicCreator.setSharingTemplateCode(sharingTemplateCode);
+        BytecodeClassLoader classLoader = new BytecodeClassLoader();
+        for (int i = 0; i < TARGET_COUNT; i++) {
+            CtClass target = pool.makeClass(getTargetName(i));
+            target.addInterface(pool.get(Operation.class.getName()));
+            target.addConstructor(CtNewConstructor.defaultConstructor(target));
+            mimicCreator.mimicClass(template, target, MimicMode.BEFORE_RETURN, new MimicMethod[0]);
+            classLoader.put(target.getName(), target.toBytecode());
+            target.detach();
+        }
+        for (Map.Entry<String, byte[]> sharedClass : mimicCreator.shareTemplateCode(template).entrySet()) {
+            classLoader.put(sharedClass.getKey(), sharedClass.getValue());
+        }
+        return classLoader;
+    }
+
+    private static String getTargetName(int index) {
+        return PACKAGE + "SharingTarget" + index;
+    }
+
+    /** @return the bytes used by the memory pools whose name contains one of names. */
+    private static long getUsedBytes(String... names) {
+        long usedBytes = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            for (String name : names) {
+                if (pool.getName().contains(name)) {
+                    usedBytes += pool.getUsage().getUsed();
+                    break;
+                }
+            }
+        }
+        return usedBytes;
+    }
+}
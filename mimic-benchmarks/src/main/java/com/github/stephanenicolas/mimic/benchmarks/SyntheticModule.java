@@ -0,0 +1,349 @@
+package com.github.stephanenicolas.mimic.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javassist.ByteArrayClassPath;
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.NotFoundException;
+import javassist.bytecode.AnnotationsAttribute;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.annotation.AnnotationMemberValue;
+import javassist.bytecode.annotation.ArrayMemberValue;
+import javassist.bytecode.annotation.ClassMemberValue;
+import javassist.bytecode.annotation.EnumMemberValue;
+import javassist.bytecode.annotation.MemberValue;
+import javassist.bytecode.annotation.StringMemberValue;
+
+import com.github.stephanenicolas.mimic.annotations.Mimic;
+import com.github.stephanenicolas.mimic.annotations.MimicMethod;
+import com.github.stephanenicolas.mimic.annotations.MimicMode;
+
+/**
+ * A synthetic module made of a template, a target annotated with {@link Mimic}
+ * and an ancestor for the target. The classes are generated once, as bytecode,
+ * and every call to {@link #newClassPool()} gives a fresh pool in which they
+ * can be woven again.
+ *
+ * <p>
+ * Methods of the template have the form {@code int m<i>(int a)} and are
+ * overridden by the target, in a way that matches the mimic mode : the target
+ * calls {@code super.m<i>(a)} for the *_SUPER modes and {@code hook(a)} for
+ * {@link MimicMode#BEFORE} and {@link MimicMode#AFTER}.
+ * </p>
+ *
+ * @author SNI
+ */
+public final class SyntheticModule {
+
+    private static final String PACKAGE = "com.github.stephanenicolas.mimic.benchmarks.generated.";
+    private static final String HOOK_METHOD_NAME = "hook";
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    private final Map<String, byte[]> classfiles = new HashMap<String, byte[]>();
+    private final String templateName;
+    private final String targetName;
+    private final MimicMode mode;
+    private final MimicMethod[] mimicMethods;
+    private final ClassLoader classLoader;
+
+    private SyntheticModule(int methodCount, int constructorCount, MimicMode mode, int overriddenCount) throws NotFoundException,
+            CannotCompileException {
+        int id = COUNTER.incrementAndGet();
+        this.templateName = PACKAGE + "Template" + id;
+        this.targetName = PACKAGE + "Target" + id;
+        this.mode = mode;
+        this.mimicMethods = createMimicMethods(overriddenCount, mode);
+
+        ClassPool pool = new ClassPool(true);
+        CtClass ancestor = createAncestor(pool, PACKAGE + "Ancestor" + id, methodCount);
+        CtClass template = createTemplate(pool, methodCount, constructorCount);
+        CtClass target = createTarget(pool, ancestor, methodCount, constructorCount, overriddenCount);
+        for (CtClass clazz : new CtClass[] {ancestor, template, target}) {
+            try {
+                classfiles.put(clazz.getName(), clazz.toBytecode());
+            } catch (IOException e) {
+                throw new CannotCompileException(e);
+            }
+        }
+        classLoader = new SyntheticClassLoader();
+    }
+
+    /**
+     * Creates a new synthetic module.
+     * @param methodCount the number of methods of the template, all overridden by the target.
+     * @param constructorCount the number of constructor overloads of the template. Half of
+     * them also exist in the target.
+     * @param mode the mimic mode that the target is designed for.
+     * @return a new module, with class names that are unique inside the JVM.
+     * @throws NotFoundException should not happen.
+     * @throws CannotCompileException should not happen.
+     */
+    public static SyntheticModule create(int methodCount, int constructorCount, MimicMode mode) throws NotFoundException,
+            CannotCompileException {
+        return new SyntheticModule(methodCount, constructorCount, mode, methodCount);
+    }
+
+    /**
+     * Creates a new synthetic module in which the target only overrides some
+     * of the methods of the template, and declares other methods of its own so
+     * that template and target have the same number of methods.
+     * @param methodCount the number of methods of the template, and of the target.
+     * @param constructorCount the number of constructor overloads of the template. Half of
+     * them also exist in the target.
+     * @param mode the mimic mode that the target is designed for.
+     * @param overriddenCount the number of methods of the template that are overridden by the target.
+     * @return a new module, with class names that are unique inside the JVM.
+     * @throws NotFoundException should not happen.
+     * @throws CannotCompileException should not happen.
+     */
+    public static SyntheticModule create(int methodCount, int constructorCount, MimicMode mode, int overriddenCount)
+            throws NotFoundException, CannotCompileException {
+        return new SyntheticModule(methodCount, constructorCount, mode, overriddenCount);
+    }
+
+    /**
+     * @return a fresh class pool, backed by the system class path, that contains pristine
+     * copies of all the classes of the module. Its class loader defines the template, as
+     * needed to resolve {@link Mimic#sourceClass()}.
+     */
+    public ClassPool newClassPool() {
+        ClassPool pool = new ClassPool(true) {
+            @Override
+            public ClassLoader getClassLoader() {
+                return classLoader;
+            }
+        };
+        appendTo(pool);
+        return pool;
+    }
+
+    /**
+     * Makes all classes of the module visible to a given pool.
+     * @param pool the pool that will see the pristine classes of the module.
+     */
+    public void appendTo(ClassPool pool) {
+        for (Map.Entry<String, byte[]> entry : classfiles.entrySet()) {
+            pool.insertClassPath(new ByteArrayClassPath(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    /**
+     * Writes all classes of the module as class files.
+     * @param directory the root directory of the class files.
+     * @throws IOException if a class file can't be written.
+     */
+    public void writeTo(File directory) throws IOException {
+        for (Map.Entry<String, byte[]> entry : classfiles.entrySet()) {
+            File classFile = new File(directory, entry.getKey().replace('.', File.separatorChar) + ".class");
+            if (!classFile.getParentFile().isDirectory() && !classFile.getParentFile().mkdirs()) {
+                throw new IOException("Impossible to create directory " + classFile.getParentFile());
+            }
+            FileOutputStream out = new FileOutputStream(classFile);
+            try {
+                out.write(entry.getValue());
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    public String getTemplateName() {
+        return templateName;
+    }
+
+    public String getTargetName() {
+        return targetName;
+    }
+
+    public MimicMode getMode() {
+        return mode;
+    }
+
+    public MimicMethod[] getMimicMethods() {
+        return mimicMethods.clone();
+    }
+
+    private CtClass createAncestor(ClassPool pool, String name, int methodCount) throws CannotCompileException {
+        CtClass ancestor = pool.makeClass(name);
+        ancestor.addConstructor(CtNewConstructor.defaultConstructor(ancestor));
+        for (int i = 0; i < methodCount; i++) {
+            ancestor.addMethod(CtNewMethod.make("public int m" + i + "(int a) { return a; }", ancestor));
+        }
+        return ancestor;
+    }
+
+    private CtClass createTemplate(ClassPool pool, int methodCount, int constructorCount) throws CannotCompileException {
+        CtClass template = pool.makeClass(templateName);
+        template.addField(CtField.make("private int counter;", template));
+        for (int i = 0; i < constructorCount; i++) {
+            template.addConstructor(CtNewConstructor.make("public " + simpleName(templateName) + "(" + parameters(i) + ") { counter = "
+                    + i + "; }", template));
+        }
+        for (int i = 0; i < methodCount; i++) {
+            template.addMethod(CtNewMethod.make("public int m" + i + "(int a) { counter += a; return counter; }", template));
+        }
+        return template;
+    }
+
+    private CtClass createTarget(ClassPool pool, CtClass ancestor, int methodCount, int constructorCount, int overriddenCount)
+            throws CannotCompileException {
+        CtClass target = pool.makeClass(targetName, ancestor);
+        target.addField(CtField.make("private int total;", target));
+        for (int i = 0; i < constructorCount; i += 2) {
+            target.addConstructor(CtNewConstructor.make("public " + simpleName(targetName) + "(" + parameters(i) + ") { total = " + i
+                    + "; }", target));
+        }
+        target.addMethod(CtNewMethod.make("public int " + HOOK_METHOD_NAME + "(int a) { total -= a; return total; }", target));
+        for (int i = 0; i < overriddenCount; i++) {
+            target.addMethod(CtNewMethod.make("public int m" + i + "(int a) { total += a; " + targetCall(i) + " }", target));
+        }
+        for (int i = overriddenCount; i < methodCount; i++) {
+            target.addMethod(CtNewMethod.make("public int own" + i + "(int a) { total += a; return total; }", target));
+        }
+        addMimicAnnotation(target);
+        return target;
+    }
+
+    private String targetCall(int i) {
+        switch (mode) {
+            case BEFORE_SUPER:
+            case AFTER_SUPER:
+            case REPLACE_SUPER:
+                return "return super.m" + i + "(a);";
+            case BEFORE:
+            case AFTER:
+                return "return " + HOOK_METHOD_NAME + "(a);";
+            default:
+                return "return total;";
+        }
+    }
+
+    private void addMimicAnnotation(CtClass target) {
+        ClassFile classFile = target.getClassFile();
+        ConstPool constPool = classFile.getConstPool();
+        javassist.bytecode.annotation.Annotation mimic = new javassist.bytecode.annotation.Annotation(Mimic.class.getName(), constPool);
+        mimic.addMemberValue("sourceClass", new ClassMemberValue(templateName, constPool));
+        EnumMemberValue defaultMode = new EnumMemberValue(constPool);
+        defaultMode.setType(MimicMode.class.getName());
+        defaultMode.setValue(mode.name());
+        mimic.addMemberValue("defaultMimicMode", defaultMode);
+
+        MemberValue[] methods = new MemberValue[mimicMethods.length];
+        for (int i = 0; i < mimicMethods.length; i++) {
+            javassist.bytecode.annotation.Annotation method = new javassist.bytecode.annotation.Annotation(MimicMethod.class.getName(),
+                    constPool);
+            method.addMemberValue("methodName", new StringMemberValue(mimicMethods[i].methodName(), constPool));
+            EnumMemberValue methodMode = new EnumMemberValue(constPool);
+            methodMode.setType(MimicMode.class.getName());
+            methodMode.setValue(mimicMethods[i].mode().name());
+            method.addMemberValue("mode", methodMode);
+            method.addMemberValue("insertionMethod", new StringMemberValue(mimicMethods[i].insertionMethod(), constPool));
+            methods[i] = new AnnotationMemberValue(method, constPool);
+        }
+        ArrayMemberValue methodArray = new ArrayMemberValue(new AnnotationMemberValue(constPool), constPool);
+        methodArray.setValue(methods);
+        mimic.addMemberValue("mimicMethods", methodArray);
+
+        // @Mimic has a CLASS retention, just like javac produces it.
+        AnnotationsAttribute attribute = new AnnotationsAttribute(constPool, AnnotationsAttribute.invisibleTag);
+        attribute.setAnnotation(mimic);
+        classFile.addAttribute(attribute);
+    }
+
+    private static MimicMethod[] createMimicMethods(int methodCount, MimicMode mode) {
+        if (mode != MimicMode.BEFORE && mode != MimicMode.AFTER) {
+            return new MimicMethod[0];
+        }
+        MimicMethod[] mimicMethods = new MimicMethod[methodCount];
+        for (int i = 0; i < methodCount; i++) {
+            mimicMethods[i] = new MimicMethodLiteral("m" + i, mode, HOOK_METHOD_NAME);
+        }
+        return mimicMethods;
+    }
+
+    private static String parameters(int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append("int a").append(i);
+        }
+        return builder.toString();
+    }
+
+    private static String simpleName(String className) {
+        return className.substring(className.lastIndexOf('.') + 1);
+    }
+
+    /** Defines the classes of the module. */
+    private final class SyntheticClassLoader extends ClassLoader {
+        private SyntheticClassLoader() {
+            super(SyntheticModule.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] classfile = classfiles.get(name);
+            if (classfile == null) {
+                throw new ClassNotFoundException(name);
+            }
+            return defineClass(name, classfile, 0, classfile.length);
+        }
+    }
+
+    /** An instance of {@link MimicMethod}, as if it had been read from a class file. */
+    private static final class MimicMethodLiteral implements MimicMethod {
+        private final String methodName;
+        private final MimicMode mode;
+        private final String insertionMethod;
+
+        private MimicMethodLiteral(String methodName, MimicMode mode, String insertionMethod) {
+            this.methodName = methodName;
+            this.mode = mode;
+            this.insertionMethod = insertionMethod;
+        }
+
+        @Override
+        public Class<? extends Annotation> annotationType() {
+            return MimicMethod.class;
+        }
+
+        @Override
+        public String methodName() {
+            return methodName;
+        }
+
+        @Override
+        public MimicMode mode() {
+            return mode;
+        }
+
+        @Override
+        public String signature() {
+            return "";
+        }
+
+        @Override
+        public String insertionMethod() {
+            return insertionMethod;
+        }
+
+        @Override
+        public String insertionMethodSignature() {
+            return "";
+        }
+    }
+}
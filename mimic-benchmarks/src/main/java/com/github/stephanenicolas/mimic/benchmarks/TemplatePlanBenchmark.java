@@ -0,0 +1,92 @@
+package com.github.stephanenicolas.mimic.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.stephanenicolas.mimic.MimicCreator;
+import com.github.stephanenicolas.mimic.TemplatePlan;
+import com.github.stephanenicolas.mimic.annotations.MimicMethod;
+import com.github.stephanenicolas.mimic.annotations.MimicMode;
+
+/**
+ * Measures the weaving of a template into a target when the
+ * {@link TemplatePlan} of the template is reused, as it is for all the targets
+ * mimicing a template after the first one, and when it is built again for
+ * every target. Each invocation weaves pristine classes, loaded in a fresh
+ * {@link ClassPool}.
+ *
+ * @author SNI
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TemplatePlanBenchmark {
+
+    /** A template and a target sharing methods, woven with private copies. */
+    @State(Scope.Thread)
+    public static class PlanState {
+        private static final int CONSTRUCTOR_COUNT = 2;
+
+        @Param({"10", "100", "1000" })
+        public int methodCount;
+
+        @Param({"AT_BEGINNING", "BEFORE_RETURN", "AFTER_SUPER" })
+        public MimicMode mode;
+
+        @Param({"false", "true" })
+        public boolean reusingPlan;
+
+        private SyntheticModule module;
+        private MimicMethod[] mimicMethods;
+        private MimicCreator sharedMimicCreator;
+        private CtClass template;
+        private CtClass target;
+
+        @Setup(Level.Trial)
+        public void createModule() throws Exception {
+            module = SyntheticModule.create(methodCount, CONSTRUCTOR_COUNT, mode);
+            mimicMethods = module.getMimicMethods();
+            sharedMimicCreator = newMimicCreator();
+        }
+
+        @Setup(Level.Invocation)
+        public void loadClasses() throws Exception {
+            ClassPool pool = module.newClassPool();
+            template = pool.get(module.getTemplateName());
+            target = pool.get(module.getTargetName());
+        }
+
+        private MimicCreator getMimicCreator() {
+            return reusingPlan ? sharedMimicCreator : newMimicCreator();
+        }
+
+        private static MimicCreator newMimicCreator() {
+            MimicCreator mimicCreator = new MimicCreator();
+            mimicCreator.setPrivateCopies(true);
+            return mimicCreator;
+        }
+    }
+
+    @Benchmark
+    public CtClass mimicClass(PlanState state) throws Exception {
+        state.getMimicCreator().mimicClass(state.template, state.target, state.mode, state.mimicMethods);
+        return state.target;
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.stephanenicolas.mimic.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.stephanenicolas.mimic.MimicCreator;
+import com.github.stephanenicolas.mimic.WeavingBackend;
+import com.github.stephanenicolas.mimic.annotations.MimicMethod;
+import com.github.stephanenicolas.mimic.annotations.MimicMode;
+
+/**
+ * Compares the {@link WeavingBackend}s of {@link MimicCreator} : invocations
+ * compiled from Java source by javassist, and invocations emitted directly
+ * as bytecode. Each invocation weaves pristine classes, loaded in a fresh
+ * {@link ClassPool}.
+ *
+ * @author SNI
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WeavingBackendBenchmark {
+
+    /** Template and target sharing methods, woven by a given backend. */
+    @State(Scope.Thread)
+    public static class ModuleState {
+        private static final int CONSTRUCTOR_COUNT = 4;
+
+        @Param({"10", "100" })
+        public int methodCount;
+
+        @Param({"AT_BEGINNING", "BEFORE_RETURN", "AFTER_SUPER", "AFTER" })
+        public MimicMode mode;
+
+        @Param
+        public WeavingBackend backend;
+
+        private SyntheticModule module;
+        private MimicMethod[] mimicMethods;
+        private CtClass template;
+        private CtClass target;
+
+        @Setup(Level.Trial)
+        public void createModule() throws Exception {
+            module = SyntheticModule.create(methodCount, CONSTRUCTOR_COUNT, mode);
+            mimicMethods = module.getMimicMethods();
+        }
+
+        @Setup(Level.Invocation)
+        public void loadClasses() throws Exception {
+            ClassPool pool = module.newClassPool();
+            template = pool.get(module.getTemplateName());
+            target = pool.get(module.getTargetName());
+        }
+    }
+
+    @Benchmark
+    public CtClass mimicClass(ModuleState state) throws Exception {
+        MimicCreator mimicCreator = new MimicCreator();
+        mimicCreator.setBackend(state.backend);
+        mimicCreator.mimicClass(state.template, state.target, state.mode, state.mimicMethods);
+        return state.target;
+    }
+}
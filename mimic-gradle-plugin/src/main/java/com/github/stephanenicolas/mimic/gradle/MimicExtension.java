@@ -0,0 +1,60 @@
+package com.github.stephanenicolas.mimic.gradle;
+
+import org.gradle.api.provider.Property;
+
+import com.github.stephanenicolas.mimic.MimicProcessor;
+
+/**
+ * The {@code mimic} block of a build script, that configures all the
+ * {@link MimicTask}s of a project :
+ * <pre>
+ * mimic {
+ *     inlining = true
+ *     privateCopies = true
+ *     backend = 'bytecode'
+ * }
+ * </pre>
+ *
+ * @author SNI
+ */
+public abstract class MimicExtension {
+
+    /** Default number of classes woven by a single work item. */
+    public static final int DEFAULT_CLASSES_PER_WORK_ITEM = 32;
+
+    /**
+     * @return whether template code is inlined. See {@link MimicProcessor#PROPERTY_INLINING}. Defaults to false.
+     */
+    public abstract Property<Boolean> getInlining();
+
+    /**
+     * @return whether copies of template methods are private. See {@link MimicProcessor#PROPERTY_PRIVATE_COPIES}.
+     *         Defaults to false.
+     */
+    public abstract Property<Boolean> getPrivateCopies();
+
+    /**
+     * @return {@code source} or {@code bytecode}. See {@link MimicProcessor#PROPERTY_BACKEND}. Defaults to {@code source}.
+     */
+    public abstract Property<String> getBackend();
+
+    /**
+     * @return whether unused template fields are left out. See {@link MimicProcessor#PROPERTY_ELIMINATE_DEAD_FIELDS}.
+     *         Defaults to false.
+     */
+    public abstract Property<Boolean> getEliminateDeadFields();
+
+    /**
+     * @return whether template methods unreachable from the classes mimicing them are left out, with the fields only
+     *         they use. See {@link MimicProcessor#PROPERTY_ELIMINATE_UNREACHABLE_METHODS}. Defaults to false.
+     */
+    public abstract Property<Boolean> getEliminateUnreachableMethods();
+
+    /**
+     * @return the number of classes woven by a single work item, with the
+     *         same class pool. Work items run in parallel, up to the maximum
+     *         number of workers of Gradle. Defaults to
+     *         {@value #DEFAULT_CLASSES_PER_WORK_ITEM}.
+     */
+    public abstract Property<Integer> getClassesPerWorkItem();
+}
@@ -0,0 +1,67 @@
+package com.github.stephanenicolas.mimic.gradle;
+
+import org.gradle.api.Plugin;
+import org.gradle.api.Project;
+import org.gradle.api.plugins.JavaPlugin;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.SourceSetContainer;
+import org.gradle.api.tasks.TaskProvider;
+import org.gradle.api.tasks.compile.JavaCompile;
+
+/**
+ * Mimics the classes annotated by
+ * {@link com.github.stephanenicolas.mimic.annotations.Mimic} in every source
+ * set of a java project. For each source set, java classes are compiled into
+ * {@code build/mimic/unwoven/<source set>}, and a {@link MimicTask} weaves
+ * them into the usual classes directory, {@code build/classes/java/<source set>}.
+ * Everything that uses the classes of the source set, like tests, jars and
+ * dependent projects, uses the woven classes.
+ *
+ * @author SNI
+ */
+public class MimicPlugin implements Plugin<Project> {
+
+    /** Name of the extension configuring all the {@link MimicTask}s. */
+    public static final String EXTENSION_NAME = "mimic";
+    /** Verb of the names of tasks, {@code mimicClasses} for the main source set. */
+    public static final String TASK_VERB = "mimic";
+
+    @Override
+    public void apply(final Project project) {
+        final MimicExtension extension = project.getExtensions().create(EXTENSION_NAME, MimicExtension.class);
+        extension.getInlining().convention(false);
+        extension.getPrivateCopies().convention(false);
+        extension.getBackend().convention("source");
+        extension.getEliminateDeadFields().convention(false);
+        extension.getEliminateUnreachableMethods().convention(false);
+        extension.getClassesPerWorkItem().convention(MimicExtension.DEFAULT_CLASSES_PER_WORK_ITEM);
+
+        project.getPlugins().withType(JavaPlugin.class, javaPlugin -> {
+            SourceSetContainer sourceSets = project.getExtensions().getByType(SourceSetContainer.class);
+            sourceSets.all(sourceSet -> configureSourceSet(project, extension, sourceSet));
+        });
+    }
+
+    private void configureSourceSet(Project project, MimicExtension extension, SourceSet sourceSet) {
+        TaskProvider<JavaCompile> compileTask = project.getTasks().named(sourceSet.getCompileJavaTaskName(), JavaCompile.class);
+        compileTask.configure(task -> task.getDestinationDirectory().set(
+                project.getLayout().getBuildDirectory().dir("mimic/unwoven/" + sourceSet.getName())));
+
+        TaskProvider<MimicTask> mimicTask = project.getTasks().register(sourceSet.getTaskName(TASK_VERB, "classes"), MimicTask.class,
+            task -> {
+                task.setDescription("Mimics the classes of source set " + sourceSet.getName() + " annotated by @Mimic.");
+                task.getClassesDirectory().set(compileTask.flatMap(JavaCompile::getDestinationDirectory));
+                task.getClasspath().from(sourceSet.getCompileClasspath());
+                task.getOutputDirectory().set(sourceSet.getJava().getDestinationDirectory());
+                task.getInlining().set(extension.getInlining());
+                task.getPrivateCopies().set(extension.getPrivateCopies());
+                task.getBackend().set(extension.getBackend());
+                task.getEliminateDeadFields().set(extension.getEliminateDeadFields());
+                task.getEliminateUnreachableMethods().set(extension.getEliminateUnreachableMethods());
+                task.getClassesPerWorkItem().set(extension.getClassesPerWorkItem());
+            });
+        // the classes of the source set are now the woven ones
+        sourceSet.getJava().compiledBy(mimicTask, MimicTask::getOutputDirectory);
+        project.getTasks().named(sourceSet.getClassesTaskName()).configure(task -> task.dependsOn(mimicTask));
+    }
+}
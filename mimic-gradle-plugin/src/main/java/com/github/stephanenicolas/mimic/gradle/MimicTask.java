@@ -0,0 +1,186 @@
+package com.github.stephanenicolas.mimic.gradle;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.inject.Inject;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileSystemOperations;
+import org.gradle.api.file.FileType;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.IgnoreEmptyDirectories;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputDirectory;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.work.ChangeType;
+import org.gradle.work.FileChange;
+import org.gradle.work.Incremental;
+import org.gradle.work.InputChanges;
+import org.gradle.workers.WorkQueue;
+import org.gradle.workers.WorkerExecutor;
+
+import com.github.stephanenicolas.mimic.MimicAnnotationScanner;
+
+/**
+ * Copies a directory of classes, mimicing the classes annotated by
+ * {@link com.github.stephanenicolas.mimic.annotations.Mimic}. Annotated
+ * classes are woven by {@link MimicWorkAction}s, in batches running in
+ * parallel. Other files are copied as they are.
+ *
+ * <p>
+ * The task is cacheable, and incremental : only the classes that changed are
+ * copied or woven again, as well as the classes whose template, or an
+ * ancestor of their template, changed. Templates that are not in the
+ * directory are part of the classpath, that is an input of the task : when
+ * it changes, all classes are woven again.
+ * </p>
+ *
+ * @author SNI
+ */
+@CacheableTask
+public abstract class MimicTask extends DefaultTask {
+
+    private static final String CLASS_SUFFIX = ".class";
+
+    /**
+     * @return the directory of the classes to mimic.
+     */
+    @Incremental
+    @InputDirectory
+    @IgnoreEmptyDirectories
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public abstract DirectoryProperty getClassesDirectory();
+
+    /**
+     * @return the classes used to resolve templates, and their ancestors, that are not in the classes directory.
+     */
+    @Classpath
+    public abstract ConfigurableFileCollection getClasspath();
+
+    /**
+     * @return whether template code is inlined.
+     */
+    @Input
+    public abstract Property<Boolean> getInlining();
+
+    /**
+     * @return whether copies of template methods are private.
+     */
+    @Input
+    public abstract Property<Boolean> getPrivateCopies();
+
+    /**
+     * @return {@code source} or {@code bytecode}.
+     */
+    @Input
+    public abstract Property<String> getBackend();
+
+    /**
+     * @return whether unused template fields are left out.
+     */
+    @Input
+    public abstract Property<Boolean> getEliminateDeadFields();
+
+    /**
+     * @return whether template methods unreachable from the classes mimicing them are left out.
+     */
+    @Input
+    public abstract Property<Boolean> getEliminateUnreachableMethods();
+
+    /**
+     * @return the number of classes woven by a single work item. Doesn't change the woven classes.
+     */
+    @Internal
+    public abstract Property<Integer> getClassesPerWorkItem();
+
+    /**
+     * @return the directory receiving all classes, woven or not.
+     */
+    @OutputDirectory
+    public abstract DirectoryProperty getOutputDirectory();
+
+    @Inject
+    protected abstract WorkerExecutor getWorkerExecutor();
+
+    @Inject
+    protected abstract FileSystemOperations getFileSystemOperations();
+
+    @TaskAction
+    public void mimic(InputChanges inputChanges) throws IOException {
+        final File outputDir = getOutputDirectory().get().getAsFile();
+        File classesDir = getClassesDirectory().get().getAsFile();
+        Set<String> paths = new TreeSet<String>();
+        if (!inputChanges.isIncremental()) {
+            getFileSystemOperations().delete(spec -> spec.delete(outputDir));
+        }
+        Set<String> changedClassNames = new HashSet<String>();
+        for (FileChange change : inputChanges.getFileChanges(getClassesDirectory())) {
+            if (change.getFileType() == FileType.DIRECTORY) {
+                continue;
+            }
+            String path = change.getNormalizedPath();
+            if (path.endsWith(CLASS_SUFFIX)) {
+                changedClassNames.add(TemplateUsers.toClassName(path));
+            }
+            if (change.getChangeType() == ChangeType.REMOVED) {
+                Files.deleteIfExists(new File(outputDir, path).toPath());
+            } else {
+                paths.add(path);
+            }
+        }
+        if (inputChanges.isIncremental() && !changedClassNames.isEmpty()) {
+            // users of a changed template are woven again, even if they didn't change
+            paths.addAll(TemplateUsers.scan(classesDir).getUserPaths(changedClassNames));
+        }
+
+        List<String> annotatedPaths = new ArrayList<String>();
+        for (String path : paths) {
+            File file = new File(classesDir, path);
+            if (path.endsWith(CLASS_SUFFIX) && MimicAnnotationScanner.hasMimicAnnotation(file)) {
+                annotatedPaths.add(path);
+            } else {
+                File outputFile = new File(outputDir, path);
+                Files.createDirectories(outputFile.getParentFile().toPath());
+                Files.copy(file.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        submit(classesDir, outputDir, annotatedPaths);
+        getLogger().info("{} files copied, {} classes mimiced by {}", paths.size() - annotatedPaths.size(), annotatedPaths.size(),
+                getPath());
+    }
+
+    private void submit(File classesDir, File outputDir, List<String> annotatedPaths) {
+        WorkQueue workQueue = getWorkerExecutor().noIsolation();
+        int batchSize = Math.max(1, getClassesPerWorkItem().get());
+        for (int index = 0; index < annotatedPaths.size(); index += batchSize) {
+            List<String> batch = new ArrayList<String>(annotatedPaths.subList(index, Math.min(annotatedPaths.size(), index + batchSize)));
+            workQueue.submit(MimicWorkAction.class, parameters -> {
+                parameters.getClassesDirectory().set(classesDir);
+                parameters.getClasspath().from(getClasspath());
+                parameters.getOutputDirectory().set(outputDir);
+                parameters.getClassFilePaths().set(batch);
+                parameters.getInlining().set(getInlining());
+                parameters.getPrivateCopies().set(getPrivateCopies());
+                parameters.getBackend().set(getBackend());
+                parameters.getEliminateDeadFields().set(getEliminateDeadFields());
+                parameters.getEliminateUnreachableMethods().set(getEliminateUnreachableMethods());
+            });
+        }
+    }
+}
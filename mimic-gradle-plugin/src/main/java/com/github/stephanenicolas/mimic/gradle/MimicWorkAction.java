@@ -0,0 +1,137 @@
+package com.github.stephanenicolas.mimic.gradle;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import javassist.ClassPool;
+import javassist.NotFoundException;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+
+import com.github.stephanenicolas.mimic.MimicProcessor;
+
+/**
+ * Mimics a batch of annotated classes, with a {@link MimicProcessor} and a
+ * class pool of its own. Classes that can't be mimiced are copied as they
+ * are, and reported, as the javassist maven plugin does.
+ *
+ * @author SNI
+ */
+public abstract class MimicWorkAction implements WorkAction<MimicWorkAction.Parameters> {
+
+    private static final Logger LOGGER = Logging.getLogger(MimicWorkAction.class);
+
+    /** The classes to mimic, and the options of the processor. */
+    public interface Parameters extends WorkParameters {
+        /** @return the directory of the classes to mimic. */
+        DirectoryProperty getClassesDirectory();
+
+        /** @return the classes used to resolve templates that are not in the classes directory. */
+        ConfigurableFileCollection getClasspath();
+
+        /** @return the directory receiving the mimiced classes. */
+        DirectoryProperty getOutputDirectory();
+
+        /** @return the paths of the class files to mimic, relative to the classes directory. */
+        ListProperty<String> getClassFilePaths();
+
+        /** @return whether template code is inlined. */
+        Property<Boolean> getInlining();
+
+        /** @return whether copies of template methods are private. */
+        Property<Boolean> getPrivateCopies();
+
+        /** @return {@code source} or {@code bytecode}. */
+        Property<String> getBackend();
+
+        /** @return whether unused template fields are left out. */
+        Property<Boolean> getEliminateDeadFields();
+
+        /** @return whether template methods unreachable from the classes mimicing them are left out. */
+        Property<Boolean> getEliminateUnreachableMethods();
+    }
+
+    @Override
+    public void execute() {
+        Parameters parameters = getParameters();
+        File classesDir = parameters.getClassesDirectory().get().getAsFile();
+        File outputDir = parameters.getOutputDirectory().get().getAsFile();
+        Thread currentThread = Thread.currentThread();
+        ClassLoader contextClassLoader = currentThread.getContextClassLoader();
+        MimicProcessor processor = createProcessor(parameters);
+        try {
+            // classes of the project are resolved before the ones of the daemon running the build
+            ClassPool pool = new ClassPool(false);
+            List<URL> urls = new ArrayList<URL>();
+            pool.appendClassPath(classesDir.getAbsolutePath());
+            urls.add(classesDir.toURI().toURL());
+            for (File file : parameters.getClasspath()) {
+                pool.appendClassPath(file.getAbsolutePath());
+                urls.add(file.toURI().toURL());
+            }
+            pool.appendSystemPath();
+
+            // annotation values such as Mimic#sourceClass() are resolved via the context class loader,
+            // closed once the batch is mimiced so that the daemon doesn't keep the jars open
+            try (URLClassLoader classLoader = new URLClassLoader(urls.toArray(new URL[urls.size()]),
+                    MimicProcessor.class.getClassLoader())) {
+                currentThread.setContextClassLoader(classLoader);
+                for (String path : parameters.getClassFilePaths().get()) {
+                    byte[] bytecode = Files.readAllBytes(new File(classesDir, path).toPath());
+                    byte[] transformedBytecode = transform(processor, pool, TemplateUsers.toClassName(path), bytecode);
+                    File outputFile = new File(outputDir, path);
+                    Files.createDirectories(outputFile.getParentFile().toPath());
+                    Files.write(outputFile.toPath(), transformedBytecode == null ? bytecode : transformedBytecode);
+                }
+            }
+        } catch (IOException e) {
+            throw new GradleException("Impossible to mimic classes of " + classesDir, e);
+        } catch (NotFoundException e) {
+            throw new GradleException("Impossible to read the classpath of " + classesDir, e);
+        } finally {
+            currentThread.setContextClassLoader(contextClassLoader);
+        }
+    }
+
+    private byte[] transform(MimicProcessor processor, ClassPool pool, String className, byte[] bytecode) {
+        try {
+            return processor.transformBytecode(pool, bytecode);
+        } catch (NotFoundException e) {
+            LOGGER.warn("Class {} could not be resolved due to dependencies not found on current classpath.", className);
+        } catch (Exception e) {
+            LOGGER.error("Class " + className + " could not be instrumented.", e);
+        }
+        return null;
+    }
+
+    private static MimicProcessor createProcessor(Parameters parameters) {
+        Properties properties = new Properties();
+        properties.setProperty(MimicProcessor.PROPERTY_INLINING, String.valueOf(parameters.getInlining().get()));
+        properties.setProperty(MimicProcessor.PROPERTY_PRIVATE_COPIES, String.valueOf(parameters.getPrivateCopies().get()));
+        properties.setProperty(MimicProcessor.PROPERTY_BACKEND, parameters.getBackend().get());
+        properties.setProperty(MimicProcessor.PROPERTY_ELIMINATE_DEAD_FIELDS, String.valueOf(parameters.getEliminateDeadFields().get()));
+        properties.setProperty(MimicProcessor.PROPERTY_ELIMINATE_UNREACHABLE_METHODS,
+                String.valueOf(parameters.getEliminateUnreachableMethods().get()));
+        MimicProcessor processor = new MimicProcessor();
+        try {
+            processor.configure(properties);
+        } catch (Exception e) {
+            throw new GradleException("Invalid mimic configuration: " + properties, e);
+        }
+        return processor;
+    }
+}
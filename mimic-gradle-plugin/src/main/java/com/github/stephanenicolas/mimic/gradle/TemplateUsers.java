@@ -0,0 +1,135 @@
+package com.github.stephanenicolas.mimic.gradle;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javassist.bytecode.ClassFile;
+
+import com.github.stephanenicolas.mimic.MimicAnnotationScanner;
+import com.github.stephanenicolas.mimic.MimicProcessor;
+
+/**
+ * The templates of every annotated class of a directory, found without
+ * loading any class : only the class files of annotated classes, of their
+ * templates and of the ancestors of their templates are parsed.
+ *
+ * @author SNI
+ */
+final class TemplateUsers {
+
+    private static final String CLASS_SUFFIX = ".class";
+
+    private final File classesDir;
+    /** Template names of every annotated class, by class file path. */
+    private final Map<String, List<String>> templateNames = new HashMap<String, List<String>>();
+    private final Map<String, ClassFile> classFiles = new HashMap<String, ClassFile>();
+
+    private TemplateUsers(File classesDir) {
+        this.classesDir = classesDir;
+    }
+
+    /**
+     * @param classesDir a directory of classes.
+     * @return the annotated classes of the directory, with their templates.
+     * @throws IOException if a class file can't be read.
+     */
+    static TemplateUsers scan(File classesDir) throws IOException {
+        TemplateUsers templateUsers = new TemplateUsers(classesDir);
+        templateUsers.scan(classesDir, "");
+        return templateUsers;
+    }
+
+    static String toClassName(String path) {
+        return path.substring(0, path.length() - CLASS_SUFFIX.length()).replace('/', '.');
+    }
+
+    /**
+     * @param classNames changed classes.
+     * @return the paths of the class files of the annotated classes one of
+     *         whose templates, or an ancestor or interface of one of their
+     *         templates, is one of classNames.
+     * @throws IOException if a class file can't be read.
+     */
+    Set<String> getUserPaths(Set<String> classNames) throws IOException {
+        Set<String> userPaths = new TreeSet<String>();
+        for (Map.Entry<String, List<String>> entry : templateNames.entrySet()) {
+            for (String templateName : entry.getValue()) {
+                if (isInHierarchy(templateName, classNames)) {
+                    userPaths.add(entry.getKey());
+                    break;
+                }
+            }
+        }
+        return userPaths;
+    }
+
+    private void scan(File directory, String path) throws IOException {
+        File[] children = directory.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            String childPath = path + child.getName();
+            if (child.isDirectory()) {
+                scan(child, childPath + "/");
+            } else if (childPath.endsWith(CLASS_SUFFIX) && MimicAnnotationScanner.hasMimicAnnotation(child)) {
+                List<String> classTemplateNames = MimicProcessor.getTemplateNames(readClassFile(child));
+                if (!classTemplateNames.isEmpty()) {
+                    templateNames.put(childPath, classTemplateNames);
+                }
+            }
+        }
+    }
+
+    private boolean isInHierarchy(String templateName, Set<String> classNames) throws IOException {
+        List<String> classNamesToVisit = new LinkedList<String>();
+        classNamesToVisit.add(templateName);
+        Set<String> visitedClassNames = new TreeSet<String>();
+        while (!classNamesToVisit.isEmpty()) {
+            String className = classNamesToVisit.remove(0);
+            if (!visitedClassNames.add(className)) {
+                continue;
+            }
+            if (classNames.contains(className)) {
+                return true;
+            }
+            // classes outside of the directory are part of the classpath
+            ClassFile classFile = getClassFile(className);
+            if (classFile != null) {
+                if (classFile.getSuperclass() != null) {
+                    classNamesToVisit.add(classFile.getSuperclass());
+                }
+                for (String interfaceName : classFile.getInterfaces()) {
+                    classNamesToVisit.add(interfaceName);
+                }
+            }
+        }
+        return false;
+    }
+
+    private ClassFile getClassFile(String className) throws IOException {
+        if (!classFiles.containsKey(className)) {
+            File file = new File(classesDir, className.replace('.', File.separatorChar) + CLASS_SUFFIX);
+            classFiles.put(className, file.isFile() ? readClassFile(file) : null);
+        }
+        return classFiles.get(className);
+    }
+
+    private static ClassFile readClassFile(File file) throws IOException {
+        InputStream in = Files.newInputStream(file.toPath());
+        try {
+            return new ClassFile(new DataInputStream(in));
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.stephanenicolas.mimic.gradle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collections;
+
+import org.gradle.api.Project;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.SourceSetContainer;
+import org.gradle.api.tasks.compile.JavaCompile;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MimicPluginTest {
+
+    private Project project;
+
+    @Before
+    public void setUp() {
+        project = ProjectBuilder.builder().build();
+    }
+
+    @Test
+    public void testApply() {
+        // GIVEN
+        project.getPluginManager().apply("java");
+
+        // WHEN
+        project.getPluginManager().apply("com.github.stephanenicolas.mimic");
+
+        // THEN
+        SourceSet main = project.getExtensions().getByType(SourceSetContainer.class).getByName(SourceSet.MAIN_SOURCE_SET_NAME);
+        MimicTask mimicTask = (MimicTask) project.getTasks().getByName("mimicClasses");
+        JavaCompile compileTask = (JavaCompile) project.getTasks().getByName("compileJava");
+        File unwovenDir = project.getLayout().getBuildDirectory().dir("mimic/unwoven/main").get().getAsFile();
+        File classesDir = project.getLayout().getBuildDirectory().dir("classes/java/main").get().getAsFile();
+        assertEquals(unwovenDir, compileTask.getDestinationDirectory().get().getAsFile());
+        assertEquals(unwovenDir, mimicTask.getClassesDirectory().get().getAsFile());
+        assertEquals(classesDir, mimicTask.getOutputDirectory().get().getAsFile());
+        assertEquals(Collections.singleton(classesDir), main.getOutput().getClassesDirs().getFiles());
+        assertTrue(project.getTasks().getByName("classes").getTaskDependencies().getDependencies(null).contains(mimicTask));
+        assertTrue(project.getTasks().getNames().contains("mimicTestClasses"));
+    }
+
+    @Test
+    public void testApply_with_extension() {
+        // GIVEN
+        project.getPluginManager().apply("java");
+        project.getPluginManager().apply("com.github.stephanenicolas.mimic");
+
+        // WHEN
+        MimicExtension extension = project.getExtensions().getByType(MimicExtension.class);
+        extension.getInlining().set(true);
+        extension.getBackend().set("bytecode");
+        extension.getEliminateDeadFields().set(true);
+        extension.getEliminateUnreachableMethods().set(true);
+
+        // THEN
+        MimicTask mimicTask = (MimicTask) project.getTasks().getByName("mimicClasses");
+        assertEquals(Boolean.TRUE, mimicTask.getInlining().get());
+        assertEquals(Boolean.FALSE, mimicTask.getPrivateCopies().get());
+        assertEquals("bytecode", mimicTask.getBackend().get());
+        assertEquals(Boolean.TRUE, mimicTask.getEliminateDeadFields().get());
+        assertEquals(Boolean.TRUE, mimicTask.getEliminateUnreachableMethods().get());
+        assertEquals(MimicExtension.DEFAULT_CLASSES_PER_WORK_ITEM, mimicTask.getClassesPerWorkItem().get().intValue());
+    }
+
+    @Test
+    public void testApply_without_java_plugin() {
+        // GIVEN
+
+        // WHEN
+        project.getPluginManager().apply("com.github.stephanenicolas.mimic");
+
+        // THEN
+        assertEquals(Collections.emptySet(), project.getTasks().withType(MimicTask.class).getNames());
+    }
+}
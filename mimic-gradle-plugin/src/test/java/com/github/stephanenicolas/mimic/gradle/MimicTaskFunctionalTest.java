@@ -0,0 +1,144 @@
+package com.github.stephanenicolas.mimic.gradle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.stephanenicolas.mimic.annotations.Mimic;
+
+public class MimicTaskFunctionalTest {
+
+    private static final String TASK_PATH = ":mimicClasses";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File projectDir;
+
+    @Before
+    public void setUp() throws Exception {
+        projectDir = temporaryFolder.newFolder("project");
+        String annotationsJar = new File(Mimic.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getAbsolutePath();
+        write("settings.gradle", "rootProject.name = 'sample'\n"
+                + "buildCache { local { directory = '" + temporaryFolder.newFolder("cache").toURI() + "' } }\n");
+        write("build.gradle", "plugins {\n"
+                + "    id 'java'\n"
+                + "    id 'com.github.stephanenicolas.mimic'\n"
+                + "}\n"
+                + "dependencies {\n"
+                + "    implementation files('" + annotationsJar.replace("\\", "\\\\") + "')\n"
+                + "}\n");
+        write("src/main/java/sample/Template.java", "package sample;\n"
+                + "public class Template {\n"
+                + "    private int foo;\n"
+                + "}\n");
+        write("src/main/java/sample/Target.java", "package sample;\n"
+                + "@com.github.stephanenicolas.mimic.annotations.Mimic(sourceClass = Template.class)\n"
+                + "public class Target {\n"
+                + "}\n");
+        write("src/main/java/sample/Other.java", "package sample;\n"
+                + "public class Other {\n"
+                + "}\n");
+    }
+
+    @Test
+    public void testMimicClasses() throws Exception {
+        // GIVEN
+
+        // WHEN
+        BuildResult result = run("classes");
+
+        // THEN
+        assertEquals(TaskOutcome.SUCCESS, result.task(TASK_PATH).getOutcome());
+        assertNotNull(loadWovenClass("Target").getDeclaredField("foo"));
+        // classes that are not annotated are copied as they are
+        assertTrue(Arrays.equals(read("build/mimic/unwoven/main/sample/Other.class"), read("build/classes/java/main/sample/Other.class")));
+    }
+
+    @Test
+    public void testMimicClasses_is_up_to_date() throws Exception {
+        // GIVEN
+        run("classes");
+
+        // WHEN
+        BuildResult result = run("classes");
+
+        // THEN
+        assertEquals(TaskOutcome.UP_TO_DATE, result.task(TASK_PATH).getOutcome());
+    }
+
+    @Test
+    public void testMimicClasses_when_template_changes() throws Exception {
+        // GIVEN
+        run("classes");
+        write("src/main/java/sample/Template.java", "package sample;\n"
+                + "public class Template {\n"
+                + "    private int foo;\n"
+                + "    private int bar;\n"
+                + "}\n");
+
+        // WHEN
+        BuildResult result = run("classes", "--info");
+
+        // THEN
+        assertEquals(TaskOutcome.SUCCESS, result.task(TASK_PATH).getOutcome());
+        // only the template is copied, and its user woven again
+        assertTrue(result.getOutput(), result.getOutput().contains("1 files copied, 1 classes mimiced by " + TASK_PATH));
+        assertNotNull(loadWovenClass("Target").getDeclaredField("bar"));
+    }
+
+    @Test
+    public void testMimicClasses_from_build_cache() throws Exception {
+        // GIVEN
+        run("classes", "--build-cache");
+        run("clean");
+
+        // WHEN
+        BuildResult result = run("classes", "--build-cache");
+
+        // THEN
+        assertEquals(TaskOutcome.FROM_CACHE, result.task(TASK_PATH).getOutcome());
+        assertNotNull(loadWovenClass("Target").getDeclaredField("foo"));
+    }
+
+    private BuildResult run(String... arguments) {
+        return GradleRunner.create().withProjectDir(projectDir).withArguments(arguments).withPluginClasspath().build();
+    }
+
+    private CtClass loadWovenClass(String simpleName) throws IOException {
+        InputStream in = Files.newInputStream(new File(projectDir, "build/classes/java/main/sample/" + simpleName + ".class").toPath());
+        try {
+            return new ClassPool(true).makeClass(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private byte[] read(String path) throws IOException {
+        return Files.readAllBytes(new File(projectDir, path).toPath());
+    }
+
+    private void write(String path, String content) throws IOException {
+        File file = new File(projectDir, path);
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
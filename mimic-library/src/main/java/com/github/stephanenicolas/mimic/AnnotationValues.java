@@ -0,0 +1,180 @@
+package com.github.stephanenicolas.mimic;
+
+import javassist.bytecode.annotation.Annotation;
+import javassist.bytecode.annotation.AnnotationMemberValue;
+import javassist.bytecode.annotation.ArrayMemberValue;
+import javassist.bytecode.annotation.BooleanMemberValue;
+import javassist.bytecode.annotation.ClassMemberValue;
+import javassist.bytecode.annotation.EnumMemberValue;
+import javassist.bytecode.annotation.MemberValue;
+import javassist.bytecode.annotation.StringMemberValue;
+
+import com.github.stephanenicolas.mimic.annotations.MimicField;
+import com.github.stephanenicolas.mimic.annotations.MimicMethod;
+import com.github.stephanenicolas.mimic.annotations.MimicMode;
+
+/**
+ * Reads the members of the mimic annotations of a class file, without
+ * loading any class. The proxies of {@link javassist.CtClass#getAnnotation(Class)}
+ * load the annotation types and class values through the class loader of
+ * the class pool, whose copy of the mimic annotations may not be the one of
+ * this library, when it is a child first class loader for instance. Members
+ * an annotation doesn't define take the default value declared by its type.
+ *
+ * @author SNI
+ */
+final class AnnotationValues {
+
+    private AnnotationValues() {
+    }
+
+    /** @return the name of the class of a member, or null if it is not defined. */
+    static String getClassName(Annotation annotation, String memberName) {
+        ClassMemberValue value = (ClassMemberValue) annotation.getMemberValue(memberName);
+        return value == null ? null : value.getValue();
+    }
+
+    static boolean getBoolean(Annotation annotation, Class<? extends java.lang.annotation.Annotation> type, String memberName) {
+        BooleanMemberValue value = (BooleanMemberValue) annotation.getMemberValue(memberName);
+        return value == null ? (Boolean) getDefaultValue(type, memberName) : value.getValue();
+    }
+
+    static String getString(Annotation annotation, Class<? extends java.lang.annotation.Annotation> type, String memberName) {
+        StringMemberValue value = (StringMemberValue) annotation.getMemberValue(memberName);
+        return value == null ? (String) getDefaultValue(type, memberName) : value.getValue();
+    }
+
+    static MimicMode getMimicMode(Annotation annotation, Class<? extends java.lang.annotation.Annotation> type, String memberName) {
+        EnumMemberValue value = (EnumMemberValue) annotation.getMemberValue(memberName);
+        return value == null ? (MimicMode) getDefaultValue(type, memberName) : MimicMode.valueOf(value.getValue());
+    }
+
+    /** @return the annotations of an array member, empty if it is not defined. */
+    static Annotation[] getAnnotations(Annotation annotation, String memberName) {
+        ArrayMemberValue value = (ArrayMemberValue) annotation.getMemberValue(memberName);
+        if (value == null) {
+            return new Annotation[0];
+        }
+        MemberValue[] elements = value.getValue();
+        Annotation[] annotations = new Annotation[elements.length];
+        for (int i = 0; i < elements.length; i++) {
+            annotations[i] = ((AnnotationMemberValue) elements[i]).getValue();
+        }
+        return annotations;
+    }
+
+    /** @return the {@link MimicMethod}s of the <code>mimicMethods</code> member of an annotation. */
+    static MimicMethod[] getMimicMethods(Annotation annotation) {
+        Annotation[] methodAnnotations = getAnnotations(annotation, "mimicMethods");
+        MimicMethod[] mimicMethods = new MimicMethod[methodAnnotations.length];
+        for (int i = 0; i < methodAnnotations.length; i++) {
+            Annotation methodAnnotation = methodAnnotations[i];
+            mimicMethods[i] = new MimicMethodValue(getString(methodAnnotation, MimicMethod.class, "methodName"),
+                    getString(methodAnnotation, MimicMethod.class, "signature"),
+                    getMimicMode(methodAnnotation, MimicMethod.class, "mode"),
+                    getString(methodAnnotation, MimicMethod.class, "insertionMethod"),
+                    getString(methodAnnotation, MimicMethod.class, "insertionMethodSignature"));
+        }
+        return mimicMethods;
+    }
+
+    /** @return the {@link MimicField}s of the <code>mimicFields</code> member of an annotation. */
+    static MimicField[] getMimicFields(Annotation annotation) {
+        Annotation[] fieldAnnotations = getAnnotations(annotation, "mimicFields");
+        MimicField[] mimicFields = new MimicField[fieldAnnotations.length];
+        for (int i = 0; i < fieldAnnotations.length; i++) {
+            mimicFields[i] = new MimicFieldValue(getString(fieldAnnotations[i], MimicField.class, "fieldName"));
+        }
+        return mimicFields;
+    }
+
+    private static Object getDefaultValue(Class<? extends java.lang.annotation.Annotation> type, String memberName) {
+        Object defaultValue;
+        try {
+            defaultValue = type.getMethod(memberName).getDefaultValue();
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(type.getName() + " has no member " + memberName, e);
+        }
+        if (defaultValue == null) {
+            throw new IllegalArgumentException("Member " + memberName + " of " + type.getName() + " is missing");
+        }
+        return defaultValue;
+    }
+
+    private static final class MimicMethodValue implements MimicMethod {
+        private final String methodName;
+        private final String signature;
+        private final MimicMode mode;
+        private final String insertionMethod;
+        private final String insertionMethodSignature;
+
+        MimicMethodValue(String methodName, String signature, MimicMode mode, String insertionMethod,
+                String insertionMethodSignature) {
+            this.methodName = methodName;
+            this.signature = signature;
+            this.mode = mode;
+            this.insertionMethod = insertionMethod;
+            this.insertionMethodSignature = insertionMethodSignature;
+        }
+
+        @Override
+        public String methodName() {
+            return methodName;
+        }
+
+        @Override
+        public String signature() {
+            return signature;
+        }
+
+        @Override
+        public MimicMode mode() {
+            return mode;
+        }
+
+        @Override
+        public String insertionMethod() {
+            return insertionMethod;
+        }
+
+        @Override
+        public String insertionMethodSignature() {
+            return insertionMethodSignature;
+        }
+
+        @Override
+        public Class<? extends java.lang.annotation.Annotation> annotationType() {
+            return MimicMethod.class;
+        }
+
+        @Override
+        public String toString() {
+            return "@" + MimicMethod.class.getName() + "(methodName=" + methodName + ", signature=" + signature + ", mode="
+                    + mode + ", insertionMethod=" + insertionMethod + ", insertionMethodSignature="
+                    + insertionMethodSignature + ")";
+        }
+    }
+
+    private static final class MimicFieldValue implements MimicField {
+        private final String fieldName;
+
+        MimicFieldValue(String fieldName) {
+            this.fieldName = fieldName;
+        }
+
+        @Override
+        public String fieldName() {
+            return fieldName;
+        }
+
+        @Override
+        public Class<? extends java.lang.annotation.Annotation> annotationType() {
+            return MimicField.class;
+        }
+
+        @Override
+        public String toString() {
+            return "@" + MimicField.class.getName() + "(fieldName=" + fieldName + ")";
+        }
+    }
+}
@@ -0,0 +1,447 @@
+package com.github.stephanenicolas.mimic;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+import javassist.CannotCompileException;
+import javassist.CtBehavior;
+import javassist.CtClass;
+import javassist.CtMethod;
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.Bytecode;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.CodeIterator;
+import javassist.bytecode.CodeIterator.Gap;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.Opcode;
+
+/**
+ * Weaves the invocations of {@code _copy_} methods, created by
+ * {@link MimicCreator}, by emitting their instructions directly : {@code this}
+ * and the arguments are loaded according to the descriptor of the copy, the
+ * copy is invoked, and its result is either popped or returned. Unlike
+ * {@link WeavingBackend#SOURCE}, no Java source is parsed nor compiled.
+ *
+ * <p>
+ * Copies receive the first arguments of the behavior, or of the method call,
+ * they are woven around : their types must be the same.
+ * </p>
+ *
+ * @author SNI
+ */
+final class BytecodeWeaver {
+
+    private static final int INVOKE_LENGTH = 3;
+    private static final int INVOKEINTERFACE_LENGTH = 5;
+    private static final int GOTO_LENGTH = 3;
+    private static final int GOTO_W_LENGTH = 5;
+
+    /** Invocations of copies around a method call, in their order of execution. */
+    static final class CallSite {
+        private final List<CtMethod> copiesBefore = new ArrayList<CtMethod>();
+        private final List<CtMethod> copiesAfter = new ArrayList<CtMethod>();
+        private CtMethod replacingCopy;
+
+        /** @param copy a copy to invoke before the call, after the copies already added. */
+        void invokeBefore(CtMethod copy) {
+            copiesBefore.add(copy);
+        }
+
+        /** @param copy a copy to invoke after the call, before the copies already added. */
+        void invokeAfter(CtMethod copy) {
+            copiesAfter.add(0, copy);
+        }
+
+        /** @param copy a copy to invoke instead of the call. Its result replaces the result of the call. */
+        void replaceBy(CtMethod copy) {
+            replacingCopy = copy;
+        }
+    }
+
+    /** Selects the method calls around which copies are invoked. */
+    interface CallSiteSelector {
+        /**
+         * @param methodName the name of the invoked method.
+         * @param descriptor the descriptor of the invoked method.
+         * @param isSuper whether the call invokes a method of a superclass through {@code super}.
+         * @return the invocations to weave around the call, or null to leave it untouched.
+         */
+        CallSite select(String methodName, String descriptor, boolean isSuper);
+    }
+
+    /**
+     * Invokes a copy at the beginning of a method. Branches to the first
+     * instruction of the method don't invoke the copy again.
+     * @param behavior the method invoking the copy, with the same parameters.
+     * @param copy the copy.
+     * @throws CannotCompileException if copy can't be invoked from behavior.
+     */
+    void invokeAtBeginning(CtBehavior behavior, CtMethod copy) throws CannotCompileException {
+        CodeAttribute code = getCode(behavior);
+        Bytecode bytecode = new Bytecode(code.getConstPool());
+        addInvocation(bytecode, behavior, copy, getParameterTypes(behavior.getSignature()), getFirstParameterSlot(behavior));
+        addPop(bytecode, getReturnType(copy.getSignature()));
+        try {
+            code.iterator().insertExAt(0, bytecode.get());
+            rebuild(behavior, code.getMaxLocals());
+        } catch (BadBytecode e) {
+            throw new CannotCompileException(e);
+        }
+    }
+
+    /**
+     * Invokes a copy before every normal return of a behavior. Like
+     * {@link CtBehavior#insertAfter(String)}, the invocation is appended at
+     * the end of the code, outside of all exception handlers, and returns
+     * are replaced by jumps to it.
+     * @param behavior the behavior invoking the copy, with the same parameters.
+     * @param copy the copy.
+     * @param isReturningCopyResult if true, the result of the copy is returned instead of the result of behavior.
+     * @throws CannotCompileException if copy can't be invoked from behavior.
+     */
+    void invokeBeforeReturns(CtBehavior behavior, CtMethod copy, boolean isReturningCopyResult) throws CannotCompileException {
+        CodeAttribute code = getCode(behavior);
+        if (!hasReturn(code)) {
+            return;
+        }
+        String returnType = getReturnType(behavior.getSignature());
+        String copyReturnType = getReturnType(copy.getSignature());
+        if (isReturningCopyResult && !returnType.equals(copyReturnType)) {
+            throw new CannotCompileException("Impossible to return the result of " + copy.getName() + " from " + behavior.getLongName());
+        }
+        int resultSlot = code.getMaxLocals();
+        Bytecode advice = new Bytecode(code.getConstPool());
+        if (isReturningCopyResult) {
+            addPop(advice, returnType);
+        } else {
+            addStore(advice, resultSlot, returnType);
+        }
+        addInvocation(advice, behavior, copy, getParameterTypes(behavior.getSignature()), getFirstParameterSlot(behavior));
+        if (!isReturningCopyResult) {
+            addPop(advice, copyReturnType);
+            addLoad(advice, resultSlot, returnType);
+        }
+        advice.add(getReturnOpcode(returnType));
+
+        try {
+            CodeIterator iterator = code.iterator();
+            iterator.setMark(iterator.append(advice.get()));
+            while (iterator.hasNext()) {
+                int position = iterator.next();
+                if (position >= iterator.getMark()) {
+                    break;
+                }
+                int opcode = iterator.byteAt(position);
+                if (opcode >= Opcode.IRETURN && opcode <= Opcode.RETURN) {
+                    replaceReturnByJump(iterator, position);
+                }
+            }
+            rebuild(behavior, resultSlot + getSize(returnType));
+        } catch (BadBytecode e) {
+            throw new CannotCompileException(e);
+        }
+    }
+
+    /**
+     * Replaces a return by a jump to the mark of an iterator, placed after
+     * the return. Branches to the return now reach the jump. It is a
+     * <code>goto_w</code> when the mark is too far for the 16 bit offset of a
+     * <code>goto</code>.
+     */
+    private static void replaceReturnByJump(CodeIterator iterator, int position) throws BadBytecode {
+        Gap gap = iterator.insertGapAt(position, GOTO_LENGTH - 1, false);
+        int jumpPosition = gap.position + gap.length - (GOTO_LENGTH - 1);
+        if (iterator.getMark() - jumpPosition <= Short.MAX_VALUE) {
+            iterator.writeByte(Opcode.GOTO, jumpPosition);
+            iterator.write16bit(iterator.getMark() - jumpPosition, jumpPosition + 1);
+            return;
+        }
+        // widens the room of the jump, the wide jump ends where the jump would have
+        gap = iterator.insertGapAt(jumpPosition, GOTO_W_LENGTH - GOTO_LENGTH, false);
+        int wideJumpPosition = gap.position + gap.length + GOTO_LENGTH - GOTO_W_LENGTH;
+        iterator.writeByte(Opcode.GOTO_W, wideJumpPosition);
+        iterator.write32bit(iterator.getMark() - wideJumpPosition, wideJumpPosition + 1);
+    }
+
+    /**
+     * Invokes copies around the method calls of a behavior. The target and
+     * the arguments of a selected call are stored into fresh locals, so that
+     * copies receive the same arguments as the call.
+     * @param behavior the behavior whose method calls are woven.
+     * @param selector selects the calls to weave, and the copies to invoke around them.
+     * @throws CannotCompileException if a copy can't be invoked from behavior.
+     */
+    void invokeAroundCalls(CtBehavior behavior, CallSiteSelector selector) throws CannotCompileException {
+        CodeAttribute code = getCode(behavior);
+        ConstPool constPool = code.getConstPool();
+        String className = behavior.getDeclaringClass().getName();
+        int firstTemporarySlot = code.getMaxLocals();
+        int maxLocals = firstTemporarySlot;
+        boolean isModified = false;
+        try {
+            CodeIterator iterator = code.iterator();
+            while (iterator.hasNext()) {
+                int position = iterator.next();
+                int opcode = iterator.byteAt(position);
+                if (opcode != Opcode.INVOKEVIRTUAL && opcode != Opcode.INVOKESPECIAL && opcode != Opcode.INVOKESTATIC
+                        && opcode != Opcode.INVOKEINTERFACE) {
+                    continue;
+                }
+                int index = iterator.u16bitAt(position + 1);
+                boolean isInterfaceMethod = constPool.getTag(index) == ConstPool.CONST_InterfaceMethodref;
+                String methodName = isInterfaceMethod ? constPool.getInterfaceMethodrefName(index) : constPool.getMethodrefName(index);
+                String invokedClassName = isInterfaceMethod ? constPool.getInterfaceMethodrefClassName(index) : constPool
+                        .getMethodrefClassName(index);
+                String descriptor = isInterfaceMethod ? constPool.getInterfaceMethodrefType(index) : constPool.getMethodrefType(index);
+                boolean isSuper = opcode == Opcode.INVOKESPECIAL && !className.equals(invokedClassName);
+                CallSite callSite = selector.select(methodName, descriptor, isSuper);
+                if (callSite == null) {
+                    continue;
+                }
+
+                int length = opcode == Opcode.INVOKEINTERFACE ? INVOKEINTERFACE_LENGTH : INVOKE_LENGTH;
+                List<String> argumentTypes = getParameterTypes(descriptor);
+                Bytecode bytecode = new Bytecode(constPool);
+                int targetSlot = firstTemporarySlot + getSize(argumentTypes);
+                for (int i = argumentTypes.size() - 1; i >= 0; i--) {
+                    addStore(bytecode, firstTemporarySlot + getSize(argumentTypes.subList(0, i)), argumentTypes.get(i));
+                }
+                if (opcode != Opcode.INVOKESTATIC) {
+                    bytecode.addAstore(targetSlot);
+                    maxLocals = Math.max(maxLocals, targetSlot + 1);
+                } else {
+                    maxLocals = Math.max(maxLocals, targetSlot);
+                }
+                for (CtMethod copy : callSite.copiesBefore) {
+                    addInvocation(bytecode, behavior, copy, argumentTypes, firstTemporarySlot);
+                    addPop(bytecode, getReturnType(copy.getSignature()));
+                }
+                if (callSite.replacingCopy != null) {
+                    if (!getReturnType(descriptor).equals(getReturnType(callSite.replacingCopy.getSignature()))) {
+                        throw new CannotCompileException("Impossible to replace " + methodName + " by " + callSite.replacingCopy.getName()
+                                + " in " + behavior.getLongName());
+                    }
+                    addInvocation(bytecode, behavior, callSite.replacingCopy, argumentTypes, firstTemporarySlot);
+                } else {
+                    if (opcode != Opcode.INVOKESTATIC) {
+                        bytecode.addAload(targetSlot);
+                    }
+                    addLoads(bytecode, argumentTypes, firstTemporarySlot);
+                    for (int i = 0; i < length; i++) {
+                        bytecode.add(iterator.byteAt(position + i));
+                    }
+                }
+                for (CtMethod copy : callSite.copiesAfter) {
+                    addInvocation(bytecode, behavior, copy, argumentTypes, firstTemporarySlot);
+                    addPop(bytecode, getReturnType(copy.getSignature()));
+                }
+
+                // the original call follows the gap, it is not executed anymore
+                Gap gap = iterator.insertGapAt(position, bytecode.length(), false);
+                iterator.write(bytecode.get(), gap.position);
+                for (int i = 0; i < length; i++) {
+                    iterator.writeByte(Opcode.NOP, gap.position + gap.length + i);
+                }
+                isModified = true;
+            }
+            if (isModified) {
+                rebuild(behavior, maxLocals);
+            }
+        } catch (BadBytecode e) {
+            throw new CannotCompileException(e);
+        }
+    }
+
+    private CodeAttribute getCode(CtBehavior behavior) throws CannotCompileException {
+        CodeAttribute code = behavior.getMethodInfo().getCodeAttribute();
+        if (code == null) {
+            throw new CannotCompileException("no method body in " + behavior.getLongName());
+        }
+        return code;
+    }
+
+    private boolean hasReturn(CodeAttribute code) throws CannotCompileException {
+        CodeIterator iterator = code.iterator();
+        try {
+            while (iterator.hasNext()) {
+                int opcode = iterator.byteAt(iterator.next());
+                if (opcode >= Opcode.IRETURN && opcode <= Opcode.RETURN) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (BadBytecode e) {
+            throw new CannotCompileException(e);
+        }
+    }
+
+    private void rebuild(CtBehavior behavior, int maxLocals) throws BadBytecode {
+        MethodInfo methodInfo = behavior.getMethodInfo();
+        CodeAttribute code = methodInfo.getCodeAttribute();
+        code.setMaxLocals(Math.max(code.getMaxLocals(), maxLocals));
+        code.computeMaxStack();
+        CtClass declaringClass = behavior.getDeclaringClass();
+        methodInfo.rebuildStackMapIf6(declaringClass.getClassPool(), declaringClass.getClassFile2());
+    }
+
+    /**
+     * Invokes a copy, with the first arguments stored from a given slot.
+     */
+    private void addInvocation(Bytecode bytecode, CtBehavior behavior, CtMethod copy, List<String> argumentTypes, int firstSlot)
+        throws CannotCompileException {
+        List<String> parameterTypes = getParameterTypes(copy.getSignature());
+        if (parameterTypes.size() > argumentTypes.size() || !parameterTypes.equals(argumentTypes.subList(0, parameterTypes.size()))) {
+            throw new CannotCompileException("Impossible to invoke " + copy.getName() + copy.getSignature() + " with arguments "
+                    + argumentTypes + " in " + behavior.getLongName());
+        }
+        CtClass declaringClass = copy.getDeclaringClass();
+        if (Modifier.isStatic(copy.getModifiers())) {
+            addLoads(bytecode, parameterTypes, firstSlot);
+            bytecode.addInvokestatic(declaringClass, copy.getName(), copy.getSignature());
+            return;
+        }
+        if (Modifier.isStatic(behavior.getModifiers())) {
+            throw new CannotCompileException("Impossible to invoke " + copy.getName() + " from static " + behavior.getLongName());
+        }
+        bytecode.addAload(0);
+        addLoads(bytecode, parameterTypes, firstSlot);
+        if (Modifier.isPrivate(copy.getModifiers())) {
+            bytecode.addInvokespecial(declaringClass, copy.getName(), copy.getSignature());
+        } else {
+            bytecode.addInvokevirtual(declaringClass, copy.getName(), copy.getSignature());
+        }
+    }
+
+    private int getFirstParameterSlot(CtBehavior behavior) {
+        return Modifier.isStatic(behavior.getModifiers()) ? 0 : 1;
+    }
+
+    private void addLoads(Bytecode bytecode, List<String> types, int firstSlot) {
+        int slot = firstSlot;
+        for (String type : types) {
+            addLoad(bytecode, slot, type);
+            slot += getSize(type);
+        }
+    }
+
+    private void addLoad(Bytecode bytecode, int slot, String type) {
+        switch (type.charAt(0)) {
+            case 'V':
+                break;
+            case 'J':
+                bytecode.addLload(slot);
+                break;
+            case 'F':
+                bytecode.addFload(slot);
+                break;
+            case 'D':
+                bytecode.addDload(slot);
+                break;
+            case 'L':
+            case '[':
+                bytecode.addAload(slot);
+                break;
+            default:
+                bytecode.addIload(slot);
+                break;
+        }
+    }
+
+    private void addStore(Bytecode bytecode, int slot, String type) {
+        switch (type.charAt(0)) {
+            case 'V':
+                break;
+            case 'J':
+                bytecode.addLstore(slot);
+                break;
+            case 'F':
+                bytecode.addFstore(slot);
+                break;
+            case 'D':
+                bytecode.addDstore(slot);
+                break;
+            case 'L':
+            case '[':
+                bytecode.addAstore(slot);
+                break;
+            default:
+                bytecode.addIstore(slot);
+                break;
+        }
+    }
+
+    private void addPop(Bytecode bytecode, String type) {
+        switch (getSize(type)) {
+            case 0:
+                break;
+            case 1:
+                bytecode.addOpcode(Opcode.POP);
+                break;
+            default:
+                bytecode.addOpcode(Opcode.POP2);
+                break;
+        }
+    }
+
+    private int getReturnOpcode(String type) {
+        switch (type.charAt(0)) {
+            case 'V':
+                return Opcode.RETURN;
+            case 'J':
+                return Opcode.LRETURN;
+            case 'F':
+                return Opcode.FRETURN;
+            case 'D':
+                return Opcode.DRETURN;
+            case 'L':
+            case '[':
+                return Opcode.ARETURN;
+            default:
+                return Opcode.IRETURN;
+        }
+    }
+
+    private static int getSize(String type) {
+        switch (type.charAt(0)) {
+            case 'V':
+                return 0;
+            case 'J':
+            case 'D':
+                return 2;
+            default:
+                return 1;
+        }
+    }
+
+    private static int getSize(List<String> types) {
+        int size = 0;
+        for (String type : types) {
+            size += getSize(type);
+        }
+        return size;
+    }
+
+    /** @return the descriptors of the parameters of a method descriptor. */
+    private static List<String> getParameterTypes(String descriptor) {
+        List<String> types = new ArrayList<String>();
+        int index = 1;
+        while (descriptor.charAt(index) != ')') {
+            int start = index;
+            while (descriptor.charAt(index) == '[') {
+                index++;
+            }
+            if (descriptor.charAt(index) == 'L') {
+                index = descriptor.indexOf(';', index);
+            }
+            index++;
+            types.add(descriptor.substring(start, index));
+        }
+        return types;
+    }
+
+    private static String getReturnType(String descriptor) {
+        return descriptor.substring(descriptor.indexOf(')') + 1);
+    }
+}
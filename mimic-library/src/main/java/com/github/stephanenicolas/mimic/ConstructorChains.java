@@ -0,0 +1,68 @@
+package com.github.stephanenicolas.mimic;
+
+import java.util.HashMap;
+
+import javassist.CannotCompileException;
+import javassist.CtClass;
+import javassist.CtConstructor;
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.CodeIterator;
+
+/**
+ * The {@code this(...)} delegations between the constructors of a class. A
+ * root constructor invokes a constructor of the superclass, a delegating
+ * constructor invokes another constructor of the class first. Every
+ * construction of an instance runs exactly one root constructor, at the end
+ * of a chain of delegating constructors.
+ *
+ * @author SNI
+ */
+final class ConstructorChains {
+
+    private final HashMap<String, String> mapDescriptorToDelegateDescriptor = new HashMap<String, String>();
+
+    ConstructorChains(CtClass clazz) throws CannotCompileException {
+        for (CtConstructor constructor : clazz.getDeclaredConstructors()) {
+            String delegateDescriptor = findDelegateDescriptor(constructor);
+            if (delegateDescriptor != null) {
+                mapDescriptorToDelegateDescriptor.put(constructor.getSignature(), delegateDescriptor);
+            }
+        }
+    }
+
+    /**
+     * @param descriptor the descriptor of a constructor of the class.
+     * @return true if the constructor invokes a constructor of the
+     *         superclass.
+     */
+    boolean isRoot(String descriptor) {
+        return !mapDescriptorToDelegateDescriptor.containsKey(descriptor);
+    }
+
+    /**
+     * @param descriptor the descriptor of a constructor of the class.
+     * @return the descriptor of the constructor it delegates to, or null for
+     *         a root constructor.
+     */
+    String getDelegateDescriptor(String descriptor) {
+        return mapDescriptorToDelegateDescriptor.get(descriptor);
+    }
+
+    private String findDelegateDescriptor(CtConstructor constructor) throws CannotCompileException {
+        CodeAttribute code = constructor.getMethodInfo().getCodeAttribute();
+        if (code == null) {
+            return null;
+        }
+        try {
+            CodeIterator iterator = code.iterator();
+            int position = iterator.skipThisConstructor();
+            if (position < 0) {
+                return null;
+            }
+            return code.getConstPool().getMethodrefType(iterator.u16bitAt(position + 1));
+        } catch (BadBytecode e) {
+            throw new CannotCompileException(e);
+        }
+    }
+}
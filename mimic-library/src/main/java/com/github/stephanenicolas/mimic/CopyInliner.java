@@ -0,0 +1,525 @@
+package com.github.stephanenicolas.mimic;
+
+import java.lang.reflect.Modifier;
+
+import javassist.CannotCompileException;
+import javassist.CtBehavior;
+import javassist.CtClass;
+import javassist.CtMethod;
+import javassist.NotFoundException;
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.ByteArray;
+import javassist.bytecode.Bytecode;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.CodeIterator;
+import javassist.bytecode.CodeIterator.Gap;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.ExceptionTable;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.Opcode;
+import javassist.bytecode.analysis.Analyzer;
+import javassist.bytecode.analysis.Frame;
+import lombok.extern.java.Log;
+
+/**
+ * Inlines the invocations of a {@code _copy_} method, created by
+ * {@link MimicCreator}, into the method that invokes it. The bytecode of the
+ * copy is spliced at the invocation point : arguments are stored into fresh
+ * local variables, the locals of the copy are shifted after the locals of the
+ * caller, and returns jump to the instruction following the invocation, with
+ * the returned value on the stack.
+ *
+ * <p>
+ * Invocations that can't be inlined safely are kept : copies using
+ * subroutines, invoking themselves, synchronized, or returning with a non
+ * empty stack, and callers or copies invoking interface methods with
+ * {@code invokestatic} or {@code invokespecial}, whose max stack javassist
+ * can't compute. Copies containing exception handlers are only inlined when the
+ * stack of the caller is empty at the invocation point, as handlers clear the
+ * stack. Invocations are also kept when a conditional branch of the copy
+ * would not reach its target anymore once relocated, or when the code of the
+ * caller would exceed 65535 bytes.
+ * </p>
+ *
+ * @author SNI
+ */
+@Log
+final class CopyInliner {
+
+    private static final int BYTE_MASK = 0xFF;
+    private static final int MAX_UNSIGNED_BYTE = 0xFF;
+    private static final int INVOKE_LENGTH = 3;
+    private static final int GOTO_W_LENGTH = 5;
+    private static final int LOCAL_LENGTH = 2;
+    private static final int WIDE_LOCAL_LENGTH = 4;
+    private static final int IINC_LENGTH = 3;
+    private static final int WIDE_IINC_LENGTH = 6;
+    private static final int SWITCH_ALIGNMENT = 4;
+    private static final int INT_LENGTH = 4;
+    private static final int SWITCH_HEADER_LENGTH = 3 * INT_LENGTH;
+    private static final int MAX_CODE_LENGTH = 65535;
+
+    /**
+     * Inlines all invocations of a copy in a behavior.
+     * @param behavior the behavior invoking the copy. Both must be declared by the same class.
+     * @param copy the copy to inline.
+     * @return true if no invocation of the copy remains in behavior.
+     * @throws CannotCompileException if the bytecode of behavior or copy is invalid.
+     */
+    boolean inline(CtBehavior behavior, CtMethod copy) throws CannotCompileException {
+        MethodInfo callerInfo = behavior.getMethodInfo();
+        MethodInfo calleeInfo = copy.getMethodInfo();
+        CodeAttribute callerCode = callerInfo.getCodeAttribute();
+        CodeAttribute calleeCode = calleeInfo.getCodeAttribute();
+        if (callerCode == null || calleeCode == null || callerInfo.getConstPool() != calleeInfo.getConstPool()
+                || !isInlinable(copy) || invokesInterfaceMethodDirectly(callerCode) || invokesInterfaceMethodDirectly(calleeCode)) {
+            return findInvocation(behavior, copy, 0) == -1;
+        }
+        try {
+            boolean isFullyInlined = true;
+            boolean isModified = false;
+            int position = findInvocation(behavior, copy, 0);
+            while (position != -1) {
+                if (canInlineAt(behavior, copy, position)) {
+                    position = inlineAt(behavior, copy, position);
+                    // the next invocations are analyzed with the stack the inlined code needs
+                    callerCode.computeMaxStack();
+                    isModified = true;
+                } else {
+                    log.fine("Invocation of " + copy.getName() + " can't be inlined in " + behavior.getLongName() + " at " + position);
+                    isFullyInlined = false;
+                    position += INVOKE_LENGTH;
+                }
+                position = findInvocation(behavior, copy, position);
+            }
+            if (isModified) {
+                callerInfo.rebuildStackMapIf6(behavior.getDeclaringClass().getClassPool(), behavior.getDeclaringClass().getClassFile2());
+            }
+            return isFullyInlined;
+        } catch (BadBytecode e) {
+            throw new CannotCompileException(e);
+        } catch (NotFoundException e) {
+            throw new CannotCompileException(e);
+        }
+    }
+
+    /**
+     * @return true if code invokes a method through an interface method
+     *         reference with {@code invokestatic} or {@code invokespecial},
+     *         like a static interface method, as of java 8.
+     */
+    private boolean invokesInterfaceMethodDirectly(CodeAttribute code) throws CannotCompileException {
+        ConstPool constPool = code.getConstPool();
+        CodeIterator iterator = code.iterator();
+        try {
+            while (iterator.hasNext()) {
+                int position = iterator.next();
+                int opcode = iterator.byteAt(position);
+                if ((opcode == Opcode.INVOKESPECIAL || opcode == Opcode.INVOKESTATIC)
+                        && constPool.getTag(iterator.u16bitAt(position + 1)) == ConstPool.CONST_InterfaceMethodref) {
+                    return true;
+                }
+            }
+        } catch (BadBytecode e) {
+            throw new CannotCompileException(e);
+        }
+        return false;
+    }
+
+    /**
+     * Finds the next invocation of copy in behavior.
+     * @return the position of the invocation, or -1 if there is none.
+     */
+    private int findInvocation(CtBehavior behavior, CtMethod copy, int from) throws CannotCompileException {
+        CodeAttribute code = behavior.getMethodInfo().getCodeAttribute();
+        if (code == null) {
+            return -1;
+        }
+        ConstPool constPool = code.getConstPool();
+        CodeIterator iterator = code.iterator();
+        iterator.move(from);
+        try {
+            while (iterator.hasNext()) {
+                int position = iterator.next();
+                int opcode = iterator.byteAt(position);
+                if (opcode == Opcode.INVOKEVIRTUAL || opcode == Opcode.INVOKESPECIAL || opcode == Opcode.INVOKESTATIC) {
+                    int index = iterator.u16bitAt(position + 1);
+                    // copies are never invoked through an interface method reference, like static interface methods
+                    if (constPool.getTag(index) == ConstPool.CONST_Methodref
+                            && copy.getName().equals(constPool.getMethodrefName(index))
+                            && copy.getSignature().equals(constPool.getMethodrefType(index))
+                            && copy.getDeclaringClass().getName().equals(constPool.getMethodrefClassName(index))) {
+                        return position;
+                    }
+                }
+            }
+        } catch (BadBytecode e) {
+            throw new CannotCompileException(e);
+        }
+        return -1;
+    }
+
+    private boolean isInlinable(CtMethod copy) throws CannotCompileException {
+        if ((copy.getModifiers() & (Modifier.SYNCHRONIZED | Modifier.NATIVE | Modifier.ABSTRACT)) != 0) {
+            return false;
+        }
+        CodeAttribute code = copy.getMethodInfo().getCodeAttribute();
+        CodeIterator iterator = code.iterator();
+        try {
+            while (iterator.hasNext()) {
+                int opcode = iterator.byteAt(iterator.next());
+                if (opcode == Opcode.JSR || opcode == Opcode.JSR_W || opcode == Opcode.RET) {
+                    return false;
+                }
+            }
+            if (findInvocation(copy, copy, 0) != -1) {
+                return false;
+            }
+            Frame[] frames = new Analyzer().analyze(copy.getDeclaringClass(), copy.getMethodInfo());
+            int returnSize = getSlotCount(copy.getReturnType());
+            iterator.begin();
+            while (iterator.hasNext()) {
+                int position = iterator.next();
+                Frame frame = frames[position];
+                if (isReturn(iterator.byteAt(position)) && frame != null && frame.getTopIndex() + 1 != returnSize) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (BadBytecode e) {
+            log.fine("Copy " + copy.getName() + " can't be analyzed, it will not be inlined: " + e.getMessage());
+            return false;
+        } catch (NotFoundException e) {
+            throw new CannotCompileException(e);
+        }
+    }
+
+    /**
+     * Checks that an invocation can be replaced by the code of copy, before
+     * the caller is changed.
+     */
+    private boolean canInlineAt(CtBehavior behavior, CtMethod copy, int position) throws BadBytecode, NotFoundException {
+        CodeAttribute callerCode = behavior.getMethodInfo().getCodeAttribute();
+        CodeAttribute calleeCode = copy.getMethodInfo().getCodeAttribute();
+        int base = callerCode.getMaxLocals();
+        int prologueLength = makePrologue(callerCode, copy, base).length;
+        RelocatedCode body;
+        try {
+            body = new RelocatedCode(calleeCode, base, position + INVOKE_LENGTH + prologueLength);
+        } catch (BadBytecode e) {
+            // a conditional branch of the copy doesn't reach its target anymore
+            return false;
+        }
+        // the padding of switches, and thus branch offsets, change with the final position of the code
+        if (body.maxConditionalOffset + body.getSwitchSlack() > Short.MAX_VALUE) {
+            return false;
+        }
+        // branches of the caller jumping over the inlined code may be widened
+        int maxCodeLength = callerCode.getCodeLength() + getGapLength(prologueLength, body) + GOTO_W_LENGTH * countJumps(callerCode);
+        if (maxCodeLength > MAX_CODE_LENGTH) {
+            return false;
+        }
+        if (calleeCode.getExceptionTable().size() == 0) {
+            return true;
+        }
+        Frame frame = new Analyzer().analyze(behavior.getDeclaringClass(), behavior.getMethodInfo())[position];
+        return frame != null && frame.getTopIndex() + 1 == getArgumentSlotCount(copy);
+    }
+
+    /** @return the number of branches and switches of some code. */
+    private static int countJumps(CodeAttribute code) throws BadBytecode {
+        int jumpCount = 0;
+        CodeIterator iterator = code.iterator();
+        while (iterator.hasNext()) {
+            int opcode = iterator.byteAt(iterator.next());
+            if (RelocatedCode.isConditionalBranch(opcode) || opcode == Opcode.GOTO || opcode == Opcode.JSR || opcode == Opcode.GOTO_W
+                    || opcode == Opcode.JSR_W || opcode == Opcode.TABLESWITCH || opcode == Opcode.LOOKUPSWITCH) {
+                jumpCount++;
+            }
+        }
+        return jumpCount;
+    }
+
+    /** @return the length of the gap that the prologue and the code of a copy always fit in. */
+    private static int getGapLength(int prologueLength, RelocatedCode body) {
+        return prologueLength + body.code.length + body.getSwitchSlack();
+    }
+
+    /**
+     * @return the code storing the arguments, then the receiver, of an
+     *         invocation of copy from the stack into the shifted locals of
+     *         the copy.
+     */
+    private byte[] makePrologue(CodeAttribute callerCode, CtMethod copy, int base) throws NotFoundException {
+        Bytecode prologue = new Bytecode(callerCode.getConstPool());
+        CtClass[] parameterTypes = copy.getParameterTypes();
+        boolean isStatic = Modifier.isStatic(copy.getModifiers());
+        int[] parameterSlots = new int[parameterTypes.length];
+        int slot = isStatic ? 0 : 1;
+        for (int indexParameter = 0; indexParameter < parameterTypes.length; indexParameter++) {
+            parameterSlots[indexParameter] = slot;
+            slot += getSlotCount(parameterTypes[indexParameter]);
+        }
+        for (int indexParameter = parameterTypes.length - 1; indexParameter >= 0; indexParameter--) {
+            prologue.addStore(base + parameterSlots[indexParameter], parameterTypes[indexParameter]);
+        }
+        if (!isStatic) {
+            prologue.addAstore(base);
+        }
+        return prologue.get();
+    }
+
+    /**
+     * Replaces an invocation of copy by its code.
+     * @return the position following the inlined code.
+     */
+    private int inlineAt(CtBehavior behavior, CtMethod copy, int position) throws BadBytecode, NotFoundException {
+        CodeAttribute callerCode = behavior.getMethodInfo().getCodeAttribute();
+        CodeAttribute calleeCode = copy.getMethodInfo().getCodeAttribute();
+        int base = callerCode.getMaxLocals();
+        byte[] prologueCode = makePrologue(callerCode, copy, base);
+
+        // the layout of switches depends on the final position of the code, known once the gap is inserted,
+        // the gap leaves room for their padding, and canInlineAt checked their branches with it
+        RelocatedCode estimatedBody = new RelocatedCode(calleeCode, base, position + INVOKE_LENGTH + prologueCode.length);
+        CodeIterator iterator = callerCode.iterator();
+        Gap gap = iterator.insertGapAt(position + INVOKE_LENGTH, getGapLength(prologueCode.length, estimatedBody), true);
+        int bodyPosition = gap.position + prologueCode.length;
+        RelocatedCode body = new RelocatedCode(calleeCode, base, bodyPosition);
+
+        for (int index = gap.position - INVOKE_LENGTH; index < gap.position; index++) {
+            iterator.writeByte(Opcode.NOP, index);
+        }
+        iterator.write(prologueCode, gap.position);
+        iterator.write(body.code, bodyPosition);
+        for (int index = bodyPosition + body.code.length; index < gap.position + gap.length; index++) {
+            iterator.writeByte(Opcode.NOP, index);
+        }
+
+        // handlers of the copy are more specific than the ones of the caller around the invocation
+        ExceptionTable calleeHandlers = calleeCode.getExceptionTable();
+        ExceptionTable callerHandlers = callerCode.getExceptionTable();
+        for (int indexHandler = 0; indexHandler < calleeHandlers.size(); indexHandler++) {
+            callerHandlers.add(indexHandler, bodyPosition + body.positions[calleeHandlers.startPc(indexHandler)],
+                    bodyPosition + body.positions[calleeHandlers.endPc(indexHandler)],
+                    bodyPosition + body.positions[calleeHandlers.handlerPc(indexHandler)], calleeHandlers.catchType(indexHandler));
+        }
+        callerCode.setMaxLocals(Math.max(callerCode.getMaxLocals(), base + calleeCode.getMaxLocals()));
+        return gap.position + gap.length;
+    }
+
+    private int getArgumentSlotCount(CtMethod copy) throws NotFoundException {
+        int slotCount = Modifier.isStatic(copy.getModifiers()) ? 0 : 1;
+        for (CtClass parameterType : copy.getParameterTypes()) {
+            slotCount += getSlotCount(parameterType);
+        }
+        return slotCount;
+    }
+
+    private static int getSlotCount(CtClass type) {
+        if (type == CtClass.voidType) {
+            return 0;
+        }
+        return type == CtClass.longType || type == CtClass.doubleType ? 2 : 1;
+    }
+
+    private static boolean isReturn(int opcode) {
+        return opcode >= Opcode.IRETURN && opcode <= Opcode.RETURN;
+    }
+
+    /**
+     * The code of a copy, ready to be written at a given position of a
+     * caller : locals are shifted, returns become jumps to the end of the
+     * code, and jumps are widened when needed.
+     */
+    private static final class RelocatedCode {
+        private final byte[] code;
+        /** New relative position of every old position, including the end of the code. */
+        private final int[] positions;
+        private int switchCount;
+        /** Largest distance between a relocated conditional branch and its target. */
+        private int maxConditionalOffset;
+
+        private RelocatedCode(CodeAttribute calleeCode, int base, int start) throws BadBytecode {
+            byte[] oldCode = calleeCode.getCode();
+            positions = new int[oldCode.length + 1];
+            CodeIterator iterator = calleeCode.iterator();
+            int newLength = 0;
+            while (iterator.hasNext()) {
+                int oldPosition = iterator.next();
+                positions[oldPosition] = newLength;
+                int nextOldPosition = iterator.hasNext() ? iterator.lookAhead() : oldCode.length;
+                newLength += getNewLength(oldCode, oldPosition, nextOldPosition, base, start + newLength);
+            }
+            positions[oldCode.length] = newLength;
+
+            code = new byte[newLength];
+            iterator.begin();
+            while (iterator.hasNext()) {
+                int oldPosition = iterator.next();
+                int nextOldPosition = iterator.hasNext() ? iterator.lookAhead() : oldCode.length;
+                relocate(oldCode, oldPosition, nextOldPosition, base, start);
+            }
+        }
+
+        private int getNewLength(byte[] oldCode, int oldPosition, int nextOldPosition, int base, int newAbsolutePosition) {
+            int opcode = oldCode[oldPosition] & BYTE_MASK;
+            if (opcode == Opcode.WIDE) {
+                int wideOpcode = oldCode[oldPosition + 1] & BYTE_MASK;
+                return getLocalLength(wideOpcode, readU16(oldCode, oldPosition + 2) + base,
+                        wideOpcode == Opcode.IINC ? readS16(oldCode, oldPosition + INT_LENGTH) : 0);
+            }
+            if (LocalVariableInstructions.isLocalAccess(opcode)) {
+                return getLocalLength(opcode, LocalVariableInstructions.getLocalIndex(oldCode, oldPosition) + base,
+                        opcode == Opcode.IINC ? oldCode[oldPosition + 2] : 0);
+            }
+            if (opcode == Opcode.GOTO || opcode == Opcode.GOTO_W) {
+                return GOTO_W_LENGTH;
+            }
+            if (isReturn(opcode)) {
+                // the last return simply falls through the end of the inlined code
+                return nextOldPosition == oldCode.length ? 0 : GOTO_W_LENGTH;
+            }
+            if (opcode == Opcode.TABLESWITCH || opcode == Opcode.LOOKUPSWITCH) {
+                int oldPadding = getSwitchPadding(oldPosition);
+                return 1 + getSwitchPadding(newAbsolutePosition) + nextOldPosition - oldPosition - 1 - oldPadding;
+            }
+            return nextOldPosition - oldPosition;
+        }
+
+        private void relocate(byte[] oldCode, int oldPosition, int nextOldPosition, int base, int start) throws BadBytecode {
+            int opcode = oldCode[oldPosition] & BYTE_MASK;
+            int newPosition = positions[oldPosition];
+            if (opcode == Opcode.WIDE) {
+                int wideOpcode = oldCode[oldPosition + 1] & BYTE_MASK;
+                writeLocal(newPosition, wideOpcode, readU16(oldCode, oldPosition + 2) + base,
+                        wideOpcode == Opcode.IINC ? readS16(oldCode, oldPosition + INT_LENGTH) : 0);
+            } else if (LocalVariableInstructions.isLocalAccess(opcode)) {
+                writeLocal(newPosition, opcode, LocalVariableInstructions.getLocalIndex(oldCode, oldPosition) + base,
+                        opcode == Opcode.IINC ? oldCode[oldPosition + 2] : 0);
+            } else if (opcode == Opcode.GOTO) {
+                writeGotoW(newPosition, positions[oldPosition + readS16(oldCode, oldPosition + 1)]);
+            } else if (opcode == Opcode.GOTO_W) {
+                writeGotoW(newPosition, positions[oldPosition + readS32(oldCode, oldPosition + 1)]);
+            } else if (isReturn(opcode)) {
+                if (nextOldPosition != oldCode.length) {
+                    writeGotoW(newPosition, code.length);
+                }
+            } else if (isConditionalBranch(opcode)) {
+                int offset = positions[oldPosition + readS16(oldCode, oldPosition + 1)] - newPosition;
+                maxConditionalOffset = Math.max(maxConditionalOffset, Math.abs(offset));
+                if (offset > Short.MAX_VALUE || offset < Short.MIN_VALUE) {
+                    throw new BadBytecode("Branch offset too large after inlining: " + offset);
+                }
+                code[newPosition] = (byte) opcode;
+                writeS16(newPosition + 1, offset);
+            } else if (opcode == Opcode.TABLESWITCH || opcode == Opcode.LOOKUPSWITCH) {
+                switchCount++;
+                relocateSwitch(oldCode, oldPosition, opcode, newPosition, start);
+            } else {
+                System.arraycopy(oldCode, oldPosition, code, newPosition, nextOldPosition - oldPosition);
+            }
+        }
+
+        private void relocateSwitch(byte[] oldCode, int oldPosition, int opcode, int newPosition, int start) {
+            int oldOperands = oldPosition + 1 + getSwitchPadding(oldPosition);
+            int newOperands = newPosition + 1 + getSwitchPadding(start + newPosition);
+            code[newPosition] = (byte) opcode;
+            writeS32(newOperands, positions[oldPosition + readS32(oldCode, oldOperands)] - newPosition);
+            // default, then low and high or the number of pairs, then targets
+            int firstTarget = SWITCH_HEADER_LENGTH;
+            int targetCount;
+            int targetStep;
+            if (opcode == Opcode.TABLESWITCH) {
+                int low = readS32(oldCode, oldOperands + INT_LENGTH);
+                int high = readS32(oldCode, oldOperands + 2 * INT_LENGTH);
+                writeS32(newOperands + INT_LENGTH, low);
+                writeS32(newOperands + 2 * INT_LENGTH, high);
+                targetCount = high - low + 1;
+                targetStep = INT_LENGTH;
+            } else {
+                int pairCount = readS32(oldCode, oldOperands + INT_LENGTH);
+                writeS32(newOperands + INT_LENGTH, pairCount);
+                targetCount = pairCount;
+                targetStep = 2 * INT_LENGTH;
+            }
+            for (int indexTarget = 0; indexTarget < targetCount; indexTarget++) {
+                int offset = firstTarget + indexTarget * targetStep;
+                if (opcode == Opcode.LOOKUPSWITCH) {
+                    // the match of the pair precedes its target
+                    writeS32(newOperands + offset - INT_LENGTH, readS32(oldCode, oldOperands + offset - INT_LENGTH));
+                }
+                writeS32(newOperands + offset, positions[oldPosition + readS32(oldCode, oldOperands + offset)] - newPosition);
+            }
+        }
+
+        /**
+         * @return the most the length of the code, or the distance between two
+         *         of its instructions, can change when it is relocated at
+         *         another position : each switch may be padded differently.
+         */
+        private int getSwitchSlack() {
+            return (SWITCH_ALIGNMENT - 1) * switchCount;
+        }
+
+        private static boolean isConditionalBranch(int opcode) {
+            return opcode >= Opcode.IFEQ && opcode <= Opcode.IF_ACMPNE || opcode == Opcode.IFNULL || opcode == Opcode.IFNONNULL;
+        }
+
+        private static int getLocalLength(int opcode, int index, int increment) {
+            boolean isWide = index > MAX_UNSIGNED_BYTE || increment > Byte.MAX_VALUE || increment < Byte.MIN_VALUE;
+            if (LocalVariableInstructions.getExplicitOpcode(opcode) == Opcode.IINC) {
+                return isWide ? WIDE_IINC_LENGTH : IINC_LENGTH;
+            }
+            return isWide ? WIDE_LOCAL_LENGTH : LOCAL_LENGTH;
+        }
+
+        private void writeLocal(int newPosition, int opcode, int index, int increment) {
+            int explicitOpcode = LocalVariableInstructions.getExplicitOpcode(opcode);
+            boolean isWide = index > MAX_UNSIGNED_BYTE || increment > Byte.MAX_VALUE || increment < Byte.MIN_VALUE;
+            if (isWide) {
+                code[newPosition] = (byte) Opcode.WIDE;
+                code[newPosition + 1] = (byte) explicitOpcode;
+                writeS16(newPosition + 2, index);
+                if (explicitOpcode == Opcode.IINC) {
+                    writeS16(newPosition + INT_LENGTH, increment);
+                }
+            } else {
+                code[newPosition] = (byte) explicitOpcode;
+                code[newPosition + 1] = (byte) index;
+                if (explicitOpcode == Opcode.IINC) {
+                    code[newPosition + 2] = (byte) increment;
+                }
+            }
+        }
+
+        private void writeGotoW(int newPosition, int newTarget) {
+            code[newPosition] = (byte) Opcode.GOTO_W;
+            writeS32(newPosition + 1, newTarget - newPosition);
+        }
+
+        private void writeS16(int position, int value) {
+            ByteArray.write16bit(value, code, position);
+        }
+
+        private void writeS32(int position, int value) {
+            ByteArray.write32bit(value, code, position);
+        }
+
+        private static int getSwitchPadding(int position) {
+            return (SWITCH_ALIGNMENT - (position + 1) % SWITCH_ALIGNMENT) % SWITCH_ALIGNMENT;
+        }
+
+        private static int readU16(byte[] code, int position) {
+            return ByteArray.readU16bit(code, position);
+        }
+
+        private static int readS16(byte[] code, int position) {
+            return ByteArray.readS16bit(code, position);
+        }
+
+        private static int readS32(byte[] code, int position) {
+            return ByteArray.read32bit(code, position);
+        }
+    }
+}
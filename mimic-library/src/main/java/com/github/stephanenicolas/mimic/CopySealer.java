@@ -0,0 +1,107 @@
+package com.github.stephanenicolas.mimic;
+
+import java.util.Iterator;
+
+import javassist.CannotCompileException;
+import javassist.CtMethod;
+import javassist.bytecode.AccessFlag;
+import javassist.bytecode.AttributeInfo;
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.CodeIterator;
+import javassist.bytecode.LocalVariableAttribute;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.Opcode;
+
+/**
+ * Restricts a {@code _copy_} method, created by {@link MimicCreator}, to its
+ * role of helper : it becomes {@code private final synthetic}, and even
+ * {@code static} when its code never uses {@code this} and it is not
+ * {@code synchronized}, as it would then lock its class instead of
+ * {@code this}. Invocations compiled
+ * afterwards use {@code invokespecial} or {@code invokestatic}, that the JIT
+ * binds statically, and copies can't be overridden by copies of subclasses
+ * mimicing the same template.
+ *
+ * @author SNI
+ */
+final class CopySealer {
+
+    private static final int BYTE_MASK = 0xFF;
+    private static final int WIDE_INDEX_OFFSET = 2;
+
+    /**
+     * Seals a copy. It must not be invoked yet.
+     * @param copy the copy to seal.
+     * @param isUsingThis whether the code of copy uses {@code this}, as
+     *            computed by {@link #usesThis(CodeAttribute)} on copy or on the
+     *            method it was copied from.
+     * @throws CannotCompileException if the bytecode of copy is invalid.
+     */
+    void seal(CtMethod copy, boolean isUsingThis) throws CannotCompileException {
+        MethodInfo methodInfo = copy.getMethodInfo();
+        int accessFlags = AccessFlag.setPrivate(methodInfo.getAccessFlags()) | AccessFlag.FINAL | AccessFlag.SYNTHETIC;
+        CodeAttribute code = methodInfo.getCodeAttribute();
+        try {
+            if (code != null && (accessFlags & (AccessFlag.STATIC | AccessFlag.SYNCHRONIZED)) == 0 && !isUsingThis) {
+                shiftLocalsDown(code);
+                accessFlags |= AccessFlag.STATIC;
+                methodInfo.setAccessFlags(accessFlags);
+                methodInfo.rebuildStackMapIf6(copy.getDeclaringClass().getClassPool(), copy.getDeclaringClass().getClassFile2());
+            } else {
+                methodInfo.setAccessFlags(accessFlags);
+            }
+        } catch (BadBytecode e) {
+            throw new CannotCompileException(e);
+        }
+    }
+
+    /** @return true if an instruction accesses local 0, that holds this. */
+    static boolean usesThis(CodeAttribute code) throws BadBytecode {
+        byte[] bytecode = code.getCode();
+        CodeIterator iterator = code.iterator();
+        while (iterator.hasNext()) {
+            int position = iterator.next();
+            int opcode = bytecode[position] & BYTE_MASK;
+            if (opcode == Opcode.WIDE) {
+                if (iterator.u16bitAt(position + WIDE_INDEX_OFFSET) == 0) {
+                    return true;
+                }
+            } else if (LocalVariableInstructions.isLocalAccess(opcode) && LocalVariableInstructions.getLocalIndex(bytecode, position) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Decrements the index of every local variable, once local 0 is not used
+     * anymore. Instructions keep their form, so the length of the code
+     * doesn't change. Local variable tables are removed rather than shifted.
+     */
+    private void shiftLocalsDown(CodeAttribute code) throws BadBytecode {
+        byte[] bytecode = code.getCode();
+        CodeIterator iterator = code.iterator();
+        while (iterator.hasNext()) {
+            int position = iterator.next();
+            int opcode = bytecode[position] & BYTE_MASK;
+            if (opcode == Opcode.WIDE) {
+                iterator.write16bit(iterator.u16bitAt(position + WIDE_INDEX_OFFSET) - 1, position + WIDE_INDEX_OFFSET);
+            } else if (LocalVariableInstructions.isLocalAccess(opcode)) {
+                if (LocalVariableInstructions.isShortForm(opcode)) {
+                    // short forms are consecutive for each type, and index 0 is never used
+                    iterator.writeByte(opcode - 1, position);
+                } else {
+                    iterator.writeByte(iterator.byteAt(position + 1) - 1, position + 1);
+                }
+            }
+        }
+        code.setMaxLocals(code.getMaxLocals() - 1);
+        for (Iterator<?> attributes = code.getAttributes().iterator(); attributes.hasNext();) {
+            String attributeName = ((AttributeInfo) attributes.next()).getName();
+            if (LocalVariableAttribute.tag.equals(attributeName) || LocalVariableAttribute.typeTag.equals(attributeName)) {
+                attributes.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.github.stephanenicolas.mimic;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import lombok.Getter;
+import lombok.extern.java.Log;
+
+/**
+ * Persists, between builds, which templates are mimicked by every transformed
+ * class, together with a digest of the templates and of their ancestors and
+ * interfaces, and the original, untransformed, bytecode of the class.
+ *
+ * <p>
+ * When a template changes but its users don't, the compiler leaves the
+ * already transformed users untouched. The index makes it possible to
+ * detect them, and to weave them again from their original bytecode, without
+ * a clean build.
+ * </p>
+ *
+ * <p>
+ * This class is thread safe.
+ * </p>
+ *
+ * @author SNI
+ */
+@Log
+public class DependencyIndex {
+
+    private static final String INDEX_FILE_NAME = "index.properties";
+    private static final String ORIGINALS_DIRECTORY_NAME = "originals";
+    private static final String TEMPLATE_NAME_SEPARATOR = ",";
+
+    private final File directory;
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+    /**
+     * Creates an index.
+     * @param directory the directory where the index is stored. It is created if needed.
+     */
+    public DependencyIndex(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Loads the index persisted by a previous build, if any. A corrupted
+     * index is ignored.
+     */
+    public synchronized void load() {
+        entries.clear();
+        File indexFile = new File(directory, INDEX_FILE_NAME);
+        if (!indexFile.isFile()) {
+            return;
+        }
+        Properties properties = new Properties();
+        try {
+            InputStream in = new FileInputStream(indexFile);
+            try {
+                properties.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            log.warning("Impossible to read index " + indexFile + ": " + e.getMessage());
+            return;
+        }
+        for (String targetName : properties.stringPropertyNames()) {
+            String[] values = properties.getProperty(targetName).split(" ");
+            if (values.length == 2) {
+                entries.put(targetName, new Entry(Arrays.asList(values[0].split(TEMPLATE_NAME_SEPARATOR)), values[1]));
+            }
+        }
+    }
+
+    /**
+     * Persists the index.
+     * @throws IOException if the index can't be written.
+     */
+    public synchronized void save() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Impossible to create directory " + directory);
+        }
+        Properties properties = new Properties();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            StringBuilder templateNames = new StringBuilder();
+            for (String templateName : entry.getValue().getTemplateNames()) {
+                if (templateNames.length() != 0) {
+                    templateNames.append(TEMPLATE_NAME_SEPARATOR);
+                }
+                templateNames.append(templateName);
+            }
+            properties.setProperty(entry.getKey(), templateNames + " " + entry.getValue().getTemplateDigest());
+        }
+        OutputStream out = new FileOutputStream(new File(directory, INDEX_FILE_NAME));
+        try {
+            properties.store(out, "Mimic dependency index");
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @param targetName a transformed class.
+     * @return what is known about the templates of this class, or null if it is not indexed.
+     */
+    public synchronized Entry get(String targetName) {
+        return entries.get(targetName);
+    }
+
+    /**
+     * Indexes a class that is about to be transformed.
+     * @param targetName the class to transform.
+     * @param templateNames the templates it mimics.
+     * @param templateDigest the digest of the templates and of their hierarchies.
+     * @param originalBytecode the untransformed bytecode of the class.
+     * @throws IOException if the original bytecode can't be stored.
+     */
+    public void put(String targetName, List<String> templateNames, String templateDigest, byte[] originalBytecode) throws IOException {
+        File originalFile = getOriginalFile(targetName);
+        File parent = originalFile.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Impossible to create directory " + parent);
+        }
+        OutputStream out = new FileOutputStream(originalFile);
+        try {
+            out.write(originalBytecode);
+        } finally {
+            out.close();
+        }
+        synchronized (this) {
+            entries.put(targetName, new Entry(templateNames, templateDigest));
+        }
+    }
+
+    /**
+     * @param targetName an indexed class.
+     * @return the untransformed bytecode of this class, or null if it was not stored.
+     * @throws IOException if the original bytecode can't be read.
+     */
+    public byte[] getOriginalBytecode(String targetName) throws IOException {
+        File originalFile = getOriginalFile(targetName);
+        return originalFile.isFile() ? Digests.readFully(new FileInputStream(originalFile)) : null;
+    }
+
+    /**
+     * @param templateName a template.
+     * @return all indexed classes that mimic this template, among others.
+     */
+    public synchronized List<String> getTargets(String templateName) {
+        List<String> targetNames = new ArrayList<String>();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            if (entry.getValue().getTemplateNames().contains(templateName)) {
+                targetNames.add(entry.getKey());
+            }
+        }
+        return targetNames;
+    }
+
+    /**
+     * Removes classes that don't exist anymore from the index.
+     * @param existingClassNames all classes that still exist.
+     */
+    public synchronized void retainAll(Collection<String> existingClassNames) {
+        Set<String> removedTargetNames = new HashSet<String>(entries.keySet());
+        removedTargetNames.removeAll(existingClassNames);
+        for (String removedTargetName : removedTargetNames) {
+            entries.remove(removedTargetName);
+            File originalFile = getOriginalFile(removedTargetName);
+            if (originalFile.exists() && !originalFile.delete()) {
+                log.warning("Impossible to delete " + originalFile);
+            }
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    private File getOriginalFile(String targetName) {
+        return new File(new File(directory, ORIGINALS_DIRECTORY_NAME), targetName.replace('.', File.separatorChar) + ".class");
+    }
+
+    /** The templates of a transformed class, as they were when the class was transformed. */
+    public static final class Entry {
+        @Getter
+        private final List<String> templateNames;
+        @Getter
+        private final String templateDigest;
+
+        Entry(List<String> templateNames, String templateDigest) {
+            this.templateNames = Collections.unmodifiableList(new ArrayList<String>(templateNames));
+            this.templateDigest = templateDigest;
+        }
+    }
+}
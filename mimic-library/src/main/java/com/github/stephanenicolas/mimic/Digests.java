@@ -0,0 +1,126 @@
+package com.github.stephanenicolas.mimic;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import javassist.ClassPool;
+import javassist.bytecode.ClassFile;
+
+/**
+ * Content hashes of class files, used to detect changes between builds.
+ *
+ * @author SNI
+ */
+final class Digests {
+
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+    private static final int BUFFER_SIZE = 8192;
+    private static final int HEX_MASK = 0xFF;
+    private static final int HEX_PADDING = 0x100;
+    private static final int HEX_RADIX = 16;
+
+    private Digests() {
+    }
+
+    /**
+     * Hashes some byte arrays.
+     * @param parts the byte arrays to hash, in order.
+     * @return an hexadecimal SHA-1 that changes whenever one of the parts changes.
+     */
+    static String sha1(byte[]... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            for (byte[] part : parts) {
+                // the length of each part prevents collisions between concatenations
+                digest.update(Integer.toString(part.length).getBytes("UTF-8"));
+                digest.update(part);
+            }
+            return toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(DIGEST_ALGORITHM + " is always supported", e);
+        } catch (IOException e) {
+            throw new IllegalStateException("UTF-8 is always supported", e);
+        }
+    }
+
+    /**
+     * Hashes the class file of a class, and of all its ancestors and
+     * interfaces. Classes of the JDK are considered as never changing.
+     * @param pool the pool used to find class files.
+     * @param className the class to hash.
+     * @return an hexadecimal SHA-1 that changes whenever one of the class files changes.
+     * @throws IOException if a class file can't be read.
+     */
+    static String sha1OfHierarchy(ClassPool pool, String className) throws IOException {
+        List<byte[]> parts = new ArrayList<byte[]>();
+        Set<String> visitedClassNames = new HashSet<String>();
+        LinkedList<String> classNamesToVisit = new LinkedList<String>();
+        classNamesToVisit.add(className);
+        while (!classNamesToVisit.isEmpty()) {
+            String classNameToVisit = classNamesToVisit.removeFirst();
+            if (!visitedClassNames.add(classNameToVisit) || classNameToVisit.startsWith("java.")) {
+                continue;
+            }
+            byte[] bytecode = readClassFile(pool, classNameToVisit);
+            if (bytecode == null) {
+                // a missing class is part of the state of the hierarchy too
+                parts.add(classNameToVisit.getBytes("UTF-8"));
+                continue;
+            }
+            parts.add(bytecode);
+            ClassFile classFile = new ClassFile(new DataInputStream(new ByteArrayInputStream(bytecode)));
+            if (classFile.getSuperclass() != null) {
+                classNamesToVisit.add(classFile.getSuperclass());
+            }
+            for (String interfaceName : classFile.getInterfaces()) {
+                classNamesToVisit.add(interfaceName);
+            }
+        }
+        return sha1(parts.toArray(new byte[parts.size()][]));
+    }
+
+    /**
+     * Reads the class file of a class, without parsing nor loading it.
+     * @param pool the pool used to find the class file.
+     * @param className the class to read.
+     * @return the content of the class file, or null if it can't be found.
+     * @throws IOException if the class file can't be read.
+     */
+    static byte[] readClassFile(ClassPool pool, String className) throws IOException {
+        URL classFile = pool.find(className);
+        return classFile == null ? null : readFully(classFile.openStream());
+    }
+
+    static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int length;
+            while ((length = in.read(buffer)) != -1) {
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder();
+        for (byte b : bytes) {
+            builder.append(Integer.toString((b & HEX_MASK) + HEX_PADDING, HEX_RADIX).substring(1));
+        }
+        return builder.toString();
+    }
+}
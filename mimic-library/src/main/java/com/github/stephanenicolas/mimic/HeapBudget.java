@@ -0,0 +1,86 @@
+package com.github.stephanenicolas.mimic;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Tells a worker when to drop its class pool, so that the heap used while
+ * transforming a build stays within a budget. The used heap includes the
+ * garbage left since the last collection : once a worker dropped its pool,
+ * it waits for a collection before dropping the next one, as long as the
+ * heap is over budget.
+ *
+ * <p>
+ * Every worker has its own instance.
+ * </p>
+ *
+ * @author SNI
+ */
+final class HeapBudget {
+
+    private static final long KILO = 1024;
+
+    private final long maxUsedBytes;
+    private final List<GarbageCollectorMXBean> garbageCollectors = ManagementFactory.getGarbageCollectorMXBeans();
+    private long collectionCountAtRelease = -1;
+
+    /**
+     * @param maxUsedBytes the maximum number of bytes used in the heap.
+     */
+    HeapBudget(long maxUsedBytes) {
+        this.maxUsedBytes = maxUsedBytes;
+    }
+
+    /**
+     * Parses a size, in bytes or with a suffix : {@code 64k}, {@code 512m}, {@code 2g}.
+     * @param size the size.
+     * @return the number of bytes.
+     * @throws IllegalArgumentException if size is not a positive size.
+     */
+    static long parseSize(String size) {
+        String trimmedSize = size.trim().toLowerCase(Locale.ENGLISH);
+        long unit = 1;
+        if (trimmedSize.endsWith("k")) {
+            unit = KILO;
+        } else if (trimmedSize.endsWith("m")) {
+            unit = KILO * KILO;
+        } else if (trimmedSize.endsWith("g")) {
+            unit = KILO * KILO * KILO;
+        }
+        try {
+            long bytes = unit * Long.parseLong(unit == 1 ? trimmedSize : trimmedSize.substring(0, trimmedSize.length() - 1));
+            if (bytes <= 0) {
+                throw new IllegalArgumentException("Size must be positive: " + size);
+            }
+            return bytes;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid size: " + size, e);
+        }
+    }
+
+    /**
+     * @return true if the pool of the worker should be dropped now.
+     */
+    boolean shouldReleasePool() {
+        Runtime runtime = Runtime.getRuntime();
+        if (runtime.totalMemory() - runtime.freeMemory() <= maxUsedBytes) {
+            return false;
+        }
+        long collectionCount = getCollectionCount();
+        if (collectionCount == collectionCountAtRelease) {
+            return false;
+        }
+        collectionCountAtRelease = collectionCount;
+        return true;
+    }
+
+    private long getCollectionCount() {
+        long collectionCount = 0;
+        for (GarbageCollectorMXBean garbageCollector : garbageCollectors) {
+            collectionCount += Math.max(0, garbageCollector.getCollectionCount());
+        }
+        return collectionCount;
+    }
+}
@@ -0,0 +1,126 @@
+package com.github.stephanenicolas.mimic;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javassist.ClassPath;
+import javassist.NotFoundException;
+
+/**
+ * The class files of a directory, then the classes visible from a class
+ * loader, shared by class pools that are dropped and created again while
+ * transforming a build. A class read by more than one pool, like a template
+ * or a common ancestor, is hot : its class file is kept in a least recently
+ * used cache, bounded in bytes, and next pools read it from memory.
+ *
+ * <p>
+ * This class is thread safe.
+ * </p>
+ *
+ * @author SNI
+ */
+final class HotClassPath implements ClassPath {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final File directory;
+    private final ClassLoader classLoader;
+    private final long capacity;
+    private final Set<String> openedClassNames = new HashSet<String>();
+    private final LinkedHashMap<String, byte[]> hotClassfiles = new LinkedHashMap<String, byte[]>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+    private long size;
+
+    /**
+     * @param directory a directory of class files.
+     * @param classLoader the class loader used to find the classes that are not in directory.
+     * @param capacity the maximum number of bytes of the hot class files kept in memory.
+     */
+    HotClassPath(File directory, ClassLoader classLoader, long capacity) {
+        this.directory = directory;
+        this.classLoader = classLoader;
+        this.capacity = capacity;
+    }
+
+    @Override
+    public InputStream openClassfile(String className) throws NotFoundException {
+        synchronized (this) {
+            byte[] classfile = hotClassfiles.get(className);
+            if (classfile != null) {
+                return new ByteArrayInputStream(classfile);
+            }
+        }
+        InputStream in = openColdClassfile(className);
+        if (in == null) {
+            return null;
+        }
+        synchronized (this) {
+            if (openedClassNames.add(className)) {
+                return in;
+            }
+        }
+        try {
+            byte[] classfile = Digests.readFully(in);
+            putHotClassfile(className, classfile);
+            return new ByteArrayInputStream(classfile);
+        } catch (IOException e) {
+            throw new NotFoundException(className, e);
+        }
+    }
+
+    @Override
+    public URL find(String className) {
+        File classfile = getClassfile(className);
+        if (classfile.isFile()) {
+            try {
+                return classfile.toURI().toURL();
+            } catch (MalformedURLException e) {
+                return null;
+            }
+        }
+        return classLoader.getResource(className.replace('.', '/') + ".class");
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private InputStream openColdClassfile(String className) throws NotFoundException {
+        File classfile = getClassfile(className);
+        if (classfile.isFile()) {
+            try {
+                return new FileInputStream(classfile);
+            } catch (FileNotFoundException e) {
+                throw new NotFoundException(className, e);
+            }
+        }
+        return classLoader.getResourceAsStream(className.replace('.', '/') + ".class");
+    }
+
+    private File getClassfile(String className) {
+        return new File(directory, className.replace('.', File.separatorChar) + ".class");
+    }
+
+    private synchronized void putHotClassfile(String className, byte[] classfile) {
+        if (classfile.length > capacity || hotClassfiles.containsKey(className)) {
+            return;
+        }
+        hotClassfiles.put(className, classfile);
+        size += classfile.length;
+        for (Iterator<Map.Entry<String, byte[]>> entries = hotClassfiles.entrySet().iterator(); size > capacity && entries.hasNext();) {
+            size -= entries.next().getValue().length;
+            entries.remove();
+        }
+    }
+}
@@ -0,0 +1,492 @@
+package com.github.stephanenicolas.mimic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import javassist.ClassPath;
+import javassist.ClassPool;
+import javassist.NotFoundException;
+
+import com.github.stephanenicolas.mimic.ParallelTransformer.ResultHandler;
+import com.github.stephanenicolas.mimic.ParallelTransformer.TransformationResult;
+
+/**
+ * Transforms the classes of a jar into another jar, in a single pass over its
+ * entries, without extracting them. Entries are read in the order of the
+ * central directory of the input jar, and written in the same order :
+ * <ul>
+ * <li>entries that are not class files, or whose constant pool doesn't
+ * mention {@link com.github.stephanenicolas.mimic.annotations.Mimic}, are
+ * copied as they are, headers and compressed data, from file to file. They
+ * are never inflated nor compressed again ;</li>
+ * <li>other class files are inflated, woven, and deflated again.</li>
+ * </ul>
+ * Classes generated by the weaving, like the helpers of shared templates, are
+ * appended after the entries of the input jar, unless it already contains
+ * them.
+ * At most one class file is held in memory, apart from the classes held by
+ * the javassist class pool, which can be bounded like the ones of
+ * {@link ParallelTransformer}. Templates and ancestors are resolved in the
+ * input jar first, then on the class path.
+ *
+ * <p>
+ * Zip64 archives, bigger than 4 GB or with more than 65535 entries, and
+ * archives split over several files are not supported.
+ * </p>
+ *
+ * @author SNI
+ */
+final class JarTransformer {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int LOCAL_VERSION = 4;
+    private static final int LOCAL_FLAGS = 6;
+    private static final int LOCAL_METHOD = 8;
+    private static final int LOCAL_DATE = 12;
+    private static final int LOCAL_CRC = 14;
+    private static final int LOCAL_NAME_LENGTH = 26;
+    private static final int LOCAL_EXTRA_LENGTH = 28;
+
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int CENTRAL_VERSION_MADE_BY = 4;
+    private static final int CENTRAL_VERSION = 6;
+    private static final int CENTRAL_FLAGS = 8;
+    private static final int CENTRAL_METHOD = 10;
+    private static final int CENTRAL_DATE = 14;
+    private static final int CENTRAL_CRC = 16;
+    private static final int CENTRAL_COMPRESSED_SIZE = 20;
+    private static final int CENTRAL_SIZE = 24;
+    private static final int CENTRAL_NAME_LENGTH = 28;
+    private static final int CENTRAL_EXTRA_LENGTH = 30;
+    private static final int CENTRAL_COMMENT_LENGTH = 32;
+    private static final int CENTRAL_DISK = 34;
+    private static final int CENTRAL_LOCAL_OFFSET = 42;
+
+    private static final int END_SIZE = 22;
+    private static final int END_DISK = 4;
+    private static final int END_DISK_ENTRY_COUNT = 8;
+    private static final int END_ENTRY_COUNT = 10;
+    private static final int END_DIRECTORY_SIZE = 12;
+    private static final int END_DIRECTORY_OFFSET = 16;
+    private static final int END_COMMENT_LENGTH = 20;
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+
+    private static final int DATA_DESCRIPTOR_FLAG = 0x08;
+    private static final int DATA_DESCRIPTOR_SIZE = 12;
+    private static final int SIGNATURE_SIZE = 4;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final int SHORT_MASK = 0xFFFF;
+    private static final long INT_MASK = 0xFFFFFFFFL;
+    private static final int BUFFER_SIZE = 8192;
+    /** Zip 2.0, needed to inflate entries. */
+    private static final int DEFLATE_VERSION = 20;
+    /** 1980-01-01, the first DOS date, so that generated entries don't depend on the time of the build. */
+    private static final int FIRST_DOS_DATE = 0x21;
+
+    private static final String CLASS_SUFFIX = ".class";
+    /** Versioned or signature related classes, that can't be resolved by their name. */
+    private static final String META_INF_PREFIX = "META-INF/";
+
+    private final MimicProcessor processor;
+    private final long heapBudget;
+    private final int poolBatchSize;
+    private final AtomicInteger releasedPoolCount = new AtomicInteger();
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    /**
+     * @param processor the processor transforming every class.
+     * @param heapBudget the number of bytes of heap above which the class pool is dropped, 0 for no limit.
+     * @param poolBatchSize the number of classes after which the class pool is dropped, 0 for no limit.
+     */
+    JarTransformer(MimicProcessor processor, long heapBudget, int poolBatchSize) {
+        this.processor = processor;
+        this.heapBudget = heapBudget;
+        this.poolBatchSize = poolBatchSize;
+    }
+
+    /**
+     * Transforms the classes of a jar.
+     * @param inputJar the jar containing the classes to transform.
+     * @param outputJar the jar to write, must not be inputJar.
+     * @param resultHandler receives one result per class that may be annotated, in the order of the jar.
+     * @throws IOException if a jar can't be read or written, or if the handler fails.
+     */
+    public void transform(File inputJar, File outputJar, ResultHandler resultHandler) throws IOException {
+        if (inputJar.getCanonicalFile().equals(outputJar.getCanonicalFile())) {
+            throw new IOException("Impossible to transform jar " + inputJar + " in place");
+        }
+        releasedPoolCount.set(0);
+        Thread currentThread = Thread.currentThread();
+        ClassLoader contextClassLoader = currentThread.getContextClassLoader();
+        // annotation values such as Mimic#sourceClass() are resolved via the context class loader
+        currentThread.setContextClassLoader(new URLClassLoader(new URL[] {inputJar.toURI().toURL() }, contextClassLoader));
+        RandomAccessFile in = new RandomAccessFile(inputJar, "r");
+        try {
+            FileOutputStream out = new FileOutputStream(outputJar);
+            try {
+                transform(inputJar, in.getChannel(), out.getChannel(), resultHandler);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+            currentThread.setContextClassLoader(contextClassLoader);
+        }
+    }
+
+    /**
+     * @return the number of pools dropped during the last transformation, to bound memory.
+     */
+    public int getReleasedPoolCount() {
+        return releasedPoolCount.get();
+    }
+
+    private void transform(File inputJar, FileChannel in, FileChannel out, ResultHandler resultHandler) throws IOException {
+        ByteBuffer end = readEnd(in);
+        int entryCount = end.getShort(END_ENTRY_COUNT) & SHORT_MASK;
+        ByteBuffer directory = read(in, end.getInt(END_DIRECTORY_OFFSET) & INT_MASK, end.getInt(END_DIRECTORY_SIZE) & INT_MASK);
+        ByteArrayOutputStream newDirectory = new ByteArrayOutputStream(directory.capacity());
+        HeapBudget budget = heapBudget > 0 ? new HeapBudget(heapBudget) : null;
+
+        Set<String> entryNames = new HashSet<String>();
+        ClassPool pool = null;
+        ClassPath classPath = null;
+        int batchCount = 0;
+        int position = 0;
+        for (int indexEntry = 0; indexEntry < entryCount; indexEntry++) {
+            if (directory.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new IOException("Invalid central directory in jar " + inputJar);
+            }
+            int headerLength = CENTRAL_HEADER_SIZE + (directory.getShort(position + CENTRAL_NAME_LENGTH) & SHORT_MASK)
+                    + (directory.getShort(position + CENTRAL_EXTRA_LENGTH) & SHORT_MASK)
+                    + (directory.getShort(position + CENTRAL_COMMENT_LENGTH) & SHORT_MASK);
+            byte[] header = new byte[headerLength];
+            directory.position(position);
+            directory.get(header);
+            position += headerLength;
+            Entry entry = new Entry(ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN), readLocalHeader(in, header));
+            entryNames.add(entry.name);
+
+            byte[] bytecode = null;
+            if (entry.mayBeAnnotated()) {
+                byte[] classfile = entry.inflate(in);
+                if (MimicAnnotationScanner.hasMimicAnnotation(classfile)) {
+                    if (pool == null) {
+                        pool = new ClassPool(false);
+                        classPath = appendClassPath(pool, inputJar);
+                        pool.appendSystemPath();
+                        batchCount = 0;
+                    }
+                    TransformationResult result = transform(pool, entry.getClassName(), classfile);
+                    resultHandler.handle(result);
+                    bytecode = result.getException() == null ? result.getBytecode() : null;
+                    batchCount++;
+                    if (poolBatchSize > 0 && batchCount >= poolBatchSize || budget != null && budget.shouldReleasePool()) {
+                        pool.removeClassPath(classPath);
+                        pool = null;
+                        releasedPoolCount.incrementAndGet();
+                    }
+                }
+            }
+            ByteBuffer newHeader = entry.getHeader();
+            newHeader.putInt(CENTRAL_LOCAL_OFFSET, (int) checkOffset(out.position(), inputJar));
+            if (bytecode == null) {
+                entry.copy(in, out);
+            } else {
+                entry.write(out, bytecode);
+            }
+            newDirectory.write(header);
+        }
+        if (pool != null) {
+            pool.removeClassPath(classPath);
+        }
+        int newEntryCount = entryCount;
+        for (Map.Entry<String, byte[]> generatedClass : processor.getGeneratedClasses().entrySet()) {
+            String name = generatedClass.getKey().replace('.', '/') + CLASS_SUFFIX;
+            if (entryNames.add(name)) {
+                long offset = checkOffset(out.position(), inputJar);
+                newDirectory.write(writeNewEntry(out, name, generatedClass.getValue(), offset));
+                newEntryCount++;
+            }
+        }
+        if (newEntryCount >= SHORT_MASK) {
+            throw new IOException("Too many entries for jar " + inputJar + ", zip64 archives are not supported");
+        }
+
+        long directoryOffset = checkOffset(out.position(), inputJar);
+        out.write(ByteBuffer.wrap(newDirectory.toByteArray()));
+        end.putShort(END_DISK_ENTRY_COUNT, (short) newEntryCount);
+        end.putShort(END_ENTRY_COUNT, (short) newEntryCount);
+        end.putInt(END_DIRECTORY_SIZE, newDirectory.size());
+        end.putInt(END_DIRECTORY_OFFSET, (int) directoryOffset);
+        end.position(0);
+        out.write(end);
+    }
+
+    /**
+     * Writes a new deflated entry.
+     * @return the central header of the entry.
+     */
+    private byte[] writeNewEntry(FileChannel out, String name, byte[] bytes, long offset) throws IOException {
+        byte[] nameBytes = name.getBytes("UTF-8");
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        byte[] compressedBytes = deflate(bytes);
+
+        ByteBuffer localHeader = ByteBuffer.allocate(LOCAL_HEADER_SIZE + nameBytes.length).order(ByteOrder.LITTLE_ENDIAN);
+        localHeader.putInt(0, LOCAL_HEADER_SIGNATURE);
+        localHeader.putShort(LOCAL_VERSION, (short) DEFLATE_VERSION);
+        localHeader.putShort(LOCAL_METHOD, (short) DEFLATED);
+        localHeader.putShort(LOCAL_DATE, (short) FIRST_DOS_DATE);
+        localHeader.position(LOCAL_CRC);
+        localHeader.putInt((int) crc.getValue()).putInt(compressedBytes.length).putInt(bytes.length).putShort((short) nameBytes.length);
+        localHeader.position(LOCAL_HEADER_SIZE);
+        localHeader.put(nameBytes);
+        localHeader.position(0);
+        out.write(localHeader);
+        out.write(ByteBuffer.wrap(compressedBytes));
+
+        ByteBuffer header = ByteBuffer.allocate(CENTRAL_HEADER_SIZE + nameBytes.length).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0, CENTRAL_HEADER_SIGNATURE);
+        header.putShort(CENTRAL_VERSION_MADE_BY, (short) DEFLATE_VERSION);
+        header.putShort(CENTRAL_VERSION, (short) DEFLATE_VERSION);
+        header.putShort(CENTRAL_METHOD, (short) DEFLATED);
+        header.putShort(CENTRAL_DATE, (short) FIRST_DOS_DATE);
+        header.position(CENTRAL_CRC);
+        header.putInt((int) crc.getValue()).putInt(compressedBytes.length).putInt(bytes.length).putShort((short) nameBytes.length);
+        header.putInt(CENTRAL_LOCAL_OFFSET, (int) offset);
+        header.position(CENTRAL_HEADER_SIZE);
+        header.put(nameBytes);
+        return header.array();
+    }
+
+    private byte[] deflate(byte[] bytes) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream compressedBytes = new ByteArrayOutputStream(bytes.length);
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                compressedBytes.write(buffer, 0, length);
+            }
+            return compressedBytes.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private TransformationResult transform(ClassPool pool, String className, byte[] classfile) {
+        try {
+            return new TransformationResult(className, processor.transformBytecode(pool, classfile), null);
+        } catch (Exception e) {
+            return new TransformationResult(className, null, e);
+        }
+    }
+
+    private static ClassPath appendClassPath(ClassPool pool, File inputJar) throws IOException {
+        try {
+            return pool.appendClassPath(inputJar.getPath());
+        } catch (NotFoundException e) {
+            throw new IOException("Impossible to read jar " + inputJar, e);
+        }
+    }
+
+    /**
+     * Finds the end of central directory record, that is followed by a
+     * comment of at most 65535 bytes.
+     */
+    private static ByteBuffer readEnd(FileChannel in) throws IOException {
+        long size = in.size();
+        long tailOffset = Math.max(0, size - END_SIZE - MAX_COMMENT_LENGTH);
+        ByteBuffer tail = read(in, tailOffset, size - tailOffset);
+        for (int position = tail.capacity() - END_SIZE; position >= 0; position--) {
+            if (tail.getInt(position) == END_SIGNATURE
+                    && position + END_SIZE + (tail.getShort(position + END_COMMENT_LENGTH) & SHORT_MASK) == tail.capacity()) {
+                ByteBuffer end = ByteBuffer.allocate(tail.capacity() - position).order(ByteOrder.LITTLE_ENDIAN);
+                tail.position(position);
+                end.put(tail);
+                if (end.getShort(END_DISK) != 0 || end.getShort(END_DISK_ENTRY_COUNT) != end.getShort(END_ENTRY_COUNT)) {
+                    throw new IOException("Split archives are not supported");
+                }
+                if ((end.getShort(END_ENTRY_COUNT) & SHORT_MASK) == SHORT_MASK || end.getInt(END_DIRECTORY_OFFSET) == -1) {
+                    throw new IOException("Zip64 archives are not supported");
+                }
+                return end;
+            }
+        }
+        throw new IOException("Not a jar, no end of central directory found");
+    }
+
+    private static ByteBuffer readLocalHeader(FileChannel in, byte[] centralHeader) throws IOException {
+        long offset = ByteBuffer.wrap(centralHeader).order(ByteOrder.LITTLE_ENDIAN).getInt(CENTRAL_LOCAL_OFFSET) & INT_MASK;
+        ByteBuffer localHeader = read(in, offset, LOCAL_HEADER_SIZE);
+        if (localHeader.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new IOException("Invalid local header at offset " + offset);
+        }
+        int nameAndExtraLength = (localHeader.getShort(LOCAL_NAME_LENGTH) & SHORT_MASK) + (localHeader.getShort(LOCAL_EXTRA_LENGTH) & SHORT_MASK);
+        return read(in, offset, LOCAL_HEADER_SIZE + nameAndExtraLength);
+    }
+
+    private static ByteBuffer read(FileChannel in, long offset, long length) throws IOException {
+        if (length > Integer.MAX_VALUE || offset + length > in.size()) {
+            throw new IOException("Truncated jar, " + length + " bytes expected at offset " + offset);
+        }
+        ByteBuffer bytes = ByteBuffer.allocate((int) length).order(ByteOrder.LITTLE_ENDIAN);
+        while (bytes.hasRemaining()) {
+            if (in.read(bytes, offset + bytes.position()) < 0) {
+                throw new IOException("Truncated jar, " + length + " bytes expected at offset " + offset);
+            }
+        }
+        bytes.flip();
+        return bytes;
+    }
+
+    private static long checkOffset(long offset, File inputJar) throws IOException {
+        if (offset >= INT_MASK) {
+            throw new IOException("Transformed jar " + inputJar + " would need Zip64, which is not supported");
+        }
+        return offset;
+    }
+
+    /** An entry of the input jar, described by its central and local headers. */
+    private final class Entry {
+        private final ByteBuffer header;
+        private final ByteBuffer localHeader;
+        private final String name;
+        private final long offset;
+        private final long dataOffset;
+        private final long compressedSize;
+        private final long size;
+
+        private Entry(ByteBuffer header, ByteBuffer localHeader) throws IOException {
+            this.header = header;
+            this.localHeader = localHeader;
+            byte[] nameBytes = new byte[header.getShort(CENTRAL_NAME_LENGTH) & SHORT_MASK];
+            header.position(CENTRAL_HEADER_SIZE);
+            header.get(nameBytes);
+            this.name = new String(nameBytes, "UTF-8");
+            this.offset = header.getInt(CENTRAL_LOCAL_OFFSET) & INT_MASK;
+            this.dataOffset = offset + localHeader.capacity();
+            this.compressedSize = header.getInt(CENTRAL_COMPRESSED_SIZE) & INT_MASK;
+            this.size = header.getInt(CENTRAL_SIZE) & INT_MASK;
+            if (compressedSize == INT_MASK || size == INT_MASK || header.getShort(CENTRAL_DISK) != 0) {
+                throw new IOException("Zip64 entries are not supported: " + name);
+            }
+        }
+
+        private ByteBuffer getHeader() {
+            return header;
+        }
+
+        private String getClassName() {
+            return name.substring(0, name.length() - CLASS_SUFFIX.length()).replace('/', '.');
+        }
+
+        private boolean mayBeAnnotated() {
+            int method = getMethod();
+            return name.endsWith(CLASS_SUFFIX) && !name.startsWith(META_INF_PREFIX) && (method == STORED || method == DEFLATED)
+                    && size <= Integer.MAX_VALUE;
+        }
+
+        private int getMethod() {
+            return header.getShort(CENTRAL_METHOD) & SHORT_MASK;
+        }
+
+        private byte[] inflate(FileChannel in) throws IOException {
+            ByteBuffer data = read(in, dataOffset, compressedSize);
+            if (getMethod() == STORED) {
+                return data.array();
+            }
+            // a dummy byte is needed at the end of data inflated without zlib header
+            byte[] compressedBytes = new byte[(int) compressedSize + 1];
+            data.get(compressedBytes, 0, (int) compressedSize);
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(compressedBytes);
+                byte[] bytes = new byte[(int) size];
+                int length = 0;
+                while (length < bytes.length && !inflater.finished()) {
+                    int inflatedLength = inflater.inflate(bytes, length, bytes.length - length);
+                    if (inflatedLength == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    length += inflatedLength;
+                }
+                if (length != bytes.length) {
+                    throw new IOException("Invalid compressed data for entry " + name);
+                }
+                return bytes;
+            } catch (DataFormatException e) {
+                throw new IOException("Invalid compressed data for entry " + name, e);
+            } finally {
+                inflater.end();
+            }
+        }
+
+        /** Copies the local header, the compressed data and the data descriptor, if any. */
+        private void copy(FileChannel in, FileChannel out) throws IOException {
+            long length = dataOffset - offset + compressedSize;
+            if ((header.getShort(CENTRAL_FLAGS) & DATA_DESCRIPTOR_FLAG) != 0) {
+                ByteBuffer signature = read(in, dataOffset + compressedSize, SIGNATURE_SIZE);
+                length += DATA_DESCRIPTOR_SIZE + (signature.getInt(0) == DATA_DESCRIPTOR_SIGNATURE ? SIGNATURE_SIZE : 0);
+            }
+            long copiedLength = 0;
+            while (copiedLength < length) {
+                long transferredLength = in.transferTo(offset + copiedLength, length - copiedLength, out);
+                if (transferredLength <= 0) {
+                    throw new IOException("Truncated jar, entry " + name + " can't be copied");
+                }
+                copiedLength += transferredLength;
+            }
+        }
+
+        /** Writes a new local header and new compressed data, and updates the central header. */
+        private void write(FileChannel out, byte[] bytecode) throws IOException {
+            CRC32 crc = new CRC32();
+            crc.update(bytecode);
+            byte[] compressedBytes = deflate(bytecode);
+            int flags = header.getShort(CENTRAL_FLAGS) & ~DATA_DESCRIPTOR_FLAG;
+
+            header.putShort(CENTRAL_FLAGS, (short) flags);
+            header.putShort(CENTRAL_METHOD, (short) DEFLATED);
+            header.putInt(CENTRAL_CRC, (int) crc.getValue());
+            header.putInt(CENTRAL_COMPRESSED_SIZE, compressedBytes.length);
+            header.putInt(CENTRAL_SIZE, bytecode.length);
+
+            ByteBuffer newLocalHeader = ByteBuffer.allocate(localHeader.capacity()).order(ByteOrder.LITTLE_ENDIAN);
+            localHeader.position(0);
+            newLocalHeader.put(localHeader);
+            newLocalHeader.putShort(LOCAL_FLAGS, (short) flags);
+            newLocalHeader.putShort(LOCAL_METHOD, (short) DEFLATED);
+            // crc, compressed size and size
+            newLocalHeader.position(LOCAL_CRC);
+            newLocalHeader.putInt((int) crc.getValue()).putInt(compressedBytes.length).putInt(bytecode.length);
+            newLocalHeader.position(0);
+            out.write(newLocalHeader);
+            out.write(ByteBuffer.wrap(compressedBytes));
+        }
+    }
+}
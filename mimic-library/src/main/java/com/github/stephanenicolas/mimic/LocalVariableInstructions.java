@@ -0,0 +1,65 @@
+package com.github.stephanenicolas.mimic;
+
+import javassist.bytecode.Opcode;
+
+/**
+ * Decodes the instructions that access local variables, when rewriting the
+ * bytecode of copies.
+ *
+ * @author SNI
+ */
+final class LocalVariableInstructions {
+
+    private static final int BYTE_MASK = 0xFF;
+    private static final int SHORT_FORMS_PER_TYPE = 4;
+
+    private LocalVariableInstructions() {
+    }
+
+    /**
+     * @param opcode an opcode, that is not {@link Opcode#WIDE}.
+     * @return true if the instruction loads, stores or increments a local variable.
+     */
+    static boolean isLocalAccess(int opcode) {
+        return opcode >= Opcode.ILOAD && opcode <= Opcode.ALOAD_3 || opcode >= Opcode.ISTORE && opcode <= Opcode.ASTORE_3
+                || opcode == Opcode.IINC;
+    }
+
+    /**
+     * @param opcode an opcode accessing a local variable.
+     * @return the opcode taking an explicit index, for loads and stores like iload_0.
+     */
+    static int getExplicitOpcode(int opcode) {
+        if (opcode >= Opcode.ILOAD_0 && opcode <= Opcode.ALOAD_3) {
+            return Opcode.ILOAD + (opcode - Opcode.ILOAD_0) / SHORT_FORMS_PER_TYPE;
+        }
+        if (opcode >= Opcode.ISTORE_0 && opcode <= Opcode.ASTORE_3) {
+            return Opcode.ISTORE + (opcode - Opcode.ISTORE_0) / SHORT_FORMS_PER_TYPE;
+        }
+        return opcode;
+    }
+
+    /**
+     * @param opcode an opcode accessing a local variable.
+     * @return true if the opcode is a short form, like iload_0, that encodes the index of the local.
+     */
+    static boolean isShortForm(int opcode) {
+        return getExplicitOpcode(opcode) != opcode;
+    }
+
+    /**
+     * @param code some bytecode.
+     * @param position the position of an instruction accessing a local variable, that is not wide.
+     * @return the index of the local variable.
+     */
+    static int getLocalIndex(byte[] code, int position) {
+        int opcode = code[position] & BYTE_MASK;
+        if (opcode >= Opcode.ILOAD_0 && opcode <= Opcode.ALOAD_3) {
+            return (opcode - Opcode.ILOAD_0) % SHORT_FORMS_PER_TYPE;
+        }
+        if (opcode >= Opcode.ISTORE_0 && opcode <= Opcode.ASTORE_3) {
+            return (opcode - Opcode.ISTORE_0) % SHORT_FORMS_PER_TYPE;
+        }
+        return code[position + 1] & BYTE_MASK;
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.stephanenicolas.mimic;
+
+import java.util.HashMap;
+
+import javassist.CtClass;
+import javassist.CtMethod;
+
+/**
+ * The methods of a class, declared and inherited, by name and by name and
+ * descriptor. The hierarchy of the class is walked once, when the index is
+ * built, and every lookup is then a map access, however deep the hierarchy.
+ * Declared methods hide inherited ones. Methods added to the class after the
+ * index is built must be {@link #add(CtMethod) added} to the index.
+ *
+ * @author SNI
+ */
+final class MethodIndex {
+
+    private final HashMap<String, CtMethod> mapNameToMethod = new HashMap<String, CtMethod>();
+    private final HashMap<String, CtMethod> mapKeyToMethod = new HashMap<String, CtMethod>();
+
+    MethodIndex(CtClass clazz) {
+        for (CtMethod method : clazz.getMethods()) {
+            add(method);
+        }
+        for (CtMethod method : clazz.getDeclaredMethods()) {
+            add(method);
+        }
+    }
+
+    void add(CtMethod method) {
+        mapNameToMethod.put(method.getName(), method);
+        mapKeyToMethod.put(method.getName() + method.getSignature(), method);
+    }
+
+    /**
+     * @param name the name of a method.
+     * @param descriptor the descriptor of the method, or an empty string for
+     *            any of its overloads.
+     * @return the method, or null if the class has no such method.
+     */
+    CtMethod find(String name, String descriptor) {
+        if (descriptor.isEmpty()) {
+            return mapNameToMethod.get(name);
+        }
+        return mapKeyToMethod.get(name + descriptor);
+    }
+}
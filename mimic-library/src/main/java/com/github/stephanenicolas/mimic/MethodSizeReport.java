@@ -0,0 +1,274 @@
+package com.github.stephanenicolas.mimic;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.MethodInfo;
+
+/**
+ * The bytecode size of the methods of woven classes, before and after
+ * weaving. HotSpot doesn't inline a method bigger than
+ * {@code -XX:MaxInlineSize}, nor a hot one bigger than
+ * {@code -XX:FreqInlineSize}, and doesn't compile a method bigger than
+ * {@code -XX:HugeMethodLimit}. Weaving a method past one of these thresholds
+ * silently slows it down : such methods are flagged. Sizes are exported as
+ * JSON :
+ *
+ * <pre>
+ * {
+ *   "thresholds": {"MaxInlineSize": 35, "FreqInlineSize": 325, "HugeMethodLimit": 8000},
+ *   "classes": {
+ *     "com.foo.Bar": {
+ *       "foo()V": {"before": 30, "after": 41, "crossed": ["MaxInlineSize"]},
+ *       "_copy_foo()V": {"before": null, "after": 12, "crossed": []}
+ *     },
+ *     ...
+ *   }
+ * }
+ * </pre>
+ *
+ * Only the methods that weaving added or changed are listed, by name and
+ * descriptor. Methods added by weaving are never flagged, they are as big as
+ * the template code they copy.
+ *
+ * @author SNI
+ */
+public class MethodSizeReport {
+
+    /** Default of {@code -XX:MaxInlineSize}, in bytes. */
+    public static final int DEFAULT_MAX_INLINE_SIZE = 35;
+    /** Default of {@code -XX:FreqInlineSize} on 64 bits platforms, in bytes. */
+    public static final int DEFAULT_FREQ_INLINE_SIZE = 325;
+    /** Default of {@code -XX:HugeMethodLimit}, in bytes. */
+    public static final int DEFAULT_HUGE_METHOD_LIMIT = 8000;
+
+    private static final String INDENT = "  ";
+    private static final String[] THRESHOLD_NAMES = {"MaxInlineSize", "FreqInlineSize", "HugeMethodLimit" };
+
+    private final int[] thresholds;
+    private final ConcurrentMap<String, Map<String, MethodSize>> sizesByClass = new ConcurrentHashMap<String, Map<String, MethodSize>>();
+
+    public MethodSizeReport() {
+        this(DEFAULT_MAX_INLINE_SIZE, DEFAULT_FREQ_INLINE_SIZE, DEFAULT_HUGE_METHOD_LIMIT);
+    }
+
+    /**
+     * @param maxInlineSize the value of {@code -XX:MaxInlineSize}.
+     * @param freqInlineSize the value of {@code -XX:FreqInlineSize}.
+     * @param hugeMethodLimit the value of {@code -XX:HugeMethodLimit}.
+     */
+    public MethodSizeReport(int maxInlineSize, int freqInlineSize, int hugeMethodLimit) {
+        this.thresholds = new int[] {maxInlineSize, freqInlineSize, hugeMethodLimit };
+    }
+
+    /**
+     * Measures the bytecode of the methods and constructors of a class,
+     * without loading it.
+     * @param classFile a class file.
+     * @return the length of the code of each method that has some, by name and descriptor.
+     */
+    public static Map<String, Integer> measure(ClassFile classFile) {
+        Map<String, Integer> sizes = new TreeMap<String, Integer>();
+        for (Object method : classFile.getMethods()) {
+            MethodInfo methodInfo = (MethodInfo) method;
+            CodeAttribute code = methodInfo.getCodeAttribute();
+            if (code != null) {
+                sizes.put(methodInfo.getName() + methodInfo.getDescriptor(), code.getCodeLength());
+            }
+        }
+        return sizes;
+    }
+
+    /**
+     * Records the sizes of the methods of a woven class.
+     * @param className the name of the class.
+     * @param sizesBefore the sizes of its methods before weaving, see {@link #measure(ClassFile)}.
+     * @param sizesAfter the sizes of its methods after weaving.
+     */
+    public void add(String className, Map<String, Integer> sizesBefore, Map<String, Integer> sizesAfter) {
+        Map<String, MethodSize> classSizes = new TreeMap<String, MethodSize>();
+        for (Map.Entry<String, Integer> entry : sizesAfter.entrySet()) {
+            Integer sizeBefore = sizesBefore.get(entry.getKey());
+            if (!entry.getValue().equals(sizeBefore)) {
+                classSizes.put(entry.getKey(), new MethodSize(sizeBefore, entry.getValue()));
+            }
+        }
+        sizesByClass.put(className, classSizes);
+    }
+
+    /**
+     * @param className the name of a woven class.
+     * @return the sizes of the methods that weaving added or changed, by name and descriptor, or null if the class was not woven.
+     */
+    public Map<String, MethodSize> getSizes(String className) {
+        Map<String, MethodSize> classSizes = sizesByClass.get(className);
+        return classSizes == null ? null : Collections.unmodifiableMap(classSizes);
+    }
+
+    /** @return the names of all woven classes, sorted. */
+    public SortedSet<String> getClassNames() {
+        return new TreeSet<String>(sizesByClass.keySet());
+    }
+
+    /** Forgets all sizes. */
+    public void reset() {
+        sizesByClass.clear();
+    }
+
+    /**
+     * @param size the sizes of a method.
+     * @return the names of the thresholds that weaving made the method cross.
+     */
+    public List<String> getCrossedThresholds(MethodSize size) {
+        List<String> crossedThresholds = new ArrayList<String>();
+        if (size.getBefore() == null) {
+            return crossedThresholds;
+        }
+        for (int i = 0; i < thresholds.length; i++) {
+            if (size.getBefore() <= thresholds[i] && size.getAfter() > thresholds[i]) {
+                crossedThresholds.add(THRESHOLD_NAMES[i]);
+            }
+        }
+        return crossedThresholds;
+    }
+
+    /** @return one line per method that weaving made cross a threshold, sorted by class and method. */
+    public List<String> getCrossings() {
+        List<String> crossings = new ArrayList<String>();
+        for (Map.Entry<String, Map<String, MethodSize>> classEntry : new TreeMap<String, Map<String, MethodSize>>(sizesByClass).entrySet()) {
+            for (Map.Entry<String, MethodSize> entry : classEntry.getValue().entrySet()) {
+                MethodSize size = entry.getValue();
+                List<String> crossedThresholds = getCrossedThresholds(size);
+                if (!crossedThresholds.isEmpty()) {
+                    crossings.add(String.format("%s.%s : %d -> %d bytes, over %s", classEntry.getKey(), entry.getKey(), size.getBefore(),
+                            size.getAfter(), crossedThresholds));
+                }
+            }
+        }
+        return crossings;
+    }
+
+    /** @return the thresholds, and one line per method that weaving made cross one of them. */
+    public String getSummary() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < thresholds.length; i++) {
+            builder.append(i == 0 ? "" : ", ").append(THRESHOLD_NAMES[i]).append('=').append(thresholds[i]);
+        }
+        List<String> crossings = getCrossings();
+        builder.append(String.format(" : %d classes woven, %d methods crossing a threshold%n", sizesByClass.size(), crossings.size()));
+        for (String crossing : crossings) {
+            builder.append(crossing).append(String.format("%n"));
+        }
+        return builder.toString();
+    }
+
+    /** @return all sizes, as JSON. */
+    public String toJson() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\n").append(INDENT).append("\"thresholds\": {");
+        for (int i = 0; i < thresholds.length; i++) {
+            builder.append(i == 0 ? "" : ", ");
+            appendJsonString(builder, THRESHOLD_NAMES[i]);
+            builder.append(": ").append(thresholds[i]);
+        }
+        builder.append("},\n").append(INDENT).append("\"classes\": {");
+        Map<String, Map<String, MethodSize>> sortedSizes = new TreeMap<String, Map<String, MethodSize>>(sizesByClass);
+        String separator = "\n";
+        for (Map.Entry<String, Map<String, MethodSize>> entry : sortedSizes.entrySet()) {
+            builder.append(separator).append(INDENT).append(INDENT);
+            appendJsonString(builder, entry.getKey());
+            builder.append(": ");
+            appendJson(builder, entry.getValue(), INDENT + INDENT);
+            separator = ",\n";
+        }
+        builder.append(sortedSizes.isEmpty() ? "" : "\n" + INDENT).append("}\n}\n");
+        return builder.toString();
+    }
+
+    /**
+     * Exports all sizes as JSON.
+     * @param file the file to write. Its parent directories are created if needed.
+     * @throws IOException if the file can't be written.
+     */
+    public void writeJson(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Impossible to create directory " + parent);
+        }
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(toJson());
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void appendJson(StringBuilder builder, Map<String, MethodSize> sizes, String indent) {
+        builder.append('{');
+        String separator = "\n";
+        for (Map.Entry<String, MethodSize> entry : sizes.entrySet()) {
+            MethodSize size = entry.getValue();
+            builder.append(separator).append(indent).append(INDENT);
+            appendJsonString(builder, entry.getKey());
+            builder.append(": {\"before\": ").append(size.getBefore())
+                .append(", \"after\": ").append(size.getAfter())
+                .append(", \"crossed\": [");
+            String thresholdSeparator = "";
+            for (String threshold : getCrossedThresholds(size)) {
+                builder.append(thresholdSeparator);
+                appendJsonString(builder, threshold);
+                thresholdSeparator = ", ";
+            }
+            builder.append("]}");
+            separator = ",\n";
+        }
+        builder.append(sizes.isEmpty() ? "" : "\n" + indent).append('}');
+    }
+
+    private void appendJsonString(StringBuilder builder, String string) {
+        builder.append('"');
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\');
+            }
+            builder.append(c);
+        }
+        builder.append('"');
+    }
+
+    /** The bytecode size of a method, before and after weaving. */
+    public static final class MethodSize {
+        private final Integer before;
+        private final int after;
+
+        private MethodSize(Integer before, int after) {
+            this.before = before;
+            this.after = after;
+        }
+
+        /** @return the length of the code of the method before weaving, in bytes, or null if weaving added the method. */
+        public Integer getBefore() {
+            return before;
+        }
+
+        /** @return the length of the code of the method after weaving, in bytes. */
+        public int getAfter() {
+            return after;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.github.stephanenicolas.mimic;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Tells whether a class file may be annotated by
+ * {@link com.github.stephanenicolas.mimic.annotations.Mimic}, by scanning its
+ * constant pool for the descriptor of the annotation. No class is built, and
+ * no byte beyond the constant pool is read : rejecting a class that doesn't
+ * use Mimic is almost free.
+ *
+ * @author SNI
+ */
+public final class MimicAnnotationScanner {
+
+    /** Descriptor of the annotation, as found in the constant pool of annotated classes. */
+    public static final String MIMIC_DESCRIPTOR = "Lcom/github/stephanenicolas/mimic/annotations/Mimic;";
+
+    private static final byte[] MIMIC_DESCRIPTOR_BYTES = toAscii(MIMIC_DESCRIPTOR);
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int BYTE_MASK = 0xFF;
+    private static final int BYTE_SIZE = 8;
+    private static final int SHORT_SIZE = 16;
+    /** Size from which class files are memory mapped, rather than read. */
+    private static final int MAPPING_THRESHOLD = 64 * 1024;
+    private static final int CONSTANT_POOL_COUNT_POSITION = 8;
+    private static final int CONSTANT_POOL_POSITION = 10;
+
+    private static final int UTF8 = 1;
+    private static final int INTEGER = 3;
+    private static final int FLOAT = 4;
+    private static final int LONG = 5;
+    private static final int DOUBLE = 6;
+    private static final int CLASS = 7;
+    private static final int STRING = 8;
+    private static final int FIELD_REF = 9;
+    private static final int METHOD_REF = 10;
+    private static final int INTERFACE_METHOD_REF = 11;
+    private static final int NAME_AND_TYPE = 12;
+    private static final int METHOD_HANDLE = 15;
+    private static final int METHOD_TYPE = 16;
+    private static final int DYNAMIC = 17;
+    private static final int INVOKE_DYNAMIC = 18;
+    private static final int MODULE = 19;
+    private static final int PACKAGE = 20;
+
+    private static final int U2_ENTRY_LENGTH = 3;
+    private static final int METHOD_HANDLE_LENGTH = 4;
+    private static final int U4_ENTRY_LENGTH = 5;
+    private static final int U8_ENTRY_LENGTH = 9;
+
+    private MimicAnnotationScanner() {
+    }
+
+    /**
+     * @param classfile the bytecode of a class.
+     * @return false if the class is not annotated by Mimic, or is not a valid
+     *         class file. True if its constant pool contains the descriptor of
+     *         Mimic, which it does when it's annotated.
+     */
+    public static boolean hasMimicAnnotation(byte[] classfile) {
+        return classfile != null && hasMimicAnnotation(ByteBuffer.wrap(classfile));
+    }
+
+    /**
+     * Scans a class file without loading it entirely : big class files are
+     * memory mapped, and only their constant pool is paged in.
+     * @param classfile a class file.
+     * @return the same as {@link #hasMimicAnnotation(byte[])}.
+     * @throws IOException if the file can't be read.
+     */
+    public static boolean hasMimicAnnotation(File classfile) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(classfile, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                return false;
+            }
+            ByteBuffer buffer;
+            if (size >= MAPPING_THRESHOLD) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                // mapping small files costs more than reading them
+                buffer = ByteBuffer.allocate((int) size);
+                while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                    continue;
+                }
+                buffer.flip();
+            }
+            return hasMimicAnnotation(buffer);
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * @param classfile the bytecode of a class, from index 0 to the limit of the buffer.
+     * @return the same as {@link #hasMimicAnnotation(byte[])}.
+     */
+    public static boolean hasMimicAnnotation(ByteBuffer classfile) {
+        int limit = classfile.limit();
+        if (limit < CONSTANT_POOL_POSITION || (readUnsignedShort(classfile, 0) << SHORT_SIZE | readUnsignedShort(classfile, 2)) != MAGIC) {
+            return false;
+        }
+        int count = readUnsignedShort(classfile, CONSTANT_POOL_COUNT_POSITION);
+        int position = CONSTANT_POOL_POSITION;
+        for (int index = 1; index < count; index++) {
+            if (position >= limit) {
+                return false;
+            }
+            switch (classfile.get(position) & BYTE_MASK) {
+                case UTF8:
+                    if (position + U2_ENTRY_LENGTH > limit) {
+                        return false;
+                    }
+                    int length = readUnsignedShort(classfile, position + 1);
+                    if (isMimicDescriptor(classfile, position + U2_ENTRY_LENGTH, length)) {
+                        return true;
+                    }
+                    position += U2_ENTRY_LENGTH + length;
+                    break;
+                case CLASS:
+                case STRING:
+                case METHOD_TYPE:
+                case MODULE:
+                case PACKAGE:
+                    position += U2_ENTRY_LENGTH;
+                    break;
+                case METHOD_HANDLE:
+                    position += METHOD_HANDLE_LENGTH;
+                    break;
+                case INTEGER:
+                case FLOAT:
+                case FIELD_REF:
+                case METHOD_REF:
+                case INTERFACE_METHOD_REF:
+                case NAME_AND_TYPE:
+                case DYNAMIC:
+                case INVOKE_DYNAMIC:
+                    position += U4_ENTRY_LENGTH;
+                    break;
+                case LONG:
+                case DOUBLE:
+                    // 8 bytes constants take 2 entries
+                    position += U8_ENTRY_LENGTH;
+                    index++;
+                    break;
+                default:
+                    // unknown constant : the class file is invalid, or newer than this scanner
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isMimicDescriptor(ByteBuffer classfile, int start, int length) {
+        if (length != MIMIC_DESCRIPTOR_BYTES.length || start + length > classfile.limit()) {
+            return false;
+        }
+        // compares from the end, where class names differ
+        for (int i = length - 1; i >= 0; i--) {
+            if (classfile.get(start + i) != MIMIC_DESCRIPTOR_BYTES[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Reads a big endian short, whatever the order of the buffer. */
+    private static int readUnsignedShort(ByteBuffer buffer, int position) {
+        return (buffer.get(position) & BYTE_MASK) << BYTE_SIZE | buffer.get(position + 1) & BYTE_MASK;
+    }
+
+    private static byte[] toAscii(String string) {
+        byte[] bytes = new byte[string.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) string.charAt(i);
+        }
+        return bytes;
+    }
+}
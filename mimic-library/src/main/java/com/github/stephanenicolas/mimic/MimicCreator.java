@@ -1,20 +1,40 @@
 package com.github.stephanenicolas.mimic;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javassist.CannotCompileException;
+import javassist.CtBehavior;
 import javassist.CtClass;
 import javassist.CtConstructor;
 import javassist.CtField;
 import javassist.CtMethod;
 import javassist.CtNewConstructor;
 import javassist.CtNewMethod;
+import javassist.Modifier;
 import javassist.NotFoundException;
+import javassist.bytecode.Bytecode;
 import javassist.expr.ExprEditor;
 import javassist.expr.MethodCall;
 import lombok.Getter;
 import lombok.extern.java.Log;
 
+import com.github.stephanenicolas.mimic.BytecodeWeaver.CallSite;
+import com.github.stephanenicolas.mimic.BytecodeWeaver.CallSiteSelector;
+import com.github.stephanenicolas.mimic.TemplatePlan.Member;
+import com.github.stephanenicolas.mimic.annotations.MimicField;
 import com.github.stephanenicolas.mimic.annotations.MimicMethod;
 import com.github.stephanenicolas.mimic.annotations.MimicMode;
 
@@ -66,11 +86,62 @@ import com.github.stephanenicolas.mimic.annotations.MimicMode;
 @Log
 public class MimicCreator {
 
+    private static final String NO_ARG_DESCRIPTOR = "()V";
+
     /** A key used to distinguish possibly conflicting copies of a src methods. */
     @Getter
     private String key;
 
+    /** Whether copies of src methods are inlined into dst methods, instead of being invoked. */
+    @Getter
+    private boolean inliningCopies;
+
+    /** Whether copies of src methods are private, final and synthetic. */
+    @Getter
+    private boolean privateCopies;
+
+    /** How invocations of copies are woven into dst methods. */
+    @Getter
+    private WeavingBackend backend = WeavingBackend.SOURCE;
+
+    /** Whether all the fields of src that dst already has are reported, instead of the first one. */
+    @Getter
+    private boolean reportingAllFieldCollisions;
+
+    /** Whether src fields that no src constructor or method uses are left out of dst. */
+    @Getter
+    private boolean eliminatingDeadFields;
+
+    /** Whether src methods that dst can't reach are left out of dst, with the fields only they use. */
+    @Getter
+    private boolean eliminatingUnreachableMethods;
+
+    /** Whether the code of src methods is shared by all dst classes, in a helper class, instead of being copied. */
+    @Getter
+    private boolean sharingTemplateCode;
+
+    /** Whether dst root constructors without a matching src constructor run the code of the src no-arg constructor. */
+    @Getter
+    private boolean initializingUnmatchedRoots;
+
+    private final CopyInliner copyInliner = new CopyInliner();
+    private final CopySealer copySealer = new CopySealer();
+    private final BytecodeWeaver bytecodeWeaver = new BytecodeWeaver();
+    /** Plans of the templates mimiced so far, by name. Shared by all the threads using this instance. */
+    private final ConcurrentMap<String, TemplatePlan> templatePlans;
+    /** Shared code of the templates mimiced so far, by name. Shared by all the threads using this instance. */
+    private final ConcurrentMap<String, SharedTemplate> sharedTemplates;
+    /** Digests of the unmodified templates mimiced so far. Shared by all the threads using this instance. */
+    private final Map<CtClass, String> templateDigests;
+
+    /** Notified of every phase of the weaving, can be null. */
+    @Getter
+    private MimicListener listener;
+
     public MimicCreator() {
+        this.templatePlans = new ConcurrentHashMap<String, TemplatePlan>();
+        this.sharedTemplates = new ConcurrentHashMap<String, SharedTemplate>();
+        this.templateDigests = Collections.synchronizedMap(new WeakHashMap<CtClass, String>());
     }
 
     /**
@@ -84,50 +155,423 @@ public class MimicCreator {
      *            methods.
      */
     public MimicCreator(String key) {
+        this();
+        this.key = key;
+    }
+
+    private MimicCreator(MimicCreator creator, String key) {
         this.key = key;
+        this.inliningCopies = creator.inliningCopies;
+        this.privateCopies = creator.privateCopies;
+        this.backend = creator.backend;
+        this.reportingAllFieldCollisions = creator.reportingAllFieldCollisions;
+        this.eliminatingDeadFields = creator.eliminatingDeadFields;
+        this.eliminatingUnreachableMethods = creator.eliminatingUnreachableMethods;
+        this.sharingTemplateCode = creator.sharingTemplateCode;
+        this.initializingUnmatchedRoots = creator.initializingUnmatchedRoots;
+        this.listener = creator.listener;
+        this.templatePlans = creator.templatePlans;
+        this.sharedTemplates = creator.sharedTemplates;
+        this.templateDigests = creator.templateDigests;
+    }
+
+    /**
+     * Gives another {@link #key} to a creator. Each template mimiced by the
+     * same dst class needs a key of its own.
+     *
+     * @param key
+     *            used to distinguish possibly conflicting copies of a src
+     *            methods.
+     * @return a creator with the same options, listener and template plans
+     *         as this one, and the given key.
+     */
+    public MimicCreator withKey(String key) {
+        return new MimicCreator(this, key);
+    }
+
+    /**
+     * Enables inlining of copies. When mimicing constructors or methods that
+     * dst and src share, the bytecode of the src method is spliced directly
+     * into the dst method, instead of invoking a copy of the src method. The
+     * copy is removed when all its invocations could be inlined. This saves a
+     * call and a frame at runtime, and keeps dst methods small enough for
+     * the JIT to inline them. Disabled by default.
+     *
+     * @param inliningCopies
+     *            whether copies should be inlined.
+     */
+    public void setInliningCopies(boolean inliningCopies) {
+        this.inliningCopies = inliningCopies;
+    }
+
+    /**
+     * Makes copies private, final and synthetic, and static when they don't
+     * use {@code this} and are not synchronized. Copies are then invoked through
+     * {@code invokespecial} or {@code invokestatic}, which the JIT binds
+     * statically, and copies in a subclass mimicing the same src class don't
+     * override the copies of its superclass anymore. Disabled by default.
+     *
+     * @param privateCopies
+     *            whether copies should be private.
+     */
+    public void setPrivateCopies(boolean privateCopies) {
+        this.privateCopies = privateCopies;
+    }
+
+    /**
+     * Selects how invocations of copies are woven into dst constructors and
+     * methods. {@link WeavingBackend#BYTECODE} emits the invocations
+     * directly, instead of compiling them from Java source.
+     * {@link WeavingBackend#SOURCE} by default.
+     *
+     * @param backend
+     *            the weaving backend.
+     */
+    public void setBackend(WeavingBackend backend) {
+        this.backend = backend;
+    }
+
+    /**
+     * Reports all the fields of src that dst, its superclasses or their
+     * interfaces already have, in a single {@link MimicException}. By
+     * default, only the first one is reported.
+     *
+     * @param reportingAllFieldCollisions
+     *            whether all field collisions should be reported.
+     */
+    public void setReportingAllFieldCollisions(boolean reportingAllFieldCollisions) {
+        this.reportingAllFieldCollisions = reportingAllFieldCollisions;
+    }
+
+    /**
+     * Enables dead field elimination. When no {@link MimicField} selects the
+     * fields to copy, the fields of src that none of its constructors or
+     * methods read or write are not copied into dst, which saves memory for
+     * every instance of dst. Fields that are only used by reflection or by
+     * other classes are lost. Disabled by default.
+     *
+     * @param eliminatingDeadFields
+     *            whether unused fields should be left out.
+     */
+    public void setEliminatingDeadFields(boolean eliminatingDeadFields) {
+        this.eliminatingDeadFields = eliminatingDeadFields;
+    }
+
+    /**
+     * Enables unreachable method elimination. Only the src methods reachable
+     * from dst are copied : the ones dst declares too, the ones overriding
+     * or implementing a method dst inherits, the ones referenced by method
+     * handles, and all the src methods their code or the code of src
+     * constructors invokes, directly or not. When no {@link MimicField}
+     * selects the fields to copy, only the fields of src that the copied code
+     * reads or writes are copied. This shrinks dst classes, and the method
+     * count of Android dex files. Methods that are only invoked by reflection
+     * or by other classes are lost. Disabled by default.
+     *
+     * @param eliminatingUnreachableMethods
+     *            whether unreachable methods should be left out.
+     */
+    public void setEliminatingUnreachableMethods(boolean eliminatingUnreachableMethods) {
+        this.eliminatingUnreachableMethods = eliminatingUnreachableMethods;
+    }
+
+    /**
+     * Shares the code of src methods among all dst classes. It is compiled
+     * once, into static methods of a helper class generated next to src,
+     * {@code <src>$MimicHelper}, and dst classes only receive stubs invoking
+     * them. dst classes implement an interface generated next to src,
+     * {@code <src>$MimicReceiver}, giving the helper access to the fields of
+     * src they hold. Both classes are returned by
+     * {@link #shareTemplateCode(CtClass)} and must be shipped with dst
+     * classes. This saves metaspace, code cache and JIT compilations when
+     * many classes mimic the same template. Methods whose code can't be
+     * moved out of src, and dst classes that can't give access to the fields
+     * of src, still receive copies. Disabled by default.
+     *
+     * @param sharingTemplateCode
+     *            whether the code of templates should be shared.
+     */
+    public void setSharingTemplateCode(boolean sharingTemplateCode) {
+        this.sharingTemplateCode = sharingTemplateCode;
+    }
+
+    /**
+     * Makes the dst constructors calling {@code super(...)} that have no
+     * matching src constructor run the code of the src no-arg constructor.
+     * Its copy is shared by all of them. By default, only the dst
+     * constructors matching a src constructor run src code. Disabled by
+     * default.
+     *
+     * @param initializingUnmatchedRoots
+     *            whether unmatched root constructors should run the src
+     *            no-arg constructor.
+     */
+    public void setInitializingUnmatchedRoots(boolean initializingUnmatchedRoots) {
+        this.initializingUnmatchedRoots = initializingUnmatchedRoots;
     }
 
-    private HashMap<String, MimicMode> buildMimicModeMethodMap(MimicMethod[] mimicMethods) {
-        HashMap<String, MimicMode> mapNameToMimicMode = new HashMap<String, MimicMode>();
+    /**
+     * Sets a listener, notified of the duration of every phase of the
+     * weaving of a class.
+     *
+     * @param listener
+     *            the listener, or null to disable notifications.
+     * @see MimicMetrics
+     */
+    public void setListener(MimicListener listener) {
+        this.listener = listener;
+    }
+
+    private void firePhase(CtClass dst, MimicPhase phase, long startNanos, int itemCount) {
+        if (listener != null) {
+            listener.onPhase(dst.getName(), phase, System.nanoTime() - startNanos, itemCount);
+        }
+    }
+
+    /**
+     * Indexes mimic methods by name, or by name and descriptor when they
+     * define a signature.
+     */
+    private HashMap<String, MimicMethod> buildMimicMethodMap(MimicMethod[] mimicMethods) {
+        HashMap<String, MimicMethod> mapKeyToMimicMethod = new HashMap<String, MimicMethod>();
         for (MimicMethod method : mimicMethods) {
-            mapNameToMimicMode.put(method.methodName(), method.mode());
+            mapKeyToMimicMethod.put(method.methodName() + method.signature(), method);
         }
-        return mapNameToMimicMode;
+        return mapKeyToMimicMethod;
+    }
+
+    /** @return the mimic method of a template method, a descriptor-qualified one first. */
+    private MimicMethod findMimicMethod(HashMap<String, MimicMethod> mapKeyToMimicMethod, Member method) {
+        MimicMethod mimicMethod = mapKeyToMimicMethod.get(method.getKey());
+        return mimicMethod != null ? mimicMethod : mapKeyToMimicMethod.get(method.getName());
     }
 
-    private HashMap<String, String> buildInsertionMethodMap(MimicMethod[] mimicMethods) {
-        HashMap<String, String> mapNameToMimicMode = new HashMap<String, String>();
+    private boolean hasInsertionMethod(MimicMethod[] mimicMethods) {
         for (MimicMethod method : mimicMethods) {
-            mapNameToMimicMode.put(method.methodName(), method.insertionMethod());
+            if (method.mode() == MimicMode.BEFORE || method.mode() == MimicMode.AFTER) {
+                return true;
+            }
         }
-        return mapNameToMimicMode;
+        return false;
     }
 
-    private String createInvocation(CtMethod method, String copiedMethodName) throws NotFoundException {
-        StringBuffer buffer = new StringBuffer();
-        for (int j = 0; j < method.getParameterTypes().length; j++) {
-            buffer.append(" $");
-            buffer.append(j + 1);
-            buffer.append(",");
+    /**
+     * Returns the plan of a template. It is built the first time the template
+     * is mimiced, and reused for all the classes mimicing it, whatever their
+     * class pool, as long as the bytecode of the template doesn't change.
+     *
+     * @param template
+     *            the template.
+     * @return the plan of template.
+     * @throws CannotCompileException
+     *             if the bytecode of template is invalid.
+     */
+    public TemplatePlan getTemplatePlan(CtClass template) throws CannotCompileException {
+        String templateDigest = getTemplateDigest(template);
+        TemplatePlan plan = templatePlans.get(template.getName());
+        if (plan == null || !plan.getTemplateDigest().equals(templateDigest)) {
+            plan = TemplatePlan.create(template, templateDigest);
+            templatePlans.put(template.getName(), plan);
         }
-        String params = buffer.toString();
-        if (params.length() > 0) {
-            params = params.substring(0, params.length() - 1);
+        return plan;
+    }
+
+    /**
+     * Compiles the code of a template shared by the classes mimicing it, see
+     * {@link #setSharingTemplateCode(boolean)}. It is compiled the first time
+     * the template is mimiced, and reused as long as the bytecode of the
+     * template doesn't change.
+     *
+     * @param template
+     *            the template.
+     * @return the bytecode of the helper class and of the receiver
+     *         interface, by class name, or an empty map if no method of
+     *         template can be shared.
+     * @throws CannotCompileException
+     *             if the bytecode of template is invalid.
+     */
+    public Map<String, byte[]> shareTemplateCode(CtClass template) throws CannotCompileException {
+        SharedTemplate sharedTemplate = getSharedTemplate(template);
+        Map<String, byte[]> sharedClasses = new TreeMap<String, byte[]>();
+        if (sharedTemplate.hasSharedMethods()) {
+            sharedClasses.put(sharedTemplate.getHelperName(), sharedTemplate.getHelperBytecode());
+            sharedClasses.put(sharedTemplate.getReceiverName(), sharedTemplate.getReceiverBytecode());
         }
-        String string = copiedMethodName + "(" + params + ");\n";
-        return string;
+        return sharedClasses;
     }
 
-    public boolean hasField(CtClass clazz, CtField field) {
-        boolean hasField = false;
+    private SharedTemplate getSharedTemplate(CtClass template) throws CannotCompileException {
+        String templateDigest = getTemplateDigest(template);
+        SharedTemplate sharedTemplate = sharedTemplates.get(template.getName());
+        if (sharedTemplate == null || !sharedTemplate.getTemplateDigest().equals(templateDigest)) {
+            sharedTemplate = SharedTemplate.create(template, templateDigest);
+            sharedTemplates.put(template.getName(), sharedTemplate);
+        }
+        return sharedTemplate;
+    }
+
+    /**
+     * Computes the digest of a template once, as long as it is not modified.
+     * A detached template is another {@link CtClass} once it is read again.
+     */
+    private String getTemplateDigest(CtClass template) throws CannotCompileException {
+        if (template.isModified()) {
+            templateDigests.remove(template);
+            return SharedTemplate.digest(template);
+        }
+        String templateDigest = templateDigests.get(template);
+        if (templateDigest == null) {
+            templateDigest = SharedTemplate.digest(template);
+            templateDigests.put(template, templateDigest);
+        }
+        return templateDigest;
+    }
+
+    /**
+     * Invocations of copies are compiled against the types of their
+     * parameters : a missing type is reported early, whatever the mimic mode.
+     */
+    private void checkParameterTypes(CtBehavior behavior) throws CannotCompileException {
         try {
-            clazz.getField(field.getName());
-            hasField = true;
-        } catch (Exception e) {
-            // nothing
-            hasField = false;
+            behavior.getParameterTypes();
+        } catch (NotFoundException e) {
+            throw new CannotCompileException(e);
+        }
+    }
+
+    /**
+     * Indexes the methods declared by a class by name and descriptor, in a
+     * single pass. Mimicing can then match every method of src against dst in
+     * constant time.
+     */
+    private HashMap<String, CtMethod> indexDeclaredMethods(CtClass clazz) {
+        HashMap<String, CtMethod> mapSignatureToMethod = new HashMap<String, CtMethod>();
+        for (CtMethod method : clazz.getDeclaredMethods()) {
+            mapSignatureToMethod.put(getMethodKey(method), method);
+        }
+        return mapSignatureToMethod;
+    }
+
+    /** Indexes the constructors declared by a class by descriptor. */
+    private HashMap<String, CtConstructor> indexDeclaredConstructors(CtClass clazz) {
+        HashMap<String, CtConstructor> mapSignatureToConstructor = new HashMap<String, CtConstructor>();
+        for (CtConstructor constructor : clazz.getDeclaredConstructors()) {
+            mapSignatureToConstructor.put(constructor.getSignature(), constructor);
         }
-        return hasField;
+        return mapSignatureToConstructor;
+    }
+
+    private String getMethodKey(CtMethod method) {
+        return method.getName() + method.getSignature();
+    }
+
+    /**
+     * Seals a copy, before it is invoked, if private copies are enabled.
+     */
+    private void sealCopy(CtMethod copy, boolean isUsingThis) throws CannotCompileException {
+        if (privateCopies) {
+            copySealer.seal(copy, isUsingThis);
+        }
+    }
+
+    /**
+     * Copies a src method into dst, or a stub invoking its shared code when
+     * dst receives the shared code of src.
+     *
+     * @param sharedTemplate
+     *            the shared code of src, or null if dst doesn't receive it.
+     */
+    private CtMethod copyMethod(SharedTemplate sharedTemplate, CtMethod method, String name, CtClass dst) throws CannotCompileException,
+        NotFoundException {
+        if (sharedTemplate != null && sharedTemplate.isShared(method)) {
+            return sharedTemplate.makeStub(method, name, dst);
+        }
+        return CtNewMethod.copy(method, name, dst, null);
+    }
+
+    /**
+     * @return the shared code of src, if it is enabled and dst can receive it.
+     */
+    private SharedTemplate receiveSharedTemplate(CtClass src, CtClass dst) throws CannotCompileException {
+        if (!sharingTemplateCode) {
+            return null;
+        }
+        SharedTemplate sharedTemplate = getSharedTemplate(src);
+        if (!sharedTemplate.hasSharedMethods() || !sharedTemplate.canBeReceivedBy(dst, src)) {
+            log.fine("Code of " + src.getName() + " is copied into " + dst.getName());
+            return null;
+        }
+        sharedTemplate.implementReceiver(dst);
+        return sharedTemplate;
+    }
+
+    /**
+     * Inlines the invocations of a copy in a dst behavior, if inlining is
+     * enabled. The copy is removed if it is not invoked anymore.
+     *
+     * @return true if the copy was removed.
+     */
+    private boolean inlineCopy(CtClass dst, CtBehavior behaviorInDest, CtMethod copy) throws CannotCompileException, NotFoundException {
+        return inlineCopy(dst, Collections.singletonList(behaviorInDest), copy);
+    }
+
+    private boolean inlineCopy(CtClass dst, List<? extends CtBehavior> behaviorsInDest, CtMethod copy) throws CannotCompileException,
+        NotFoundException {
+        if (!inliningCopies) {
+            return false;
+        }
+        boolean isFullyInlined = true;
+        for (CtBehavior behaviorInDest : behaviorsInDest) {
+            if (copyInliner.inline(behaviorInDest, copy)) {
+                log.fine("Inlined " + copy.getName() + " in " + behaviorInDest.getName());
+            } else {
+                isFullyInlined = false;
+            }
+        }
+        if (isFullyInlined) {
+            dst.removeMethod(copy);
+        }
+        return isFullyInlined;
+    }
+
+    public boolean hasField(CtClass clazz, CtField field) {
+        return TargetIndex.collectFieldNames(clazz).contains(field.getName());
+    }
+
+    /**
+     * Walks the call graph of src from the methods dst needs, see
+     * {@link #setEliminatingUnreachableMethods(boolean)}.
+     *
+     * @return the keys of the methods of src reachable from dst, or null if
+     *         unreachable method elimination is disabled.
+     */
+    private HashSet<String> findReachableMethodKeys(TemplatePlan plan, TargetIndex targetIndex) {
+        if (!eliminatingUnreachableMethods) {
+            return null;
+        }
+        HashSet<String> rootMethodKeys = targetIndex.getRootMethodKeys(plan.getInterfaceNames());
+        rootMethodKeys.addAll(plan.getHandledMethodKeys());
+
+        HashMap<String, Member> mapKeyToMethod = new HashMap<String, Member>();
+        LinkedList<String> methodKeysToVisit = new LinkedList<String>();
+        for (Member constructor : plan.getConstructors()) {
+            methodKeysToVisit.addAll(constructor.getInvokedMethodKeys());
+        }
+        for (Member method : plan.getMethods()) {
+            mapKeyToMethod.put(method.getKey(), method);
+            if (rootMethodKeys.contains(method.getKey())) {
+                methodKeysToVisit.add(method.getKey());
+            }
+        }
+        HashSet<String> reachableMethodKeys = new HashSet<String>();
+        while (!methodKeysToVisit.isEmpty()) {
+            String methodKey = methodKeysToVisit.removeFirst();
+            Member method = mapKeyToMethod.get(methodKey);
+            if (method != null && reachableMethodKeys.add(methodKey)) {
+                methodKeysToVisit.addAll(method.getInvokedMethodKeys());
+            }
+        }
+        return reachableMethodKeys;
     }
 
     public boolean hasInterface(CtClass dst, CtClass interfazz) throws NotFoundException {
@@ -139,6 +583,56 @@ public class MimicCreator {
         return false;
     }
 
+    /**
+     * Checks that several templates can be mimiced by the same dst class. A
+     * template can only be mimiced once, templates must not declare the same
+     * field, nor the same method unless dst declares it too : its copy would
+     * otherwise depend on the order of the templates. All conflicts are
+     * reported at once.
+     *
+     * @param dst
+     *            the dst class.
+     * @param templates
+     *            the src classes, in the order they will be mimiced.
+     * @throws MimicException
+     *             if templates conflict.
+     * @throws CannotCompileException
+     *             should not be thrown except if a src class doesn't compile...
+     */
+    public void checkConflicts(CtClass dst, List<CtClass> templates) throws MimicException, CannotCompileException {
+        HashSet<String> templateNames = new HashSet<String>();
+        HashMap<String, String> mapFieldNameToTemplateName = new HashMap<String, String>();
+        HashMap<String, String> mapMethodKeyToTemplateName = new HashMap<String, String>();
+        HashMap<String, CtMethod> mapSignatureToMethodInDest = indexDeclaredMethods(dst);
+        List<String> conflicts = new ArrayList<String>();
+        for (CtClass template : templates) {
+            String templateName = template.getName();
+            if (!templateNames.add(templateName)) {
+                conflicts.add(templateName + " is mimiced twice");
+                continue;
+            }
+            TemplatePlan plan = getTemplatePlan(template);
+            for (String fieldName : plan.getFieldNames()) {
+                String otherTemplateName = mapFieldNameToTemplateName.put(fieldName, templateName);
+                if (otherTemplateName != null) {
+                    conflicts.add(String.format("%s and %s both declare field %s", otherTemplateName, templateName, fieldName));
+                }
+            }
+            for (Member method : plan.getMethods()) {
+                if (mapSignatureToMethodInDest.containsKey(method.getKey())) {
+                    continue;
+                }
+                String otherTemplateName = mapMethodKeyToTemplateName.put(method.getKey(), templateName);
+                if (otherTemplateName != null) {
+                    conflicts.add(String.format("%s and %s both declare method %s", otherTemplateName, templateName, method.getKey()));
+                }
+            }
+        }
+        if (!conflicts.isEmpty()) {
+            throw new MimicException(String.format("Templates of class %s conflict: %s %n", dst.getName(), conflicts));
+        }
+    }
+
     /**
      * Copies all fields, constructors and methods declared in class src into
      * dst. All interfaces implemented by src will also be implemented by dst.
@@ -159,213 +653,687 @@ public class MimicCreator {
      *             dst share a common field.
      */
     public void mimicClass(CtClass src, CtClass dst, MimicMode defaultMimicMode, MimicMethod[] mimicMethods) throws NotFoundException, CannotCompileException, MimicException {
-        mimicInterfaces(src, dst);
-        mimicFields(src, dst);
-        mimicConstructors(src, dst);
-        mimicMethods(src, dst, defaultMimicMode, mimicMethods);
+        mimicClass(src, dst, defaultMimicMode, mimicMethods, new MimicField[0]);
+    }
+
+    /**
+     * Same as {@link #mimicClass(CtClass, CtClass, MimicMode, MimicMethod[])},
+     * but only the fields of src selected by mimicFields are copied.
+     *
+     * @param src
+     *            the src class.
+     * @param dst
+     *            the dst class.
+     * @param defaultMimicMode
+     *            the default mimic mode for methods.
+     * @param mimicMethods
+     * @param mimicFields
+     *            the fields to copy. If empty, all fields are copied.
+     * @throws NotFoundException
+     *             should not be thrown.
+     * @throws CannotCompileException
+     *             should not be thrown except if class src doesn't compile...
+     * @throws MimicException
+     *             if mimicing is not possible. For instance if class src and
+     *             dst share a common field.
+     * @see #mimicFields(CtClass, CtClass, MimicField[])
+     */
+    public void mimicClass(CtClass src, CtClass dst, MimicMode defaultMimicMode, MimicMethod[] mimicMethods, MimicField[] mimicFields)
+        throws NotFoundException, CannotCompileException, MimicException {
+        mimicClass(src, new TargetIndex(dst), defaultMimicMode, mimicMethods, mimicFields);
+    }
+
+    /**
+     * Same as
+     * {@link #mimicClass(CtClass, CtClass, MimicMode, MimicMethod[], MimicField[])},
+     * looking dst up through an index shared by all the templates it mimics.
+     */
+    void mimicClass(CtClass src, TargetIndex targetIndex, MimicMode defaultMimicMode, MimicMethod[] mimicMethods, MimicField[] mimicFields)
+        throws NotFoundException, CannotCompileException, MimicException {
+        TemplatePlan plan = getTemplatePlan(src);
+        CtClass dst = targetIndex.getDst();
+        mimicInterfaces(plan, dst);
+        // reachability only depends on the methods of dst, before src methods are copied
+        HashSet<String> reachableMethodKeys = findReachableMethodKeys(plan, targetIndex);
+        mimicFields(plan, src, targetIndex, mimicFields, reachableMethodKeys);
+        mimicConstructors(plan, src, dst);
+        mimicMethods(plan, src, targetIndex, defaultMimicMode, mimicMethods, reachableMethodKeys);
     }
 
     public void mimicConstructors(CtClass src, CtClass dst) throws CannotCompileException, NotFoundException {
-        for (final CtConstructor constructor : src.getDeclaredConstructors()) {
+        mimicConstructors(getTemplatePlan(src), src, dst);
+    }
+
+    /**
+     * Template constructors matching a dst constructor are copied as methods,
+     * the others as dst constructors. Along a chain of {@code this(...)}
+     * delegations, a copy is only invoked by the constructor closest to the
+     * root that invokes it : the code of a template constructor runs once per
+     * construction. When {@link #setInitializingUnmatchedRoots(boolean)
+     * enabled}, root constructors without a matching template constructor
+     * invoke the copy of the template's no-arg constructor, which all of them
+     * share.
+     * <p>
+     * The code that the root constructors of the template share, like field
+     * initializers, is copied once, into a method that every root constructor
+     * of dst invokes first, see {@link SharedInitialization}. It is removed
+     * from the other copies : delegating constructors of dst only run the
+     * code specific to their template constructor, and copies of unmatched
+     * template constructors invoke the shared method instead.
+     * </p>
+     */
+    private void mimicConstructors(TemplatePlan plan, CtClass src, CtClass dst) throws CannotCompileException, NotFoundException {
+        long startNanos = System.nanoTime();
+        HashMap<String, CtConstructor> mapSignatureToConstructorInDest = indexDeclaredConstructors(dst);
+        List<CtConstructor> constructorsInDest = Arrays.asList(dst.getDeclaredConstructors());
+        ConstructorChains chains = new ConstructorChains(dst);
+        boolean isInitializingRoots = initializingUnmatchedRoots
+                && hasUnmatchedRoot(constructorsInDest, chains, indexDeclaredConstructors(src));
+
+        String key = this.key == null ? "" : (this.key + "_");
+        SharedInitialization initialization = plan.getSharedInitialization();
+        CtMethod initializationCopy = null;
+        List<CtConstructor> initializationInvokers = new ArrayList<CtConstructor>();
+        LinkedHashMap<String, CtMethod> mapSignatureToCopy = new LinkedHashMap<String, CtMethod>();
+        HashMap<String, Member> mapSignatureToPlannedConstructor = new HashMap<String, Member>();
+        CtConstructor[] constructors = src.getDeclaredConstructors();
+        for (int i = 0; i < constructors.length; i++) {
+            CtConstructor constructor = constructors[i];
+            Member plannedConstructor = plan.getConstructors().get(i);
             log.fine("Mimic constructor " + constructor.getName());
-            boolean destHasSameConstructor = false;
-            for (CtConstructor constructorInDest : dst.getDeclaredConstructors()) {
-                String signature = constructor.getSignature();
-                String signatureInDest = constructorInDest.getSignature();
-                if (signatureInDest.equals(signature)) {
-                    destHasSameConstructor = true;
-                    log.fine("Forwarding " + constructor.getName());
-                    String key = this.key == null ? "" : (this.key + "_");
-                    final String copiedConstructorName = "_copy_" + key + constructor.getName();
-                    dst.addMethod(constructor.toMethod(copiedConstructorName, dst));
-                    StringBuffer buffer = new StringBuffer();
-                    for (int j = 0; j < constructor.getParameterTypes().length; j++) {
-                        buffer.append(" $");
-                        buffer.append(j + 1);
-                        buffer.append(",");
-                    }
-                    String params = buffer.toString();
-                    if (params.length() > 0) {
-                        params = params.substring(0, params.length() - 1);
+            String signature = constructor.getSignature();
+            boolean isMatched = mapSignatureToConstructorInDest.containsKey(signature);
+            boolean isSharingInitialization = initialization != null && initialization.isSharedBy(signature);
+            if (isMatched || isInitializingRoots && NO_ARG_DESCRIPTOR.equals(signature)) {
+                log.fine("Forwarding " + constructor.getName());
+                checkParameterTypes(constructor);
+                final String copiedConstructorName = "_copy_" + key + constructor.getName();
+                CtMethod copiedConstructor = constructor.toMethod(copiedConstructorName, dst);
+                if (isSharingInitialization) {
+                    if (initializationCopy == null) {
+                        initializationCopy = copyInitialization(initialization, copiedConstructor, signature, "_copy_" + key
+                                + constructor.getName() + "_init");
                     }
-                    String string = copiedConstructorName + "(" + params + ");\n";
-                    log.fine("Injected constructor " + string);
-                    constructorInDest.insertAfter(string);
+                    initialization.replace(copiedConstructor, signature, new byte[0]);
                 }
+                sealCopy(copiedConstructor, plannedConstructor.isUsingThis());
+                dst.addMethod(copiedConstructor);
+                mapSignatureToCopy.put(signature, copiedConstructor);
+                mapSignatureToPlannedConstructor.put(signature, plannedConstructor);
             }
-            if (!destHasSameConstructor) {
+            if (!isMatched) {
                 log.fine("Copying " + constructor.getName());
-                dst.addConstructor(CtNewConstructor.copy(constructor, dst, null));
+                CtConstructor copiedConstructor = CtNewConstructor.copy(constructor, dst, null);
+                if (isSharingInitialization) {
+                    if (initializationCopy == null) {
+                        initializationCopy = copyInitialization(initialization, copiedConstructor, signature, "_copy_" + key
+                                + constructor.getName() + "_init");
+                    }
+                    if (initialization.replace(copiedConstructor, signature, getInvocationCode(initializationCopy))) {
+                        initializationInvokers.add(copiedConstructor);
+                    }
+                }
+                dst.addConstructor(copiedConstructor);
+                mapSignatureToConstructorInDest.put(copiedConstructor.getSignature(), copiedConstructor);
             }
         }
+
+        HashMap<String, List<CtConstructor>> mapSignatureToInvokers = new HashMap<String, List<CtConstructor>>();
+        for (CtConstructor constructorInDest : constructorsInDest) {
+            if (initializationCopy != null && chains.isRoot(constructorInDest.getSignature())) {
+                // before any template constructor, as in the template
+                invokeBeforeReturns(constructorInDest, initializationCopy.getName() + "();\n", initializationCopy, false);
+                initializationInvokers.add(constructorInDest);
+            }
+            String copySignature = findInitialization(constructorInDest.getSignature(), chains, mapSignatureToCopy);
+            if (copySignature == null || runsInitialization(constructorInDest.getSignature(), copySignature, chains, mapSignatureToCopy)) {
+                continue;
+            }
+            invokeBeforeReturns(constructorInDest, mapSignatureToPlannedConstructor.get(copySignature), mapSignatureToCopy.get(copySignature),
+                    false);
+            if (!mapSignatureToInvokers.containsKey(copySignature)) {
+                mapSignatureToInvokers.put(copySignature, new ArrayList<CtConstructor>());
+            }
+            mapSignatureToInvokers.get(copySignature).add(constructorInDest);
+        }
+        for (CtMethod copy : mapSignatureToCopy.values()) {
+            List<CtConstructor> invokers = mapSignatureToInvokers.get(copy.getSignature());
+            if (invokers == null) {
+                log.fine("Removed " + copy.getName() + ", no constructor of " + dst.getName() + " invokes it");
+                dst.removeMethod(copy);
+            } else {
+                inlineCopy(dst, invokers, copy);
+            }
+        }
+        if (initializationCopy != null) {
+            inlineCopy(dst, initializationInvokers, initializationCopy);
+        }
+        firePhase(dst, MimicPhase.CONSTRUCTORS, startNanos, constructors.length);
+    }
+
+    /**
+     * Copies the code shared by the root constructors of a template into a
+     * method of dst.
+     *
+     * @param copy
+     *            a copy, in dst, of a root constructor of the template.
+     */
+    private CtMethod copyInitialization(SharedInitialization initialization, CtBehavior copy, String signature, String name)
+        throws CannotCompileException {
+        CtMethod initializationCopy = initialization.extract(copy, signature, name);
+        sealCopy(initializationCopy, true);
+        copy.getDeclaringClass().addMethod(initializationCopy);
+        return initializationCopy;
+    }
+
+    /** @return the bytecode invoking a copy without parameters on {@code this}. */
+    private byte[] getInvocationCode(CtMethod copy) {
+        CtClass dst = copy.getDeclaringClass();
+        Bytecode invocation = new Bytecode(dst.getClassFile2().getConstPool());
+        invocation.addAload(0);
+        if (Modifier.isPrivate(copy.getModifiers())) {
+            invocation.addInvokespecial(dst, copy.getName(), copy.getSignature());
+        } else {
+            invocation.addInvokevirtual(dst, copy.getName(), copy.getSignature());
+        }
+        return invocation.get();
+    }
+
+    private boolean hasUnmatchedRoot(List<CtConstructor> constructorsInDest, ConstructorChains chains,
+            HashMap<String, CtConstructor> mapSignatureToConstructorInSrc) {
+        for (CtConstructor constructorInDest : constructorsInDest) {
+            String signature = constructorInDest.getSignature();
+            if (chains.isRoot(signature) && !mapSignatureToConstructorInSrc.containsKey(signature)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the signature of the copy initializing the template in a dst
+     *         constructor, or null if it has none.
+     */
+    private String findInitialization(String signature, ConstructorChains chains, HashMap<String, CtMethod> mapSignatureToCopy) {
+        if (mapSignatureToCopy.containsKey(signature)) {
+            return signature;
+        }
+        if (initializingUnmatchedRoots && chains.isRoot(signature) && mapSignatureToCopy.containsKey(NO_ARG_DESCRIPTOR)) {
+            return NO_ARG_DESCRIPTOR;
+        }
+        return null;
+    }
+
+    /**
+     * @return true if a constructor that a dst constructor delegates to,
+     *         directly or not, invokes the same copy. Delegates invoking
+     *         another copy don't run the code of this template constructor.
+     */
+    private boolean runsInitialization(String signature, String copySignature, ConstructorChains chains,
+            HashMap<String, CtMethod> mapSignatureToCopy) {
+        HashSet<String> visitedSignatures = new HashSet<String>();
+        String delegateSignature = chains.getDelegateDescriptor(signature);
+        while (delegateSignature != null && visitedSignatures.add(delegateSignature)) {
+            if (copySignature.equals(findInitialization(delegateSignature, chains, mapSignatureToCopy))) {
+                return true;
+            }
+            delegateSignature = chains.getDelegateDescriptor(delegateSignature);
+        }
+        return false;
     }
 
     public void mimicFields(CtClass src, CtClass dst) throws MimicException, CannotCompileException {
+        mimicFields(src, dst, new MimicField[0]);
+    }
+
+    /**
+     * Copies the fields of src selected by mimicFields into dst. Fields that
+     * are not selected are not copied, but the constructors and methods of
+     * src that use them still are : they must then be inherited by dst. When
+     * mimicFields is empty, all fields are copied, but the ones left out by
+     * {@link #setEliminatingDeadFields(boolean) dead field elimination} or
+     * by {@link #setEliminatingUnreachableMethods(boolean) unreachable method
+     * elimination}.
+     *
+     * @param src
+     *            the src class.
+     * @param dst
+     *            the dst class.
+     * @param mimicFields
+     *            the fields to copy.
+     * @throws MimicException
+     *             if a selected field doesn't exist in src, if dst already
+     *             has a copied field, or if a field used by src code is
+     *             neither copied nor inherited by dst.
+     * @throws CannotCompileException
+     *             should not be thrown except if class src doesn't compile...
+     */
+    public void mimicFields(CtClass src, CtClass dst, MimicField[] mimicFields) throws MimicException, CannotCompileException {
+        TemplatePlan plan = getTemplatePlan(src);
+        TargetIndex targetIndex = new TargetIndex(dst);
+        mimicFields(plan, src, targetIndex, mimicFields, findReachableMethodKeys(plan, targetIndex));
+    }
+
+    /**
+     * @param reachableMethodKeys
+     *            the keys of the src methods that are copied, or null if all
+     *            of them are.
+     */
+    private void mimicFields(TemplatePlan plan, CtClass src, TargetIndex targetIndex, MimicField[] mimicFields,
+            Set<String> reachableMethodKeys) throws MimicException, CannotCompileException {
+        long startNanos = System.nanoTime();
+        CtClass dst = targetIndex.getDst();
+        HashSet<String> fieldNamesInDest = targetIndex.getFieldNames();
+        Set<String> referencedFieldNames = getReferencedFieldNames(plan, reachableMethodKeys);
+        List<String> copiedFieldNames = selectFields(plan, src, mimicFields, referencedFieldNames,
+                eliminatingDeadFields || reachableMethodKeys != null);
+        for (String fieldName : referencedFieldNames) {
+            if (!copiedFieldNames.contains(fieldName) && !fieldNamesInDest.contains(fieldName)) {
+                throw new MimicException(String.format("Field %s of %s is used by its code but is neither mimiced nor inherited by %s %n",
+                        fieldName, src.getName(), dst.getName()));
+            }
+        }
+        List<String> collidingFieldNames = new ArrayList<String>();
+        for (String fieldName : copiedFieldNames) {
+            if (fieldNamesInDest.contains(fieldName)) {
+                if (!reportingAllFieldCollisions) {
+                    throw new MimicException(String.format("Class %s already has a field named %s %n", dst.getName(), fieldName));
+                }
+                collidingFieldNames.add(fieldName);
+            }
+        }
+        if (!collidingFieldNames.isEmpty()) {
+            throw new MimicException(String.format("Class %s already has fields named %s %n", dst.getName(), collidingFieldNames));
+        }
+
+        int copiedCount = 0;
         for (CtField field : src.getDeclaredFields()) {
-            if (hasField(dst, field)) {
-                throw new MimicException(String.format("Class %s already has a field named %s %n", dst.getName(), field.getName()));
+            if (copiedFieldNames.contains(field.getName())) {
+                targetIndex.addField(new CtField(field, dst));
+                copiedCount++;
+            }
+        }
+        firePhase(dst, MimicPhase.FIELDS, startNanos, copiedCount);
+    }
+
+    /** @return the names of the fields of src that its constructors and its copied methods read or write. */
+    private Set<String> getReferencedFieldNames(TemplatePlan plan, Set<String> reachableMethodKeys) {
+        if (reachableMethodKeys == null) {
+            return plan.getReferencedFieldNames();
+        }
+        HashSet<String> referencedFieldNames = new HashSet<String>();
+        for (Member constructor : plan.getConstructors()) {
+            referencedFieldNames.addAll(constructor.getReferencedFieldNames());
+        }
+        for (Member method : plan.getMethods()) {
+            if (reachableMethodKeys.contains(method.getKey())) {
+                referencedFieldNames.addAll(method.getReferencedFieldNames());
+            }
+        }
+        return referencedFieldNames;
+    }
+
+    /**
+     * @param isEliminatingFields
+     *            whether fields that are not referenced are left out, when no
+     *            mimic field selects them.
+     * @return the names of the fields of src to copy, in declaration order.
+     */
+    private List<String> selectFields(TemplatePlan plan, CtClass src, MimicField[] mimicFields, Set<String> referencedFieldNames,
+            boolean isEliminatingFields) throws MimicException {
+        List<String> selectedFieldNames = new ArrayList<String>();
+        if (mimicFields != null && mimicFields.length != 0) {
+            for (MimicField mimicField : mimicFields) {
+                if (!plan.getFieldNames().contains(mimicField.fieldName())) {
+                    throw new MimicException(String.format("Class %s has no field named %s %n", src.getName(), mimicField.fieldName()));
+                }
+            }
+            for (String fieldName : plan.getFieldNames()) {
+                for (MimicField mimicField : mimicFields) {
+                    if (fieldName.equals(mimicField.fieldName())) {
+                        selectedFieldNames.add(fieldName);
+                        break;
+                    }
+                }
+            }
+        } else {
+            for (String fieldName : plan.getFieldNames()) {
+                if (!isEliminatingFields || referencedFieldNames.contains(fieldName)) {
+                    selectedFieldNames.add(fieldName);
+                }
             }
-            dst.addField(new CtField(field, dst));
         }
+        return selectedFieldNames;
     }
 
     public void mimicInterfaces(CtClass src, CtClass dst) throws NotFoundException {
-        for (CtClass interfazz : src.getInterfaces()) {
-            if (!hasInterface(dst, interfazz)) {
-                dst.addInterface(interfazz);
+        TemplatePlan plan;
+        try {
+            plan = getTemplatePlan(src);
+        } catch (CannotCompileException e) {
+            throw new NotFoundException(src.getName(), e);
+        }
+        mimicInterfaces(plan, dst);
+    }
+
+    /** Only the interfaces that dst lacks are resolved. */
+    private void mimicInterfaces(TemplatePlan plan, CtClass dst) throws NotFoundException {
+        long startNanos = System.nanoTime();
+        int addedCount = 0;
+        List<String> interfaceNamesInDest = Arrays.asList(dst.getClassFile2().getInterfaces());
+        for (String interfaceName : plan.getInterfaceNames()) {
+            if (!interfaceNamesInDest.contains(interfaceName)) {
+                dst.addInterface(dst.getClassPool().get(interfaceName));
+                addedCount++;
             }
         }
+        firePhase(dst, MimicPhase.INTERFACES, startNanos, addedCount);
     }
 
     public void mimicMethods(CtClass src, CtClass dst, MimicMode defaultMimicMode, MimicMethod[] mimicMethods) throws MimicException, CannotCompileException, NotFoundException {
-        HashMap<String, MimicMode> mapNameToMimicMode = buildMimicModeMethodMap(mimicMethods);
-        HashMap<String, String> mapNameToInsertionMethod = buildInsertionMethodMap(mimicMethods);
+        TemplatePlan plan = getTemplatePlan(src);
+        TargetIndex targetIndex = new TargetIndex(dst);
+        mimicMethods(plan, src, targetIndex, defaultMimicMode, mimicMethods, findReachableMethodKeys(plan, targetIndex));
+    }
+
+    /**
+     * @param reachableMethodKeys
+     *            the keys of the src methods to copy, or null to copy all of
+     *            them.
+     */
+    private void mimicMethods(TemplatePlan plan, CtClass src, TargetIndex targetIndex, MimicMode defaultMimicMode,
+            MimicMethod[] mimicMethods, Set<String> reachableMethodKeys) throws MimicException, CannotCompileException, NotFoundException {
+        long startNanos = System.nanoTime();
+        CtClass dst = targetIndex.getDst();
+        HashMap<String, MimicMethod> mapKeyToMimicMethod = buildMimicMethodMap(mimicMethods);
+        HashMap<String, CtMethod> mapSignatureToMethodInDest = targetIndex.getDeclaredMethods();
+        // the hierarchy of dst is only walked when insertion methods are looked up
+        MethodIndex methodIndex = hasInsertionMethod(mimicMethods) ? targetIndex.getMethodIndex() : null;
+        LinkedHashMap<String, InsertionEditor> mapSignatureToEditor = new LinkedHashMap<String, InsertionEditor>();
+        SharedTemplate sharedTemplate = receiveSharedTemplate(src, dst);
 
-        for (final CtMethod method : src.getDeclaredMethods()) {
+        CtMethod[] methods = src.getDeclaredMethods();
+        for (int i = 0; i < methods.length; i++) {
+            CtMethod method = methods[i];
+            Member plannedMethod = plan.getMethods().get(i);
             log.fine("Mimic method " + method.getName());
-            boolean destHasSameMethod = false;
-            for (CtMethod methodInDest : dst.getDeclaredMethods()) {
-                String signature = method.getSignature() + method.getName();
-                String signatureInDest = methodInDest.getSignature() + methodInDest.getName();
-                if (signatureInDest.equals(signature)) {
-                    destHasSameMethod = true;
-                    log.fine("Forwarding " + method.getName());
-                    String key = this.key == null ? "" : (this.key + "_");
-                    final String copiedMethodName = "_copy_" + key + method.getName();
-                    dst.addMethod(CtNewMethod.copy(method, copiedMethodName, dst, null));
-
-                    CtMethod insertionMethod = null;
-                    MimicMode mimicMode = defaultMimicMode;
-                    if (mapNameToMimicMode.containsKey(method.getName())) {
-                        mimicMode = mapNameToMimicMode.get(method.getName());
-                        String insertionMethodName = mapNameToInsertionMethod.get(method.getName());
-                        insertionMethod = findMethod(dst, insertionMethod, insertionMethodName);
-                    }
-                    log.fine("Mimic mode " + mimicMode);
-                    switch (mimicMode) {
-                        case AT_BEGINNING:
-                            methodInDest.insertBefore(createInvocation(methodInDest, copiedMethodName));
-                            break;
-                        case BEFORE_RETURN:
-                            String returnString = method.getReturnType() == null ? "" : "return ";
-                            methodInDest.insertAfter(returnString + createInvocation(methodInDest, copiedMethodName));
-                            break;
-                        case BEFORE:
-                        case AFTER:
-                            ReplaceExprEditor editor = new ReplaceExprEditor(copiedMethodName, method, insertionMethod, mimicMode);
-                            methodInDest.instrument(editor);
-                            if (!editor.isSuccessful()) {
-                                throw new MimicException("No replacement for method:" + method.getName() + " with insertion AFTER " + (insertionMethod == null ? "insertion method is null" : insertionMethod.getName()));
-                            }
-                            break;
-                        case BEFORE_SUPER:
-                        case AFTER_SUPER:
-                        case REPLACE_SUPER:
-                            ReplaceExprEditor editor2 = new ReplaceExprEditor(copiedMethodName, method, mimicMode);
-                            methodInDest.instrument(editor2);
-                            if (!editor2.isSuccessful()) {
-                                throw new MimicException("No replacement for method:" + method.getName() + " with insertion REPLACE_SUPER ");
-                            }
-                            break;
-                        default:
-                            break;
-                    }
+            CtMethod methodInDest = mapSignatureToMethodInDest.get(plannedMethod.getKey());
+            if (methodInDest != null) {
+                log.fine("Forwarding " + method.getName());
+                checkParameterTypes(method);
+                String key = this.key == null ? "" : (this.key + "_");
+                final String copiedMethodName = "_copy_" + key + method.getName();
+                CtMethod copiedMethod = copyMethod(sharedTemplate, method, copiedMethodName, dst);
+                // stubs pass this to the shared code
+                sealCopy(copiedMethod, plannedMethod.isUsingThis() || sharedTemplate != null && sharedTemplate.isShared(method));
+                targetIndex.addMethod(copiedMethod);
+
+                MimicMethod mimicMethod = findMimicMethod(mapKeyToMimicMethod, plannedMethod);
+                MimicMode mimicMode = mimicMethod == null ? defaultMimicMode : mimicMethod.mode();
+                log.fine("Mimic mode " + mimicMode);
+                switch (mimicMode) {
+                    case AT_BEGINNING:
+                        invokeAtBeginning(methodInDest, plannedMethod, copiedMethod);
+                        break;
+                    case BEFORE_RETURN:
+                        invokeBeforeReturns(methodInDest, plannedMethod, copiedMethod, true);
+                        break;
+                    case BEFORE:
+                    case AFTER:
+                        String insertionMethodDescriptor = mimicMethod == null ? "" : mimicMethod.insertionMethodSignature();
+                        CtMethod insertionMethod = mimicMethod == null ? null : methodIndex.find(mimicMethod.insertionMethod(), insertionMethodDescriptor);
+                        getEditor(mapSignatureToEditor, methodInDest).add(
+                                new Insertion(plannedMethod, copiedMethod, insertionMethod, insertionMethodDescriptor, mimicMode));
+                        continue;
+                    case BEFORE_SUPER:
+                    case AFTER_SUPER:
+                    case REPLACE_SUPER:
+                        getEditor(mapSignatureToEditor, methodInDest).add(new Insertion(plannedMethod, copiedMethod, method, "", mimicMode));
+                        continue;
+                    default:
+                        break;
                 }
-            }
-            if (!destHasSameMethod) {
+                if (inlineCopy(dst, methodInDest, copiedMethod)) {
+                    mapSignatureToMethodInDest.remove(getMethodKey(copiedMethod));
+                }
+            } else if (reachableMethodKeys != null && !reachableMethodKeys.contains(plannedMethod.getKey())) {
+                log.fine("Left out " + method.getName() + ", unreachable from " + dst.getName());
+            } else {
                 log.fine("Copying " + method.getName());
-                dst.addMethod(CtNewMethod.copy(method, dst, null));
+                targetIndex.addMethod(copyMethod(sharedTemplate, method, method.getName(), dst));
             }
         }
-    }
 
-    private CtMethod findMethod(CtClass dst, CtMethod insertionMethod, String insertionMethodName) {
-        if (insertionMethodName != null) {
-            for (CtMethod methodInDest2 : dst.getDeclaredMethods()) {
-                if (methodInDest2.getName().equals(insertionMethodName)) {
-                    insertionMethod = methodInDest2;
+        // all insertions into a dst method are woven in a single walk of its bytecode
+        for (InsertionEditor editor : mapSignatureToEditor.values()) {
+            instrument(dst, editor);
+            for (Insertion insertion : editor.getInsertions()) {
+                if (insertion.getReplacedCount() == 0) {
+                    throw new MimicException(insertion.getFailureMessage());
                 }
             }
-            if (insertionMethod == null) {
-                for (CtMethod methodInDest2 : dst.getMethods()) {
-                    if (methodInDest2.getName().equals(insertionMethodName)) {
-                        insertionMethod = methodInDest2;
-                    }
-                }
+            for (Insertion insertion : editor.getInsertions()) {
+                inlineCopy(dst, editor.getMethodInDest(), insertion.getCopy());
             }
         }
-        return insertionMethod;
+        firePhase(dst, MimicPhase.METHODS, startNanos, methods.length);
     }
 
-    private final class ReplaceExprEditor extends ExprEditor {
-        private final String copiedMethodName;
-        private final CtMethod originalMethod;
-        private final CtMethod insertionMethod;
-        private final MimicMode mode;
-        private boolean isSuccessful = false;
+    private InsertionEditor getEditor(HashMap<String, InsertionEditor> mapSignatureToEditor, CtMethod methodInDest) {
+        String methodKey = getMethodKey(methodInDest);
+        InsertionEditor editor = mapSignatureToEditor.get(methodKey);
+        if (editor == null) {
+            editor = new InsertionEditor(methodInDest);
+            mapSignatureToEditor.put(methodKey, editor);
+        }
+        return editor;
+    }
 
-        private ReplaceExprEditor(String copiedMethodName, CtMethod originalMethod, MimicMode mode) {
-            this(copiedMethodName, originalMethod, originalMethod, mode);
+    private void invokeAtBeginning(CtMethod methodInDest, Member original, CtMethod copy) throws CannotCompileException, NotFoundException {
+        if (backend == WeavingBackend.BYTECODE) {
+            bytecodeWeaver.invokeAtBeginning(methodInDest, copy);
+        } else {
+            methodInDest.insertBefore(original.getInvocation(copy.getName()));
         }
+    }
+
+    /**
+     * Invokes a copy before the returns of a dst behavior.
+     *
+     * @param original
+     *            the src behavior that was copied.
+     * @param isReturningCopyResult
+     *            whether the result of the copy is returned instead of the
+     *            result of the dst behavior.
+     */
+    private void invokeBeforeReturns(CtBehavior behaviorInDest, Member original, CtMethod copy, boolean isReturningCopyResult)
+        throws CannotCompileException, NotFoundException {
+        invokeBeforeReturns(behaviorInDest, original.getInvocation(copy.getName()), copy, isReturningCopyResult);
+    }
+
+    /**
+     * @param invocation
+     *            the statement invoking copy, for the source backend.
+     */
+    private void invokeBeforeReturns(CtBehavior behaviorInDest, String invocation, CtMethod copy, boolean isReturningCopyResult)
+        throws CannotCompileException, NotFoundException {
+        if (backend == WeavingBackend.BYTECODE) {
+            bytecodeWeaver.invokeBeforeReturns(behaviorInDest, copy, isReturningCopyResult);
+        } else {
+            String statement = (isReturningCopyResult ? "return " : "") + invocation;
+            log.fine("Injected " + statement);
+            behaviorInDest.insertAfter(statement);
+        }
+    }
 
-        private ReplaceExprEditor(String copiedMethodName, CtMethod originalMethod, CtMethod insertionMethod, MimicMode mode) {
-            this.copiedMethodName = copiedMethodName;
-            this.originalMethod = originalMethod;
-            this.insertionMethod = insertionMethod;
+    private void instrument(CtClass dst, InsertionEditor editor) throws CannotCompileException {
+        long startNanos = System.nanoTime();
+        if (backend == WeavingBackend.BYTECODE) {
+            bytecodeWeaver.invokeAroundCalls(editor.getMethodInDest(), editor);
+        } else {
+            editor.getMethodInDest().instrument(editor);
+        }
+        firePhase(dst, MimicPhase.INSTRUMENTATION, startNanos, editor.getReplacedCount());
+    }
+
+    /**
+     * An invocation of a copy, to insert around the invocations of an
+     * insertion method. The invocation is compiled from a source string
+     * built once, whatever the number of method calls in the dst method.
+     */
+    private final class Insertion {
+        @Getter
+        private final CtMethod copy;
+        private final String originalMethodName;
+        private final String insertionMethodName;
+        /** Descriptor of the invoked insertion method, empty for all its overloads. */
+        private final String insertionMethodDescriptor;
+        private final MimicMode mode;
+        private final String invokeCopy;
+        @Getter
+        private int replacedCount;
+
+        private Insertion(Member originalMethod, CtMethod copy, CtMethod insertionMethod, String insertionMethodDescriptor, MimicMode mode) {
+            this.copy = copy;
+            this.originalMethodName = originalMethod.getName();
+            this.insertionMethodName = insertionMethod == null ? null : insertionMethod.getName();
+            this.insertionMethodDescriptor = insertionMethodDescriptor;
             this.mode = mode;
+            this.invokeCopy = originalMethod.getInvocation(copy.getName());
+        }
+
+        private boolean isSuperOnly() {
+            return mode == MimicMode.BEFORE_SUPER || mode == MimicMode.AFTER_SUPER || mode == MimicMode.REPLACE_SUPER;
+        }
+
+        private String getFailureMessage() {
+            if (isSuperOnly()) {
+                return "No replacement for method:" + originalMethodName + " with insertion " + mode + " ";
+            }
+            return "No replacement for method:" + originalMethodName + " with insertion " + mode + " "
+                    + (insertionMethodName == null ? "insertion method is null" : insertionMethodName);
+        }
+    }
+
+    /**
+     * Weaves all the insertions into a dst method in a single walk of its
+     * bytecode. Method calls that are no insertion point cost a lookup.
+     */
+    private final class InsertionEditor extends ExprEditor implements CallSiteSelector {
+        @Getter
+        private final CtMethod methodInDest;
+        @Getter
+        private final List<Insertion> insertions = new ArrayList<Insertion>();
+        private final HashMap<String, List<Insertion>> mapNameToInsertions = new HashMap<String, List<Insertion>>();
+        @Getter
+        private int replacedCount;
+
+        private InsertionEditor(CtMethod methodInDest) {
+            this.methodInDest = methodInDest;
+        }
+
+        private void add(Insertion insertion) {
+            insertions.add(insertion);
+            if (insertion.insertionMethodName == null) {
+                return;
+            }
+            List<Insertion> insertionsOfName = mapNameToInsertions.get(insertion.insertionMethodName);
+            if (insertionsOfName == null) {
+                insertionsOfName = new ArrayList<Insertion>();
+                mapNameToInsertions.put(insertion.insertionMethodName, insertionsOfName);
+            }
+            insertionsOfName.add(insertion);
         }
 
         @Override
         public void edit(MethodCall m) throws CannotCompileException {
-            switch (mode) {
-                case AFTER_SUPER:
-                case BEFORE_SUPER:
-                case REPLACE_SUPER:
-                    if (!m.isSuper()) {
-                        log.warning("An invocation of method " + insertionMethod.getName() + " was detected, without a call to super in " + m.getMethodName()
-                                + " while asking to mimic method with mode " + mode);
-                        return;
-                    }
-                    break;
-                default:
-                    break;
+            List<Insertion> matchingInsertions = match(m.getMethodName(), m.getSignature(), m.isSuper());
+            if (matchingInsertions == null) {
+                return;
             }
-
-            String invokeCopy;
-            try {
-                invokeCopy = createInvocation(originalMethod, copiedMethodName);
-            } catch (NotFoundException e) {
-                throw new CannotCompileException(e);
+            StringBuilder before = new StringBuilder();
+            StringBuilder after = new StringBuilder();
+            String proceed = "$_ = $proceed($$);\n";
+            for (Insertion insertion : matchingInsertions) {
+                switch (insertion.mode) {
+                    case AFTER_SUPER:
+                    case AFTER:
+                        after.insert(0, insertion.invokeCopy);
+                        break;
+                    case BEFORE_SUPER:
+                    case BEFORE:
+                        before.append(insertion.invokeCopy);
+                        break;
+                    case REPLACE_SUPER:
+                        proceed = "$_ = " + insertion.invokeCopy;
+                        break;
+                    default:
+                        break;
+                }
             }
+            String replacement = before + proceed + after;
+            log.fine("Replaced by " + replacement);
+            m.replace(replacement);
+        }
 
-            // call to super
-            if (m.getMethodName().equals(insertionMethod.getName())) {
-                log.fine("Insertion point detected: " + insertionMethod.getName());
-                String replacement = "";
-                switch (mode) {
+        @Override
+        public CallSite select(String methodName, String descriptor, boolean isSuper) {
+            List<Insertion> matchingInsertions = match(methodName, descriptor, isSuper);
+            if (matchingInsertions == null) {
+                return null;
+            }
+            CallSite callSite = new CallSite();
+            for (Insertion insertion : matchingInsertions) {
+                switch (insertion.mode) {
                     case AFTER_SUPER:
                     case AFTER:
-                        replacement = "$_ = $proceed($$);\n" + invokeCopy;
+                        callSite.invokeAfter(insertion.copy);
                         break;
                     case BEFORE_SUPER:
                     case BEFORE:
-                        replacement = invokeCopy + "$_ = $proceed($$);\n";
+                        callSite.invokeBefore(insertion.copy);
                         break;
                     case REPLACE_SUPER:
-                        replacement = "$_ = " + invokeCopy;
+                        callSite.replaceBy(insertion.copy);
                         break;
                     default:
                         break;
                 }
-                log.fine("Replaced by " + replacement);
-                m.replace(replacement);
-                isSuccessful = true;
             }
-            super.edit(m);
+            return callSite;
         }
 
-        public boolean isSuccessful() {
-            return isSuccessful;
+        /**
+         * Finds the insertions woven around a method call, as if they were
+         * woven one after the other : an insertion replacing the call hides
+         * the next ones.
+         *
+         * @return the insertions, or null if the call is no insertion point.
+         */
+        private List<Insertion> match(String methodName, String descriptor, boolean isSuper) {
+            List<Insertion> insertionsOfName = mapNameToInsertions.get(methodName);
+            if (insertionsOfName == null) {
+                return null;
+            }
+            log.fine("Insertion point detected: " + methodName);
+            List<Insertion> matchingInsertions = new ArrayList<Insertion>();
+            for (Insertion insertion : insertionsOfName) {
+                if (!insertion.insertionMethodDescriptor.isEmpty() && !insertion.insertionMethodDescriptor.equals(descriptor)) {
+                    continue;
+                }
+                if (insertion.isSuperOnly() && !isSuper) {
+                    log.warning("An invocation of method " + methodName + " was detected, without a call to super in " + methodInDest.getName()
+                            + " while asking to mimic method with mode " + insertion.mode);
+                    continue;
+                }
+                matchingInsertions.add(insertion);
+                insertion.replacedCount++;
+                replacedCount++;
+                if (insertion.mode == MimicMode.REPLACE_SUPER) {
+                    break;
+                }
+            }
+            return matchingInsertions.isEmpty() ? null : matchingInsertions;
         }
     }
 }
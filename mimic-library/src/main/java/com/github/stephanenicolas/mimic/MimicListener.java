@@ -0,0 +1,22 @@
+package com.github.stephanenicolas.mimic;
+
+/**
+ * Notified of the progress of the weaving of classes, for instance to measure
+ * it. Classes can be woven on multiple threads : implementations must be
+ * thread safe.
+ *
+ * @author SNI
+ * @see MimicMetrics
+ */
+public interface MimicListener {
+
+    /**
+     * Invoked when a phase of the weaving of a class completes. Phases that
+     * fail are not reported.
+     * @param className the name of the woven class.
+     * @param phase the phase.
+     * @param durationNanos the wall time of the phase, in nanoseconds.
+     * @param itemCount the number of items processed by the phase, see {@link MimicPhase}.
+     */
+    void onPhase(String className, MimicPhase phase, long durationNanos, int itemCount);
+}
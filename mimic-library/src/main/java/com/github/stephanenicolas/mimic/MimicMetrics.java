@@ -0,0 +1,229 @@
+package com.github.stephanenicolas.mimic;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The default {@link MimicListener} : it aggregates the wall time and the
+ * number of items of every phase, per woven class and overall. Statistics
+ * are given as a human readable summary, or exported as JSON :
+ *
+ * <pre>
+ * {
+ *   "phases": {
+ *     "FIELDS": {"count": 2, "totalNanos": 81000, "maxNanos": 52000, "items": 3},
+ *     ...
+ *   },
+ *   "classes": {
+ *     "com.foo.Bar": {
+ *       "FIELDS": {"count": 1, "totalNanos": 52000, "maxNanos": 52000, "items": 2},
+ *       ...
+ *     },
+ *     ...
+ *   }
+ * }
+ * </pre>
+ *
+ * Phases that never ran are omitted, classes are sorted by name.
+ *
+ * @author SNI
+ */
+public class MimicMetrics implements MimicListener {
+
+    private static final double NANOS_PER_MILLI = 1000000d;
+    private static final String INDENT = "  ";
+
+    private final PhaseStatistics[] totals = createStatistics();
+    private final ConcurrentMap<String, PhaseStatistics[]> statisticsByClass = new ConcurrentHashMap<String, PhaseStatistics[]>();
+
+    @Override
+    public void onPhase(String className, MimicPhase phase, long durationNanos, int itemCount) {
+        totals[phase.ordinal()].add(durationNanos, itemCount);
+        PhaseStatistics[] classStatistics = statisticsByClass.get(className);
+        if (classStatistics == null) {
+            PhaseStatistics[] newClassStatistics = createStatistics();
+            classStatistics = statisticsByClass.putIfAbsent(className, newClassStatistics);
+            if (classStatistics == null) {
+                classStatistics = newClassStatistics;
+            }
+        }
+        classStatistics[phase.ordinal()].add(durationNanos, itemCount);
+    }
+
+    /**
+     * @param phase a phase.
+     * @return the statistics of the phase, for all classes.
+     */
+    public PhaseStatistics getStatistics(MimicPhase phase) {
+        return totals[phase.ordinal()];
+    }
+
+    /**
+     * @param className the name of a woven class.
+     * @param phase a phase.
+     * @return the statistics of the phase for this class, or null if the class was not woven.
+     */
+    public PhaseStatistics getStatistics(String className, MimicPhase phase) {
+        PhaseStatistics[] classStatistics = statisticsByClass.get(className);
+        return classStatistics == null ? null : classStatistics[phase.ordinal()];
+    }
+
+    /** @return the names of all woven classes, sorted. */
+    public SortedSet<String> getClassNames() {
+        return new TreeSet<String>(statisticsByClass.keySet());
+    }
+
+    /** Forgets all statistics. */
+    public void reset() {
+        for (PhaseStatistics statistics : totals) {
+            statistics.reset();
+        }
+        statisticsByClass.clear();
+    }
+
+    /** @return one line per phase that ran, with its statistics for all classes. */
+    public String getSummary() {
+        StringBuilder builder = new StringBuilder();
+        for (MimicPhase phase : MimicPhase.values()) {
+            PhaseStatistics statistics = totals[phase.ordinal()];
+            if (statistics.getCount() == 0) {
+                continue;
+            }
+            builder.append(String.format("%-16s %6d runs %10.3f ms total %8.3f ms max %8d items%n", phase, statistics.getCount(),
+                    statistics.getTotalNanos() / NANOS_PER_MILLI, statistics.getMaxNanos() / NANOS_PER_MILLI, statistics.getItemCount()));
+        }
+        return builder.toString();
+    }
+
+    /** @return all statistics, as JSON. */
+    public String toJson() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\n").append(INDENT).append("\"phases\": ");
+        appendJson(builder, totals, INDENT);
+        builder.append(",\n").append(INDENT).append("\"classes\": {");
+        Map<String, PhaseStatistics[]> sortedStatistics = new TreeMap<String, PhaseStatistics[]>(statisticsByClass);
+        String separator = "\n";
+        for (Map.Entry<String, PhaseStatistics[]> entry : sortedStatistics.entrySet()) {
+            builder.append(separator).append(INDENT).append(INDENT);
+            appendJsonString(builder, entry.getKey());
+            builder.append(": ");
+            appendJson(builder, entry.getValue(), INDENT + INDENT);
+            separator = ",\n";
+        }
+        builder.append(sortedStatistics.isEmpty() ? "" : "\n" + INDENT).append("}\n}\n");
+        return builder.toString();
+    }
+
+    /**
+     * Exports all statistics as JSON.
+     * @param file the file to write. Its parent directories are created if needed.
+     * @throws IOException if the file can't be written.
+     */
+    public void writeJson(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Impossible to create directory " + parent);
+        }
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(toJson());
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void appendJson(StringBuilder builder, PhaseStatistics[] statistics, String indent) {
+        builder.append('{');
+        String separator = "\n";
+        for (MimicPhase phase : MimicPhase.values()) {
+            PhaseStatistics phaseStatistics = statistics[phase.ordinal()];
+            if (phaseStatistics.getCount() == 0) {
+                continue;
+            }
+            builder.append(separator).append(indent).append(INDENT);
+            appendJsonString(builder, phase.name());
+            builder.append(": {\"count\": ").append(phaseStatistics.getCount())
+                .append(", \"totalNanos\": ").append(phaseStatistics.getTotalNanos())
+                .append(", \"maxNanos\": ").append(phaseStatistics.getMaxNanos())
+                .append(", \"items\": ").append(phaseStatistics.getItemCount()).append('}');
+            separator = ",\n";
+        }
+        builder.append("\n").append(indent).append('}');
+    }
+
+    private void appendJsonString(StringBuilder builder, String string) {
+        builder.append('"');
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\');
+            }
+            builder.append(c);
+        }
+        builder.append('"');
+    }
+
+    private static PhaseStatistics[] createStatistics() {
+        PhaseStatistics[] statistics = new PhaseStatistics[MimicPhase.values().length];
+        for (int i = 0; i < statistics.length; i++) {
+            statistics[i] = new PhaseStatistics();
+        }
+        return statistics;
+    }
+
+    /** Statistics of a phase, updated atomically. */
+    public static final class PhaseStatistics {
+        private final AtomicInteger count = new AtomicInteger();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLong itemCount = new AtomicLong();
+
+        private void add(long durationNanos, int items) {
+            count.incrementAndGet();
+            totalNanos.addAndGet(durationNanos);
+            itemCount.addAndGet(items);
+            long max = maxNanos.get();
+            while (durationNanos > max && !maxNanos.compareAndSet(max, durationNanos)) {
+                max = maxNanos.get();
+            }
+        }
+
+        private void reset() {
+            count.set(0);
+            totalNanos.set(0);
+            maxNanos.set(0);
+            itemCount.set(0);
+        }
+
+        /** @return the number of times the phase ran. */
+        public int getCount() {
+            return count.get();
+        }
+
+        /** @return the total wall time of the phase, in nanoseconds. */
+        public long getTotalNanos() {
+            return totalNanos.get();
+        }
+
+        /** @return the longest run of the phase, in nanoseconds. */
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        /** @return the total number of items processed by the phase. */
+        public long getItemCount() {
+            return itemCount.get();
+        }
+    }
+}
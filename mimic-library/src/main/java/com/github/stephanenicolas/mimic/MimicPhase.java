@@ -0,0 +1,23 @@
+package com.github.stephanenicolas.mimic;
+
+/**
+ * The phases of the weaving of a class, reported to a {@link MimicListener}.
+ *
+ * @author SNI
+ */
+public enum MimicPhase {
+    /** {@link MimicCreator#mimicInterfaces}. Items are the interfaces added. */
+    INTERFACES,
+    /** {@link MimicCreator#mimicFields}. Items are the fields copied. */
+    FIELDS,
+    /** {@link MimicCreator#mimicConstructors}. Items are the constructors copied or extended. */
+    CONSTRUCTORS,
+    /** {@link MimicCreator#mimicMethods}, including its instrumentation passes. Items are the methods copied or extended. */
+    METHODS,
+    /** A single instrumentation pass over a method, inserting the code of a template method around a call. Items are the calls replaced. */
+    INSTRUMENTATION,
+    /** Conversion of a transformed class into bytecode. Items are the bytes of the class. */
+    BYTECODE,
+    /** Writing a transformed class to disk. Items are the bytes written. */
+    WRITE
+}
@@ -1,17 +1,46 @@
 package com.github.stephanenicolas.mimic;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javassist.CannotCompileException;
 import javassist.ClassPool;
 import javassist.CtClass;
 import javassist.NotFoundException;
+import javassist.bytecode.AnnotationsAttribute;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.annotation.Annotation;
+import javassist.bytecode.annotation.AnnotationMemberValue;
+import javassist.bytecode.annotation.ArrayMemberValue;
+import javassist.bytecode.annotation.ClassMemberValue;
+import javassist.bytecode.annotation.MemberValue;
 
 import javax.inject.Inject;
 
+import com.github.stephanenicolas.mimic.ParallelTransformer.ResultHandler;
+import com.github.stephanenicolas.mimic.ParallelTransformer.TransformationResult;
 import com.github.stephanenicolas.mimic.annotations.Mimic;
+import com.github.stephanenicolas.mimic.annotations.MimicField;
 import com.github.stephanenicolas.mimic.annotations.MimicMethod;
 import com.github.stephanenicolas.mimic.annotations.MimicMode;
+import com.github.stephanenicolas.mimic.annotations.MimicTemplate;
 import com.google.inject.Guice;
 
 import de.icongmbh.oss.maven.plugin.javassist.ClassTransformer;
@@ -19,54 +48,944 @@ import de.icongmbh.oss.maven.plugin.javassist.ClassTransformer;
 /**
  * Post processes all classes annotated with {@link Mimic}.
  *
+ * <p>
+ * The processor can be configured via the properties of the transformer in
+ * the javassist maven plugin :
+ * <ul>
+ * <li>{@value #PROPERTY_PARALLELISM} : number of threads used to transform
+ * classes. Defaults to 1, classes are then transformed by the javassist maven
+ * plugin itself. 0 means one thread per available processor.</li>
+ * <li>{@value #PROPERTY_HEAP_BUDGET} : bytes of heap, with an optional
+ * {@code k}, {@code m} or {@code g} suffix, above which threads drop the
+ * javassist class pool holding the classes they parsed so far, and go on with
+ * a new one. Disabled by default, the plugin then keeps a single pool for the
+ * whole build.</li>
+ * <li>{@value #PROPERTY_POOL_BATCH_SIZE} : number of classes transformed by a
+ * thread before it drops its class pool. Disabled by default.</li>
+ * <li>{@value #PROPERTY_CACHE_DIRECTORY} : directory of an on-disk cache of
+ * transformed classes. Classes whose bytecode, ancestors, template and
+ * annotation did not change since a previous build are copied from the cache instead of
+ * being transformed again. Disabled by default.</li>
+ * <li>{@value #PROPERTY_INDEX_DIRECTORY} : directory of an index of the
+ * template used by every transformed class. When a template, or one of its
+ * ancestors or interfaces, changes, all its users are transformed again,
+ * even if they were not recompiled. Disabled by default.</li>
+ * <li>{@value #PROPERTY_INLINING} : if true, the code of template methods is
+ * inlined into target methods, instead of being invoked through
+ * {@code _copy_} methods. See {@link MimicCreator#setInliningCopies(boolean)}.
+ * Disabled by default.</li>
+ * <li>{@value #PROPERTY_PRIVATE_COPIES} : if true, {@code _copy_} methods are
+ * private, final and synthetic, and static when they don't use {@code this}.
+ * See {@link MimicCreator#setPrivateCopies(boolean)}. Disabled by default.</li>
+ * <li>{@value #PROPERTY_BACKEND} : {@code source} or {@code bytecode}, how
+ * invocations of copies are woven. See {@link WeavingBackend}. Defaults to
+ * {@code source}.</li>
+ * <li>{@value #PROPERTY_REPORT_ALL_FIELD_COLLISIONS} : if true, all the
+ * template fields that a class already has are reported at once. See
+ * {@link MimicCreator#setReportingAllFieldCollisions(boolean)}. Disabled by
+ * default.</li>
+ * <li>{@value #PROPERTY_ELIMINATE_DEAD_FIELDS} : if true, template fields that
+ * none of its constructors or methods use are not copied, unless they are
+ * selected by {@link Mimic#mimicFields()}. See
+ * {@link MimicCreator#setEliminatingDeadFields(boolean)}. Disabled by
+ * default.</li>
+ * <li>{@value #PROPERTY_ELIMINATE_UNREACHABLE_METHODS} : if true, only the
+ * template methods that a class overrides, or that its overriding methods and
+ * the template constructors invoke, are copied, with the fields they use. See
+ * {@link MimicCreator#setEliminatingUnreachableMethods(boolean)}. Disabled by
+ * default.</li>
+ * <li>{@value #PROPERTY_INITIALIZE_UNMATCHED_ROOTS} : if true, constructors
+ * calling {@code super(...)} that match no template constructor run the code
+ * of the template no-arg constructor. See
+ * {@link MimicCreator#setInitializingUnmatchedRoots(boolean)}. Disabled by
+ * default.</li>
+ * <li>{@value #PROPERTY_METRICS_FILE} : a JSON file receiving the duration of
+ * every phase of the weaving, per class and overall. A summary is also logged.
+ * See {@link MimicMetrics}. Disabled by default.</li>
+ * <li>{@value #PROPERTY_SIZE_REPORT_FILE} : a JSON file receiving the
+ * bytecode size of woven methods, before and after weaving. Methods that
+ * weaving made cross a JIT threshold are logged. See
+ * {@link MethodSizeReport}. Disabled by default.</li>
+ * <li>{@value #PROPERTY_MAX_INLINE_SIZE}, {@value #PROPERTY_FREQ_INLINE_SIZE}
+ * and {@value #PROPERTY_HUGE_METHOD_LIMIT} : the JIT thresholds, in bytes,
+ * matching the {@code -XX} options of the JVM running the classes. Default
+ * to the defaults of HotSpot : 35, 325 and 8000.</li>
+ * <li>{@value #PROPERTY_FAIL_ON_SIZE_THRESHOLDS} : if true, the
+ * transformation fails when weaving made a method cross a JIT threshold.
+ * Disabled by default.</li>
+ * <li>{@value #PROPERTY_SHARE_TEMPLATE_CODE} : if true, the code of template
+ * methods is compiled once into a helper class generated next to the
+ * template, written with the transformed classes, and transformed classes
+ * only receive stubs invoking it. See
+ * {@link MimicCreator#setSharingTemplateCode(boolean)}. Disabled by
+ * default.</li>
+ * </ul>
+ * </p>
+ *
  * @author SNI
  *
  */
 public class MimicProcessor extends ClassTransformer {
 
+    /** Name of the property that defines the number of threads used to transform classes. */
+    public static final String PROPERTY_PARALLELISM = "mimic.parallelism";
+    /** Name of the property that defines the heap budget of the transformation. */
+    public static final String PROPERTY_HEAP_BUDGET = "mimic.heapBudget";
+    /** Name of the property that defines the number of classes transformed with a class pool. */
+    public static final String PROPERTY_POOL_BATCH_SIZE = "mimic.poolBatchSize";
+    /** Name of the property that defines the directory of the cache of transformed classes. */
+    public static final String PROPERTY_CACHE_DIRECTORY = "mimic.cacheDirectory";
+    /** Name of the property that defines the directory of the dependency index. */
+    public static final String PROPERTY_INDEX_DIRECTORY = "mimic.indexDirectory";
+    /** Name of the property that enables inlining of copies of template methods. */
+    public static final String PROPERTY_INLINING = "mimic.inlining";
+    /** Name of the property that makes copies of template methods private. */
+    public static final String PROPERTY_PRIVATE_COPIES = "mimic.privateCopies";
+    /** Name of the property that selects the {@link WeavingBackend}. */
+    public static final String PROPERTY_BACKEND = "mimic.backend";
+    /** Name of the property that makes all field collisions of a class reported at once. */
+    public static final String PROPERTY_REPORT_ALL_FIELD_COLLISIONS = "mimic.reportAllFieldCollisions";
+    /** Name of the property that enables the elimination of unused template fields. */
+    public static final String PROPERTY_ELIMINATE_DEAD_FIELDS = "mimic.eliminateDeadFields";
+    /** Name of the property that enables the elimination of template methods unreachable from the classes mimicing them. */
+    public static final String PROPERTY_ELIMINATE_UNREACHABLE_METHODS = "mimic.eliminateUnreachableMethods";
+    /** Name of the property that makes root constructors matching no template constructor run its no-arg constructor. */
+    public static final String PROPERTY_INITIALIZE_UNMATCHED_ROOTS = "mimic.initializeUnmatchedRoots";
+    /** Name of the property that defines the file receiving the metrics of the weaving. */
+    public static final String PROPERTY_METRICS_FILE = "mimic.metricsFile";
+    /** Name of the property that defines the file receiving the bytecode size of woven methods. */
+    public static final String PROPERTY_SIZE_REPORT_FILE = "mimic.sizeReportFile";
+    /** Name of the property that defines the JIT threshold {@code -XX:MaxInlineSize}. */
+    public static final String PROPERTY_MAX_INLINE_SIZE = "mimic.maxInlineSize";
+    /** Name of the property that defines the JIT threshold {@code -XX:FreqInlineSize}. */
+    public static final String PROPERTY_FREQ_INLINE_SIZE = "mimic.freqInlineSize";
+    /** Name of the property that defines the JIT threshold {@code -XX:HugeMethodLimit}. */
+    public static final String PROPERTY_HUGE_METHOD_LIMIT = "mimic.hugeMethodLimit";
+    /** Name of the property that makes the transformation fail when a woven method crosses a JIT threshold. */
+    public static final String PROPERTY_FAIL_ON_SIZE_THRESHOLDS = "mimic.failOnSizeThresholds";
+    /** Property to share the code of templates in generated helper classes. */
+    public static final String PROPERTY_SHARE_TEMPLATE_CODE = "mimic.shareTemplateCode";
+
     @Inject
     private MimicCreator mimic;
 
+    private int parallelism = 1;
+    private long heapBudget;
+    private int poolBatchSize;
+    private TransformationCache cache;
+    private DependencyIndex index;
+    private MimicMetrics metrics;
+    private File metricsFile;
+    private MethodSizeReport sizeReport;
+    private File sizeReportFile;
+    private boolean failingOnSizeThresholds;
+    private int[] sizeThresholds = {MethodSizeReport.DEFAULT_MAX_INLINE_SIZE, MethodSizeReport.DEFAULT_FREQ_INLINE_SIZE,
+        MethodSizeReport.DEFAULT_HUGE_METHOD_LIMIT };
+    private final ConcurrentMap<String, String> templateDigests = new ConcurrentHashMap<String, String>();
+    /** Classes generated during the current run, to write along the transformed classes, by name. */
+    private final ConcurrentMap<String, byte[]> generatedClasses = new ConcurrentHashMap<String, byte[]>();
+    private final AtomicInteger rewovenCount = new AtomicInteger();
+
     public MimicProcessor() {
         Guice.createInjector().injectMembers(this);
     }
 
+    @Override
+    public void configure(Properties properties) throws Exception {
+        super.configure(properties);
+        if (properties == null) {
+            return;
+        }
+        String parallelismProperty = properties.getProperty(PROPERTY_PARALLELISM);
+        if (parallelismProperty != null) {
+            setParallelism(Integer.parseInt(parallelismProperty.trim()));
+        }
+        String heapBudgetProperty = properties.getProperty(PROPERTY_HEAP_BUDGET);
+        if (heapBudgetProperty != null && heapBudgetProperty.trim().length() != 0) {
+            setHeapBudget(HeapBudget.parseSize(heapBudgetProperty));
+        }
+        String poolBatchSizeProperty = properties.getProperty(PROPERTY_POOL_BATCH_SIZE);
+        if (poolBatchSizeProperty != null) {
+            setPoolBatchSize(Integer.parseInt(poolBatchSizeProperty.trim()));
+        }
+        String cacheDirectoryProperty = properties.getProperty(PROPERTY_CACHE_DIRECTORY);
+        if (cacheDirectoryProperty != null && cacheDirectoryProperty.trim().length() != 0) {
+            setCacheDirectory(new File(cacheDirectoryProperty.trim()));
+        }
+        String indexDirectoryProperty = properties.getProperty(PROPERTY_INDEX_DIRECTORY);
+        if (indexDirectoryProperty != null && indexDirectoryProperty.trim().length() != 0) {
+            setIndexDirectory(new File(indexDirectoryProperty.trim()));
+        }
+        String inliningProperty = properties.getProperty(PROPERTY_INLINING);
+        if (inliningProperty != null) {
+            setInliningCopies(Boolean.parseBoolean(inliningProperty.trim()));
+        }
+        String privateCopiesProperty = properties.getProperty(PROPERTY_PRIVATE_COPIES);
+        if (privateCopiesProperty != null) {
+            setPrivateCopies(Boolean.parseBoolean(privateCopiesProperty.trim()));
+        }
+        String backendProperty = properties.getProperty(PROPERTY_BACKEND);
+        if (backendProperty != null && backendProperty.trim().length() != 0) {
+            setBackend(WeavingBackend.valueOf(backendProperty.trim().toUpperCase(Locale.ENGLISH)));
+        }
+        String reportAllFieldCollisionsProperty = properties.getProperty(PROPERTY_REPORT_ALL_FIELD_COLLISIONS);
+        if (reportAllFieldCollisionsProperty != null) {
+            setReportingAllFieldCollisions(Boolean.parseBoolean(reportAllFieldCollisionsProperty.trim()));
+        }
+        String eliminateDeadFieldsProperty = properties.getProperty(PROPERTY_ELIMINATE_DEAD_FIELDS);
+        if (eliminateDeadFieldsProperty != null) {
+            setEliminatingDeadFields(Boolean.parseBoolean(eliminateDeadFieldsProperty.trim()));
+        }
+        String eliminateUnreachableMethodsProperty = properties.getProperty(PROPERTY_ELIMINATE_UNREACHABLE_METHODS);
+        if (eliminateUnreachableMethodsProperty != null) {
+            setEliminatingUnreachableMethods(Boolean.parseBoolean(eliminateUnreachableMethodsProperty.trim()));
+        }
+        String initializeUnmatchedRootsProperty = properties.getProperty(PROPERTY_INITIALIZE_UNMATCHED_ROOTS);
+        if (initializeUnmatchedRootsProperty != null) {
+            setInitializingUnmatchedRoots(Boolean.parseBoolean(initializeUnmatchedRootsProperty.trim()));
+        }
+        String metricsFileProperty = properties.getProperty(PROPERTY_METRICS_FILE);
+        if (metricsFileProperty != null && metricsFileProperty.trim().length() != 0) {
+            setMetricsFile(new File(metricsFileProperty.trim()));
+        }
+        String maxInlineSizeProperty = properties.getProperty(PROPERTY_MAX_INLINE_SIZE);
+        String freqInlineSizeProperty = properties.getProperty(PROPERTY_FREQ_INLINE_SIZE);
+        String hugeMethodLimitProperty = properties.getProperty(PROPERTY_HUGE_METHOD_LIMIT);
+        if (maxInlineSizeProperty != null || freqInlineSizeProperty != null || hugeMethodLimitProperty != null) {
+            setSizeThresholds(maxInlineSizeProperty == null ? sizeThresholds[0] : Integer.parseInt(maxInlineSizeProperty.trim()),
+                    freqInlineSizeProperty == null ? sizeThresholds[1] : Integer.parseInt(freqInlineSizeProperty.trim()),
+                    hugeMethodLimitProperty == null ? sizeThresholds[2] : Integer.parseInt(hugeMethodLimitProperty.trim()));
+        }
+        String sizeReportFileProperty = properties.getProperty(PROPERTY_SIZE_REPORT_FILE);
+        if (sizeReportFileProperty != null && sizeReportFileProperty.trim().length() != 0) {
+            setSizeReportFile(new File(sizeReportFileProperty.trim()));
+        }
+        String failOnSizeThresholdsProperty = properties.getProperty(PROPERTY_FAIL_ON_SIZE_THRESHOLDS);
+        if (failOnSizeThresholdsProperty != null) {
+            setFailingOnSizeThresholds(Boolean.parseBoolean(failOnSizeThresholdsProperty.trim()));
+        }
+        String shareTemplateCodeProperty = properties.getProperty(PROPERTY_SHARE_TEMPLATE_CODE);
+        if (shareTemplateCodeProperty != null) {
+            setSharingTemplateCode(Boolean.parseBoolean(shareTemplateCodeProperty.trim()));
+        }
+    }
+
+    /**
+     * Sets the number of threads used to transform classes.
+     * @param parallelism the number of threads. 0 means one thread per available processor.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 0) {
+            throw new IllegalArgumentException("Parallelism can't be negative: " + parallelism);
+        }
+        this.parallelism = parallelism == 0 ? Runtime.getRuntime().availableProcessors() : parallelism;
+    }
+
+    /**
+     * Bounds the heap used by the transformation : threads drop their class
+     * pool when the used heap is over the budget, and go on with a new one.
+     * @param heapBudget the budget in bytes, 0 for no limit.
+     */
+    public void setHeapBudget(long heapBudget) {
+        if (heapBudget < 0) {
+            throw new IllegalArgumentException("Heap budget can't be negative: " + heapBudget);
+        }
+        this.heapBudget = heapBudget;
+    }
+
+    /**
+     * Makes threads drop their class pool after a number of classes, and go
+     * on with a new one.
+     * @param poolBatchSize the number of classes transformed with a pool, 0 for no limit.
+     */
+    public void setPoolBatchSize(int poolBatchSize) {
+        if (poolBatchSize < 0) {
+            throw new IllegalArgumentException("Pool batch size can't be negative: " + poolBatchSize);
+        }
+        this.poolBatchSize = poolBatchSize;
+    }
+
+    /**
+     * Enables the cache of transformed classes.
+     * @param cacheDirectory the directory of the cache, or null to disable it.
+     */
+    public void setCacheDirectory(File cacheDirectory) {
+        this.cache = cacheDirectory == null ? null : new TransformationCache(cacheDirectory);
+    }
+
+    /**
+     * @return the cache of transformed classes, or null if it is disabled.
+     */
+    public TransformationCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Enables the dependency index, that makes it possible to transform again
+     * the users of a template when it changes, without a clean build.
+     * @param indexDirectory the directory of the index, or null to disable it.
+     */
+    public void setIndexDirectory(File indexDirectory) {
+        this.index = indexDirectory == null ? null : new DependencyIndex(indexDirectory);
+    }
+
+    /**
+     * @return the dependency index, or null if it is disabled.
+     */
+    public DependencyIndex getDependencyIndex() {
+        return index;
+    }
+
+    /**
+     * Enables inlining of copies of template methods.
+     * @param inliningCopies whether copies should be inlined.
+     * @see MimicCreator#setInliningCopies(boolean)
+     */
+    public void setInliningCopies(boolean inliningCopies) {
+        mimic.setInliningCopies(inliningCopies);
+    }
+
+    /**
+     * Makes copies of template methods private.
+     * @param privateCopies whether copies should be private.
+     * @see MimicCreator#setPrivateCopies(boolean)
+     */
+    public void setPrivateCopies(boolean privateCopies) {
+        mimic.setPrivateCopies(privateCopies);
+    }
+
+    /**
+     * Selects how invocations of copies of template methods are woven.
+     * @param backend the weaving backend.
+     * @see MimicCreator#setBackend(WeavingBackend)
+     */
+    public void setBackend(WeavingBackend backend) {
+        mimic.setBackend(backend);
+    }
+
+    /**
+     * Reports all the template fields that a class already has at once.
+     * @param reportingAllFieldCollisions whether all field collisions should be reported.
+     * @see MimicCreator#setReportingAllFieldCollisions(boolean)
+     */
+    public void setReportingAllFieldCollisions(boolean reportingAllFieldCollisions) {
+        mimic.setReportingAllFieldCollisions(reportingAllFieldCollisions);
+    }
+
+    /**
+     * Leaves out the template fields that none of its constructors or methods use.
+     * @param eliminatingDeadFields whether unused fields should be left out.
+     * @see MimicCreator#setEliminatingDeadFields(boolean)
+     */
+    public void setEliminatingDeadFields(boolean eliminatingDeadFields) {
+        mimic.setEliminatingDeadFields(eliminatingDeadFields);
+    }
+
+    /**
+     * Leaves out the template methods that the classes mimicing them can't reach.
+     * @param eliminatingUnreachableMethods whether unreachable methods should be left out.
+     * @see MimicCreator#setEliminatingUnreachableMethods(boolean)
+     */
+    public void setEliminatingUnreachableMethods(boolean eliminatingUnreachableMethods) {
+        mimic.setEliminatingUnreachableMethods(eliminatingUnreachableMethods);
+    }
+
+    /**
+     * Makes root constructors matching no template constructor run the template no-arg constructor.
+     * @param initializingUnmatchedRoots whether unmatched root constructors should run the template no-arg constructor.
+     * @see MimicCreator#setInitializingUnmatchedRoots(boolean)
+     */
+    public void setInitializingUnmatchedRoots(boolean initializingUnmatchedRoots) {
+        mimic.setInitializingUnmatchedRoots(initializingUnmatchedRoots);
+    }
+
+    /**
+     * Shares the code of templates among the classes mimicing them, in
+     * generated helper classes.
+     * @param sharingTemplateCode whether the code of templates should be shared.
+     * @see MimicCreator#setSharingTemplateCode(boolean)
+     */
+    public void setSharingTemplateCode(boolean sharingTemplateCode) {
+        mimic.setSharingTemplateCode(sharingTemplateCode);
+    }
+
+    /** @return true if the code of templates is shared in generated helper classes. */
+    public boolean isSharingTemplateCode() {
+        return mimic.isSharingTemplateCode();
+    }
+
+    /**
+     * @return the classes generated during the last transformation, that must be shipped with the transformed
+     *         classes, by name.
+     */
+    public Map<String, byte[]> getGeneratedClasses() {
+        return Collections.unmodifiableMap(new TreeMap<String, byte[]>(generatedClasses));
+    }
+
+    /**
+     * Sets a listener, notified of the duration of every phase of the
+     * weaving of a class, including the conversion of classes to bytecode and
+     * their write out. It replaces the metrics, if any.
+     * @param listener the listener, or null to disable notifications.
+     * @see MimicCreator#setListener(MimicListener)
+     */
+    public void setListener(MimicListener listener) {
+        mimic.setListener(listener);
+        this.metrics = null;
+        this.metricsFile = null;
+    }
+
+    /**
+     * Enables metrics of the weaving. They are logged and exported as JSON
+     * at the end of every transformation. It replaces the listener, if any.
+     * @param metricsFile the JSON file receiving the metrics, or null to disable metrics.
+     */
+    public void setMetricsFile(File metricsFile) {
+        MimicMetrics newMetrics = metricsFile == null ? null : new MimicMetrics();
+        setListener(newMetrics);
+        this.metrics = newMetrics;
+        this.metricsFile = metricsFile;
+    }
+
+    /**
+     * @return the metrics of the last transformation, or null if they are disabled.
+     */
+    public MimicMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Enables the report of the bytecode size of woven methods. It is logged
+     * and exported as JSON at the end of every transformation.
+     * @param sizeReportFile the JSON file receiving the report, or null not to export it.
+     */
+    public void setSizeReportFile(File sizeReportFile) {
+        this.sizeReportFile = sizeReportFile;
+        updateSizeReport();
+    }
+
+    /**
+     * Makes transformations fail when weaving made a method cross a JIT
+     * threshold. The size of woven methods is then reported, even without a
+     * {@link #setSizeReportFile(File) report file}.
+     * @param failingOnSizeThresholds whether crossing a threshold is an error.
+     */
+    public void setFailingOnSizeThresholds(boolean failingOnSizeThresholds) {
+        this.failingOnSizeThresholds = failingOnSizeThresholds;
+        updateSizeReport();
+    }
+
+    /**
+     * Sets the JIT thresholds that woven methods should not cross.
+     * @param maxInlineSize the value of {@code -XX:MaxInlineSize}.
+     * @param freqInlineSize the value of {@code -XX:FreqInlineSize}.
+     * @param hugeMethodLimit the value of {@code -XX:HugeMethodLimit}.
+     * @see MethodSizeReport
+     */
+    public void setSizeThresholds(int maxInlineSize, int freqInlineSize, int hugeMethodLimit) {
+        this.sizeThresholds = new int[] {maxInlineSize, freqInlineSize, hugeMethodLimit };
+        updateSizeReport();
+    }
+
+    /**
+     * @return the size report of the last transformation, or null if it is disabled.
+     */
+    public MethodSizeReport getSizeReport() {
+        return sizeReport;
+    }
+
+    private void updateSizeReport() {
+        boolean isReporting = sizeReportFile != null || failingOnSizeThresholds;
+        sizeReport = isReporting ? new MethodSizeReport(sizeThresholds[0], sizeThresholds[1], sizeThresholds[2]) : null;
+    }
+
+    /**
+     * Lists the classes of a directory that may be annotated by {@link Mimic}.
+     * The constant pool of every class file is scanned, so that javassist
+     * never parses the others : usually, most classes of a project don't use
+     * Mimic.
+     */
+    @Override
+    protected Iterator<String> iterateClassnames(String inputDir) {
+        List<String> classNames = new ArrayList<String>();
+        int skippedCount = 0;
+        for (Iterator<String> iterator = super.iterateClassnames(inputDir); iterator.hasNext();) {
+            String className = iterator.next();
+            if (mayBeAnnotated(inputDir, className)) {
+                classNames.add(className);
+            } else {
+                skippedCount++;
+            }
+        }
+        getLogger().debug("#{} classes skipped by {}, as they are not annotated", skippedCount, getClass().getName());
+        return classNames.iterator();
+    }
+
+    private boolean mayBeAnnotated(String inputDir, String className) {
+        File classFile = new File(inputDir, className.replace('.', File.separatorChar) + ".class");
+        try {
+            return MimicAnnotationScanner.hasMimicAnnotation(classFile);
+        } catch (IOException e) {
+            // let javassist report the problem
+            return true;
+        }
+    }
+
+    @Override
+    public void transform(String inputDir, String outputDir) {
+        // the cache and the index need the bytecode of classes, the javassist maven plugin only writes them,
+        // the listener couldn't be notified of the write out, the size report couldn't be completed
+        // the plugin keeps all classes in a single pool and doesn't write generated classes
+        if (parallelism <= 1 && cache == null && index == null && mimic.getListener() == null && sizeReport == null && heapBudget == 0
+                && poolBatchSize == 0 && !mimic.isSharingTemplateCode()) {
+            super.transform(inputDir, outputDir);
+            return;
+        }
+        if (inputDir == null || inputDir.trim().length() == 0) {
+            return;
+        }
+        final String outputDirectory = outputDir == null || outputDir.trim().length() == 0 ? inputDir : outputDir;
+
+        List<String> classNames = new ArrayList<String>();
+        for (Iterator<String> iterator = iterateClassnames(inputDir); iterator.hasNext();) {
+            classNames.add(iterator.next());
+        }
+
+        try {
+            templateDigests.clear();
+            generatedClasses.clear();
+            rewovenCount.set(0);
+            resetReports();
+            if (index != null) {
+                index.load();
+            }
+            final AtomicInteger transformedCount = new AtomicInteger();
+            // results are written in a deterministic order, whatever the worker that created them
+            ParallelTransformer transformer = new ParallelTransformer(this, parallelism, heapBudget, poolBatchSize);
+            transformer.transform(inputDir, classNames, new ResultHandler() {
+                @Override
+                public void handle(TransformationResult result) throws IOException {
+                    if (isTransformed(result)) {
+                        long startNanos = System.nanoTime();
+                        writeClassFile(outputDirectory, result.getClassName(), result.getBytecode());
+                        firePhase(result.getClassName(), MimicPhase.WRITE, startNanos, result.getBytecode().length);
+                        getLogger().debug("Class {} instrumented by {}", result.getClassName(), MimicProcessor.this.getClass().getName());
+                        transformedCount.incrementAndGet();
+                    }
+                }
+            });
+            getLogger().info("#{} classes instrumented by {} using {} threads", new Object[] {transformedCount.get(), getClass().getName(),
+                parallelism});
+            for (Map.Entry<String, byte[]> generatedClass : getGeneratedClasses().entrySet()) {
+                writeClassFile(outputDirectory, generatedClass.getKey(), generatedClass.getValue());
+            }
+            if (!generatedClasses.isEmpty()) {
+                getLogger().info("#{} classes generated by {}", generatedClasses.size(), getClass().getName());
+            }
+            if (heapBudget > 0 || poolBatchSize > 0) {
+                getLogger().info("Mimic class pools dropped {} times to bound memory", transformer.getReleasedPoolCount());
+            }
+            if (index != null) {
+                index.retainAll(classNames);
+                index.save();
+                getLogger().info("Mimic index {} : {} classes transformed again as their template changed", index.getDirectory(),
+                        rewovenCount.get());
+            }
+            report();
+        } catch (Exception e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Transforms the classes of a jar into another jar, without extracting
+     * it. Entries that don't need to be transformed are copied as they are,
+     * without being compressed again. Templates are resolved in the jar, then
+     * on the class path. All options are honoured but the parallelism : the
+     * jar is read and written sequentially. Generated classes are appended to
+     * the output jar, unless the input jar already contains them.
+     * @param inputJar the jar to transform.
+     * @param outputJar the transformed jar, must not be inputJar.
+     * @throws IOException if a jar can't be read or written.
+     * @throws MimicException if a woven method crossed a JIT threshold, and it is an error.
+     */
+    public void transformJar(File inputJar, File outputJar) throws IOException, MimicException {
+        templateDigests.clear();
+        generatedClasses.clear();
+        rewovenCount.set(0);
+        resetReports();
+        if (index != null) {
+            index.load();
+        }
+        final AtomicInteger transformedCount = new AtomicInteger();
+        JarTransformer transformer = new JarTransformer(this, heapBudget, poolBatchSize);
+        transformer.transform(inputJar, outputJar, new ResultHandler() {
+            @Override
+            public void handle(TransformationResult result) {
+                if (isTransformed(result)) {
+                    getLogger().debug("Class {} instrumented by {}", result.getClassName(), MimicProcessor.this.getClass().getName());
+                    transformedCount.incrementAndGet();
+                }
+            }
+        });
+        getLogger().info("#{} classes of {} instrumented by {}", new Object[] {transformedCount.get(), inputJar, getClass().getName()});
+        if (heapBudget > 0 || poolBatchSize > 0) {
+            getLogger().info("Mimic class pools dropped {} times to bound memory", transformer.getReleasedPoolCount());
+        }
+        if (index != null) {
+            index.save();
+            getLogger().info("Mimic index {} : {} classes transformed again as their template changed", index.getDirectory(),
+                    rewovenCount.get());
+        }
+        report();
+    }
+
+    /**
+     * Logs the failure of a transformation, if any.
+     * @return true if the class was transformed.
+     */
+    private boolean isTransformed(TransformationResult result) {
+        if (result.getException() instanceof NotFoundException) {
+            getLogger().warn("Class {} could not be resolved due to dependencies not found on current classpath.", result.getClassName());
+            return false;
+        } else if (result.getException() != null) {
+            getLogger().error("Class " + result.getClassName() + " could not be instrumented.", result.getException());
+            return false;
+        }
+        return result.getBytecode() != null;
+    }
+
+    private void resetReports() {
+        if (metrics != null) {
+            metrics.reset();
+        }
+        if (sizeReport != null) {
+            sizeReport.reset();
+        }
+    }
+
+    private void report() throws IOException, MimicException {
+        if (cache != null) {
+            getLogger().info("Mimic cache {} : {} hits, {} misses", new Object[] {cache.getDirectory(), cache.getHitCount(),
+                cache.getMissCount()});
+        }
+        if (metrics != null) {
+            getLogger().info("Mimic metrics, exported to {} :\n{}", metricsFile, metrics.getSummary());
+            metrics.writeJson(metricsFile);
+        }
+        if (sizeReport != null) {
+            List<String> crossings = sizeReport.getCrossings();
+            String exportMessage = sizeReportFile == null ? "" : ", exported to " + sizeReportFile;
+            if (crossings.isEmpty()) {
+                getLogger().info("Mimic method sizes{} :\n{}", exportMessage, sizeReport.getSummary());
+            } else {
+                getLogger().warn("Mimic method sizes{} :\n{}", exportMessage, sizeReport.getSummary());
+            }
+            if (sizeReportFile != null) {
+                sizeReport.writeJson(sizeReportFile);
+            }
+            if (failingOnSizeThresholds && !crossings.isEmpty()) {
+                throw new MimicException(String.format("Weaving made %d methods cross a JIT threshold : %s %n", crossings.size(), crossings));
+            }
+        }
+    }
+
+    /**
+     * Runs all steps of the transformation of a class, except writing it :
+     * filtering, transforming and stamping. Transformed classes are taken
+     * from, and stored in, the cache when it is enabled. When the dependency
+     * index is enabled, classes already transformed against an older version
+     * of their template are transformed again, from their original bytecode.
+     * @param candidateClass the class to transform.
+     * @return the transformed bytecode, or null if the class doesn't need to be transformed.
+     * @throws Exception if the transformation failed.
+     */
+    byte[] transformClass(CtClass candidateClass) throws Exception {
+        ClassPool pool = candidateClass.getClassPool();
+        CtClass classToTransform = candidateClass;
+        byte[] originalBytecode = null;
+        if (hasStamp(candidateClass)) {
+            originalBytecode = getOutdatedOriginalBytecode(candidateClass);
+            if (originalBytecode == null) {
+                return null;
+            }
+            candidateClass.detach();
+            classToTransform = pool.makeClass(new ByteArrayInputStream(originalBytecode));
+            rewovenCount.incrementAndGet();
+            getLogger().debug("Class {} is transformed again, as its template changed", classToTransform.getName());
+        }
+        if (!shouldTransform(classToTransform)) {
+            return null;
+        }
+
+        Map<String, Integer> sizesBefore = sizeReport == null ? null : MethodSizeReport.measure(classToTransform.getClassFile2());
+        String cacheKey = null;
+        Annotation mimicAnnotation = getMimicAnnotation(classToTransform.getClassFile2());
+        List<String> templateNames = getTemplateNames(mimicAnnotation);
+        if (mimic.isSharingTemplateCode()) {
+            // also needed when the class is taken from the cache
+            for (String templateName : templateNames) {
+                generatedClasses.putAll(mimic.shareTemplateCode(pool.get(templateName)));
+            }
+        }
+        if ((cache != null || index != null) && !templateNames.isEmpty()) {
+            if (originalBytecode == null) {
+                originalBytecode = Digests.readClassFile(pool, classToTransform.getName());
+            }
+            String templateDigest = getTemplateDigest(pool, templateNames);
+            if (originalBytecode != null) {
+                if (index != null) {
+                    index.put(classToTransform.getName(), templateNames, templateDigest, originalBytecode);
+                }
+                if (cache != null) {
+                    // inherited fields and methods are checked, looked up and kept reachable by the weaving
+                    byte[] hierarchyDigest = Digests.sha1OfHierarchy(pool, classToTransform.getName()).getBytes("UTF-8");
+                    cacheKey = cache.computeKey(originalBytecode, templateDigest.getBytes("UTF-8"),
+                            mimicAnnotation.toString().getBytes("UTF-8"), getTransformationOptions().getBytes("UTF-8"), hierarchyDigest);
+                }
+            }
+        }
+        if (cacheKey != null) {
+            byte[] cachedBytecode = cache.get(cacheKey);
+            if (cachedBytecode != null) {
+                if (sizesBefore != null) {
+                    ClassFile cachedClassFile = new ClassFile(new DataInputStream(new ByteArrayInputStream(cachedBytecode)));
+                    sizeReport.add(classToTransform.getName(), sizesBefore, MethodSizeReport.measure(cachedClassFile));
+                }
+                return cachedBytecode;
+            }
+        }
+        applyTransformations(classToTransform);
+        applyStamp(classToTransform);
+        if (sizesBefore != null) {
+            sizeReport.add(classToTransform.getName(), sizesBefore, MethodSizeReport.measure(classToTransform.getClassFile2()));
+        }
+        long startNanos = System.nanoTime();
+        byte[] bytecode = classToTransform.toBytecode();
+        firePhase(classToTransform.getName(), MimicPhase.BYTECODE, startNanos, bytecode.length);
+        if (cacheKey != null) {
+            cache.put(cacheKey, bytecode);
+        }
+        return bytecode;
+    }
+
+    /**
+     * Transforms a single class, outside of a build. Used to weave classes
+     * when they are loaded. Classes that are not annotated by {@link Mimic}
+     * are rejected before parsing them, and classes already transformed at
+     * build time are left untouched.
+     * @param pool the pool used to resolve the template and the ancestors of the class.
+     * @param bytecode the bytecode of the class.
+     * @return the transformed bytecode, or null if the class doesn't need to be transformed.
+     * @throws Exception if the transformation failed.
+     */
+    public byte[] transformBytecode(ClassPool pool, byte[] bytecode) throws Exception {
+        if (!MimicAnnotationScanner.hasMimicAnnotation(bytecode)) {
+            return null;
+        }
+        CtClass candidateClass = pool.makeClass(new ByteArrayInputStream(bytecode));
+        try {
+            return transformClass(candidateClass);
+        } finally {
+            candidateClass.detach();
+        }
+    }
+
+    /**
+     * @param transformedClass a class that has already been transformed.
+     * @return the original bytecode of the class if one of its templates changed since it was transformed, null otherwise.
+     * @throws IOException if a class file can't be read.
+     */
+    private byte[] getOutdatedOriginalBytecode(CtClass transformedClass) throws IOException {
+        DependencyIndex.Entry entry = index == null ? null : index.get(transformedClass.getName());
+        if (entry == null) {
+            return null;
+        }
+        String templateDigest = getTemplateDigest(transformedClass.getClassPool(), entry.getTemplateNames());
+        if (templateDigest.equals(entry.getTemplateDigest())) {
+            return null;
+        }
+        return index.getOriginalBytecode(transformedClass.getName());
+    }
+
+    /**
+     * Computes the digest of the templates of a class. The digest of a single
+     * template is the digest of its hierarchy.
+     */
+    private String getTemplateDigest(ClassPool pool, List<String> templateNames) throws IOException {
+        if (templateNames.size() == 1) {
+            return getTemplateDigest(pool, templateNames.get(0));
+        }
+        byte[][] templateDigestBytes = new byte[templateNames.size()][];
+        for (int i = 0; i < templateDigestBytes.length; i++) {
+            templateDigestBytes[i] = getTemplateDigest(pool, templateNames.get(i)).getBytes("UTF-8");
+        }
+        return Digests.sha1(templateDigestBytes);
+    }
+
+    /**
+     * Computes the digest of a template and of its hierarchy, at most once per run.
+     * Nothing is loaded to compute it.
+     */
+    private String getTemplateDigest(ClassPool pool, String templateName) throws IOException {
+        String templateDigest = templateDigests.get(templateName);
+        if (templateDigest == null) {
+            templateDigest = Digests.sha1OfHierarchy(pool, templateName);
+            templateDigests.put(templateName, templateDigest);
+        }
+        return templateDigest;
+    }
+
+    private void firePhase(String className, MimicPhase phase, long startNanos, int itemCount) {
+        MimicListener listener = mimic.getListener();
+        if (listener != null) {
+            listener.onPhase(className, phase, System.nanoTime() - startNanos, itemCount);
+        }
+    }
+
+    /** @return all options that change the result of a transformation. */
+    private String getTransformationOptions() {
+        return "inliningCopies=" + mimic.isInliningCopies() + ",privateCopies=" + mimic.isPrivateCopies() + ",backend=" + mimic.getBackend()
+                + ",eliminatingDeadFields=" + mimic.isEliminatingDeadFields() + ",eliminatingUnreachableMethods="
+                + mimic.isEliminatingUnreachableMethods() + ",sharingTemplateCode=" + mimic.isSharingTemplateCode()
+                + ",initializingUnmatchedRoots=" + mimic.isInitializingUnmatchedRoots();
+    }
+
+    /**
+     * Reads the templates of a class, without loading any class.
+     * @param classFile a class file.
+     * @return the names of the templates mimicked by the class, {@link Mimic#sourceClass()} first, then its
+     *         {@link Mimic#mixins()}. Empty if the class is not annotated by {@link Mimic}.
+     */
+    public static List<String> getTemplateNames(ClassFile classFile) {
+        return getTemplateNames(getMimicAnnotation(classFile));
+    }
+
+    private static List<String> getTemplateNames(Annotation mimicAnnotation) {
+        List<String> templateNames = new ArrayList<String>();
+        if (mimicAnnotation == null) {
+            return templateNames;
+        }
+        ClassMemberValue sourceClassValue = (ClassMemberValue) mimicAnnotation.getMemberValue("sourceClass");
+        if (sourceClassValue == null) {
+            return templateNames;
+        }
+        templateNames.add(sourceClassValue.getValue());
+        ArrayMemberValue mixinsValue = (ArrayMemberValue) mimicAnnotation.getMemberValue("mixins");
+        if (mixinsValue != null) {
+            for (MemberValue mixinValue : mixinsValue.getValue()) {
+                Annotation mixin = ((AnnotationMemberValue) mixinValue).getValue();
+                templateNames.add(((ClassMemberValue) mixin.getMemberValue("sourceClass")).getValue());
+            }
+        }
+        return templateNames;
+    }
+
+    private static Annotation getMimicAnnotation(ClassFile classFile) {
+        for (String tag : new String[] {AnnotationsAttribute.invisibleTag, AnnotationsAttribute.visibleTag }) {
+            AnnotationsAttribute attribute = (AnnotationsAttribute) classFile.getAttribute(tag);
+            if (attribute != null && attribute.getAnnotation(Mimic.class.getName()) != null) {
+                return attribute.getAnnotation(Mimic.class.getName());
+            }
+        }
+        return null;
+    }
+
+    private void writeClassFile(String directory, String className, byte[] bytecode) throws IOException {
+        File classFile = new File(directory, className.replace('.', File.separatorChar) + ".class");
+        File parent = classFile.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Impossible to create directory " + parent);
+        }
+        FileOutputStream out = new FileOutputStream(classFile);
+        try {
+            out.write(bytecode);
+        } finally {
+            out.close();
+        }
+    }
+
     @Override
     protected void applyTransformations(final CtClass classToTransform) throws ClassNotFoundException, NotFoundException,
             CannotCompileException, MimicException {
         // Actually you must test if it exists, but it's just an example...
         getLogger().debug("Analysing " + classToTransform);
 
-        Mimic mimicAnnnotation = (Mimic) classToTransform
-                .getAnnotation(Mimic.class);
-        Class<?> srcClass = mimicAnnnotation.sourceClass();
-        MimicMode defaultMimicMode = mimicAnnnotation.defaultMimicMode();
+        // values are read from the class file : the annotation proxies of javassist would need the mimic
+        // annotations of the class loader of the pool to be the ones of this library
+        Annotation mimicAnnotation = getMimicAnnotation(classToTransform.getClassFile2());
+        MimicMode defaultMimicMode = AnnotationValues.getMimicMode(mimicAnnotation, Mimic.class, "defaultMimicMode");
 
-        MimicMethod[] mimicMethods = mimicAnnnotation.mimicMethods();
+        MimicMethod[] mimicMethods = AnnotationValues.getMimicMethods(mimicAnnotation);
+        MimicField[] mimicFields = AnnotationValues.getMimicFields(mimicAnnotation);
 
-        CtClass src = ClassPool.getDefault().get(srcClass.getName());
-        if (mimicAnnnotation.isMimicingInterfaces()
-                && mimicAnnnotation.isMimicingFields()
-                && mimicAnnnotation.isMimicingConstructors()
-                && mimicAnnnotation.isMimicingMethods()) {
-            mimic.mimicClass(src, classToTransform, defaultMimicMode, mimicMethods);
+        ClassPool pool = classToTransform.getClassPool();
+        CtClass src = pool.get(AnnotationValues.getClassName(mimicAnnotation, "sourceClass"));
+        Annotation[] mixins = AnnotationValues.getAnnotations(mimicAnnotation, "mixins");
+        List<CtClass> templates = new ArrayList<CtClass>();
+        templates.add(src);
+        for (Annotation mixin : mixins) {
+            templates.add(pool.get(AnnotationValues.getClassName(mixin, "sourceClass")));
+        }
+        // the templates of a class share a single index of it
+        TargetIndex targetIndex = null;
+        if (mixins.length != 0) {
+            mimic.checkConflicts(classToTransform, templates);
+            targetIndex = new TargetIndex(classToTransform);
+        }
+        boolean isMimicingInterfaces = AnnotationValues.getBoolean(mimicAnnotation, Mimic.class, "isMimicingInterfaces");
+        boolean isMimicingFields = AnnotationValues.getBoolean(mimicAnnotation, Mimic.class, "isMimicingFields");
+        boolean isMimicingConstructors = AnnotationValues.getBoolean(mimicAnnotation, Mimic.class, "isMimicingConstructors");
+        boolean isMimicingMethods = AnnotationValues.getBoolean(mimicAnnotation, Mimic.class, "isMimicingMethods");
+        if (isMimicingInterfaces && isMimicingFields && isMimicingConstructors && isMimicingMethods) {
+            if (targetIndex == null) {
+                mimic.mimicClass(src, classToTransform, defaultMimicMode, mimicMethods, mimicFields);
+            } else {
+                mimic.mimicClass(src, targetIndex, defaultMimicMode, mimicMethods, mimicFields);
+            }
         } else {
-            if (mimicAnnnotation.isMimicingInterfaces()) {
+            if (isMimicingInterfaces) {
                 mimic.mimicInterfaces(src, classToTransform);
             }
-            if (mimicAnnnotation.isMimicingFields()) {
-                mimic.mimicFields(src, classToTransform);
+            if (isMimicingFields) {
+                mimic.mimicFields(src, classToTransform, mimicFields);
             }
-            if (mimicAnnnotation.isMimicingConstructors()) {
+            if (isMimicingConstructors) {
                 mimic.mimicConstructors(src, classToTransform);
             }
-            if (mimicAnnnotation.isMimicingMethods()) {
+            if (isMimicingMethods) {
                 mimic.mimicMethods(src, classToTransform, defaultMimicMode, mimicMethods);
             }
         }
+        if (targetIndex != null) {
+            mimicMixins(targetIndex, templates, mixins);
+        }
         getLogger().debug(
                 "Class " + classToTransform.getName() + " now mimics "
-                        + src.getName());
+                        + templates);
+    }
+
+    /**
+     * Mimics the mixins of a class, each with a {@link MimicCreator} of its
+     * own, whose key is the simple name of the mixin, suffixed by a number
+     * when another template already uses it.
+     */
+    private void mimicMixins(TargetIndex targetIndex, List<CtClass> templates, Annotation[] mixins) throws NotFoundException,
+            CannotCompileException, MimicException {
+        Set<String> keys = new HashSet<String>();
+        if (mimic.getKey() != null) {
+            keys.add(mimic.getKey());
+        }
+        for (int i = 0; i < mixins.length; i++) {
+            CtClass mixinSrc = templates.get(i + 1);
+            String key = mixinSrc.getSimpleName();
+            for (int suffix = i; !keys.add(key); suffix++) {
+                key = mixinSrc.getSimpleName() + suffix;
+            }
+            mimic.withKey(key).mimicClass(mixinSrc, targetIndex,
+                    AnnotationValues.getMimicMode(mixins[i], MimicTemplate.class, "defaultMimicMode"),
+                    AnnotationValues.getMimicMethods(mixins[i]), AnnotationValues.getMimicFields(mixins[i]));
+        }
     }
 
     @Override
@@ -76,6 +995,6 @@ public class MimicProcessor extends ClassTransformer {
                 && (candidateClass.getModifiers() & Modifier.STATIC) == 0) {
             return false;
         }
-        return candidateClass.hasAnnotation(Mimic.class);
+        return getMimicAnnotation(candidateClass.getClassFile2()) != null;
     }
 }
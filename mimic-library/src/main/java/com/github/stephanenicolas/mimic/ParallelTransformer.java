@@ -0,0 +1,311 @@
+package com.github.stephanenicolas.mimic;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javassist.ClassClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import lombok.Getter;
+
+/**
+ * Transforms the classes of a directory on multiple threads. Classes are
+ * partitioned in a round robin fashion across a fixed number of workers. As
+ * javassist is not thread safe, every worker has its own {@link ClassPool},
+ * that doesn't share anything with {@link ClassPool#getDefault()}.
+ *
+ * <p>
+ * Transformed classes are detached from the pool of their worker as soon as
+ * their bytecode is obtained : every class is woven against the untransformed
+ * classes of the input directory, whatever the partition it belongs to. That
+ * makes results independent from the number of workers.
+ * </p>
+ *
+ * <p>
+ * The memory held by pools can be bounded : a worker drops its pool after a
+ * batch of classes, or when the heap is over a budget, and goes on with a new
+ * one. Only the classes of the JDK live as long as the worker, in a parent
+ * pool. Class files read by more than one pool, like templates, are kept in
+ * a {@link HotClassPath} shared by all workers. Results are handed over as
+ * soon as all the results preceding them are, instead of being held until
+ * the end, by a single worker at a time and outside of any lock. With a heap
+ * budget, a worker ahead of the next result to hand over waits before
+ * buffering a result that would take the buffered results over a quarter of
+ * the budget.
+ * </p>
+ *
+ * @author SNI
+ */
+final class ParallelTransformer {
+
+    /** Maximum size of the hot class files kept in memory, shared by all workers. */
+    private static final long HOT_CLASSFILES_CAPACITY = 16 * 1024 * 1024;
+    /** Part of the heap budget that results waiting to be handed over can use. */
+    private static final int BUFFERED_RESULTS_SHARE = 4;
+
+    private final MimicProcessor processor;
+    private final int parallelism;
+    private final long heapBudget;
+    private final int poolBatchSize;
+    private final AtomicInteger releasedPoolCount = new AtomicInteger();
+    private TransformationResult[] results;
+    private int nextResultIndex;
+    private ResultHandler resultHandler;
+    /** Maximum size of the bytecode of the results waiting to be handed over, 0 for no limit. */
+    private long maxBufferedBytes;
+    private long bufferedBytes;
+    /** Whether a worker is handing results over. */
+    private boolean isHandingOver;
+    /** Whether a worker failed, the others stop. */
+    private boolean isAborted;
+
+    /**
+     * @param processor the processor transforming every class.
+     * @param parallelism the number of workers.
+     * @param heapBudget the number of bytes of heap above which workers drop their pool, 0 for no limit.
+     * @param poolBatchSize the number of classes after which workers drop their pool, 0 for no limit.
+     */
+    ParallelTransformer(MimicProcessor processor, int parallelism, long heapBudget, int poolBatchSize) {
+        this.processor = processor;
+        this.parallelism = parallelism;
+        this.heapBudget = heapBudget;
+        this.poolBatchSize = poolBatchSize;
+    }
+
+    /**
+     * Transforms classes.
+     * @param inputDir the directory containing the classes to transform.
+     * @param classNames the classes to transform.
+     * @param resultHandler receives one result per class, in the same order as classNames, one at a time.
+     * @throws InterruptedException if the current thread is interrupted while waiting for workers.
+     * @throws IOException if the handler fails.
+     */
+    public void transform(String inputDir, List<String> classNames, ResultHandler resultHandler) throws InterruptedException, IOException {
+        this.results = new TransformationResult[classNames.size()];
+        this.nextResultIndex = 0;
+        this.resultHandler = resultHandler;
+        this.maxBufferedBytes = heapBudget > 0 ? Math.max(1, heapBudget / BUFFERED_RESULTS_SHARE) : 0;
+        this.bufferedBytes = 0;
+        this.isHandingOver = false;
+        this.isAborted = false;
+        releasedPoolCount.set(0);
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        HotClassPath classPath = new HotClassPath(new File(inputDir), classLoader, HOT_CLASSFILES_CAPACITY);
+        int workerCount = Math.max(1, Math.min(parallelism, classNames.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int indexWorker = 0; indexWorker < workerCount; indexWorker++) {
+                futures.add(executor.submit(new Worker(classPath, classLoader, classNames, indexWorker, workerCount)));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+            this.results = null;
+            this.resultHandler = null;
+        }
+    }
+
+    /**
+     * @return the number of pools dropped by workers during the last transformation, to bound memory.
+     */
+    public int getReleasedPoolCount() {
+        return releasedPoolCount.get();
+    }
+
+    /**
+     * Stores a result, and hands over all the results that are now in order,
+     * unless another worker is already doing it.
+     * @return false if another worker failed, and the transformation stops.
+     */
+    private boolean publish(int index, TransformationResult result) throws IOException, InterruptedException {
+        long size = getSize(result);
+        synchronized (this) {
+            // the next result is never held back, so that the buffered ones are eventually handed over
+            while (!isAborted && index != nextResultIndex && maxBufferedBytes > 0 && bufferedBytes + size > maxBufferedBytes) {
+                wait();
+            }
+            if (isAborted) {
+                return false;
+            }
+            results[index] = result;
+            bufferedBytes += size;
+            if (isHandingOver) {
+                return true;
+            }
+            isHandingOver = true;
+        }
+        List<TransformationResult> readyResults = new ArrayList<TransformationResult>();
+        while (true) {
+            synchronized (this) {
+                while (nextResultIndex < results.length && results[nextResultIndex] != null) {
+                    readyResults.add(results[nextResultIndex]);
+                    results[nextResultIndex++] = null;
+                }
+                if (readyResults.isEmpty()) {
+                    isHandingOver = false;
+                    return true;
+                }
+                notifyAll();
+            }
+            long handedBytes = 0;
+            for (TransformationResult readyResult : readyResults) {
+                resultHandler.handle(readyResult);
+                handedBytes += getSize(readyResult);
+            }
+            readyResults.clear();
+            synchronized (this) {
+                bufferedBytes -= handedBytes;
+                notifyAll();
+            }
+        }
+    }
+
+    /** Stops the workers waiting to publish a result, when a worker fails. */
+    private synchronized void abort() {
+        isAborted = true;
+        notifyAll();
+    }
+
+    private static long getSize(TransformationResult result) {
+        return result.getBytecode() == null ? 0 : result.getBytecode().length;
+    }
+
+    /** Transforms every workerCount-th class, starting at index firstIndex. */
+    private final class Worker implements Callable<Void> {
+        private final HotClassPath classPath;
+        private final ClassLoader classLoader;
+        private final List<String> classNames;
+        private final int firstIndex;
+        private final int step;
+
+        private Worker(HotClassPath classPath, ClassLoader classLoader, List<String> classNames, int firstIndex, int step) {
+            this.classPath = classPath;
+            this.classLoader = classLoader;
+            this.classNames = classNames;
+            this.firstIndex = firstIndex;
+            this.step = step;
+        }
+
+        @Override
+        public Void call() throws IOException, InterruptedException {
+            boolean isCompleted = false;
+            try {
+                transformAll();
+                isCompleted = true;
+            } finally {
+                if (!isCompleted) {
+                    abort();
+                }
+            }
+            return null;
+        }
+
+        private void transformAll() throws IOException, InterruptedException {
+            // annotation values such as Mimic#sourceClass() are resolved via the context class loader
+            Thread.currentThread().setContextClassLoader(classLoader);
+            ClassPool jdkPool = new ClassPool(false);
+            jdkPool.appendClassPath(new JdkClassPath());
+            HeapBudget budget = heapBudget > 0 ? new HeapBudget(heapBudget) : null;
+
+            ClassPool pool = null;
+            int batchCount = 0;
+            for (int index = firstIndex; index < classNames.size(); index += step) {
+                if (pool == null) {
+                    pool = new ClassPool(jdkPool);
+                    pool.appendClassPath(classPath);
+                    pool.appendSystemPath();
+                    batchCount = 0;
+                }
+                if (!publish(index, transform(pool, classNames.get(index)))) {
+                    return;
+                }
+                batchCount++;
+                if (poolBatchSize > 0 && batchCount >= poolBatchSize || budget != null && budget.shouldReleasePool()) {
+                    pool = null;
+                    releasedPoolCount.incrementAndGet();
+                }
+            }
+        }
+
+        private TransformationResult transform(ClassPool pool, String className) {
+            CtClass candidateClass = null;
+            try {
+                candidateClass = pool.get(className);
+                return new TransformationResult(className, processor.transformClass(candidateClass), null);
+            } catch (Exception e) {
+                return new TransformationResult(className, null, e);
+            } finally {
+                if (candidateClass != null) {
+                    candidateClass.detach();
+                }
+            }
+        }
+    }
+
+    /** Receives the results of a transformation. */
+    interface ResultHandler {
+        /**
+         * @param result the result of the transformation of a class.
+         * @throws IOException if the result can't be written.
+         */
+        void handle(TransformationResult result) throws IOException;
+    }
+
+    /**
+     * The classes of the JDK, that a pool shares with all the pools of a
+     * worker. Other classes are left to these pools.
+     */
+    private static final class JdkClassPath extends ClassClassPath {
+        private static final String JDK_PACKAGE_PREFIX = "java.";
+
+        private JdkClassPath() {
+            super(Object.class);
+        }
+
+        @Override
+        public InputStream openClassfile(String className) {
+            return className.startsWith(JDK_PACKAGE_PREFIX) ? super.openClassfile(className) : null;
+        }
+
+        @Override
+        public URL find(String className) {
+            return className.startsWith(JDK_PACKAGE_PREFIX) ? super.find(className) : null;
+        }
+    }
+
+    /** Outcome of the transformation of a single class. */
+    static final class TransformationResult {
+        @Getter
+        private final String className;
+        /** The transformed bytecode, or null if the class was not transformed. */
+        @Getter
+        private final byte[] bytecode;
+        /** The exception that prevented the transformation, if any. */
+        @Getter
+        private final Exception exception;
+
+        TransformationResult(String className, byte[] bytecode, Exception exception) {
+            this.className = className;
+            this.bytecode = bytecode;
+            this.exception = exception;
+        }
+    }
+}
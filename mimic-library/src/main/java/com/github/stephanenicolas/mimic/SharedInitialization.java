@@ -0,0 +1,465 @@
+package com.github.stephanenicolas.mimic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javassist.CannotCompileException;
+import javassist.CtBehavior;
+import javassist.CtClass;
+import javassist.CtConstructor;
+import javassist.CtMethod;
+import javassist.bytecode.AccessFlag;
+import javassist.bytecode.AttributeInfo;
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.ByteArray;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.CodeIterator;
+import javassist.bytecode.ExceptionTable;
+import javassist.bytecode.LineNumberAttribute;
+import javassist.bytecode.LocalVariableAttribute;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.Opcode;
+import javassist.bytecode.StackMap;
+import javassist.bytecode.StackMapTable;
+import javassist.bytecode.analysis.Analyzer;
+import javassist.bytecode.analysis.Frame;
+import lombok.extern.java.Log;
+
+/**
+ * The instance initialization of a template : the code that all its root
+ * constructors, invoking {@code super(...)}, run right after that
+ * invocation. Javac copies field initializers and initializer blocks there,
+ * in every root constructor. {@link MimicCreator} moves it into a single
+ * method, invoked once per construction, by the root constructors of dst,
+ * and removes it from the copies of the template constructors.
+ *
+ * <p>
+ * Only whole statements are shared, that only use {@code this} as a local
+ * variable, and whose branches and exception handlers stay inside the
+ * shared code. Code is located by counting instructions from its end, so
+ * that it can be found again in copies, whose constant pool indexes and
+ * constructor invocation differ. This class is immutable, and thus thread
+ * safe.
+ * </p>
+ *
+ * @author SNI
+ */
+@Log
+final class SharedInitialization {
+
+    private static final int BYTE_MASK = 0xFF;
+    private static final int INVOKE_LENGTH = 3;
+    private static final int SWITCH_ALIGNMENT = 4;
+    private static final int INT_LENGTH = 4;
+    private static final int LINE_NUMBER_LENGTH = 4;
+    private static final int LOCAL_VARIABLE_LENGTH = 10;
+
+    /** Number of instructions of the shared code. */
+    private final int instructionCount;
+    /** Number of instructions following the shared code in each root constructor, by descriptor. */
+    private final Map<String, Integer> mapDescriptorToTailCount;
+
+    private SharedInitialization(int instructionCount, Map<String, Integer> mapDescriptorToTailCount) {
+        this.instructionCount = instructionCount;
+        this.mapDescriptorToTailCount = Collections.unmodifiableMap(mapDescriptorToTailCount);
+    }
+
+    /**
+     * Finds the code shared by the root constructors of a template.
+     * @param template a template.
+     * @return the shared initialization of template, or null if it has less
+     *         than 2 root constructors, or if they share no code.
+     * @throws CannotCompileException if the bytecode of a constructor is invalid.
+     */
+    static SharedInitialization find(CtClass template) throws CannotCompileException {
+        List<RootConstructor> roots = new ArrayList<RootConstructor>();
+        try {
+            for (CtConstructor constructor : template.getDeclaredConstructors()) {
+                RootConstructor root = RootConstructor.create(template, constructor);
+                if (root != null) {
+                    roots.add(root);
+                }
+            }
+        } catch (BadBytecode e) {
+            log.fine("Constructors of " + template.getName() + " can't be analyzed, their code is not shared: " + e.getMessage());
+            return null;
+        }
+        if (roots.size() < 2) {
+            return null;
+        }
+        RootConstructor first = roots.get(0);
+        int instructionCount = 0;
+        for (int count = 1; first.isSharable(count - 1); count++) {
+            boolean isSame = true;
+            for (RootConstructor root : roots) {
+                isSame &= root.isSharable(count - 1) && root.hasSameInstruction(first, count - 1);
+            }
+            if (!isSame) {
+                break;
+            }
+            boolean isBoundary = true;
+            for (RootConstructor root : roots) {
+                isBoundary &= root.isBoundary(count);
+            }
+            if (isBoundary) {
+                instructionCount = count;
+            }
+        }
+        if (instructionCount == 0) {
+            return null;
+        }
+        Map<String, Integer> mapDescriptorToTailCount = new HashMap<String, Integer>();
+        for (RootConstructor root : roots) {
+            mapDescriptorToTailCount.put(root.descriptor, root.getTailCount(instructionCount));
+        }
+        return new SharedInitialization(instructionCount, mapDescriptorToTailCount);
+    }
+
+    /**
+     * @param descriptor the descriptor of a constructor of the template.
+     * @return true if the constructor runs the shared code.
+     */
+    boolean isSharedBy(String descriptor) {
+        return mapDescriptorToTailCount.containsKey(descriptor);
+    }
+
+    /**
+     * Creates a method running the shared code.
+     * @param copy a copy, in dst, of a root constructor of the template, as a
+     *            constructor or as a method.
+     * @param descriptor the descriptor of the copied constructor.
+     * @param name the name of the method.
+     * @return the method, declared by the class of copy, not added to it yet.
+     * @throws CannotCompileException if the bytecode of copy is invalid.
+     */
+    CtMethod extract(CtBehavior copy, String descriptor, String name) throws CannotCompileException {
+        CtClass dst = copy.getDeclaringClass();
+        CodeAttribute code = copy.getMethodInfo().getCodeAttribute();
+        try {
+            int[] range = locate(code, descriptor);
+            int length = range[1] - range[0];
+            byte[] sharedCode = new byte[length + 1];
+            System.arraycopy(code.getCode(), range[0], sharedCode, 0, length);
+            sharedCode[length] = (byte) Opcode.RETURN;
+            ExceptionTable handlers = code.getExceptionTable();
+            ExceptionTable sharedHandlers = new ExceptionTable(code.getConstPool());
+            for (int indexHandler = 0; indexHandler < handlers.size(); indexHandler++) {
+                if (handlers.startPc(indexHandler) >= range[0] && handlers.endPc(indexHandler) <= range[1]) {
+                    sharedHandlers.add(sharedHandlers.size(), handlers.startPc(indexHandler) - range[0],
+                            handlers.endPc(indexHandler) - range[0], handlers.handlerPc(indexHandler) - range[0],
+                            handlers.catchType(indexHandler));
+                }
+            }
+            // only local 0 is used, the local variable tables of copy don't apply
+            CodeAttribute methodCode = new CodeAttribute(code.getConstPool(), code.getMaxStack(), 1, sharedCode, sharedHandlers);
+            LineNumberAttribute lineNumbers = (LineNumberAttribute) code.getAttribute(LineNumberAttribute.tag);
+            if (lineNumbers != null) {
+                AttributeInfo sharedLineNumbers = lineNumbers.copy(code.getConstPool(), null);
+                clampLineNumbers(sharedLineNumbers.get(), range[0], length);
+                methodCode.getAttributes().add(sharedLineNumbers);
+            }
+            MethodInfo methodInfo = new MethodInfo(code.getConstPool(), name, "()V");
+            methodInfo.setAccessFlags(AccessFlag.PUBLIC);
+            methodInfo.setCodeAttribute(methodCode);
+            methodCode.computeMaxStack();
+            methodInfo.rebuildStackMapIf6(dst.getClassPool(), dst.getClassFile2());
+            return CtMethod.make(methodInfo, dst);
+        } catch (BadBytecode e) {
+            throw new CannotCompileException(e);
+        }
+    }
+
+    /**
+     * Removes the shared code from a copy of a root constructor, replacing
+     * it by some code, like an invocation of the method running it. Following
+     * code moves by a multiple of 4 bytes, so that the padding of its
+     * switches doesn't change.
+     * @param copy a copy, in dst, of a root constructor of the template, as a
+     *            constructor or as a method.
+     * @param descriptor the descriptor of the copied constructor.
+     * @param replacement code that leaves the stack as it finds it.
+     * @return false if the shared code is too short to be replaced, copy is
+     *         then left untouched.
+     * @throws CannotCompileException if the bytecode of copy is invalid.
+     */
+    boolean replace(CtBehavior copy, String descriptor, byte[] replacement) throws CannotCompileException {
+        CtClass dst = copy.getDeclaringClass();
+        MethodInfo methodInfo = copy.getMethodInfo();
+        CodeAttribute code = methodInfo.getCodeAttribute();
+        try {
+            int[] range = locate(code, descriptor);
+            int sharedLength = range[1] - range[0];
+            if (sharedLength < replacement.length) {
+                return false;
+            }
+            int removedLength = (sharedLength - replacement.length) / SWITCH_ALIGNMENT * SWITCH_ALIGNMENT;
+            byte[] oldCode = code.getCode();
+            byte[] newCode = new byte[oldCode.length - removedLength];
+            System.arraycopy(oldCode, 0, newCode, 0, range[0]);
+            System.arraycopy(replacement, 0, newCode, range[0], replacement.length);
+            for (int index = range[0] + replacement.length; index < range[1] - removedLength; index++) {
+                newCode[index] = (byte) Opcode.NOP;
+            }
+            System.arraycopy(oldCode, range[1], newCode, range[1] - removedLength, oldCode.length - range[1]);
+
+            // branches don't cross the shared code, handlers are either inside or outside of it
+            ExceptionTable handlers = code.getExceptionTable();
+            ExceptionTable newHandlers = new ExceptionTable(code.getConstPool());
+            for (int indexHandler = 0; indexHandler < handlers.size(); indexHandler++) {
+                if (handlers.startPc(indexHandler) >= range[0] && handlers.endPc(indexHandler) <= range[1]) {
+                    continue;
+                }
+                newHandlers.add(newHandlers.size(), mapPosition(handlers.startPc(indexHandler), range, removedLength),
+                        mapPosition(handlers.endPc(indexHandler), range, removedLength),
+                        mapPosition(handlers.handlerPc(indexHandler), range, removedLength), handlers.catchType(indexHandler));
+            }
+            CodeAttribute newCodeAttribute = new CodeAttribute(code.getConstPool(), code.getMaxStack(), code.getMaxLocals(), newCode,
+                    newHandlers);
+            for (Iterator<?> attributes = code.getAttributes().iterator(); attributes.hasNext();) {
+                AttributeInfo attribute = (AttributeInfo) attributes.next();
+                String attributeName = attribute.getName();
+                if (StackMapTable.tag.equals(attributeName) || StackMap.tag.equals(attributeName)) {
+                    continue;
+                }
+                if (LineNumberAttribute.tag.equals(attributeName)) {
+                    mapPositions(attribute.get(), LINE_NUMBER_LENGTH, range, removedLength, false);
+                } else if (LocalVariableAttribute.tag.equals(attributeName) || LocalVariableAttribute.typeTag.equals(attributeName)) {
+                    mapPositions(attribute.get(), LOCAL_VARIABLE_LENGTH, range, removedLength, true);
+                }
+                newCodeAttribute.getAttributes().add(attribute);
+            }
+            methodInfo.setCodeAttribute(newCodeAttribute);
+            newCodeAttribute.computeMaxStack();
+            methodInfo.rebuildStackMapIf6(dst.getClassPool(), dst.getClassFile2());
+            return true;
+        } catch (BadBytecode e) {
+            throw new CannotCompileException(e);
+        }
+    }
+
+    /** @return the start and the end of the shared code in a copy of a root constructor. */
+    private int[] locate(CodeAttribute code, String descriptor) throws BadBytecode {
+        List<Integer> positions = new ArrayList<Integer>();
+        CodeIterator iterator = code.iterator();
+        while (iterator.hasNext()) {
+            positions.add(iterator.next());
+        }
+        int end = positions.size() - mapDescriptorToTailCount.get(descriptor);
+        int start = end - instructionCount;
+        if (start < 0) {
+            throw new BadBytecode("Shared initialization not found in a copy of constructor " + descriptor);
+        }
+        return new int[] {positions.get(start), positions.get(end) };
+    }
+
+    private static int mapPosition(int position, int[] range, int removedLength) {
+        if (position < range[0]) {
+            return position;
+        }
+        if (position >= range[1]) {
+            return position - removedLength;
+        }
+        return range[0];
+    }
+
+    /**
+     * Moves the code positions of a line number or local variable table out
+     * of the shared code, see {@link #mapPosition(int, int[], int)}.
+     */
+    private static void mapPositions(byte[] table, int entryLength, int[] range, int removedLength, boolean hasLength) {
+        int entryCount = ByteArray.readU16bit(table, 0);
+        for (int indexEntry = 0; indexEntry < entryCount; indexEntry++) {
+            int offset = 2 + indexEntry * entryLength;
+            int start = ByteArray.readU16bit(table, offset);
+            int newStart = mapPosition(start, range, removedLength);
+            ByteArray.write16bit(newStart, table, offset);
+            if (hasLength) {
+                int end = start + ByteArray.readU16bit(table, offset + 2);
+                ByteArray.write16bit(mapPosition(end, range, removedLength) - newStart, table, offset + 2);
+            }
+        }
+    }
+
+    /**
+     * Moves the code positions of a line number table into the shared code,
+     * once it is moved to the start of a method.
+     */
+    private static void clampLineNumbers(byte[] table, int sharedStart, int sharedLength) {
+        int entryCount = ByteArray.readU16bit(table, 0);
+        for (int indexEntry = 0; indexEntry < entryCount; indexEntry++) {
+            int offset = 2 + indexEntry * LINE_NUMBER_LENGTH;
+            int start = ByteArray.readU16bit(table, offset) - sharedStart;
+            ByteArray.write16bit(Math.min(Math.max(start, 0), sharedLength), table, offset);
+        }
+    }
+
+    /** The code of a root constructor of the template, from the invocation of super. */
+    private static final class RootConstructor {
+        private final String descriptor;
+        private final byte[] code;
+        /** Positions of the instructions following the invocation of super, and the end of the code. */
+        private final List<Integer> positions = new ArrayList<Integer>();
+        private final int[] branchSources;
+        private final int[] branchTargets;
+        private final ExceptionTable handlers;
+        private final Frame[] frames;
+
+        private RootConstructor(CtConstructor constructor, CodeAttribute code, int start, List<int[]> branches, Frame[] frames)
+            throws BadBytecode {
+            this.descriptor = constructor.getSignature();
+            this.code = code.getCode();
+            this.handlers = code.getExceptionTable();
+            this.frames = frames;
+            CodeIterator iterator = code.iterator();
+            while (iterator.hasNext()) {
+                int position = iterator.next();
+                if (position >= start) {
+                    positions.add(position);
+                }
+            }
+            positions.add(this.code.length);
+            branchSources = new int[branches.size()];
+            branchTargets = new int[branches.size()];
+            for (int indexBranch = 0; indexBranch < branches.size(); indexBranch++) {
+                branchSources[indexBranch] = branches.get(indexBranch)[0];
+                branchTargets[indexBranch] = branches.get(indexBranch)[1];
+            }
+        }
+
+        /** @return the code of a constructor, or null if it delegates to another constructor of the template. */
+        private static RootConstructor create(CtClass template, CtConstructor constructor) throws BadBytecode {
+            MethodInfo methodInfo = constructor.getMethodInfo2();
+            CodeAttribute code = methodInfo.getCodeAttribute();
+            if (code == null) {
+                return null;
+            }
+            CodeIterator iterator = code.iterator();
+            int superPosition = iterator.skipSuperConstructor();
+            if (superPosition < 0) {
+                return null;
+            }
+            List<int[]> branches = new ArrayList<int[]>();
+            iterator.begin();
+            while (iterator.hasNext()) {
+                int position = iterator.next();
+                for (int target : getBranchTargets(code.getCode(), position)) {
+                    branches.add(new int[] {position, target });
+                }
+            }
+            return new RootConstructor(constructor, code, superPosition + INVOKE_LENGTH, branches,
+                    new Analyzer().analyze(template, methodInfo));
+        }
+
+        /** @return true if the instruction at an index, after the invocation of super, may be shared. */
+        private boolean isSharable(int index) {
+            if (index >= positions.size() - 1) {
+                return false;
+            }
+            int position = positions.get(index);
+            int opcode = code[position] & BYTE_MASK;
+            if (opcode == Opcode.WIDE || opcode == Opcode.IINC) {
+                return false;
+            }
+            if (LocalVariableInstructions.isLocalAccess(opcode)) {
+                // this can be loaded, nothing else
+                return LocalVariableInstructions.getExplicitOpcode(opcode) == Opcode.ALOAD
+                        && LocalVariableInstructions.getLocalIndex(code, position) == 0;
+            }
+            return !(opcode >= Opcode.IRETURN && opcode <= Opcode.RETURN) && opcode != Opcode.JSR && opcode != Opcode.JSR_W
+                    && opcode != Opcode.RET && opcode != Opcode.TABLESWITCH && opcode != Opcode.LOOKUPSWITCH;
+        }
+
+        private boolean hasSameInstruction(RootConstructor other, int index) {
+            int position = positions.get(index);
+            int length = positions.get(index + 1) - position;
+            int otherPosition = other.positions.get(index);
+            if (other.positions.get(index + 1) - otherPosition != length) {
+                return false;
+            }
+            for (int offset = 0; offset < length; offset++) {
+                if (code[position + offset] != other.code[otherPosition + offset]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return true if the first count instructions after the invocation of
+         *         super can be moved out : the stack is empty after them, no
+         *         branch crosses their bounds, and exception handlers are
+         *         either inside or outside of them.
+         */
+        private boolean isBoundary(int count) {
+            if (count >= positions.size() - 1) {
+                return false;
+            }
+            int start = positions.get(0);
+            int end = positions.get(count);
+            Frame frame = frames[end];
+            if (frame == null || frame.getTopIndex() != -1) {
+                return false;
+            }
+            for (int indexBranch = 0; indexBranch < branchSources.length; indexBranch++) {
+                int source = branchSources[indexBranch];
+                int target = branchTargets[indexBranch];
+                boolean isSourceInside = source >= start && source < end;
+                boolean isTargetInside = isSourceInside ? target >= start && target <= end : target >= start && target < end;
+                if (isSourceInside != isTargetInside || source < start && target >= end || source >= end && target < start) {
+                    return false;
+                }
+            }
+            for (int indexHandler = 0; indexHandler < handlers.size(); indexHandler++) {
+                boolean isInside = handlers.startPc(indexHandler) >= start && handlers.endPc(indexHandler) <= end;
+                boolean isOutside = handlers.endPc(indexHandler) <= start || handlers.startPc(indexHandler) >= end;
+                boolean isHandlerInside = handlers.handlerPc(indexHandler) >= start && handlers.handlerPc(indexHandler) < end;
+                if (!(isInside && isHandlerInside || isOutside && !isHandlerInside)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** @return the number of instructions following the first count instructions after the invocation of super. */
+        private int getTailCount(int count) {
+            return positions.size() - 1 - count;
+        }
+
+        /** @return the positions an instruction may branch to, empty if it is not a branch. */
+        private static int[] getBranchTargets(byte[] code, int position) {
+            int opcode = code[position] & BYTE_MASK;
+            if (opcode >= Opcode.IFEQ && opcode <= Opcode.JSR || opcode == Opcode.IFNULL || opcode == Opcode.IFNONNULL) {
+                return new int[] {position + ByteArray.readS16bit(code, position + 1) };
+            }
+            if (opcode == Opcode.GOTO_W || opcode == Opcode.JSR_W) {
+                return new int[] {position + ByteArray.read32bit(code, position + 1) };
+            }
+            if (opcode != Opcode.TABLESWITCH && opcode != Opcode.LOOKUPSWITCH) {
+                return new int[0];
+            }
+            int operands = (position & ~(SWITCH_ALIGNMENT - 1)) + SWITCH_ALIGNMENT;
+            int targetCount;
+            int targetStep;
+            int firstTarget;
+            if (opcode == Opcode.TABLESWITCH) {
+                targetCount = ByteArray.read32bit(code, operands + 2 * INT_LENGTH) - ByteArray.read32bit(code, operands + INT_LENGTH) + 1;
+                targetStep = INT_LENGTH;
+                firstTarget = 3 * INT_LENGTH;
+            } else {
+                targetCount = ByteArray.read32bit(code, operands + INT_LENGTH);
+                targetStep = 2 * INT_LENGTH;
+                firstTarget = 3 * INT_LENGTH;
+            }
+            int[] targets = new int[targetCount + 1];
+            targets[0] = position + ByteArray.read32bit(code, operands);
+            for (int indexTarget = 0; indexTarget < targetCount; indexTarget++) {
+                targets[indexTarget + 1] = position + ByteArray.read32bit(code, operands + firstTarget + indexTarget * targetStep);
+            }
+            return targets;
+        }
+    }
+}
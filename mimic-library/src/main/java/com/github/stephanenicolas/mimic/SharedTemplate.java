@@ -0,0 +1,532 @@
+package com.github.stephanenicolas.mimic;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtMethod;
+import javassist.Modifier;
+import javassist.NotFoundException;
+import javassist.bytecode.AccessFlag;
+import javassist.bytecode.AttributeInfo;
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.Bytecode;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.CodeIterator;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.Descriptor;
+import javassist.bytecode.ExceptionTable;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.Opcode;
+import lombok.Getter;
+
+/**
+ * The code of a template shared by all the classes mimicing it, instead of
+ * being copied into each of them. The methods of the template are compiled
+ * once, as static methods of a helper class,
+ * {@code <template>$MimicHelper}, that take the instance they work on as
+ * first argument. This receiver is typed by an interface,
+ * {@code <template>$MimicReceiver}, declaring a getter for every field of
+ * the template the shared code reads, a setter for every field it writes,
+ * and the methods it invokes on {@code this}. Classes mimicing the template implement the interface,
+ * and their copies of template methods are mere stubs invoking the helper.
+ *
+ * <p>
+ * A method is shared only if {@code this} is the only instance of the
+ * template it handles : it must not be static, synchronized nor native, must
+ * not invoke super or private methods, must not touch static members of the
+ * template, and the template must not appear in its descriptor, nor in the
+ * descriptors, classes and exception types it refers to. Other methods are
+ * copied as usual. Both generated classes depend only on the template, and
+ * are identical for all the classes mimicing it.
+ * </p>
+ *
+ * @author SNI
+ */
+final class SharedTemplate {
+
+    /** Suffix of the name of the helper class of a template. */
+    static final String HELPER_SUFFIX = "$MimicHelper";
+    /** Suffix of the name of the receiver interface of a template. */
+    static final String RECEIVER_SUFFIX = "$MimicReceiver";
+
+    private static final String GETTER_PREFIX = "_mimic_get_";
+    private static final String SETTER_PREFIX = "_mimic_set_";
+    private static final int INVOKEINTERFACE_LENGTH = 5;
+    private static final int FIELD_INSTRUCTION_LENGTH = 3;
+    private static final int UNSHARED_FLAGS = AccessFlag.STATIC | AccessFlag.SYNCHRONIZED | AccessFlag.NATIVE | AccessFlag.ABSTRACT;
+
+    /** Digest of the bytecode of the template, the generated classes are valid as long as it doesn't change. */
+    @Getter
+    private final String templateDigest;
+    @Getter
+    private final String helperName;
+    @Getter
+    private final String receiverName;
+    private final Set<String> sharedMethodKeys;
+    /**
+     * Descriptors of the fields accessed by shared code, by the name of their
+     * accessor : a getter if the field is read, a setter if it is written.
+     */
+    private final Map<String, String> accessors;
+    /** Descriptors of the methods invoked on this by shared code, by name and descriptor. */
+    private final Map<String, String> invokedMethods;
+    @Getter
+    private final byte[] helperBytecode;
+    @Getter
+    private final byte[] receiverBytecode;
+
+    private SharedTemplate(String templateName, String templateDigest, Set<String> sharedMethodKeys,
+            Map<String, String> accessors, Map<String, String> invokedMethods, byte[] helperBytecode, byte[] receiverBytecode) {
+        this.templateDigest = templateDigest;
+        this.helperName = templateName + HELPER_SUFFIX;
+        this.receiverName = templateName + RECEIVER_SUFFIX;
+        this.sharedMethodKeys = Collections.unmodifiableSet(sharedMethodKeys);
+        this.accessors = Collections.unmodifiableMap(accessors);
+        this.invokedMethods = Collections.unmodifiableMap(invokedMethods);
+        this.helperBytecode = helperBytecode;
+        this.receiverBytecode = receiverBytecode;
+    }
+
+    /**
+     * Compiles the shared code of a template.
+     * @param template the template.
+     * @param templateDigest the digest of the current bytecode of template.
+     * @return the shared code of template.
+     * @throws CannotCompileException if the bytecode of the template is invalid.
+     */
+    static SharedTemplate create(CtClass template, String templateDigest) throws CannotCompileException {
+        String receiverName = template.getName() + RECEIVER_SUFFIX;
+        String helperName = template.getName() + HELPER_SUFFIX;
+        Set<String> sharedMethodKeys = new HashSet<String>();
+        Map<String, String> accessors = new TreeMap<String, String>();
+        Map<String, String> invokedMethods = new TreeMap<String, String>();
+        try {
+            for (CtMethod method : template.getDeclaredMethods()) {
+                Map<String, String> methodAccessors = new HashMap<String, String>();
+                Map<String, String> methodInvocations = new HashMap<String, String>();
+                if (isShareable(template, method.getMethodInfo2(), methodAccessors, methodInvocations)) {
+                    sharedMethodKeys.add(method.getName() + method.getSignature());
+                    accessors.putAll(methodAccessors);
+                    invokedMethods.putAll(methodInvocations);
+                }
+            }
+            ClassFile receiver = createReceiver(template, receiverName, accessors, invokedMethods);
+            byte[] receiverBytecode = toBytecode(receiver);
+            ClassPool pool = template.getClassPool();
+            // the stack maps of the helper refer to the receiver
+            defineReceiver(pool, receiverName, receiverBytecode);
+            ClassFile helper = createHelper(template, helperName, receiverName, sharedMethodKeys);
+            return new SharedTemplate(template.getName(), templateDigest, sharedMethodKeys, accessors, invokedMethods,
+                    toBytecode(helper), receiverBytecode);
+        } catch (BadBytecode e) {
+            throw new CannotCompileException(e);
+        } catch (IOException e) {
+            throw new CannotCompileException(e);
+        }
+    }
+
+    /**
+     * @param template a template.
+     * @return the digest of the current bytecode of template.
+     * @throws CannotCompileException if the template can't be written.
+     */
+    static String digest(CtClass template) throws CannotCompileException {
+        try {
+            return Digests.sha1(toBytecode(template.getClassFile2()));
+        } catch (IOException e) {
+            throw new CannotCompileException(e);
+        }
+    }
+
+    /**
+     * @param method a method of the template.
+     * @return true if the code of method is shared.
+     */
+    boolean isShared(CtMethod method) {
+        return sharedMethodKeys.contains(method.getName() + method.getSignature());
+    }
+
+    /** @return true if the template has some shared code. */
+    boolean hasSharedMethods() {
+        return !sharedMethodKeys.isEmpty();
+    }
+
+    /**
+     * Tells whether a class mimicing the template can implement the
+     * receiver interface, once the fields of the template are copied, but
+     * before its methods are : every accessed field must be visible, and
+     * every method invoked on {@code this} must be public.
+     * @param dst a class mimicing the template.
+     * @param src the template.
+     * @return true if dst can receive the shared code.
+     */
+    boolean canBeReceivedBy(CtClass dst, CtClass src) {
+        for (Map.Entry<String, String> entry : accessors.entrySet()) {
+            try {
+                CtField field = dst.getField(getFieldName(entry.getKey()), entry.getValue());
+                if (Modifier.isStatic(field.getModifiers())
+                        || Modifier.isPrivate(field.getModifiers()) && field.getDeclaringClass() != dst) {
+                    return false;
+                }
+            } catch (NotFoundException e) {
+                return false;
+            }
+        }
+        for (Map.Entry<String, String> entry : invokedMethods.entrySet()) {
+            String name = entry.getKey().substring(0, entry.getKey().indexOf('('));
+            CtMethod method;
+            try {
+                method = dst.getMethod(name, entry.getValue());
+            } catch (NotFoundException e) {
+                // the method will be copied from the template
+                method = findDeclaredMethod(src, name, entry.getValue());
+            }
+            if (method == null || !Modifier.isPublic(method.getModifiers()) || Modifier.isStatic(method.getModifiers())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Makes a class implement the receiver interface, by adding the accessors
+     * of the fields of the template.
+     * @param dst a class mimicing the template, that {@link #canBeReceivedBy(CtClass, CtClass) can receive} its shared code.
+     * @throws CannotCompileException if the receiver can't be implemented.
+     */
+    void implementReceiver(CtClass dst) throws CannotCompileException {
+        defineReceiver(dst.getClassPool(), receiverName, receiverBytecode);
+        ClassFile classFile = dst.getClassFile2();
+        if (Arrays.asList(classFile.getInterfaces()).contains(receiverName)) {
+            return;
+        }
+        classFile.addInterface(receiverName);
+        ConstPool constPool = classFile.getConstPool();
+        for (Map.Entry<String, String> entry : accessors.entrySet()) {
+            String accessorName = entry.getKey();
+            String type = entry.getValue();
+            String descriptor = getAccessorDescriptor(accessorName, type);
+            if (hasDeclaredMethod(dst, accessorName, descriptor)) {
+                // another template already accesses the field
+                continue;
+            }
+            Bytecode bytecode;
+            if (accessorName.startsWith(GETTER_PREFIX)) {
+                bytecode = new Bytecode(constPool, 0, 1);
+                bytecode.addAload(0);
+                bytecode.addGetfield(dst.getName(), getFieldName(accessorName), type);
+                bytecode.addOpcode(getReturnOpcode(type));
+                bytecode.setMaxStack(Descriptor.dataSize(type));
+            } else {
+                bytecode = new Bytecode(constPool, 0, 1 + Descriptor.dataSize(type));
+                bytecode.addAload(0);
+                bytecode.addOpcode(getLoadOpcode(type));
+                bytecode.add(1);
+                bytecode.addPutfield(dst.getName(), getFieldName(accessorName), type);
+                bytecode.addOpcode(Opcode.RETURN);
+                bytecode.setMaxStack(1 + Descriptor.dataSize(type));
+            }
+            dst.addMethod(makeAccessor(dst, accessorName, descriptor, bytecode));
+        }
+    }
+
+    /**
+     * Creates a stub of a shared method, invoking its code in the helper.
+     * @param method a shared method of the template.
+     * @param name the name of the stub.
+     * @param dst a class implementing the receiver interface.
+     * @return the stub, not yet added to dst.
+     * @throws CannotCompileException if the stub can't be compiled.
+     * @throws NotFoundException if a parameter type of method can't be resolved.
+     */
+    CtMethod makeStub(CtMethod method, String name, CtClass dst) throws CannotCompileException, NotFoundException {
+        ConstPool constPool = dst.getClassFile2().getConstPool();
+        CtClass[] parameterTypes = method.getParameterTypes();
+        Bytecode bytecode = new Bytecode(constPool, 0, 0);
+        bytecode.addAload(0);
+        int stackSize = 1 + bytecode.addLoadParameters(parameterTypes, 1);
+        bytecode.addInvokestatic(helperName, method.getName(), getHelperDescriptor(method.getSignature()));
+        bytecode.addReturn(method.getReturnType());
+        bytecode.setMaxLocals(false, parameterTypes, 0);
+        bytecode.setMaxStack(Math.max(stackSize, Descriptor.dataSize(method.getSignature())));
+        MethodInfo methodInfo = method.getMethodInfo2();
+        MethodInfo stubInfo = new MethodInfo(constPool, name, method.getSignature());
+        stubInfo.setAccessFlags(methodInfo.getAccessFlags());
+        // stubs keep the annotations, generic signature and exceptions of the method
+        for (Object attribute : methodInfo.getAttributes()) {
+            if (!(attribute instanceof CodeAttribute)) {
+                stubInfo.addAttribute(((AttributeInfo) attribute).copy(constPool, null));
+            }
+        }
+        stubInfo.setCodeAttribute(bytecode.toCodeAttribute());
+        return CtMethod.make(stubInfo, dst);
+    }
+
+    private static boolean hasDeclaredMethod(CtClass clazz, String name, String descriptor) {
+        return findDeclaredMethod(clazz, name, descriptor) != null;
+    }
+
+    private static CtMethod findDeclaredMethod(CtClass clazz, String name, String descriptor) {
+        for (CtMethod method : clazz.getDeclaredMethods()) {
+            if (method.getName().equals(name) && method.getSignature().equals(descriptor)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    private String getHelperDescriptor(String descriptor) {
+        return "(L" + Descriptor.toJvmName(receiverName) + ";" + descriptor.substring(1);
+    }
+
+    private static boolean isShareable(CtClass template, MethodInfo methodInfo, Map<String, String> accessors,
+            Map<String, String> invokedMethods) throws BadBytecode {
+        CodeAttribute code = methodInfo.getCodeAttribute();
+        String templateType = Descriptor.of(template.getName());
+        if (code == null || (methodInfo.getAccessFlags() & UNSHARED_FLAGS) != 0 || methodInfo.getDescriptor().contains(templateType)) {
+            return false;
+        }
+        ConstPool constPool = code.getConstPool();
+        ExceptionTable exceptionTable = code.getExceptionTable();
+        for (int i = 0; i < exceptionTable.size(); i++) {
+            int catchType = exceptionTable.catchType(i);
+            if (catchType != 0 && template.getName().equals(constPool.getClassInfo(catchType))) {
+                return false;
+            }
+        }
+        CodeIterator iterator = code.iterator();
+        while (iterator.hasNext()) {
+            int position = iterator.next();
+            int opcode = iterator.byteAt(position);
+            switch (opcode) {
+                case Opcode.GETFIELD:
+                case Opcode.PUTFIELD:
+                case Opcode.GETSTATIC:
+                case Opcode.PUTSTATIC:
+                    int fieldref = iterator.u16bitAt(position + 1);
+                    String fieldType = constPool.getFieldrefType(fieldref);
+                    if (fieldType.contains(templateType)) {
+                        return false;
+                    }
+                    if (template.getName().equals(constPool.getFieldrefClassName(fieldref))) {
+                        if (opcode == Opcode.GETSTATIC || opcode == Opcode.PUTSTATIC) {
+                            return false;
+                        }
+                        String prefix = opcode == Opcode.GETFIELD ? GETTER_PREFIX : SETTER_PREFIX;
+                        accessors.put(prefix + constPool.getFieldrefName(fieldref), fieldType);
+                    }
+                    break;
+                case Opcode.INVOKEVIRTUAL:
+                case Opcode.INVOKESPECIAL:
+                case Opcode.INVOKESTATIC:
+                case Opcode.INVOKEINTERFACE:
+                    // an interface method reference for invokeinterface, and maybe for invokestatic or invokespecial
+                    int methodref = iterator.u16bitAt(position + 1);
+                    int nameAndType = constPool.getMemberNameAndType(methodref);
+                    String methodName = constPool.getUtf8Info(constPool.getNameAndTypeName(nameAndType));
+                    String methodType = constPool.getUtf8Info(constPool.getNameAndTypeDescriptor(nameAndType));
+                    String className = constPool.getClassInfo(constPool.getMemberClass(methodref));
+                    if (methodType.contains(templateType) || opcode == Opcode.INVOKESPECIAL && !MethodInfo.nameInit.equals(methodName)) {
+                        return false;
+                    }
+                    if (template.getName().equals(className)) {
+                        if (opcode != Opcode.INVOKEVIRTUAL) {
+                            return false;
+                        }
+                        invokedMethods.put(methodName + methodType, methodType);
+                    }
+                    break;
+                case Opcode.INVOKEDYNAMIC:
+                    return false;
+                case Opcode.NEW:
+                case Opcode.ANEWARRAY:
+                case Opcode.CHECKCAST:
+                case Opcode.INSTANCEOF:
+                case Opcode.MULTIANEWARRAY:
+                    String type = constPool.getClassInfo(iterator.u16bitAt(position + 1));
+                    if (template.getName().equals(type) || type.contains(templateType)) {
+                        return false;
+                    }
+                    break;
+                case Opcode.LDC:
+                case Opcode.LDC_W:
+                    int index = opcode == Opcode.LDC ? iterator.byteAt(position + 1) : iterator.u16bitAt(position + 1);
+                    if (constPool.getTag(index) == ConstPool.CONST_Class && template.getName().equals(constPool.getClassInfo(index))) {
+                        return false;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return true;
+    }
+
+    private static ClassFile createReceiver(CtClass template, String receiverName, Map<String, String> accessors,
+            Map<String, String> invokedMethods) {
+        ClassFile receiver = new ClassFile(true, receiverName, null);
+        receiver.setMajorVersion(template.getClassFile2().getMajorVersion());
+        receiver.setAccessFlags(AccessFlag.PUBLIC | AccessFlag.INTERFACE | AccessFlag.ABSTRACT | AccessFlag.SYNTHETIC);
+        ConstPool constPool = receiver.getConstPool();
+        for (Map.Entry<String, String> entry : accessors.entrySet()) {
+            addAbstractMethod(receiver, new MethodInfo(constPool, entry.getKey(), getAccessorDescriptor(entry.getKey(), entry.getValue())));
+        }
+        for (Map.Entry<String, String> entry : invokedMethods.entrySet()) {
+            String name = entry.getKey().substring(0, entry.getKey().indexOf('('));
+            addAbstractMethod(receiver, new MethodInfo(constPool, name, entry.getValue()));
+        }
+        return receiver;
+    }
+
+    private static String getFieldName(String accessorName) {
+        // both prefixes have the same length
+        return accessorName.substring(GETTER_PREFIX.length());
+    }
+
+    private static String getAccessorDescriptor(String accessorName, String type) {
+        return accessorName.startsWith(GETTER_PREFIX) ? "()" + type : "(" + type + ")V";
+    }
+
+    private static void addAbstractMethod(ClassFile receiver, MethodInfo methodInfo) {
+        methodInfo.setAccessFlags(AccessFlag.PUBLIC | AccessFlag.ABSTRACT);
+        addMethod(receiver, methodInfo);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void addMethod(ClassFile classFile, MethodInfo methodInfo) {
+        // javassist exposes the methods of a class file as a raw list
+        ((List<MethodInfo>) classFile.getMethods()).add(methodInfo);
+    }
+
+    /**
+     * Copies the shared methods of the template as static methods of the
+     * helper. Local 0 still holds the receiver, whose fields and methods are
+     * accessed through the receiver interface.
+     */
+    private static ClassFile createHelper(CtClass template, String helperName, String receiverName, Set<String> sharedMethodKeys)
+        throws BadBytecode {
+        ClassFile helper = new ClassFile(false, helperName, null);
+        helper.setMajorVersion(template.getClassFile2().getMajorVersion());
+        helper.setAccessFlags(AccessFlag.PUBLIC | AccessFlag.FINAL | AccessFlag.SUPER | AccessFlag.SYNTHETIC);
+        ConstPool constPool = helper.getConstPool();
+        Map<String, String> classNameMap = Collections.singletonMap(Descriptor.toJvmName(template.getName()),
+                Descriptor.toJvmName(receiverName));
+        String receiverType = Descriptor.of(receiverName);
+        for (CtMethod method : template.getDeclaredMethods()) {
+            if (!sharedMethodKeys.contains(method.getName() + method.getSignature())) {
+                continue;
+            }
+            MethodInfo methodInfo = new MethodInfo(constPool, method.getName(), method.getMethodInfo2(), classNameMap);
+            methodInfo.setAccessFlags(AccessFlag.PUBLIC | AccessFlag.STATIC | AccessFlag.SYNTHETIC);
+            methodInfo.setDescriptor("(" + receiverType + method.getSignature().substring(1));
+            redirectToReceiver(methodInfo.getCodeAttribute(), receiverName);
+            addMethod(helper, methodInfo);
+            methodInfo.rebuildStackMapIf6(template.getClassPool(), helper);
+        }
+        return helper;
+    }
+
+    /** Replaces the field accesses and invocations of the receiver by invocations of the receiver interface. */
+    private static void redirectToReceiver(CodeAttribute code, String receiverName) throws BadBytecode {
+        ConstPool constPool = code.getConstPool();
+        int receiverInfo = constPool.addClassInfo(receiverName);
+        CodeIterator iterator = code.iterator();
+        while (iterator.hasNext()) {
+            int position = iterator.next();
+            int opcode = iterator.byteAt(position);
+            int interfaceMethodref;
+            int argumentSize;
+            if ((opcode == Opcode.GETFIELD || opcode == Opcode.PUTFIELD)
+                    && receiverName.equals(constPool.getFieldrefClassName(iterator.u16bitAt(position + 1)))) {
+                int fieldref = iterator.u16bitAt(position + 1);
+                String name = constPool.getFieldrefName(fieldref);
+                String type = constPool.getFieldrefType(fieldref);
+                if (opcode == Opcode.GETFIELD) {
+                    interfaceMethodref = constPool.addInterfaceMethodrefInfo(receiverInfo, GETTER_PREFIX + name, "()" + type);
+                    argumentSize = 1;
+                } else {
+                    interfaceMethodref = constPool.addInterfaceMethodrefInfo(receiverInfo, SETTER_PREFIX + name, "(" + type + ")V");
+                    argumentSize = 1 + Descriptor.dataSize(type);
+                }
+            } else if (opcode == Opcode.INVOKEVIRTUAL && receiverName.equals(constPool.getMethodrefClassName(iterator.u16bitAt(position + 1)))) {
+                int methodref = iterator.u16bitAt(position + 1);
+                String type = constPool.getMethodrefType(methodref);
+                interfaceMethodref = constPool.addInterfaceMethodrefInfo(receiverInfo, constPool.getMethodrefName(methodref), type);
+                argumentSize = 1 + Descriptor.paramSize(type);
+            } else {
+                continue;
+            }
+            // the invocation covers the gap and the original instruction, branches to it reach the gap
+            int gapLength = INVOKEINTERFACE_LENGTH - FIELD_INSTRUCTION_LENGTH;
+            CodeIterator.Gap gap = iterator.insertGapAt(position, gapLength, false);
+            int invocationPosition = gap.position + gap.length - gapLength;
+            iterator.writeByte(Opcode.INVOKEINTERFACE, invocationPosition);
+            iterator.write16bit(interfaceMethodref, invocationPosition + 1);
+            iterator.writeByte(argumentSize, invocationPosition + FIELD_INSTRUCTION_LENGTH);
+            iterator.writeByte(0, invocationPosition + FIELD_INSTRUCTION_LENGTH + 1);
+        }
+        code.computeMaxStack();
+    }
+
+    private static CtMethod makeAccessor(CtClass dst, String name, String descriptor, Bytecode bytecode) throws CannotCompileException {
+        MethodInfo accessorInfo = new MethodInfo(dst.getClassFile2().getConstPool(), name, descriptor);
+        accessorInfo.setAccessFlags(AccessFlag.PUBLIC | AccessFlag.FINAL | AccessFlag.SYNTHETIC);
+        accessorInfo.setCodeAttribute(bytecode.toCodeAttribute());
+        return CtMethod.make(accessorInfo, dst);
+    }
+
+    private static int getLoadOpcode(String type) {
+        return getReturnOpcode(type) - (Opcode.IRETURN - Opcode.ILOAD);
+    }
+
+    private static int getReturnOpcode(String type) {
+        switch (type.charAt(0)) {
+            case 'J':
+                return Opcode.LRETURN;
+            case 'F':
+                return Opcode.FRETURN;
+            case 'D':
+                return Opcode.DRETURN;
+            case 'L':
+            case '[':
+                return Opcode.ARETURN;
+            default:
+                return Opcode.IRETURN;
+        }
+    }
+
+    /**
+     * Makes the receiver interface resolvable in a pool, replacing any
+     * version of it found on the class path, that may be out of date.
+     */
+    private static void defineReceiver(ClassPool pool, String receiverName, byte[] receiverBytecode) throws CannotCompileException {
+        try {
+            pool.makeClass(new ByteArrayInputStream(receiverBytecode), false);
+        } catch (IOException e) {
+            throw new CannotCompileException(e);
+        }
+    }
+
+    private static byte[] toBytecode(ClassFile classFile) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        classFile.write(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+}
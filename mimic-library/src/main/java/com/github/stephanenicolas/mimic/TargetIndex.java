@@ -0,0 +1,176 @@
+package com.github.stephanenicolas.mimic;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+
+import javassist.CannotCompileException;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtMethod;
+import javassist.NotFoundException;
+import javassist.bytecode.AccessFlag;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.FieldInfo;
+import javassist.bytecode.MethodInfo;
+import lombok.Getter;
+import lombok.extern.java.Log;
+
+/**
+ * What {@link MimicCreator} looks up in a dst class : its declared methods by
+ * name and descriptor, all its methods, the names of its fields and the keys
+ * of the methods that copies would override. Each of them is built the first
+ * time it is needed, and kept up to date as members are copied into dst
+ * through the index. All the templates mimiced by a dst class share a single
+ * index, so that dst and its hierarchy are walked once.
+ *
+ * @author SNI
+ */
+@Log
+final class TargetIndex {
+
+    @Getter
+    private final CtClass dst;
+    /** Keys of the methods and constructors dst declared when the index was built. */
+    private final HashSet<String> originalMethodKeys = new HashSet<String>();
+    private HashMap<String, CtMethod> mapKeyToDeclaredMethod;
+    private MethodIndex methodIndex;
+    private HashSet<String> fieldNames;
+    private final HashSet<String> inheritedMethodKeys = new HashSet<String>();
+    private final HashSet<String> visitedAncestorNames = new HashSet<String>();
+    private final LinkedList<String> ancestorNamesToVisit = new LinkedList<String>();
+
+    TargetIndex(CtClass dst) {
+        this.dst = dst;
+        ClassFile classFile = dst.getClassFile2();
+        for (Object method : classFile.getMethods()) {
+            MethodInfo methodInfo = (MethodInfo) method;
+            originalMethodKeys.add(methodInfo.getName() + methodInfo.getDescriptor());
+        }
+        if (classFile.getSuperclass() != null) {
+            ancestorNamesToVisit.add(classFile.getSuperclass());
+        }
+        ancestorNamesToVisit.addAll(Arrays.asList(classFile.getInterfaces()));
+    }
+
+    /** @return the methods declared by dst, by name and descriptor. */
+    HashMap<String, CtMethod> getDeclaredMethods() {
+        if (mapKeyToDeclaredMethod == null) {
+            mapKeyToDeclaredMethod = new HashMap<String, CtMethod>();
+            for (CtMethod method : dst.getDeclaredMethods()) {
+                mapKeyToDeclaredMethod.put(method.getName() + method.getSignature(), method);
+            }
+        }
+        return mapKeyToDeclaredMethod;
+    }
+
+    /** @return the methods of dst, declared and inherited. */
+    MethodIndex getMethodIndex() {
+        if (methodIndex == null) {
+            methodIndex = new MethodIndex(dst);
+        }
+        return methodIndex;
+    }
+
+    /** @return the names of the fields of dst, of its superclasses and of their interfaces. */
+    HashSet<String> getFieldNames() {
+        if (fieldNames == null) {
+            fieldNames = collectFieldNames(dst);
+        }
+        return fieldNames;
+    }
+
+    void addMethod(CtMethod method) throws CannotCompileException {
+        dst.addMethod(method);
+        if (mapKeyToDeclaredMethod != null) {
+            mapKeyToDeclaredMethod.put(method.getName() + method.getSignature(), method);
+        }
+        if (methodIndex != null) {
+            methodIndex.add(method);
+        }
+    }
+
+    void addField(CtField field) throws CannotCompileException {
+        dst.addField(field);
+        if (fieldNames != null) {
+            fieldNames.add(field.getName());
+        }
+    }
+
+    /**
+     * Collects the keys of the methods a src method copied into dst must be
+     * kept for : the methods dst declared when the index was built, and the
+     * methods it would override or implement, the non private instance
+     * methods of the superclasses of dst, of their interfaces and of the
+     * interfaces of src. Keys are read from class files, and each ancestor is
+     * read once, whatever the number of templates. Ancestors that can't be
+     * found have no method.
+     *
+     * @param interfaceNames
+     *            the names of the interfaces of src.
+     * @return the keys of the methods.
+     */
+    HashSet<String> getRootMethodKeys(List<String> interfaceNames) {
+        ancestorNamesToVisit.addAll(interfaceNames);
+        while (!ancestorNamesToVisit.isEmpty()) {
+            String className = ancestorNamesToVisit.removeFirst();
+            if (!visitedAncestorNames.add(className)) {
+                continue;
+            }
+            ClassFile classFile;
+            try {
+                classFile = dst.getClassPool().get(className).getClassFile2();
+            } catch (NotFoundException e) {
+                log.fine("Ancestor " + className + " of " + dst.getName() + " not found, looking for methods: " + e.getMessage());
+                continue;
+            }
+            for (Object method : classFile.getMethods()) {
+                MethodInfo methodInfo = (MethodInfo) method;
+                if (methodInfo.isMethod() && (methodInfo.getAccessFlags() & (AccessFlag.PRIVATE | AccessFlag.STATIC)) == 0) {
+                    inheritedMethodKeys.add(methodInfo.getName() + methodInfo.getDescriptor());
+                }
+            }
+            if (classFile.getSuperclass() != null) {
+                ancestorNamesToVisit.add(classFile.getSuperclass());
+            }
+            ancestorNamesToVisit.addAll(Arrays.asList(classFile.getInterfaces()));
+        }
+        HashSet<String> rootMethodKeys = new HashSet<String>(inheritedMethodKeys);
+        rootMethodKeys.addAll(originalMethodKeys);
+        return rootMethodKeys;
+    }
+
+    /**
+     * Collects the names of the fields of a class, of its superclasses and of
+     * all their interfaces, the fields {@link CtClass#getField(String)} would
+     * find. Names are read from class files, without creating any
+     * {@link CtField}. Ancestors that can't be found have no field.
+     */
+    static HashSet<String> collectFieldNames(CtClass clazz) {
+        HashSet<String> fieldNames = new HashSet<String>();
+        HashSet<String> visitedClassNames = new HashSet<String>();
+        LinkedList<CtClass> classesToVisit = new LinkedList<CtClass>();
+        classesToVisit.add(clazz);
+        while (!classesToVisit.isEmpty()) {
+            CtClass classToVisit = classesToVisit.removeFirst();
+            if (!visitedClassNames.add(classToVisit.getName())) {
+                continue;
+            }
+            for (Object field : classToVisit.getClassFile2().getFields()) {
+                fieldNames.add(((FieldInfo) field).getName());
+            }
+            try {
+                CtClass superclass = classToVisit.getSuperclass();
+                if (superclass != null) {
+                    classesToVisit.add(superclass);
+                }
+                classesToVisit.addAll(Arrays.asList(classToVisit.getInterfaces()));
+            } catch (NotFoundException e) {
+                log.fine("Ancestors of " + classToVisit.getName() + " not found, looking for fields: " + e.getMessage());
+            }
+        }
+        return fieldNames;
+    }
+}
@@ -0,0 +1,236 @@
+package com.github.stephanenicolas.mimic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javassist.CannotCompileException;
+import javassist.CtBehavior;
+import javassist.CtClass;
+import javassist.CtConstructor;
+import javassist.CtField;
+import javassist.CtMethod;
+import javassist.Modifier;
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.CodeIterator;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.Descriptor;
+import javassist.bytecode.Opcode;
+import lombok.Getter;
+
+/**
+ * Everything {@link MimicCreator} needs to know about a template, apart from
+ * the code it copies : the names of its interfaces and fields, the
+ * descriptors of its constructors and methods, the arguments used to invoke
+ * their copies, whether their code uses {@code this}, which fields of the
+ * template it reads or writes and which methods of the template it invokes,
+ * the call graph of the template, the code its root constructors share. A
+ * plan is built once per template and reused for all the classes mimicing
+ * it, whatever the class pool they come from, as long as the bytecode of the
+ * template doesn't change.
+ *
+ * <p>
+ * Constructors and methods are listed in the order of
+ * {@link CtClass#getDeclaredConstructors()} and
+ * {@link CtClass#getDeclaredMethods()}. This class is immutable, and thus
+ * thread safe.
+ * </p>
+ *
+ * @author SNI
+ */
+public final class TemplatePlan {
+
+    @Getter
+    private final String templateName;
+    /** Digest of the bytecode of the template the plan was built from. */
+    @Getter
+    private final String templateDigest;
+    @Getter
+    private final List<String> interfaceNames;
+    @Getter
+    private final List<String> fieldNames;
+    /** Names of the fields of the template that its constructors or methods read or write. */
+    @Getter
+    private final Set<String> referencedFieldNames;
+    /** Keys of the methods of the template referenced by method handles, that lambdas may invoke. */
+    @Getter
+    private final Set<String> handledMethodKeys;
+    @Getter
+    private final List<Member> constructors;
+    @Getter
+    private final List<Member> methods;
+    /** Code shared by the root constructors of the template, or null if they share none. */
+    @Getter
+    private final SharedInitialization sharedInitialization;
+
+    private TemplatePlan(String templateName, String templateDigest, List<String> interfaceNames, List<String> fieldNames, Set<String> handledMethodKeys,
+            List<Member> constructors, List<Member> methods, SharedInitialization sharedInitialization) {
+        this.templateName = templateName;
+        this.templateDigest = templateDigest;
+        this.interfaceNames = Collections.unmodifiableList(interfaceNames);
+        this.fieldNames = Collections.unmodifiableList(fieldNames);
+        Set<String> referencedFieldNames = new HashSet<String>();
+        for (Member constructor : constructors) {
+            referencedFieldNames.addAll(constructor.getReferencedFieldNames());
+        }
+        for (Member method : methods) {
+            referencedFieldNames.addAll(method.getReferencedFieldNames());
+        }
+        this.referencedFieldNames = Collections.unmodifiableSet(referencedFieldNames);
+        this.handledMethodKeys = Collections.unmodifiableSet(handledMethodKeys);
+        this.constructors = Collections.unmodifiableList(constructors);
+        this.methods = Collections.unmodifiableList(methods);
+        this.sharedInitialization = sharedInitialization;
+    }
+
+    /**
+     * Analyses a template. Nothing but the template itself is resolved.
+     * @param template the template.
+     * @param templateDigest the digest of the current bytecode of template.
+     * @return the plan of the template.
+     * @throws CannotCompileException if the bytecode of the template is invalid.
+     */
+    public static TemplatePlan create(CtClass template, String templateDigest) throws CannotCompileException {
+        List<String> fieldNames = new ArrayList<String>();
+        for (CtField field : template.getDeclaredFields()) {
+            fieldNames.add(field.getName());
+        }
+        List<Member> constructors = new ArrayList<Member>();
+        for (CtConstructor constructor : template.getDeclaredConstructors()) {
+            // copies of constructors still load this, to pop it in place of the call to super
+            constructors.add(new Member(template, constructor, true));
+        }
+        List<Member> methods = new ArrayList<Member>();
+        for (CtMethod method : template.getDeclaredMethods()) {
+            methods.add(new Member(template, method, usesThis(method)));
+        }
+        return new TemplatePlan(template.getName(), templateDigest, Arrays.asList(template.getClassFile2().getInterfaces()), fieldNames,
+                getHandledMethodKeys(template), constructors, methods, SharedInitialization.find(template));
+    }
+
+    private static boolean usesThis(CtMethod method) throws CannotCompileException {
+        CodeAttribute code = method.getMethodInfo2().getCodeAttribute();
+        if (code == null || Modifier.isStatic(method.getModifiers())) {
+            return false;
+        }
+        try {
+            return CopySealer.usesThis(code);
+        } catch (BadBytecode e) {
+            throw new CannotCompileException(e);
+        }
+    }
+
+    /** @return the keys of the methods of template that its constant pool holds method handles of. */
+    private static Set<String> getHandledMethodKeys(CtClass template) {
+        Set<String> handledMethodKeys = new HashSet<String>();
+        ConstPool constPool = template.getClassFile2().getConstPool();
+        for (int index = 1; index < constPool.getSize(); index++) {
+            // method handles of kinds 1 to 4 reference fields
+            if (constPool.getTag(index) == ConstPool.CONST_MethodHandle && constPool.getMethodHandleKind(index) > ConstPool.REF_putStatic) {
+                String methodKey = getMemberKey(template, constPool, constPool.getMethodHandleIndex(index));
+                if (methodKey != null) {
+                    handledMethodKeys.add(methodKey);
+                }
+            }
+        }
+        return handledMethodKeys;
+    }
+
+    /**
+     * Adds the names of the fields of template accessed by the code of
+     * behavior, and the keys of the methods of template it invokes.
+     */
+    private static void addReferences(CtClass template, CtBehavior behavior, Set<String> referencedFieldNames, Set<String> invokedMethodKeys)
+        throws CannotCompileException {
+        CodeAttribute code = behavior.getMethodInfo2().getCodeAttribute();
+        if (code == null) {
+            return;
+        }
+        ConstPool constPool = code.getConstPool();
+        CodeIterator iterator = code.iterator();
+        try {
+            while (iterator.hasNext()) {
+                int index = iterator.next();
+                int opcode = iterator.byteAt(index);
+                if (opcode == Opcode.GETFIELD || opcode == Opcode.PUTFIELD || opcode == Opcode.GETSTATIC || opcode == Opcode.PUTSTATIC) {
+                    int fieldref = iterator.u16bitAt(index + 1);
+                    if (template.getName().equals(constPool.getFieldrefClassName(fieldref))) {
+                        referencedFieldNames.add(constPool.getFieldrefName(fieldref));
+                    }
+                } else if (opcode == Opcode.INVOKEVIRTUAL || opcode == Opcode.INVOKESPECIAL || opcode == Opcode.INVOKESTATIC) {
+                    String methodKey = getMemberKey(template, constPool, iterator.u16bitAt(index + 1));
+                    if (methodKey != null) {
+                        invokedMethodKeys.add(methodKey);
+                    }
+                }
+            }
+        } catch (BadBytecode e) {
+            throw new CannotCompileException(e);
+        }
+    }
+
+    /**
+     * @return the name and descriptor of a method or interface method
+     *         reference, or null if it references a member of another class
+     *         than template.
+     */
+    private static String getMemberKey(CtClass template, ConstPool constPool, int memberref) {
+        if (!template.getName().equals(constPool.getClassInfo(constPool.getMemberClass(memberref)))) {
+            return null;
+        }
+        int nameAndType = constPool.getMemberNameAndType(memberref);
+        return constPool.getUtf8Info(constPool.getNameAndTypeName(nameAndType))
+                + constPool.getUtf8Info(constPool.getNameAndTypeDescriptor(nameAndType));
+    }
+
+    /** A constructor or a method of a template. */
+    public static final class Member {
+        @Getter
+        private final String name;
+        @Getter
+        private final String descriptor;
+        /** Name and descriptor, unique among the methods of a class. */
+        @Getter
+        private final String key;
+        /** Whether the code of the member reads local 0, that holds this. Always true for constructors. */
+        @Getter
+        private final boolean usingThis;
+        /** Names of the fields of the template that the code of the member reads or writes. */
+        @Getter
+        private final Set<String> referencedFieldNames;
+        /** Keys of the methods of the template that the code of the member invokes. */
+        @Getter
+        private final Set<String> invokedMethodKeys;
+        private final String arguments;
+
+        private Member(CtClass template, CtBehavior behavior, boolean usingThis) throws CannotCompileException {
+            this.name = behavior.getName();
+            this.descriptor = behavior.getSignature();
+            this.key = name + descriptor;
+            this.usingThis = usingThis;
+            Set<String> fieldNames = new HashSet<String>();
+            Set<String> methodKeys = new HashSet<String>();
+            addReferences(template, behavior, fieldNames, methodKeys);
+            this.referencedFieldNames = Collections.unmodifiableSet(fieldNames);
+            this.invokedMethodKeys = Collections.unmodifiableSet(methodKeys);
+            StringBuilder builder = new StringBuilder();
+            int parameterCount = Descriptor.numOfParameters(descriptor);
+            for (int i = 1; i <= parameterCount; i++) {
+                builder.append(i == 1 ? " $" : ", $").append(i);
+            }
+            this.arguments = builder.toString();
+        }
+
+        /**
+         * @param methodName the name of a method with the same parameters as this member, usually its copy.
+         * @return a statement invoking the method with the arguments of this member.
+         */
+        public String getInvocation(String methodName) {
+            return methodName + "(" + arguments + ");\n";
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.github.stephanenicolas.mimic;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.extern.java.Log;
+
+/**
+ * An on-disk cache of transformed classes. Entries are addressed by a content
+ * hash of everything that influences a transformation : the bytecode of the
+ * target, of its template, the mimic annotations and the version of mimic
+ * itself. An entry never needs to be invalidated, and the cache directory can
+ * be deleted at any time.
+ *
+ * <p>
+ * This class is thread safe.
+ * </p>
+ *
+ * @author SNI
+ */
+@Log
+public class TransformationCache {
+
+    private static final String VERSION_RESOURCE = "/mimic-version.properties";
+    private static final String VERSION = readMimicVersion();
+
+    private final File directory;
+    private final AtomicInteger hitCount = new AtomicInteger();
+    private final AtomicInteger missCount = new AtomicInteger();
+
+    /**
+     * Creates a cache.
+     * @param directory the directory where entries are stored. It is created if needed.
+     */
+    public TransformationCache(File directory) {
+        this.directory = directory;
+    }
+
+    public static String getMimicVersion() {
+        return VERSION;
+    }
+
+    /**
+     * Computes the key of a cache entry.
+     * @param parts everything that influences the transformation of a class.
+     * The version of mimic is always added to them.
+     * @return a key that changes whenever one of the parts changes.
+     */
+    public String computeKey(byte[]... parts) {
+        byte[][] partsWithVersion = new byte[parts.length + 1][];
+        try {
+            partsWithVersion[0] = VERSION.getBytes("UTF-8");
+        } catch (IOException e) {
+            throw new IllegalStateException("UTF-8 is always supported", e);
+        }
+        System.arraycopy(parts, 0, partsWithVersion, 1, parts.length);
+        return Digests.sha1(partsWithVersion);
+    }
+
+    /**
+     * Looks up a transformed class in the cache.
+     * @param key the key of the entry.
+     * @return the transformed bytecode, or null if it is not in the cache.
+     */
+    public byte[] get(String key) {
+        File entry = getEntryFile(key);
+        if (!entry.isFile()) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        try {
+            byte[] bytecode = Digests.readFully(new FileInputStream(entry));
+            hitCount.incrementAndGet();
+            return bytecode;
+        } catch (IOException e) {
+            log.warning("Impossible to read cache entry " + entry + ": " + e.getMessage());
+            missCount.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Stores a transformed class in the cache. Failures are logged but don't
+     * prevent the transformation.
+     * @param key the key of the entry.
+     * @param bytecode the transformed bytecode.
+     */
+    public void put(String key, byte[] bytecode) {
+        File entry = getEntryFile(key);
+        // written to a temp file first, so that concurrent readers never see a partial entry
+        File tempEntry = new File(entry.getPath() + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            if (!entry.getParentFile().isDirectory() && !entry.getParentFile().mkdirs()) {
+                throw new IOException("Impossible to create directory " + entry.getParentFile());
+            }
+            FileOutputStream out = new FileOutputStream(tempEntry);
+            try {
+                out.write(bytecode);
+            } finally {
+                out.close();
+            }
+            if (!tempEntry.renameTo(entry) && !entry.isFile()) {
+                throw new IOException("Impossible to rename " + tempEntry + " to " + entry);
+            }
+        } catch (IOException e) {
+            log.warning("Impossible to write cache entry " + entry + ": " + e.getMessage());
+        } finally {
+            if (tempEntry.exists() && !tempEntry.delete()) {
+                tempEntry.deleteOnExit();
+            }
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public int getHitCount() {
+        return hitCount.get();
+    }
+
+    public int getMissCount() {
+        return missCount.get();
+    }
+
+    private File getEntryFile(String key) {
+        // 2 chars sub directories keep directories small on huge projects
+        return new File(new File(directory, key.substring(0, 2)), key + ".class");
+    }
+
+    private static String readMimicVersion() {
+        InputStream in = TransformationCache.class.getResourceAsStream(VERSION_RESOURCE);
+        if (in == null) {
+            return "unknown";
+        }
+        try {
+            Properties properties = new Properties();
+            try {
+                properties.load(in);
+            } finally {
+                in.close();
+            }
+            return properties.getProperty("version", "unknown");
+        } catch (IOException e) {
+            return "unknown";
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.github.stephanenicolas.mimic;
+
+/**
+ * How {@link MimicCreator} weaves the invocations of {@code _copy_} methods
+ * into the methods and constructors of the target class.
+ *
+ * @author SNI
+ */
+public enum WeavingBackend {
+    /**
+     * Invocations are written as Java source, and compiled by javassist. This
+     * is the default.
+     */
+    SOURCE,
+    /**
+     * Invocations are emitted as bytecode, without going through the
+     * javassist compiler. The parameters of copies must have the same types
+     * as the first arguments of the method, or of the method call, they are
+     * woven into.
+     */
+    BYTECODE
+}
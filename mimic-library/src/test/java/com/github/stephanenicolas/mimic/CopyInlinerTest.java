@@ -0,0 +1,112 @@
+package com.github.stephanenicolas.mimic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtMethod;
+import javassist.CtNewMethod;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CopyInlinerTest {
+
+    // each statement takes 10 bytes, and 12 once its accesses to this are relocated
+    private static final int BRANCH_BODY_STATEMENT_COUNT = 3000;
+    private static final int LONG_BODY_STATEMENT_COUNT = 2500;
+
+    private CopyInliner copyInliner;
+    private CtClass dst;
+
+    @Before
+    public void setUp() {
+        copyInliner = new CopyInliner();
+        dst = ClassPool.getDefault().makeClass("Dst" + TestCounter.testCounter++);
+    }
+
+    @Test
+    public void testInline_with_several_invocations_needing_a_deeper_stack() throws Exception {
+        // GIVEN
+        dst.addField(new CtField(CtClass.intType, "foo", dst));
+        // a handler makes every invocation point be analyzed, after the previous ones are inlined
+        CtMethod copy = CtNewMethod.make("public void _copy_foo() {"
+                + "  try { foo = foo * 2 + (foo + (foo + (foo + 1))); } catch (IllegalStateException e) { foo = -1; }"
+                + "}", dst);
+        dst.addMethod(copy);
+        CtMethod caller = CtNewMethod.make("public void foo() { _copy_foo(); _copy_foo(); }", dst);
+        dst.addMethod(caller);
+
+        // WHEN
+        boolean isFullyInlined = copyInliner.inline(caller, copy);
+
+        // THEN
+        assertTrue(isFullyInlined);
+        dst.removeMethod(copy);
+        Object dstInstance = dst.toClass().newInstance();
+        dstInstance.getClass().getMethod("foo").invoke(dstInstance);
+        Field fooField = dstInstance.getClass().getDeclaredField("foo");
+        fooField.setAccessible(true);
+        assertEquals(7, fooField.getInt(dstInstance));
+    }
+
+    @Test
+    public void testInline_with_branch_too_far_once_relocated() throws Exception {
+        // GIVEN
+        dst.addField(new CtField(CtClass.intType, "foo", dst));
+        CtMethod copy = CtNewMethod.make("public void _copy_foo() { if (foo >= 0) {" + repeat(" foo = foo + 1;", BRANCH_BODY_STATEMENT_COUNT)
+                + " } }", dst);
+        dst.addMethod(copy);
+        CtMethod caller = CtNewMethod.make("public void foo() { _copy_foo(); }", dst);
+        dst.addMethod(caller);
+        int callerCodeLength = caller.getMethodInfo().getCodeAttribute().getCodeLength();
+
+        // WHEN
+        boolean isFullyInlined = copyInliner.inline(caller, copy);
+
+        // THEN
+        assertFalse(isFullyInlined);
+        assertEquals(callerCodeLength, caller.getMethodInfo().getCodeAttribute().getCodeLength());
+        Object dstInstance = dst.toClass().newInstance();
+        dstInstance.getClass().getMethod("foo").invoke(dstInstance);
+        assertHasFooField(dstInstance, BRANCH_BODY_STATEMENT_COUNT);
+    }
+
+    @Test
+    public void testInline_with_caller_code_too_long() throws Exception {
+        // GIVEN
+        dst.addField(new CtField(CtClass.intType, "foo", dst));
+        CtMethod copy = CtNewMethod.make("public void _copy_foo() {" + repeat(" foo = foo + 1;", LONG_BODY_STATEMENT_COUNT) + " }", dst);
+        dst.addMethod(copy);
+        CtMethod caller = CtNewMethod.make("public void foo() { _copy_foo(); _copy_foo(); _copy_foo(); }", dst);
+        dst.addMethod(caller);
+
+        // WHEN
+        boolean isFullyInlined = copyInliner.inline(caller, copy);
+
+        // THEN
+        assertFalse(isFullyInlined);
+        Object dstInstance = dst.toClass().newInstance();
+        dstInstance.getClass().getMethod("foo").invoke(dstInstance);
+        assertHasFooField(dstInstance, 3 * LONG_BODY_STATEMENT_COUNT);
+    }
+
+    private String repeat(String statement, int count) {
+        StringBuilder statements = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            statements.append(statement);
+        }
+        return statements.toString();
+    }
+
+    private void assertHasFooField(Object dstInstance, int expected) throws Exception {
+        Field fooField = dstInstance.getClass().getDeclaredField("foo");
+        fooField.setAccessible(true);
+        assertEquals(expected, fooField.getInt(dstInstance));
+    }
+}
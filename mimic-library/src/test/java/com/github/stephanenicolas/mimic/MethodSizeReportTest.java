@@ -0,0 +1,107 @@
+package com.github.stephanenicolas.mimic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewMethod;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.stephanenicolas.mimic.MethodSizeReport.MethodSize;
+
+public class MethodSizeReportTest {
+
+    private MethodSizeReport report;
+
+    @Before
+    public void setUp() {
+        report = new MethodSizeReport(10, 20, 30);
+    }
+
+    @Test
+    public void testMeasure() throws Exception {
+        // GIVEN
+        CtClass clazz = ClassPool.getDefault().makeClass("Sized" + TestCounter.testCounter++);
+        clazz.addMethod(CtNewMethod.make("public void foo() { }", clazz));
+        clazz.addMethod(CtNewMethod.make("public abstract void bar();", clazz));
+
+        // WHEN
+        Map<String, Integer> sizes = MethodSizeReport.measure(clazz.getClassFile2());
+
+        // THEN
+        assertEquals(Collections.singletonMap("foo()V", 1), sizes);
+    }
+
+    @Test
+    public void testAdd() throws Exception {
+        // GIVEN
+        Map<String, Integer> sizesBefore = createSizes("foo()V", 8, "bar()V", 15, "baz()V", 5);
+        Map<String, Integer> sizesAfter = createSizes("foo()V", 25, "bar()V", 15, "baz()V", 9, "_copy_foo()V", 40);
+
+        // WHEN
+        report.add("Foo", sizesBefore, sizesAfter);
+
+        // THEN
+        Map<String, MethodSize> sizes = report.getSizes("Foo");
+        assertEquals(Arrays.asList("_copy_foo()V", "baz()V", "foo()V"), Arrays.asList(sizes.keySet().toArray()));
+        assertNull(sizes.get("_copy_foo()V").getBefore());
+        assertEquals(40, sizes.get("_copy_foo()V").getAfter());
+        assertEquals(Arrays.asList("MaxInlineSize", "FreqInlineSize"), report.getCrossedThresholds(sizes.get("foo()V")));
+        assertTrue(report.getCrossedThresholds(sizes.get("baz()V")).isEmpty());
+        assertTrue(report.getCrossedThresholds(sizes.get("_copy_foo()V")).isEmpty());
+        assertEquals(Arrays.asList("Foo.foo()V : 8 -> 25 bytes, over [MaxInlineSize, FreqInlineSize]"), report.getCrossings());
+        assertNull(report.getSizes("Bar"));
+    }
+
+    @Test
+    public void testReset() throws Exception {
+        // GIVEN
+        report.add("Foo", createSizes("foo()V", 8), createSizes("foo()V", 25));
+
+        // WHEN
+        report.reset();
+
+        // THEN
+        assertTrue(report.getClassNames().isEmpty());
+        assertTrue(report.getCrossings().isEmpty());
+    }
+
+    @Test
+    public void testToJson() throws Exception {
+        // GIVEN
+        report.add("Foo", createSizes("foo()V", 8), createSizes("foo()V", 12, "_copy_foo()V", 4));
+        report.add("Bar\"", createSizes("bar()V", 8), createSizes("bar()V", 8));
+
+        // WHEN
+        String json = report.toJson();
+
+        // THEN
+        assertEquals("{\n"
+                + "  \"thresholds\": {\"MaxInlineSize\": 10, \"FreqInlineSize\": 20, \"HugeMethodLimit\": 30},\n"
+                + "  \"classes\": {\n"
+                + "    \"Bar\\\"\": {},\n"
+                + "    \"Foo\": {\n"
+                + "      \"_copy_foo()V\": {\"before\": null, \"after\": 4, \"crossed\": []},\n"
+                + "      \"foo()V\": {\"before\": 8, \"after\": 12, \"crossed\": [\"MaxInlineSize\"]}\n"
+                + "    }\n"
+                + "  }\n"
+                + "}\n", json);
+    }
+
+    private Map<String, Integer> createSizes(Object... keysAndSizes) {
+        Map<String, Integer> sizes = new TreeMap<String, Integer>();
+        for (int i = 0; i < keysAndSizes.length; i += 2) {
+            sizes.put((String) keysAndSizes[i], (Integer) keysAndSizes[i + 1]);
+        }
+        return sizes;
+    }
+}
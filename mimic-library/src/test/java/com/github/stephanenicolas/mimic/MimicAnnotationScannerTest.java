@@ -0,0 +1,146 @@
+package com.github.stephanenicolas.mimic;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.bytecode.AnnotationsAttribute;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.annotation.Annotation;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.stephanenicolas.mimic.annotations.Mimic;
+import com.github.stephanenicolas.mimic.annotations.MimicMethod;
+
+public class MimicAnnotationScannerTest {
+
+    private static final int BIG_STRING_LENGTH = 40000;
+
+    private CtClass dst;
+
+    @Before
+    public void setUp() {
+        dst = ClassPool.getDefault().makeClass("Dst" + TestCounter.testCounter);
+        TestCounter.testCounter++;
+    }
+
+    @Test
+    public void testHasMimicAnnotation_with_mimic_annotation() throws Exception {
+        // GIVEN
+        // 8 bytes constants take 2 entries of the constant pool
+        dst.addField(CtField.make("public static final long FOO = 3L;", dst), CtField.Initializer.constant(3L));
+        dst.addField(CtField.make("public static final double BAR = 2.0;", dst), CtField.Initializer.constant(2.0));
+        addAnnotation(dst, Mimic.class.getName());
+
+        // WHEN
+        boolean hasMimicAnnotation = MimicAnnotationScanner.hasMimicAnnotation(dst.toBytecode());
+
+        // THEN
+        assertTrue(hasMimicAnnotation);
+    }
+
+    @Test
+    public void testHasMimicAnnotation_without_mimic_annotation() throws Exception {
+        // GIVEN
+        dst.addField(CtField.make("public static final long FOO = 3L;", dst), CtField.Initializer.constant(3L));
+
+        // WHEN
+        boolean hasMimicAnnotation = MimicAnnotationScanner.hasMimicAnnotation(dst.toBytecode());
+
+        // THEN
+        assertFalse(hasMimicAnnotation);
+    }
+
+    @Test
+    public void testHasMimicAnnotation_with_other_mimic_annotation() throws Exception {
+        // GIVEN
+        addAnnotation(dst, MimicMethod.class.getName());
+
+        // WHEN
+        boolean hasMimicAnnotation = MimicAnnotationScanner.hasMimicAnnotation(dst.toBytecode());
+
+        // THEN
+        assertFalse(hasMimicAnnotation);
+    }
+
+    @Test
+    public void testHasMimicAnnotation_with_invalid_class_file() throws Exception {
+        // GIVEN
+        byte[] bytecode = dst.toBytecode();
+        byte[] truncatedBytecode = new byte[bytecode.length / 2];
+        System.arraycopy(bytecode, 0, truncatedBytecode, 0, truncatedBytecode.length);
+
+        // WHEN
+        boolean hasMimicAnnotation = MimicAnnotationScanner.hasMimicAnnotation(truncatedBytecode)
+                || MimicAnnotationScanner.hasMimicAnnotation(new byte[] {1, 2, 3 });
+
+        // THEN
+        assertFalse(hasMimicAnnotation);
+    }
+
+    @Test
+    public void testHasMimicAnnotation_with_class_file() throws Exception {
+        // GIVEN
+        addAnnotation(dst, Mimic.class.getName());
+        File classFile = writeClassFile(dst);
+
+        // WHEN
+        boolean hasMimicAnnotation = MimicAnnotationScanner.hasMimicAnnotation(classFile);
+
+        // THEN
+        assertTrue(hasMimicAnnotation);
+    }
+
+    @Test
+    public void testHasMimicAnnotation_with_big_class_file() throws Exception {
+        // GIVEN
+        // big class files are memory mapped
+        dst.addField(CtField.make("public static final String FOO = \"\";", dst), CtField.Initializer.constant(createString(BIG_STRING_LENGTH)));
+        dst.addField(CtField.make("public static final String BAR = \"\";", dst), CtField.Initializer.constant(createString(BIG_STRING_LENGTH - 1)));
+        addAnnotation(dst, Mimic.class.getName());
+        File classFile = writeClassFile(dst);
+        File otherClassFile = writeClassFile(ClassPool.getDefault().makeClass("Dst" + TestCounter.testCounter++));
+
+        // WHEN
+        boolean hasMimicAnnotation = MimicAnnotationScanner.hasMimicAnnotation(classFile);
+        boolean otherHasMimicAnnotation = MimicAnnotationScanner.hasMimicAnnotation(otherClassFile);
+
+        // THEN
+        assertTrue(classFile.length() > BIG_STRING_LENGTH);
+        assertTrue(hasMimicAnnotation);
+        assertFalse(otherHasMimicAnnotation);
+    }
+
+    private File writeClassFile(CtClass clazz) throws Exception {
+        File classFile = File.createTempFile(clazz.getName(), ".class");
+        classFile.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(classFile);
+        try {
+            out.write(clazz.toBytecode());
+        } finally {
+            out.close();
+        }
+        return classFile;
+    }
+
+    private String createString(int length) {
+        char[] chars = new char[length];
+        Arrays.fill(chars, 'a');
+        return new String(chars);
+    }
+
+    private void addAnnotation(CtClass clazz, String annotationName) {
+        ConstPool constPool = clazz.getClassFile().getConstPool();
+        AnnotationsAttribute attribute = new AnnotationsAttribute(constPool, AnnotationsAttribute.invisibleTag);
+        attribute.setAnnotation(new Annotation(annotationName, constPool));
+        clazz.getClassFile().addAttribute(attribute);
+    }
+}
@@ -1,13 +1,23 @@
 package com.github.stephanenicolas.mimic;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
 
 import javassist.CannotCompileException;
 import javassist.ClassPool;
@@ -18,16 +28,25 @@ import javassist.CtMethod;
 import javassist.CtNewConstructor;
 import javassist.CtNewMethod;
 import javassist.Modifier;
+import javassist.bytecode.Bytecode;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.ConstPool;
 import javassist.bytecode.Descriptor;
+import javassist.bytecode.Opcode;
 
+import org.easymock.EasyMock;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.github.stephanenicolas.mimic.annotations.MimicField;
 import com.github.stephanenicolas.mimic.annotations.MimicMethod;
 import com.github.stephanenicolas.mimic.annotations.MimicMode;
 
 public class MimicCreatorTest {
 
+    /** Each statement of a long body is 10 bytes long : its code is longer than {@link Short#MAX_VALUE}. */
+    private static final int LONG_BODY_STATEMENT_COUNT = 3500;
+
     private MimicCreator mimicCreator;
     private CtClass src;
     private CtClass dst;
@@ -121,6 +140,149 @@ public class MimicCreatorTest {
         assertHasConstructor(dst, dst.toClass(), new CtClass[] { CtClass.intType });
     }
 
+    @Test
+    public void testMimicConstructors_with_delegating_constructor() throws Exception {
+        // GIVEN
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addField(new CtField(CtClass.intType, "bar", src));
+        // the first statement stands for the field initializers javac puts in every root constructor
+        src.addConstructor(CtNewConstructor.make("public Src() { bar += 1; foo += 1; }", src));
+        src.addConstructor(CtNewConstructor.make("public Src(int a) { bar += 1; foo += 10; }", src));
+        dst.addConstructor(CtNewConstructor.make("public Dst() {}", dst));
+        dst.addConstructor(CtNewConstructor.make("public Dst(int a) { this(); }", dst));
+
+        // WHEN
+        mimicCreator.mimicFields(src, dst);
+        mimicCreator.mimicConstructors(src, dst);
+
+        // THEN
+        Class<?> dstClass = dst.toClass();
+        Object dstInstance = dstClass.newInstance();
+        assertHasFooField(dstInstance, 1);
+        assertHasBarField(dstInstance, 1);
+        dstInstance = dstClass.getConstructor(int.class).newInstance(0);
+        assertHasFooField(dstInstance, 11);
+        assertHasBarField(dstInstance, 1);
+        assertHasMethod(dstClass, "_copy_" + src.getName(), new Class<?>[0]);
+        assertHasMethod(dstClass, "_copy_" + src.getName(), new Class<?>[] { int.class });
+        assertHasMethod(dstClass, "_copy_" + src.getName() + "_init", new Class<?>[0]);
+        assertEquals(3, dst.getDeclaredMethods().length);
+    }
+
+    @Test
+    public void testMimicConstructors_with_unmatched_template_constructors_sharing_initialization() throws Exception {
+        // GIVEN
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addField(new CtField(CtClass.intType, "bar", src));
+        src.addConstructor(CtNewConstructor.make("public Src() { bar += 1; foo += 1; }", src));
+        src.addConstructor(CtNewConstructor.make("public Src(int a) { bar += 1; foo += 10; }", src));
+        dst.addConstructor(CtNewConstructor.make("public Dst(String a) {}", dst));
+        dst.addConstructor(CtNewConstructor.make("public Dst(boolean a) { this(\"\"); }", dst));
+        int templateLength = src.getConstructor("(I)V").getMethodInfo().getCodeAttribute().getCodeLength();
+
+        // WHEN
+        mimicCreator.mimicFields(src, dst);
+        mimicCreator.mimicConstructors(src, dst);
+
+        // THEN
+        assertTrue(dst.getConstructor("(I)V").getMethodInfo().getCodeAttribute().getCodeLength() < templateLength);
+        Class<?> dstClass = dst.toClass();
+        Object dstInstance = dstClass.getConstructor(int.class).newInstance(0);
+        assertHasFooField(dstInstance, 10);
+        assertHasBarField(dstInstance, 1);
+        dstInstance = dstClass.newInstance();
+        assertHasFooField(dstInstance, 1);
+        assertHasBarField(dstInstance, 1);
+        dstInstance = dstClass.getConstructor(boolean.class).newInstance(true);
+        assertHasFooField(dstInstance, 0);
+        assertHasBarField(dstInstance, 1);
+        assertEquals(1, dst.getDeclaredMethods().length);
+    }
+
+    @Test
+    public void testMimicConstructors_with_unmatched_root_constructors_by_default() throws Exception {
+        // GIVEN
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addConstructor(CtNewConstructor.make("public Src() { foo += 2; }", src));
+        dst.addConstructor(CtNewConstructor.make("public Dst(int a) {}", dst));
+        dst.addConstructor(CtNewConstructor.make("public Dst(boolean a) { this(0); }", dst));
+
+        // WHEN
+        mimicCreator.mimicFields(src, dst);
+        mimicCreator.mimicConstructors(src, dst);
+
+        // THEN
+        Class<?> dstClass = dst.toClass();
+        assertHasFooField(dstClass.getConstructor(int.class).newInstance(0), 0);
+        assertHasFooField(dstClass.getConstructor(boolean.class).newInstance(true), 0);
+        assertHasFooField(dstClass.newInstance(), 2);
+        assertEquals(0, dst.getDeclaredMethods().length);
+    }
+
+    @Test
+    public void testMimicConstructors_with_unmatched_root_constructors() throws Exception {
+        // GIVEN
+        mimicCreator.setInitializingUnmatchedRoots(true);
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addConstructor(CtNewConstructor.make("public Src() { foo += 2; }", src));
+        dst.addConstructor(CtNewConstructor.make("public Dst(int a) {}", dst));
+        dst.addConstructor(CtNewConstructor.make("public Dst(String a) {}", dst));
+        dst.addConstructor(CtNewConstructor.make("public Dst(boolean a) { this(0); }", dst));
+
+        // WHEN
+        mimicCreator.mimicFields(src, dst);
+        mimicCreator.mimicConstructors(src, dst);
+
+        // THEN
+        Class<?> dstClass = dst.toClass();
+        assertHasFooField(dstClass.getConstructor(int.class).newInstance(0), 2);
+        assertHasFooField(dstClass.getConstructor(String.class).newInstance(""), 2);
+        assertHasFooField(dstClass.getConstructor(boolean.class).newInstance(true), 2);
+        assertHasFooField(dstClass.newInstance(), 2);
+        assertEquals(1, dst.getDeclaredMethods().length);
+    }
+
+    @Test
+    public void testMimicConstructors_with_unmatched_root_constructors_and_delegating_matched_constructor() throws Exception {
+        // GIVEN
+        mimicCreator.setInitializingUnmatchedRoots(true);
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addConstructor(CtNewConstructor.make("public Src() { foo += 2; }", src));
+        dst.addConstructor(CtNewConstructor.make("public Dst(int a) {}", dst));
+        dst.addConstructor(CtNewConstructor.make("public Dst() { this(0); }", dst));
+
+        // WHEN
+        mimicCreator.mimicFields(src, dst);
+        mimicCreator.mimicConstructors(src, dst);
+
+        // THEN
+        Class<?> dstClass = dst.toClass();
+        assertHasFooField(dstClass.getConstructor(int.class).newInstance(0), 2);
+        assertHasFooField(dstClass.newInstance(), 2);
+        assertEquals(1, dst.getDeclaredMethods().length);
+    }
+
+    @Test
+    public void testMimicConstructors_with_unmatched_root_constructors_with_inlining() throws Exception {
+        // GIVEN
+        mimicCreator.setInitializingUnmatchedRoots(true);
+        mimicCreator.setInliningCopies(true);
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addConstructor(CtNewConstructor.make("public Src() { foo += 2; }", src));
+        dst.addConstructor(CtNewConstructor.make("public Dst(int a) {}", dst));
+        dst.addConstructor(CtNewConstructor.make("public Dst(String a) {}", dst));
+
+        // WHEN
+        mimicCreator.mimicFields(src, dst);
+        mimicCreator.mimicConstructors(src, dst);
+
+        // THEN
+        assertHasNoCopy(dst);
+        Class<?> dstClass = dst.toClass();
+        assertHasFooField(dstClass.getConstructor(int.class).newInstance(0), 2);
+        assertHasFooField(dstClass.getConstructor(String.class).newInstance(""), 2);
+    }
+
     @Test
     public void testMimicFields() throws Exception {
         // GIVEN
@@ -148,6 +310,268 @@ public class MimicCreatorTest {
         // exception
     }
 
+    @Test(expected = MimicException.class)
+    public void testMimicFields_with_same_field_in_ancestor_interface() throws Exception {
+        // GIVEN
+        src.addField(new CtField(CtClass.intType, "FOO", src));
+        CtClass interfazz = ClassPool.getDefault().makeInterface("Able" + TestCounter.testCounter);
+        interfazz.addField(CtField.make("int FOO = 1;", interfazz));
+        CtClass dstAncestor = ClassPool.getDefault().makeClass("DstAncestor" + TestCounter.testCounter);
+        dstAncestor.addInterface(interfazz);
+        dst.setSuperclass(dstAncestor);
+
+        // WHEN
+        mimicCreator.mimicFields(src, dst);
+
+        // THEN
+        // exception
+    }
+
+    @Test
+    public void testMimicFields_reporting_all_field_collisions() throws Exception {
+        // GIVEN
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addField(new CtField(CtClass.intType, "bar", src));
+        src.addField(new CtField(CtClass.intType, "baz", src));
+        dst.addField(new CtField(CtClass.booleanType, "foo", dst));
+        CtClass dstAncestor = ClassPool.getDefault().makeClass("DstAncestor" + TestCounter.testCounter);
+        dstAncestor.addField(new CtField(CtClass.booleanType, "baz", dstAncestor));
+        dst.setSuperclass(dstAncestor);
+        mimicCreator.setReportingAllFieldCollisions(true);
+
+        // WHEN
+        try {
+            mimicCreator.mimicFields(src, dst);
+            fail();
+        } catch (MimicException e) {
+            // THEN
+            assertTrue(e.getMessage(), e.getMessage().contains("[foo, baz]"));
+            assertEquals(1, dst.getDeclaredFields().length);
+        }
+    }
+
+    @Test
+    public void testMimicFields_with_mimic_fields() throws Exception {
+        // GIVEN
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addField(new CtField(CtClass.intType, "bar", src));
+
+        // WHEN
+        mimicCreator.mimicFields(src, dst, new MimicField[] {createMimicField("foo") });
+
+        // THEN
+        assertEquals(1, dst.getDeclaredFields().length);
+        assertNotNull(dst.getDeclaredField("foo"));
+    }
+
+    @Test(expected = MimicException.class)
+    public void testMimicFields_with_mimic_field_not_in_src() throws Exception {
+        // GIVEN
+        src.addField(new CtField(CtClass.intType, "foo", src));
+
+        // WHEN
+        mimicCreator.mimicFields(src, dst, new MimicField[] {createMimicField("bar") });
+
+        // THEN
+        // exception
+    }
+
+    @Test(expected = MimicException.class)
+    public void testMimicFields_with_mimic_fields_leaving_out_used_field() throws Exception {
+        // GIVEN
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addField(new CtField(CtClass.intType, "bar", src));
+        src.addMethod(CtNewMethod.make("public int getBar() { return bar; }", src));
+
+        // WHEN
+        mimicCreator.mimicFields(src, dst, new MimicField[] {createMimicField("foo") });
+
+        // THEN
+        // exception
+    }
+
+    @Test
+    public void testMimicFields_with_mimic_fields_leaving_out_used_field_inherited_by_dst() throws Exception {
+        // GIVEN
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addField(new CtField(CtClass.intType, "bar", src));
+        src.addMethod(CtNewMethod.make("public int getBar() { return bar; }", src));
+        CtClass dstAncestor = ClassPool.getDefault().makeClass("DstAncestor" + TestCounter.testCounter);
+        dstAncestor.addField(CtField.make("protected int bar = 3;", dstAncestor));
+        dst.setSuperclass(dstAncestor);
+        dstAncestor.toClass();
+
+        // WHEN
+        mimicCreator.mimicFields(src, dst, new MimicField[] {createMimicField("foo") });
+        mimicCreator.mimicMethods(src, dst, MimicMode.AFTER_SUPER, new MimicMethod[0]);
+
+        // THEN
+        assertEquals(1, dst.getDeclaredFields().length);
+        Class<?> dstClass = dst.toClass();
+        assertEquals(3, dstClass.getMethod("getBar").invoke(dstClass.newInstance()));
+    }
+
+    @Test
+    public void testMimicFields_eliminating_dead_fields() throws Exception {
+        // GIVEN
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addField(new CtField(CtClass.intType, "bar", src));
+        src.addField(new CtField(CtClass.intType, "baz", src));
+        src.addConstructor(CtNewConstructor.make("public Src() { baz = 2; }", src));
+        src.addMethod(CtNewMethod.make("public int getFoo() { return foo; }", src));
+        mimicCreator.setEliminatingDeadFields(true);
+
+        // WHEN
+        mimicCreator.mimicClass(src, dst, MimicMode.AFTER_SUPER, new MimicMethod[0]);
+
+        // THEN
+        assertEquals(2, dst.getDeclaredFields().length);
+        assertNotNull(dst.getDeclaredField("foo"));
+        assertNotNull(dst.getDeclaredField("baz"));
+        Class<?> dstClass = dst.toClass();
+        assertEquals(0, dstClass.getMethod("getFoo").invoke(dstClass.newInstance()));
+    }
+
+    @Test
+    public void testMimicFields_eliminating_dead_fields_with_mimic_fields() throws Exception {
+        // GIVEN
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addField(new CtField(CtClass.intType, "bar", src));
+        mimicCreator.setEliminatingDeadFields(true);
+
+        // WHEN
+        mimicCreator.mimicClass(src, dst, MimicMode.AFTER_SUPER, new MimicMethod[0], new MimicField[] {createMimicField("bar") });
+
+        // THEN
+        assertEquals(1, dst.getDeclaredFields().length);
+        assertNotNull(dst.getDeclaredField("bar"));
+    }
+
+    @Test
+    public void testMimicClass_eliminating_unreachable_methods() throws Exception {
+        // GIVEN
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addField(new CtField(CtClass.intType, "bar", src));
+        src.addField(new CtField(CtClass.intType, "baz", src));
+        src.addField(new CtField(CtClass.intType, "qux", src));
+        src.addMethod(CtNewMethod.make("public int countDown(int a) { return a <= 0 ? foo : countDown(a - 1); }", src));
+        src.addMethod(CtNewMethod.make("public int run(int a) { return countDown(a); }", src));
+        src.addMethod(CtNewMethod.make("public String describe() { return \"Src\" + baz; }", src));
+        src.addMethod(CtNewMethod.make("public String toString() { return describe(); }", src));
+        src.addMethod(CtNewMethod.make("private void init() { qux = 1; }", src));
+        src.addConstructor(CtNewConstructor.make("public Src() { init(); }", src));
+        src.addMethod(CtNewMethod.make("public int getBar() { return bar; }", src));
+        dst.addMethod(CtNewMethod.make("public int run(int a) { return -1; }", dst));
+        mimicCreator.setEliminatingUnreachableMethods(true);
+
+        // WHEN
+        mimicCreator.mimicClass(src, dst, MimicMode.BEFORE_RETURN, new MimicMethod[0]);
+
+        // THEN
+        assertEquals(3, dst.getDeclaredFields().length);
+        assertNotNull(dst.getDeclaredField("foo"));
+        assertNotNull(dst.getDeclaredField("baz"));
+        assertNotNull(dst.getDeclaredField("qux"));
+        assertNotNull(dst.getDeclaredMethod("countDown"));
+        assertNotNull(dst.getDeclaredMethod("describe"));
+        assertNotNull(dst.getDeclaredMethod("init"));
+        for (CtMethod method : dst.getDeclaredMethods()) {
+            assertFalse(method.getName().equals("getBar"));
+        }
+        Class<?> dstClass = dst.toClass();
+        Object dstInstance = dstClass.newInstance();
+        assertEquals(0, dstClass.getMethod("run", int.class).invoke(dstInstance, 3));
+        assertEquals("Src0", dstInstance.toString());
+    }
+
+    @Test
+    public void testMimicMethods_eliminating_unreachable_methods_implementing_interfaces() throws Exception {
+        // GIVEN
+        CtClass interfazz = ClassPool.getDefault().makeInterface("Runnable" + TestCounter.testCounter);
+        interfazz.addMethod(CtNewMethod.make("public abstract int run();", interfazz));
+        ClassPool.getDefault().toClass(interfazz);
+        CtClass superclass = ClassPool.getDefault().makeClass("SuperDst" + TestCounter.testCounter);
+        superclass.addMethod(CtNewMethod.make("protected int stop() { return 0; }", superclass));
+        superclass.toClass();
+        dst.setSuperclass(superclass);
+        src.addInterface(interfazz);
+        src.addMethod(CtNewMethod.make("public int run() { return 1; }", src));
+        src.addMethod(CtNewMethod.make("protected int stop() { return 2; }", src));
+        src.addMethod(CtNewMethod.make("public int pause() { return 3; }", src));
+        mimicCreator.setEliminatingUnreachableMethods(true);
+
+        // WHEN
+        mimicCreator.mimicMethods(src, dst, MimicMode.BEFORE_RETURN, new MimicMethod[0]);
+
+        // THEN
+        assertEquals(2, dst.getDeclaredMethods().length);
+        assertNotNull(dst.getDeclaredMethod("run"));
+        assertNotNull(dst.getDeclaredMethod("stop"));
+    }
+
+    @Test
+    public void testCheckConflicts_with_compatible_templates() throws Exception {
+        // GIVEN
+        CtClass otherSrc = ClassPool.getDefault().makeClass("OtherSrc" + TestCounter.testCounter);
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addMethod(CtNewMethod.make("public void run() {}", src));
+        otherSrc.addField(new CtField(CtClass.intType, "bar", otherSrc));
+        otherSrc.addMethod(CtNewMethod.make("public void run() {}", otherSrc));
+        dst.addMethod(CtNewMethod.make("public void run() {}", dst));
+
+        // WHEN
+        mimicCreator.checkConflicts(dst, Arrays.asList(src, otherSrc));
+
+        // THEN
+        // no exception
+    }
+
+    @Test
+    public void testCheckConflicts_with_conflicting_templates() throws Exception {
+        // GIVEN
+        CtClass otherSrc = ClassPool.getDefault().makeClass("OtherSrc" + TestCounter.testCounter);
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addMethod(CtNewMethod.make("public void run() {}", src));
+        otherSrc.addField(new CtField(CtClass.intType, "foo", otherSrc));
+        otherSrc.addMethod(CtNewMethod.make("public void run() {}", otherSrc));
+
+        // WHEN
+        try {
+            mimicCreator.checkConflicts(dst, Arrays.asList(src, otherSrc, src));
+            fail();
+        } catch (MimicException e) {
+            // THEN
+            assertTrue(e.getMessage(), e.getMessage().contains(src.getName() + " and " + otherSrc.getName() + " both declare field foo"));
+            assertTrue(e.getMessage(), e.getMessage().contains(src.getName() + " and " + otherSrc.getName() + " both declare method run()V"));
+            assertTrue(e.getMessage(), e.getMessage().contains(src.getName() + " is mimiced twice"));
+        }
+    }
+
+    @Test
+    public void testMimicClass_with_two_templates() throws Exception {
+        // GIVEN
+        CtClass otherSrc = ClassPool.getDefault().makeClass("OtherSrc" + TestCounter.testCounter);
+        src.addField(CtField.make("public int foo;", src));
+        src.addMethod(CtNewMethod.make("public void run() { foo = 1; }", src));
+        otherSrc.addField(CtField.make("public int bar;", otherSrc));
+        otherSrc.addMethod(CtNewMethod.make("public void run() { bar = 2; }", otherSrc));
+        dst.addMethod(CtNewMethod.make("public void run() {}", dst));
+        mimicCreator.setPrivateCopies(true);
+
+        // WHEN
+        mimicCreator.mimicClass(src, dst, MimicMode.AT_BEGINNING, new MimicMethod[0]);
+        mimicCreator.withKey("Other").mimicClass(otherSrc, dst, MimicMode.AT_BEGINNING, new MimicMethod[0], new MimicField[0]);
+
+        // THEN
+        assertTrue(Modifier.isPrivate(dst.getDeclaredMethod("_copy_run").getModifiers()));
+        assertTrue(Modifier.isPrivate(dst.getDeclaredMethod("_copy_Other_run").getModifiers()));
+        Class<?> dstClass = dst.toClass();
+        Object instance = dstClass.newInstance();
+        dstClass.getMethod("run").invoke(instance);
+        assertEquals(1, dstClass.getDeclaredField("foo").getInt(instance));
+        assertEquals(2, dstClass.getDeclaredField("bar").getInt(instance));
+    }
+
     @Test
     public void testMimicInterfaces() throws Exception {
         // GIVEN
@@ -418,117 +842,987 @@ public class MimicCreatorTest {
     }
 
     @Test
-    public void testMimicMethods_with_same_methods_with_before() throws Exception {
+    public void testMimicMethods_with_same_methods_with_after_with_many_calls() throws Exception {
         // GIVEN
         src.addField(new CtField(CtClass.intType, "foo", src));
-        src.addMethod(CtNewMethod.make("public void foo() { foo = 4; }", src));
+        src.addMethod(CtNewMethod.make("public void foo() { foo += 100; }", src));
 
         dst.addField(new CtField(CtClass.intType, "foo", dst));
-        dst.addMethod(CtNewMethod.make("public void bar() { foo *= 2 ; }", dst));
-        dst.addMethod(CtNewMethod.make("public void foo() { foo = 2; bar(); }", dst));
+        dst.addMethod(CtNewMethod.make("public void bar() { foo += 1; }", dst));
+        dst.addMethod(CtNewMethod.make("public void baz() { foo *= 10; }", dst));
+        dst.addMethod(CtNewMethod.make("public void foo() { foo = 2; baz(); bar(); baz(); bar(); }", dst));
+        MimicMetrics metrics = new MimicMetrics();
+        mimicCreator.setListener(metrics);
 
         // WHEN
-        MimicMethod mimicMethod = createMimicMethod(MimicMode.BEFORE, "foo", "bar");
-        mimicCreator.mimicMethods(src, dst, MimicMode.BEFORE, new MimicMethod[] { mimicMethod });
+        MimicMethod mimicMethod = createMimicMethod(MimicMode.AFTER, "foo", "bar");
+        mimicCreator.mimicMethods(src, dst, MimicMode.AFTER, new MimicMethod[] { mimicMethod });
 
         // THEN
         Class<?> dstClass = dst.toClass();
-        assertHasFooField(dst);
         Object dstInstance = dstClass.newInstance();
         invokeFoo(dstInstance);
-        assertHasFooField(dstInstance, 8);
+        assertHasFooField(dstInstance, 1311);
+        assertEquals(1, metrics.getStatistics(MimicPhase.INSTRUMENTATION).getCount());
+        assertEquals(2, metrics.getStatistics(MimicPhase.INSTRUMENTATION).getItemCount());
     }
 
     @Test
-    public void testMimicMethods_with_same_methods_in_super_class_with_before() throws Exception {
+    public void testMimicMethods_with_signature() throws Exception {
         // GIVEN
         src.addField(new CtField(CtClass.intType, "foo", src));
-        src.addMethod(CtNewMethod.make("public void foo() { foo = 4; }", src));
+        src.addMethod(CtNewMethod.make("public void foo() { foo = foo * 10 + 1; }", src));
+        src.addMethod(CtNewMethod.make("public void foo(int a) { foo = foo * 10 + 2; }", src));
 
         CtClass dstAncestor = ClassPool.getDefault().makeClass("DstAncestor" + TestCounter.testCounter);
         CtField field = new CtField(CtClass.intType, "foo", dstAncestor);
         field.setModifiers(Modifier.PUBLIC);
         dstAncestor.addField(field);
-        dstAncestor.addMethod(CtNewMethod.make("public void bar() {}", dstAncestor));
+        dstAncestor.addMethod(CtNewMethod.make("public void foo() { foo = foo * 10 + 3; }", dstAncestor));
+        dstAncestor.addMethod(CtNewMethod.make("public void foo(int a) { foo = foo * 10 + 4; }", dstAncestor));
         dstAncestor.addConstructor(CtNewConstructor.make("public " + dstAncestor.getName() + "() {}", dstAncestor));
         dst.setSuperclass(dstAncestor);
-
-        dst.addField(new CtField(CtClass.intType, "foo", dst));
-        dst.addMethod(CtNewMethod.make("public void foo() { foo = 2; bar(); }", dst));
+        dst.addMethod(CtNewMethod.make("public void foo() { super.foo(); }", dst));
+        dst.addMethod(CtNewMethod.make("public void foo(int a) { super.foo(a); }", dst));
+        dstAncestor.toClass();
 
         // WHEN
-        MimicMethod mimicMethod = createMimicMethod(MimicMode.BEFORE, "foo", "bar");
-        mimicCreator.mimicMethods(src, dst, MimicMode.BEFORE, new MimicMethod[] { mimicMethod });
-        dstAncestor.toClass();
+        MimicMethod mimicMethod = createMimicMethod(MimicMode.BEFORE_SUPER, "foo", "(I)V", null, "");
+        mimicCreator.mimicMethods(src, dst, MimicMode.AFTER_SUPER, new MimicMethod[] { mimicMethod });
 
         // THEN
         Class<?> dstClass = dst.toClass();
-        assertHasFooField(dst);
         Object dstInstance = dstClass.newInstance();
         invokeFoo(dstInstance);
-        assertHasFooField(dstInstance, 4);
+        assertHasFooField(dstInstance, 31);
+        dstInstance = dstClass.newInstance();
+        dstClass.getMethod("foo", int.class).invoke(dstInstance, 0);
+        assertHasFooField(dstInstance, 24);
     }
 
     @Test
-    public void testMimicMethods_with_same_methods_with_at_beginning() throws Exception {
+    public void testMimicMethods_with_after_with_insertion_method_signature() throws Exception {
         // GIVEN
         src.addField(new CtField(CtClass.intType, "foo", src));
-        src.addMethod(CtNewMethod.make("public void foo() { foo = 3; }", src));
+        src.addMethod(CtNewMethod.make("public void foo() { foo *= 10; }", src));
 
-        CtField field = new CtField(CtClass.intType, "foo", dst);
-        dst.addField(field);
-        dst.addMethod(CtNewMethod.make("public void foo() { foo *= 2; }", dst));
+        dst.addField(new CtField(CtClass.intType, "foo", dst));
+        dst.addMethod(CtNewMethod.make("public void bar() { foo += 1; }", dst));
+        dst.addMethod(CtNewMethod.make("public void bar(int a) { foo += a; }", dst));
+        dst.addMethod(CtNewMethod.make("public void foo() { foo = 2; bar(); bar(5); }", dst));
 
         // WHEN
-        mimicCreator.mimicMethods(src, dst, MimicMode.AT_BEGINNING, new MimicMethod[0]);
+        MimicMethod mimicMethod = createMimicMethod(MimicMode.AFTER, "foo", "", "bar", "(I)V");
+        mimicCreator.mimicMethods(src, dst, MimicMode.AFTER, new MimicMethod[] { mimicMethod });
 
         // THEN
-        Class<?> dstClass = dst.toClass();
-        assertHasFooField(dst);
-        Object dstInstance = dstClass.newInstance();
+        Object dstInstance = dst.toClass().newInstance();
         invokeFoo(dstInstance);
-        assertHasFooField(dstInstance, 6);
+        assertHasFooField(dstInstance, 80);
     }
 
     @Test
-    public void testMimicMethods_with_key() throws Exception {
+    public void testMimicMethods_with_before_with_inherited_insertion_method_signature() throws Exception {
         // GIVEN
-        mimicCreator = new MimicCreator("bar");
-        src.addMethod(CtNewMethod.make("public boolean foo() { return true;}", src));
-        dst.addMethod(CtNewMethod.make("public boolean foo() { return true;}", dst));
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addMethod(CtNewMethod.make("public void foo() { foo *= 10; }", src));
 
-        // WHEN
+        CtClass dstAncestor = ClassPool.getDefault().makeClass("DstAncestor" + TestCounter.testCounter);
+        CtField field = new CtField(CtClass.intType, "foo", dstAncestor);
+        field.setModifiers(Modifier.PUBLIC);
+        dstAncestor.addField(field);
+        dstAncestor.addMethod(CtNewMethod.make("public void bar() { foo += 1; }", dstAncestor));
+        dstAncestor.addMethod(CtNewMethod.make("public void bar(int a) { foo += a; }", dstAncestor));
+        dstAncestor.addConstructor(CtNewConstructor.make("public " + dstAncestor.getName() + "() {}", dstAncestor));
+        dst.setSuperclass(dstAncestor);
+        dst.addMethod(CtNewMethod.make("public void foo() { foo = 2; bar(3); bar(); }", dst));
+        dstAncestor.toClass();
+
+        // WHEN
+        MimicMethod mimicMethod = createMimicMethod(MimicMode.BEFORE, "foo", "", "bar", "(I)V");
+        mimicCreator.mimicMethods(src, dst, MimicMode.BEFORE, new MimicMethod[] { mimicMethod });
+
+        // THEN
+        Object dstInstance = dst.toClass().newInstance();
+        invokeFoo(dstInstance);
+        assertHasFooField(dstInstance, 24);
+    }
+
+    @Test
+    public void testMimicMethods_with_many_same_methods_with_before_super() throws Exception {
+        // GIVEN
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addMethod(CtNewMethod.make("public void foo() { foo = foo * 10 + 1; }", src));
+        src.addMethod(CtNewMethod.make("public void bar() { foo = foo * 10 + 2; }", src));
+
+        CtClass dstAncestor = ClassPool.getDefault().makeClass("DstAncestor" + TestCounter.testCounter);
+        CtField field = new CtField(CtClass.intType, "foo", dstAncestor);
+        field.setModifiers(Modifier.PUBLIC);
+        dstAncestor.addField(field);
+        dstAncestor.addMethod(CtNewMethod.make("public void foo() { foo = foo * 10 + 3; }", dstAncestor));
+        dstAncestor.addMethod(CtNewMethod.make("public void bar() { foo = foo * 10 + 4; }", dstAncestor));
+        dstAncestor.addMethod(CtNewMethod.make("public void baz() { foo = foo * 10 + 5; }", dstAncestor));
+        dstAncestor.addConstructor(CtNewConstructor.make("public " + dstAncestor.getName() + "() {}", dstAncestor));
+        dst.setSuperclass(dstAncestor);
+        dst.addMethod(CtNewMethod.make("public void foo() { baz(); super.foo(); bar(); }", dst));
+        dst.addMethod(CtNewMethod.make("public void bar() { super.bar(); }", dst));
+        dstAncestor.toClass();
+        MimicMetrics metrics = new MimicMetrics();
+        mimicCreator.setListener(metrics);
+
+        // WHEN
+        mimicCreator.mimicMethods(src, dst, MimicMode.BEFORE_SUPER, new MimicMethod[0]);
+
+        // THEN
+        Class<?> dstClass = dst.toClass();
+        Object dstInstance = dstClass.newInstance();
+        invokeFoo(dstInstance);
+        assertHasFooField(dstInstance, 51324);
+        assertEquals(2, metrics.getStatistics(MimicPhase.INSTRUMENTATION).getCount());
+        assertEquals(2, metrics.getStatistics(MimicPhase.INSTRUMENTATION).getItemCount());
+    }
+
+    @Test
+    public void testMimicMethods_with_same_methods_with_before() throws Exception {
+        // GIVEN
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addMethod(CtNewMethod.make("public void foo() { foo = 4; }", src));
+
+        dst.addField(new CtField(CtClass.intType, "foo", dst));
+        dst.addMethod(CtNewMethod.make("public void bar() { foo *= 2 ; }", dst));
+        dst.addMethod(CtNewMethod.make("public void foo() { foo = 2; bar(); }", dst));
+
+        // WHEN
+        MimicMethod mimicMethod = createMimicMethod(MimicMode.BEFORE, "foo", "bar");
+        mimicCreator.mimicMethods(src, dst, MimicMode.BEFORE, new MimicMethod[] { mimicMethod });
+
+        // THEN
+        Class<?> dstClass = dst.toClass();
+        assertHasFooField(dst);
+        Object dstInstance = dstClass.newInstance();
+        invokeFoo(dstInstance);
+        assertHasFooField(dstInstance, 8);
+    }
+
+    @Test
+    public void testMimicMethods_with_same_methods_in_super_class_with_before() throws Exception {
+        // GIVEN
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addMethod(CtNewMethod.make("public void foo() { foo = 4; }", src));
+
+        CtClass dstAncestor = ClassPool.getDefault().makeClass("DstAncestor" + TestCounter.testCounter);
+        CtField field = new CtField(CtClass.intType, "foo", dstAncestor);
+        field.setModifiers(Modifier.PUBLIC);
+        dstAncestor.addField(field);
+        dstAncestor.addMethod(CtNewMethod.make("public void bar() {}", dstAncestor));
+        dstAncestor.addConstructor(CtNewConstructor.make("public " + dstAncestor.getName() + "() {}", dstAncestor));
+        dst.setSuperclass(dstAncestor);
+
+        dst.addField(new CtField(CtClass.intType, "foo", dst));
+        dst.addMethod(CtNewMethod.make("public void foo() { foo = 2; bar(); }", dst));
+
+        // WHEN
+        MimicMethod mimicMethod = createMimicMethod(MimicMode.BEFORE, "foo", "bar");
+        mimicCreator.mimicMethods(src, dst, MimicMode.BEFORE, new MimicMethod[] { mimicMethod });
+        dstAncestor.toClass();
+
+        // THEN
+        Class<?> dstClass = dst.toClass();
+        assertHasFooField(dst);
+        Object dstInstance = dstClass.newInstance();
+        invokeFoo(dstInstance);
+        assertHasFooField(dstInstance, 4);
+    }
+
+    @Test
+    public void testMimicMethods_with_same_methods_with_at_beginning() throws Exception {
+        // GIVEN
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addMethod(CtNewMethod.make("public void foo() { foo = 3; }", src));
+
+        CtField field = new CtField(CtClass.intType, "foo", dst);
+        dst.addField(field);
+        dst.addMethod(CtNewMethod.make("public void foo() { foo *= 2; }", dst));
+
+        // WHEN
+        mimicCreator.mimicMethods(src, dst, MimicMode.AT_BEGINNING, new MimicMethod[0]);
+
+        // THEN
+        Class<?> dstClass = dst.toClass();
+        assertHasFooField(dst);
+        Object dstInstance = dstClass.newInstance();
+        invokeFoo(dstInstance);
+        assertHasFooField(dstInstance, 6);
+    }
+
+    @Test
+    public void testMimicMethods_with_key() throws Exception {
+        // GIVEN
+        mimicCreator = new MimicCreator("bar");
+        src.addMethod(CtNewMethod.make("public boolean foo() { return true;}", src));
+        dst.addMethod(CtNewMethod.make("public boolean foo() { return true;}", dst));
+
+        // WHEN
+        mimicCreator.mimicMethods(src, dst, MimicMode.BEFORE_RETURN, new MimicMethod[0]);
+
+        // THEN
+        assertHasMethod(dst.toClass(), "_copy_bar_foo", null);
+    }
+
+    @Test(expected=MimicException.class)
+    public void testMimicMethods_with_empty_after() throws Exception {
+        // GIVEN
+        mimicCreator = new MimicCreator("bar");
+        src.addMethod(CtNewMethod.make("public boolean foo() { return true;}", src));
+        dst.addMethod(CtNewMethod.make("public boolean foo() { return true;}", dst));
+
+        // WHEN
+        mimicCreator.mimicMethods(src, dst, MimicMode.AFTER, new MimicMethod[0]);
+
+        // THEN
+    }
+
+    @Test
+    public void testMimicMethods_with_same_method_with_params() throws Exception {
+        // GIVEN
+        src.addMethod(CtNewMethod.make("public boolean foo(int a) { return true; }", src));
+        dst.addMethod(CtNewMethod.make("public boolean foo(int a) { return true;}", dst));
+
+        // WHEN
+        mimicCreator.mimicFields(src, dst);
+        mimicCreator.mimicMethods(src, dst, MimicMode.BEFORE_RETURN, new MimicMethod[0]);
+
+        // THEN
+        assertHasMethod(dst.toClass(), "foo", new Class<?>[] { int.class });
+    }
+
+    @Test
+    public void testMimicConstructors_with_inlining() throws Exception {
+        // GIVEN
+        mimicCreator.setInliningCopies(true);
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addConstructor(CtNewConstructor.make("public Src() { foo = 2; }", src));
+        dst.addConstructor(CtNewConstructor.make("public Dst() {}", dst));
+
+        // WHEN
+        mimicCreator.mimicFields(src, dst);
+        mimicCreator.mimicConstructors(src, dst);
+
+        // THEN
+        assertHasNoCopy(dst);
+        assertHasFooFieldAndConstructor(dst.toClass());
+    }
+
+    @Test
+    public void testMimicMethods_with_inlining_with_at_beginning() throws Exception {
+        // GIVEN
+        mimicCreator.setInliningCopies(true);
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addMethod(CtNewMethod.make("public void foo() { foo = 3; }", src));
+
+        dst.addField(new CtField(CtClass.intType, "foo", dst));
+        dst.addMethod(CtNewMethod.make("public void foo() { foo *= 2; }", dst));
+
+        // WHEN
+        mimicCreator.mimicMethods(src, dst, MimicMode.AT_BEGINNING, new MimicMethod[0]);
+
+        // THEN
+        assertHasNoCopy(dst);
+        Object dstInstance = dst.toClass().newInstance();
+        invokeFoo(dstInstance);
+        assertHasFooField(dstInstance, 6);
+    }
+
+    @Test
+    public void testMimicMethods_with_inlining_with_static_interface_method_call() throws Exception {
+        // GIVEN
+        mimicCreator.setInliningCopies(true);
+        src.addMethod(CtNewMethod.make("public int foo(int a) { return a + 1; }", src));
+        // javassist can't rebuild the stack maps of such code : dst stays a java 5 class, that is not loaded
+        dst.getClassFile().setMajorVersion(ClassFile.JAVA_5);
+        CtMethod fooInDest = CtNewMethod.make("public int foo(int a) { return 0; }", dst);
+        // Comparator.naturalOrder() is referenced by an interface method reference
+        ConstPool constPool = dst.getClassFile().getConstPool();
+        Bytecode bytecode = new Bytecode(constPool, 1, 2);
+        bytecode.addOpcode(Opcode.INVOKESTATIC);
+        bytecode.addIndex(constPool.addInterfaceMethodrefInfo(constPool.addClassInfo("java.util.Comparator"), "naturalOrder",
+                "()Ljava/util/Comparator;"));
+        bytecode.addOpcode(Opcode.POP);
+        bytecode.addIload(1);
+        bytecode.addOpcode(Opcode.IRETURN);
+        fooInDest.getMethodInfo().setCodeAttribute(bytecode.toCodeAttribute());
+        dst.addMethod(fooInDest);
+
+        // WHEN
+        mimicCreator.mimicMethods(src, dst, MimicMode.BEFORE_RETURN, new MimicMethod[0]);
+
+        // THEN
+        assertNotNull(dst.getDeclaredMethod("_copy_foo"));
+    }
+
+    @Test
+    public void testMimicMethods_with_inlining_with_before_super() throws Exception {
+        // GIVEN
+        mimicCreator.setInliningCopies(true);
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addMethod(CtNewMethod.make("public boolean foo() { foo = 2; return false ; }", src));
+
+        CtClass dstAncestor = ClassPool.getDefault().makeClass("DstAncestor" + TestCounter.testCounter);
+        CtField field = new CtField(CtClass.intType, "foo", dstAncestor);
+        field.setModifiers(Modifier.PUBLIC);
+        dstAncestor.addField(field);
+        dstAncestor.addMethod(CtNewMethod.make("public boolean foo() { foo *= 2; return true; }", dstAncestor));
+        dstAncestor.addConstructor(CtNewConstructor.make("public " + dstAncestor.getName() + "() {}", dstAncestor));
+        dst.setSuperclass(dstAncestor);
+        dst.addMethod(CtNewMethod.make("public boolean foo() { foo = 1; return super.foo();}", dst));
+        dstAncestor.toClass();
+
+        // WHEN
+        mimicCreator.mimicMethods(src, dst, MimicMode.BEFORE_SUPER, new MimicMethod[0]);
+
+        // THEN
+        assertHasNoCopy(dst);
+        Class<?> dstClass = dst.toClass();
+        Object dstInstance = dstClass.newInstance();
+        invokeFoo(dstInstance);
+        assertHasFooField(dstInstance, 4);
+        assertHasFooMethod(dst, dstClass);
+    }
+
+    @Test
+    public void testMimicMethods_with_inlining_with_before_return_and_params_and_branches() throws Exception {
+        // GIVEN
+        mimicCreator.setInliningCopies(true);
+        // stack map frames are mandatory as of java 7
+        src.getClassFile().setMajorVersion(ClassFile.JAVA_7);
+        dst.getClassFile().setMajorVersion(ClassFile.JAVA_7);
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addMethod(CtNewMethod.make("public int foo(int a, long b) {"
+                + "  int c = 0;"
+                + "  for (int i = 0; i < a; i++) { c += i; }"
+                + "  switch (a) { case 4: c += 1000; break; case 5: c += 2; break; default: c += 3; }"
+                + "  try { if (b > 0L) { throw new IllegalStateException(); } } catch (IllegalStateException e) { c += 100; }"
+                + "  foo = c;"
+                + "  return c;"
+                + "}", src));
+
+        dst.addField(new CtField(CtClass.intType, "foo", dst));
+        dst.addMethod(CtNewMethod.make("public int foo(int a, long b) { int x = a * 2; return x; }", dst));
+
+        // WHEN
+        mimicCreator.mimicMethods(src, dst, MimicMode.BEFORE_RETURN, new MimicMethod[0]);
+
+        // THEN
+        assertHasNoCopy(dst);
+        Object dstInstance = dst.toClass().newInstance();
+        Method fooMethod = dstInstance.getClass().getMethod("foo", int.class, long.class);
+        assertEquals(1106, fooMethod.invoke(dstInstance, 4, 1L));
+        assertHasFooField(dstInstance, 1106);
+        assertEquals(12, fooMethod.invoke(dstInstance, 5, 0L));
+    }
+
+    @Test
+    public void testMimicMethods_with_private_copies() throws Exception {
+        // GIVEN
+        mimicCreator.setPrivateCopies(true);
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addMethod(CtNewMethod.make("public void foo() { foo = 3; }", src));
+
+        dst.addField(new CtField(CtClass.intType, "foo", dst));
+        dst.addMethod(CtNewMethod.make("public void foo() { foo *= 2; }", dst));
+
+        // WHEN
+        mimicCreator.mimicMethods(src, dst, MimicMode.AT_BEGINNING, new MimicMethod[0]);
+
+        // THEN
+        Class<?> dstClass = dst.toClass();
+        Method copyMethod = dstClass.getDeclaredMethod("_copy_foo");
+        assertEquals(Modifier.PRIVATE | Modifier.FINAL, copyMethod.getModifiers() & (Modifier.PRIVATE | Modifier.FINAL | Modifier.STATIC));
+        assertTrue(copyMethod.isSynthetic());
+        Object dstInstance = dstClass.newInstance();
+        invokeFoo(dstInstance);
+        assertHasFooField(dstInstance, 6);
+    }
+
+    @Test
+    public void testMimicMethods_with_private_copies_not_using_this() throws Exception {
+        // GIVEN
+        mimicCreator.setPrivateCopies(true);
+        // stack map frames are mandatory as of java 7
+        src.getClassFile().setMajorVersion(ClassFile.JAVA_7);
+        dst.getClassFile().setMajorVersion(ClassFile.JAVA_7);
+        src.addMethod(CtNewMethod.make("public long foo(int a, long b) {"
+                + "  long c = b;"
+                + "  for (int i = 0; i < a; i++) { c += i; }"
+                + "  return c;"
+                + "}", src));
+        dst.addMethod(CtNewMethod.make("public long foo(int a, long b) { return 0L; }", dst));
+
+        // WHEN
+        mimicCreator.mimicMethods(src, dst, MimicMode.BEFORE_RETURN, new MimicMethod[0]);
+
+        // THEN
+        Class<?> dstClass = dst.toClass();
+        Method copyMethod = dstClass.getDeclaredMethod("_copy_foo", int.class, long.class);
+        assertTrue(Modifier.isStatic(copyMethod.getModifiers()));
+        assertTrue(Modifier.isPrivate(copyMethod.getModifiers()));
+        Object dstInstance = dstClass.newInstance();
+        Method fooMethod = dstClass.getMethod("foo", int.class, long.class);
+        assertEquals(16L, fooMethod.invoke(dstInstance, 4, 10L));
+    }
+
+    @Test
+    public void testMimicMethods_with_private_copies_synchronized_not_using_this() throws Exception {
+        // GIVEN
+        mimicCreator.setPrivateCopies(true);
+        src.addMethod(CtNewMethod.make("public synchronized int foo(int a) { return a + 1; }", src));
+        dst.addMethod(CtNewMethod.make("public int foo(int a) { return 0; }", dst));
+
+        // WHEN
+        mimicCreator.mimicMethods(src, dst, MimicMode.BEFORE_RETURN, new MimicMethod[0]);
+
+        // THEN
+        Class<?> dstClass = dst.toClass();
+        Method copyMethod = dstClass.getDeclaredMethod("_copy_foo", int.class);
+        // a static copy would lock the class instead of the instance
+        assertFalse(Modifier.isStatic(copyMethod.getModifiers()));
+        assertTrue(Modifier.isSynchronized(copyMethod.getModifiers()));
+        assertTrue(Modifier.isPrivate(copyMethod.getModifiers()));
+        Object dstInstance = dstClass.newInstance();
+        assertEquals(5, dstClass.getMethod("foo", int.class).invoke(dstInstance, 4));
+    }
+
+    @Test
+    public void testMimicMethods_with_private_copies_in_sub_class() throws Exception {
+        // GIVEN
+        mimicCreator.setPrivateCopies(true);
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addMethod(CtNewMethod.make("public void foo() { foo = 3; }", src));
+
+        CtClass dstAncestor = ClassPool.getDefault().makeClass("DstAncestor" + TestCounter.testCounter);
+        CtField field = new CtField(CtClass.intType, "foo", dstAncestor);
+        field.setModifiers(Modifier.PUBLIC);
+        dstAncestor.addField(field);
+        dstAncestor.addMethod(CtNewMethod.make("public void foo() {}", dstAncestor));
+        dstAncestor.addConstructor(CtNewConstructor.make("public " + dstAncestor.getName() + "() {}", dstAncestor));
+        dst.setSuperclass(dstAncestor);
+        dst.addField(new CtField(CtClass.intType, "foo", dst));
+        dst.addMethod(CtNewMethod.make("public void foo() { super.foo(); }", dst));
+
+        // WHEN
+        mimicCreator.mimicMethods(src, dstAncestor, MimicMode.AT_BEGINNING, new MimicMethod[0]);
+        mimicCreator.mimicMethods(src, dst, MimicMode.AT_BEGINNING, new MimicMethod[0]);
+
+        // THEN
+        Class<?> dstAncestorClass = dstAncestor.toClass();
+        Object dstInstance = dst.toClass().newInstance();
+        invokeFoo(dstInstance);
+        assertHasFooField(dstInstance, 3);
+        // the copy of the ancestor is not overridden by the copy of dst
+        assertEquals(3, dstAncestorClass.getField("foo").get(dstInstance));
+    }
+
+    @Test
+    public void testMimicConstructors_with_bytecode_backend() throws Exception {
+        // GIVEN
+        mimicCreator.setBackend(WeavingBackend.BYTECODE);
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addConstructor(CtNewConstructor.make("public Src() { foo = 2; }", src));
+        dst.addConstructor(CtNewConstructor.make("public Dst() {}", dst));
+
+        // WHEN
+        mimicCreator.mimicFields(src, dst);
+        mimicCreator.mimicConstructors(src, dst);
+
+        // THEN
+        assertHasFooFieldAndConstructor(dst.toClass());
+    }
+
+    @Test
+    public void testMimicMethods_with_bytecode_backend_with_at_beginning() throws Exception {
+        // GIVEN
+        mimicCreator.setBackend(WeavingBackend.BYTECODE);
+        src.getClassFile().setMajorVersion(ClassFile.JAVA_7);
+        dst.getClassFile().setMajorVersion(ClassFile.JAVA_7);
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addMethod(CtNewMethod.make("public void foo() { foo = 3; }", src));
+
+        dst.addField(new CtField(CtClass.intType, "foo", dst));
+        dst.addMethod(CtNewMethod.make("public void foo() { foo *= 2; }", dst));
+
+        // WHEN
+        mimicCreator.mimicMethods(src, dst, MimicMode.AT_BEGINNING, new MimicMethod[0]);
+
+        // THEN
+        Object dstInstance = dst.toClass().newInstance();
+        invokeFoo(dstInstance);
+        assertHasFooField(dstInstance, 6);
+    }
+
+    @Test
+    public void testMimicMethods_with_bytecode_backend_with_before_return_and_params_and_branches() throws Exception {
+        // GIVEN
+        mimicCreator.setBackend(WeavingBackend.BYTECODE);
+        src.getClassFile().setMajorVersion(ClassFile.JAVA_7);
+        dst.getClassFile().setMajorVersion(ClassFile.JAVA_7);
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addMethod(CtNewMethod.make("public int foo(int a, long b) { foo += a + (int) b; return foo; }", src));
+
+        dst.addField(new CtField(CtClass.intType, "foo", dst));
+        dst.addMethod(CtNewMethod.make("public int foo(int a, long b) {"
+                + "  if (a > 4) { return a; }"
+                + "  try { if (b > 5L) { throw new IllegalStateException(); } } catch (IllegalStateException e) { return -1; }"
+                + "  return a * 2;"
+                + "}", dst));
+
+        // WHEN
         mimicCreator.mimicMethods(src, dst, MimicMode.BEFORE_RETURN, new MimicMethod[0]);
 
         // THEN
-        assertHasMethod(dst.toClass(), "_copy_bar_foo", null);
+        Object dstInstance = dst.toClass().newInstance();
+        Method fooMethod = dstInstance.getClass().getMethod("foo", int.class, long.class);
+        assertEquals(6, fooMethod.invoke(dstInstance, 5, 1L));
+        assertEquals(18, fooMethod.invoke(dstInstance, 2, 10L));
+        assertEquals(21, fooMethod.invoke(dstInstance, 1, 2L));
     }
 
-    @Test(expected=MimicException.class)
-    public void testMimicMethods_with_empty_after() throws Exception {
+    @Test
+    public void testMimicMethods_with_bytecode_backend_with_before_return_too_far_for_goto() throws Exception {
         // GIVEN
-        mimicCreator = new MimicCreator("bar");
+        mimicCreator.setBackend(WeavingBackend.BYTECODE);
+        src.getClassFile().setMajorVersion(ClassFile.JAVA_7);
+        dst.getClassFile().setMajorVersion(ClassFile.JAVA_7);
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addMethod(CtNewMethod.make("public void foo(boolean a) { foo += 100000; }", src));
+
+        dst.addField(new CtField(CtClass.intType, "foo", dst));
+        // the first return is more than Short.MAX_VALUE bytes away from the end of the code
+        StringBuilder body = new StringBuilder("public void foo(boolean a) { if (a) { return; }");
+        for (int i = 0; i < LONG_BODY_STATEMENT_COUNT; i++) {
+            body.append(" foo = foo + 1;");
+        }
+        dst.addMethod(CtNewMethod.make(body.append(" }").toString(), dst));
+
+        // WHEN
+        mimicCreator.mimicMethods(src, dst, MimicMode.BEFORE_RETURN, new MimicMethod[0]);
+
+        // THEN
+        Object dstInstance = dst.toClass().newInstance();
+        Method fooMethod = dstInstance.getClass().getMethod("foo", boolean.class);
+        fooMethod.invoke(dstInstance, true);
+        assertHasFooField(dstInstance, 100000);
+        fooMethod.invoke(dstInstance, false);
+        assertHasFooField(dstInstance, 200000 + LONG_BODY_STATEMENT_COUNT);
+    }
+
+    @Test
+    public void testMimicMethods_with_bytecode_backend_with_super_modes() throws Exception {
+        // GIVEN
+        mimicCreator.setBackend(WeavingBackend.BYTECODE);
+        src.getClassFile().setMajorVersion(ClassFile.JAVA_7);
+        dst.getClassFile().setMajorVersion(ClassFile.JAVA_7);
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addMethod(CtNewMethod.make("public void foo() { foo = foo * 10 + 1; }", src));
+        src.addMethod(CtNewMethod.make("public void bar(int a) { foo = foo * 10 + 2; }", src));
+        src.addMethod(CtNewMethod.make("public long baz(long a, double b) { return a + (long) b; }", src));
+
+        CtClass dstAncestor = ClassPool.getDefault().makeClass("DstAncestor" + TestCounter.testCounter);
+        dstAncestor.getClassFile().setMajorVersion(ClassFile.JAVA_7);
+        CtField field = new CtField(CtClass.intType, "foo", dstAncestor);
+        field.setModifiers(Modifier.PUBLIC);
+        dstAncestor.addField(field);
+        dstAncestor.addMethod(CtNewMethod.make("public void foo() { foo = foo * 10 + 3; }", dstAncestor));
+        dstAncestor.addMethod(CtNewMethod.make("public void bar(int a) { foo = foo * 10 + a; }", dstAncestor));
+        dstAncestor.addMethod(CtNewMethod.make("public long baz(long a, double b) { return a; }", dstAncestor));
+        dstAncestor.addConstructor(CtNewConstructor.make("public " + dstAncestor.getName() + "() {}", dstAncestor));
+        dst.setSuperclass(dstAncestor);
+        dst.addMethod(CtNewMethod.make("public void foo() { super.foo(); }", dst));
+        dst.addMethod(CtNewMethod.make("public void bar(int a) { super.bar(a); }", dst));
+        dst.addMethod(CtNewMethod.make("public long baz(long a, double b) { return super.baz(a, b) * 2L; }", dst));
+        dstAncestor.toClass();
+        MimicMethod[] mimicMethods = new MimicMethod[] {
+            createMimicMethod(MimicMode.BEFORE_SUPER, "foo", null),
+            createMimicMethod(MimicMode.AFTER_SUPER, "bar", null),
+            createMimicMethod(MimicMode.REPLACE_SUPER, "baz", null)
+        };
+
+        // WHEN
+        mimicCreator.mimicMethods(src, dst, MimicMode.BEFORE_SUPER, mimicMethods);
+
+        // THEN
+        Object dstInstance = dst.toClass().newInstance();
+        invokeFoo(dstInstance);
+        assertHasFooField(dstInstance, 13);
+        dstInstance.getClass().getMethod("bar", int.class).invoke(dstInstance, 4);
+        assertHasFooField(dstInstance, 1342);
+        assertEquals(14L, dstInstance.getClass().getMethod("baz", long.class, double.class).invoke(dstInstance, 3L, 4d));
+    }
+
+    @Test
+    public void testMimicMethods_with_bytecode_backend_with_before_and_private_copies_and_inlining() throws Exception {
+        // GIVEN
+        mimicCreator.setBackend(WeavingBackend.BYTECODE);
+        mimicCreator.setPrivateCopies(true);
+        mimicCreator.setInliningCopies(true);
+        src.getClassFile().setMajorVersion(ClassFile.JAVA_7);
+        dst.getClassFile().setMajorVersion(ClassFile.JAVA_7);
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addMethod(CtNewMethod.make("public void foo() { foo = 4; }", src));
+
+        dst.addField(new CtField(CtClass.intType, "foo", dst));
+        dst.addMethod(CtNewMethod.make("public void bar() { foo *= 2 ; }", dst));
+        dst.addMethod(CtNewMethod.make("public void foo() { foo = 2; bar(); }", dst));
+
+        // WHEN
+        MimicMethod mimicMethod = createMimicMethod(MimicMode.BEFORE, "foo", "bar");
+        mimicCreator.mimicMethods(src, dst, MimicMode.BEFORE, new MimicMethod[] { mimicMethod });
+
+        // THEN
+        assertHasNoCopy(dst);
+        Object dstInstance = dst.toClass().newInstance();
+        invokeFoo(dstInstance);
+        assertHasFooField(dstInstance, 8);
+    }
+
+    @Test(expected = CannotCompileException.class)
+    public void testMimicMethods_with_bytecode_backend_with_after_and_incompatible_insertion_method() throws Exception {
+        // GIVEN
+        mimicCreator.setBackend(WeavingBackend.BYTECODE);
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addMethod(CtNewMethod.make("public void foo(int a) { foo = a; }", src));
+
+        dst.addField(new CtField(CtClass.intType, "foo", dst));
+        dst.addMethod(CtNewMethod.make("public void bar(String a) { }", dst));
+        dst.addMethod(CtNewMethod.make("public void foo(int a) { bar(null); }", dst));
+
+        // WHEN
+        MimicMethod mimicMethod = createMimicMethod(MimicMode.AFTER, "foo", "bar");
+        mimicCreator.mimicMethods(src, dst, MimicMode.AFTER, new MimicMethod[] { mimicMethod });
+
+        // THEN
+    }
+
+    @Test
+    public void testMimicClass_with_listener() throws Exception {
+        // GIVEN
+        CtClass interfazz = ClassPool.getDefault().makeInterface("Able" + TestCounter.testCounter);
+        src.addInterface(interfazz);
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addConstructor(CtNewConstructor.make("public Src() { foo = 2; }", src));
         src.addMethod(CtNewMethod.make("public boolean foo() { return true;}", src));
-        dst.addMethod(CtNewMethod.make("public boolean foo() { return true;}", dst));
+        src.addMethod(CtNewMethod.make("public boolean bar() { return true;}", src));
+
+        MimicListener listener = EasyMock.createStrictMock(MimicListener.class);
+        listener.onPhase(EasyMock.eq(dst.getName()), EasyMock.eq(MimicPhase.INTERFACES), EasyMock.anyLong(), EasyMock.eq(1));
+        listener.onPhase(EasyMock.eq(dst.getName()), EasyMock.eq(MimicPhase.FIELDS), EasyMock.anyLong(), EasyMock.eq(1));
+        listener.onPhase(EasyMock.eq(dst.getName()), EasyMock.eq(MimicPhase.CONSTRUCTORS), EasyMock.anyLong(), EasyMock.eq(1));
+        listener.onPhase(EasyMock.eq(dst.getName()), EasyMock.eq(MimicPhase.METHODS), EasyMock.anyLong(), EasyMock.eq(2));
+        EasyMock.replay(listener);
+        mimicCreator.setListener(listener);
 
         // WHEN
-        mimicCreator.mimicMethods(src, dst, MimicMode.AFTER, new MimicMethod[0]);
+        mimicCreator.mimicClass(src, dst, MimicMode.AT_BEGINNING, new MimicMethod[0]);
 
         // THEN
+        EasyMock.verify(listener);
     }
 
     @Test
-    public void testMimicMethods_with_same_method_with_params() throws Exception {
+    public void testMimicMethods_with_listener_with_before_super() throws Exception {
         // GIVEN
-        src.addMethod(CtNewMethod.make("public boolean foo(int a) { return true; }", src));
-        dst.addMethod(CtNewMethod.make("public boolean foo(int a) { return true;}", dst));
+        src.addMethod(CtNewMethod.make("public boolean foo() { return false ; }", src));
+
+        CtClass dstAncestor = ClassPool.getDefault().makeClass("DstAncestor" + TestCounter.testCounter);
+        dstAncestor.addMethod(CtNewMethod.make("public boolean foo() { return true; }", dstAncestor));
+        dst.setSuperclass(dstAncestor);
+        dst.addMethod(CtNewMethod.make("public boolean foo() { return super.foo();}", dst));
+
+        MimicListener listener = EasyMock.createStrictMock(MimicListener.class);
+        listener.onPhase(EasyMock.eq(dst.getName()), EasyMock.eq(MimicPhase.INSTRUMENTATION), EasyMock.anyLong(), EasyMock.eq(1));
+        listener.onPhase(EasyMock.eq(dst.getName()), EasyMock.eq(MimicPhase.METHODS), EasyMock.anyLong(), EasyMock.eq(1));
+        EasyMock.replay(listener);
+        mimicCreator.setListener(listener);
 
         // WHEN
-        mimicCreator.mimicFields(src, dst);
-        mimicCreator.mimicMethods(src, dst, MimicMode.BEFORE_RETURN, new MimicMethod[0]);
+        mimicCreator.mimicMethods(src, dst, MimicMode.BEFORE_SUPER, new MimicMethod[0]);
 
         // THEN
-        assertHasMethod(dst.toClass(), "foo", new Class<?>[] { int.class });
+        EasyMock.verify(listener);
+    }
+
+    @Test
+    public void testGetTemplatePlan() throws Exception {
+        // GIVEN
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addConstructor(CtNewConstructor.make("public Src(int a) { foo = a; }", src));
+        src.addMethod(CtNewMethod.make("public int bar() { return 3; }", src));
+        src.addMethod(CtNewMethod.make("public int foo(int a, String b) { return foo + a + bar(); }", src));
+
+        // WHEN
+        TemplatePlan plan = mimicCreator.getTemplatePlan(src);
+
+        // THEN
+        assertEquals(src.getName(), plan.getTemplateName());
+        assertEquals(Arrays.asList("foo"), plan.getFieldNames());
+        assertEquals(1, plan.getConstructors().size());
+        assertEquals("_copy_Src( $1);\n", plan.getConstructors().get(0).getInvocation("_copy_Src"));
+        assertEquals(2, plan.getMethods().size());
+        TemplatePlan.Member fooMethod = plan.getMethods().get(1);
+        assertEquals("foo(ILjava/lang/String;)I", fooMethod.getKey());
+        assertEquals("_copy_foo( $1, $2);\n", fooMethod.getInvocation("_copy_foo"));
+        assertTrue(fooMethod.isUsingThis());
+        assertFalse(plan.getMethods().get(0).isUsingThis());
+        assertEquals(Collections.singleton("bar()I"), fooMethod.getInvokedMethodKeys());
+        assertTrue(plan.getMethods().get(0).getInvokedMethodKeys().isEmpty());
+        assertEquals(Collections.singleton("foo"), plan.getReferencedFieldNames());
+    }
+
+    @Test
+    public void testGetTemplatePlan_is_shared_by_class_pools() throws Exception {
+        // GIVEN
+        src.addMethod(CtNewMethod.make("public int foo(int a) { return a + 1; }", src));
+        byte[] srcBytecode = src.toBytecode();
+        CtClass src1 = new ClassPool(true).makeClass(new ByteArrayInputStream(srcBytecode));
+        CtClass src2 = new ClassPool(true).makeClass(new ByteArrayInputStream(srcBytecode));
+        CtClass dst1 = src1.getClassPool().makeClass("Dst1" + TestCounter.testCounter);
+        CtClass dst2 = src2.getClassPool().makeClass("Dst2" + TestCounter.testCounter);
+        dst1.addMethod(CtNewMethod.make("public int foo(int a) { return a * 2; }", dst1));
+        dst2.addMethod(CtNewMethod.make("public int foo(int a) { return a * 3; }", dst2));
+
+        // WHEN
+        mimicCreator.mimicMethods(src1, dst1, MimicMode.BEFORE_RETURN, new MimicMethod[0]);
+        mimicCreator.mimicMethods(src2, dst2, MimicMode.BEFORE_RETURN, new MimicMethod[0]);
+
+        // THEN
+        assertSame(mimicCreator.getTemplatePlan(src1), mimicCreator.getTemplatePlan(src2));
+        for (CtClass dst : new CtClass[] {dst1, dst2}) {
+            Object dstInstance = dst.toClass(getClass().getClassLoader(), null).newInstance();
+            assertEquals(5, dstInstance.getClass().getMethod("foo", int.class).invoke(dstInstance, 4));
+        }
+    }
+
+    @Test
+    public void testGetTemplatePlan_is_rebuilt_when_template_changes() throws Exception {
+        // GIVEN
+        src.addMethod(CtNewMethod.make("public int foo() { return 1; }", src));
+        TemplatePlan plan = mimicCreator.getTemplatePlan(src);
+        CtClass changedSrc = new ClassPool(true).makeClass(src.getName());
+        changedSrc.addMethod(CtNewMethod.make("public int bar() { return 1; }", changedSrc));
+
+        // WHEN
+        TemplatePlan changedPlan = mimicCreator.getTemplatePlan(changedSrc);
+
+        // THEN
+        assertNotSame(plan, changedPlan);
+        assertEquals("bar()I", changedPlan.getMethods().get(0).getKey());
+        assertSame(changedPlan, mimicCreator.getTemplatePlan(changedSrc));
+    }
+
+    @Test
+    public void testGetTemplatePlan_is_rebuilt_when_read_template_is_modified() throws Exception {
+        // GIVEN
+        src.addMethod(CtNewMethod.make("public int foo() { return 1; }", src));
+        CtClass readSrc = new ClassPool(true).makeClass(new ByteArrayInputStream(src.toBytecode()));
+        TemplatePlan plan = mimicCreator.getTemplatePlan(readSrc);
+        readSrc.addMethod(CtNewMethod.make("public int bar() { return 1; }", readSrc));
+
+        // WHEN
+        TemplatePlan changedPlan = mimicCreator.getTemplatePlan(readSrc);
+
+        // THEN
+        assertNotSame(plan, changedPlan);
+        assertEquals(2, changedPlan.getMethods().size());
+    }
+
+    @Test
+    public void testGetTemplatePlan_is_rebuilt_when_template_code_changes() throws Exception {
+        // GIVEN
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addMethod(CtNewMethod.make("public int bar() { return 1; }", src));
+        TemplatePlan plan = mimicCreator.getTemplatePlan(src);
+        CtClass changedSrc = new ClassPool(true).makeClass(src.getName());
+        changedSrc.addField(new CtField(CtClass.intType, "foo", changedSrc));
+        changedSrc.addMethod(CtNewMethod.make("public int bar() { return foo; }", changedSrc));
+
+        // WHEN
+        TemplatePlan changedPlan = mimicCreator.getTemplatePlan(changedSrc);
+
+        // THEN
+        assertNotSame(plan, changedPlan);
+        assertFalse(plan.getMethods().get(0).isUsingThis());
+        assertTrue(changedPlan.getMethods().get(0).isUsingThis());
+        assertEquals(Collections.singleton("foo"), changedPlan.getReferencedFieldNames());
+    }
+
+    @Test
+    public void testMimicClass_sharing_template_code() throws Exception {
+        // GIVEN
+        mimicCreator.setSharingTemplateCode(true);
+        src = ClassPool.getDefault().makeClass("com.github.stephanenicolas.mimic.shared.Src" + TestCounter.testCounter++);
+        // stack map frames are mandatory as of java 7
+        src.getClassFile().setMajorVersion(ClassFile.JAVA_7);
+        dst.getClassFile().setMajorVersion(ClassFile.JAVA_7);
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addMethod(CtNewMethod.make("public void bar() { foo = foo - 100; }", src));
+        src.addMethod(CtNewMethod.make("public int foo(int a) {"
+                + "  for (int i = 0; i < a; i++) { if (foo < 10) { foo += i; } else { bar(); } }"
+                + "  return foo;"
+                + "}", src));
+
+        // WHEN
+        mimicCreator.mimicClass(src, dst, MimicMode.AT_BEGINNING, new MimicMethod[0]);
+
+        // THEN
+        Map<String, byte[]> sharedClasses = mimicCreator.shareTemplateCode(src);
+        assertEquals(Arrays.asList(src.getName() + SharedTemplate.HELPER_SUFFIX, src.getName() + SharedTemplate.RECEIVER_SUFFIX),
+                new ArrayList<String>(sharedClasses.keySet()));
+        Class<?> receiverClass = defineSharedClasses(sharedClasses);
+        Class<?> dstClass = dst.toClass();
+        assertTrue(receiverClass.isAssignableFrom(dstClass));
+        Object dstInstance = dstClass.newInstance();
+        Method fooMethod = dstClass.getMethod("foo", int.class);
+        assertEquals(10, fooMethod.invoke(dstInstance, 5));
+        assertEquals(-90, fooMethod.invoke(dstInstance, 1));
+        assertHasFooField(dstInstance, -90);
+    }
+
+    @Test
+    public void testMimicMethods_sharing_template_code_with_same_methods_and_private_copies() throws Exception {
+        // GIVEN
+        mimicCreator.setSharingTemplateCode(true);
+        mimicCreator.setPrivateCopies(true);
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addMethod(CtNewMethod.make("public void foo() { foo = 3; }", src));
+
+        dst.addField(new CtField(CtClass.intType, "foo", dst));
+        dst.addMethod(CtNewMethod.make("public void foo() { foo *= 2; }", dst));
+
+        // WHEN
+        mimicCreator.mimicMethods(src, dst, MimicMode.AT_BEGINNING, new MimicMethod[0]);
+
+        // THEN
+        Class<?> receiverClass = defineSharedClasses(mimicCreator.shareTemplateCode(src));
+        Class<?> dstClass = dst.toClass();
+        assertTrue(receiverClass.isAssignableFrom(dstClass));
+        Method copyMethod = dstClass.getDeclaredMethod("_copy_foo");
+        assertEquals(Modifier.PRIVATE | Modifier.FINAL, copyMethod.getModifiers() & (Modifier.PRIVATE | Modifier.FINAL | Modifier.STATIC));
+        Object dstInstance = dstClass.newInstance();
+        invokeFoo(dstInstance);
+        assertHasFooField(dstInstance, 6);
+    }
+
+    @Test
+    public void testMimicClass_sharing_template_code_invoking_interface_method() throws Exception {
+        // GIVEN
+        mimicCreator.setSharingTemplateCode(true);
+        src = ClassPool.getDefault().makeClass("com.github.stephanenicolas.mimic.shared.Src" + TestCounter.testCounter++);
+        src.getClassFile().setMajorVersion(ClassFile.JAVA_7);
+        dst.getClassFile().setMajorVersion(ClassFile.JAVA_7);
+        src.addField(CtField.make("java.util.List items;", src));
+        src.addConstructor(CtNewConstructor.make("public Src() { items = new java.util.ArrayList(); }", src));
+        src.addMethod(CtNewMethod.make("public int addItem(Object item) { items.add(item); return items.size(); }", src));
+
+        // WHEN
+        mimicCreator.mimicClass(src, dst, MimicMode.AT_BEGINNING, new MimicMethod[0]);
+
+        // THEN
+        Class<?> receiverClass = defineSharedClasses(mimicCreator.shareTemplateCode(src));
+        Class<?> dstClass = dst.toClass();
+        assertTrue(receiverClass.isAssignableFrom(dstClass));
+        Object dstInstance = dstClass.newInstance();
+        Method addItemMethod = dstClass.getMethod("addItem", Object.class);
+        assertEquals(1, addItemMethod.invoke(dstInstance, "foo"));
+        assertEquals(2, addItemMethod.invoke(dstInstance, "bar"));
+    }
+
+    @Test
+    public void testMimicMethods_sharing_template_code_without_shareable_method() throws Exception {
+        // GIVEN
+        mimicCreator.setSharingTemplateCode(true);
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addMethod(CtNewMethod.make("public synchronized void foo() { foo = 3; }", src));
+        src.addMethod(CtNewMethod.make("public static int bar() { return 1; }", src));
+
+        dst.addField(new CtField(CtClass.intType, "foo", dst));
+
+        // WHEN
+        mimicCreator.mimicMethods(src, dst, MimicMode.AT_BEGINNING, new MimicMethod[0]);
+
+        // THEN
+        assertTrue(mimicCreator.shareTemplateCode(src).isEmpty());
+        assertEquals(0, dst.getClassFile2().getInterfaces().length);
+        Object dstInstance = dst.toClass().newInstance();
+        invokeFoo(dstInstance);
+        assertHasFooField(dstInstance, 3);
+    }
+
+    @Test
+    public void testMimicMethods_sharing_template_code_with_dst_unable_to_receive_it() throws Exception {
+        // GIVEN
+        mimicCreator.setSharingTemplateCode(true);
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        // the helper couldn't invoke a protected method
+        src.addMethod(CtNewMethod.make("protected void bar() { foo = 3; }", src));
+        src.addMethod(CtNewMethod.make("public void foo() { bar(); }", src));
+
+        dst.addField(new CtField(CtClass.intType, "foo", dst));
+
+        // WHEN
+        mimicCreator.mimicMethods(src, dst, MimicMode.AT_BEGINNING, new MimicMethod[0]);
+
+        // THEN
+        assertEquals(2, mimicCreator.shareTemplateCode(src).size());
+        assertEquals(0, dst.getClassFile2().getInterfaces().length);
+        Object dstInstance = dst.toClass().newInstance();
+        invokeFoo(dstInstance);
+        assertHasFooField(dstInstance, 3);
+    }
+
+    @Test
+    public void testMimicMethods_sharing_template_code_shrinks_dst() throws Exception {
+        // GIVEN
+        StringBuilder body = new StringBuilder("public int foo(int a) {");
+        for (int i = 0; i < 50; i++) {
+            body.append(" foo = foo * a + ").append(i).append(';');
+        }
+        src.addField(new CtField(CtClass.intType, "foo", src));
+        src.addMethod(CtNewMethod.make(body.append(" return foo; }").toString(), src));
+        CtClass sharingDst = ClassPool.getDefault().makeClass("SharingDst" + TestCounter.testCounter++);
+        MimicCreator sharingMimicCreator = new MimicCreator();
+        sharingMimicCreator.setSharingTemplateCode(true);
+
+        // WHEN
+        mimicCreator.mimicClass(src, dst, MimicMode.AT_BEGINNING, new MimicMethod[0]);
+        sharingMimicCreator.mimicClass(src, sharingDst, MimicMode.AT_BEGINNING, new MimicMethod[0]);
+
+        // THEN
+        int copiedCodeLength = MethodSizeReport.measure(dst.getClassFile2()).get("foo(I)I");
+        int stubCodeLength = MethodSizeReport.measure(sharingDst.getClassFile2()).get("foo(I)I");
+        assertTrue(copiedCodeLength + " <= " + stubCodeLength, stubCodeLength < copiedCodeLength);
+        assertTrue(sharingDst.toBytecode().length < dst.toBytecode().length);
+        defineSharedClasses(sharingMimicCreator.shareTemplateCode(src));
+        Object sharingDstInstance = sharingDst.toClass().newInstance();
+        Object dstInstance = dst.toClass().newInstance();
+        assertEquals(dstInstance.getClass().getMethod("foo", int.class).invoke(dstInstance, 3),
+                sharingDstInstance.getClass().getMethod("foo", int.class).invoke(sharingDstInstance, 3));
+    }
+
+    /**
+     * Loads the classes generated to share the code of src.
+     * @return the receiver interface.
+     */
+    private Class<?> defineSharedClasses(Map<String, byte[]> sharedClasses) throws Exception {
+        // the helper refers to the receiver
+        Class<?> receiverClass = ClassPool.getDefault().makeClass(
+                new ByteArrayInputStream(sharedClasses.get(src.getName() + SharedTemplate.RECEIVER_SUFFIX))).toClass();
+        ClassPool.getDefault().makeClass(new ByteArrayInputStream(sharedClasses.get(src.getName() + SharedTemplate.HELPER_SUFFIX))).toClass();
+        return receiverClass;
+    }
+
+    private void assertHasNoCopy(CtClass dst) {
+        for (CtMethod method : dst.getDeclaredMethods()) {
+            assertFalse(method.getName().startsWith("_copy_"));
+        }
     }
 
     private void assertHasFooField(CtClass dst) throws Exception {
@@ -550,6 +1844,12 @@ public class MimicCreatorTest {
         assertEquals(value, realFooField.get(dstInstance));
     }
 
+    private void assertHasBarField(Object dstInstance, Integer value) throws Exception {
+        Field barField = dstInstance.getClass().getDeclaredField("bar");
+        barField.setAccessible(true);
+        assertEquals(value, barField.get(dstInstance));
+    }
+
     private void invokeFoo(Object dstInstance) throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
         Method realFooMethod;
         try {
@@ -634,6 +1934,11 @@ public class MimicCreatorTest {
     }
 
     private MimicMethod createMimicMethod(final MimicMode mimicMode, final String methodName, final String insertionMethod) {
+        return createMimicMethod(mimicMode, methodName, "", insertionMethod, "");
+    }
+
+    private MimicMethod createMimicMethod(final MimicMode mimicMode, final String methodName, final String signature, final String insertionMethod,
+            final String insertionMethodSignature) {
         return new MimicMethod() {
 
             @Override
@@ -651,10 +1956,35 @@ public class MimicCreatorTest {
                 return methodName;
             }
 
+            @Override
+            public String signature() {
+                return signature;
+            }
+
             @Override
             public String insertionMethod() {
                 return insertionMethod;
             }
+
+            @Override
+            public String insertionMethodSignature() {
+                return insertionMethodSignature;
+            }
+        };
+    }
+
+    private MimicField createMimicField(final String fieldName) {
+        return new MimicField() {
+
+            @Override
+            public Class<? extends Annotation> annotationType() {
+                return MimicField.class;
+            }
+
+            @Override
+            public String fieldName() {
+                return fieldName;
+            }
         };
     }
 }
@@ -0,0 +1,105 @@
+package com.github.stephanenicolas.mimic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.stephanenicolas.mimic.MimicMetrics.PhaseStatistics;
+
+public class MimicMetricsTest {
+
+    private MimicMetrics metrics;
+
+    @Before
+    public void setUp() {
+        metrics = new MimicMetrics();
+    }
+
+    @Test
+    public void testOnPhase() throws Exception {
+        // GIVEN
+
+        // WHEN
+        metrics.onPhase("Foo", MimicPhase.FIELDS, 10, 2);
+        metrics.onPhase("Bar", MimicPhase.FIELDS, 30, 1);
+        metrics.onPhase("Bar", MimicPhase.METHODS, 5, 3);
+
+        // THEN
+        PhaseStatistics fieldsStatistics = metrics.getStatistics(MimicPhase.FIELDS);
+        assertEquals(2, fieldsStatistics.getCount());
+        assertEquals(40, fieldsStatistics.getTotalNanos());
+        assertEquals(30, fieldsStatistics.getMaxNanos());
+        assertEquals(3, fieldsStatistics.getItemCount());
+        assertEquals(1, metrics.getStatistics("Foo", MimicPhase.FIELDS).getCount());
+        assertEquals(0, metrics.getStatistics("Foo", MimicPhase.METHODS).getCount());
+        assertEquals(3, metrics.getStatistics("Bar", MimicPhase.METHODS).getItemCount());
+        assertNull(metrics.getStatistics("Baz", MimicPhase.METHODS));
+        assertEquals(Arrays.asList("Bar", "Foo"), Arrays.asList(metrics.getClassNames().toArray()));
+    }
+
+    @Test
+    public void testReset() throws Exception {
+        // GIVEN
+        metrics.onPhase("Foo", MimicPhase.FIELDS, 10, 2);
+
+        // WHEN
+        metrics.reset();
+
+        // THEN
+        assertEquals(0, metrics.getStatistics(MimicPhase.FIELDS).getCount());
+        assertTrue(metrics.getClassNames().isEmpty());
+        assertEquals("", metrics.getSummary());
+    }
+
+    @Test
+    public void testToJson() throws Exception {
+        // GIVEN
+        metrics.onPhase("Foo", MimicPhase.FIELDS, 10, 2);
+        metrics.onPhase("Bar\"", MimicPhase.WRITE, 20, 100);
+
+        // WHEN
+        String json = metrics.toJson();
+
+        // THEN
+        assertEquals("{\n"
+                + "  \"phases\": {\n"
+                + "    \"FIELDS\": {\"count\": 1, \"totalNanos\": 10, \"maxNanos\": 10, \"items\": 2},\n"
+                + "    \"WRITE\": {\"count\": 1, \"totalNanos\": 20, \"maxNanos\": 20, \"items\": 100}\n"
+                + "  },\n"
+                + "  \"classes\": {\n"
+                + "    \"Bar\\\"\": {\n"
+                + "      \"WRITE\": {\"count\": 1, \"totalNanos\": 20, \"maxNanos\": 20, \"items\": 100}\n"
+                + "    },\n"
+                + "    \"Foo\": {\n"
+                + "      \"FIELDS\": {\"count\": 1, \"totalNanos\": 10, \"maxNanos\": 10, \"items\": 2}\n"
+                + "    }\n"
+                + "  }\n"
+                + "}\n", json);
+    }
+
+    @Test
+    public void testWriteJson() throws Exception {
+        // GIVEN
+        metrics.onPhase("Foo", MimicPhase.FIELDS, 10, 2);
+        File file = File.createTempFile("metrics", ".json");
+        file.deleteOnExit();
+
+        // WHEN
+        metrics.writeJson(file);
+
+        // THEN
+        FileInputStream in = new FileInputStream(file);
+        try {
+            assertEquals(metrics.toJson(), new String(Digests.readFully(in), "UTF-8"));
+        } finally {
+            in.close();
+        }
+    }
+}
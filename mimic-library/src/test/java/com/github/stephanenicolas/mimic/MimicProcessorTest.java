@@ -1,32 +1,73 @@
 package com.github.stephanenicolas.mimic;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
 import javassist.ClassPool;
 import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewMethod;
 import javassist.NotFoundException;
 import javassist.bytecode.AnnotationsAttribute;
 import javassist.bytecode.ClassFile;
 import javassist.bytecode.ConstPool;
 import javassist.bytecode.annotation.Annotation;
+import javassist.bytecode.annotation.AnnotationMemberValue;
+import javassist.bytecode.annotation.ArrayMemberValue;
 import javassist.bytecode.annotation.BooleanMemberValue;
 import javassist.bytecode.annotation.ClassMemberValue;
+import javassist.bytecode.annotation.EnumMemberValue;
+import javassist.bytecode.annotation.MemberValue;
 
 import org.easymock.EasyMock;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.github.stephanenicolas.mimic.MethodSizeReport.MethodSize;
 import com.github.stephanenicolas.mimic.annotations.Mimic;
+import com.github.stephanenicolas.mimic.annotations.MimicField;
 import com.github.stephanenicolas.mimic.annotations.MimicMethod;
 import com.github.stephanenicolas.mimic.annotations.MimicMode;
+import com.github.stephanenicolas.mimic.annotations.MimicTemplate;
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
 
 public class MimicProcessorTest {
 
+    private static final int LARGE_MODULE_SIZE = 2000;
+    private static final int LARGE_CLASS_METHOD_COUNT = 50;
+    private static final String LARGE_CONSTANT = String.format("%0200d", 0);
+    private static final String SMALL_HEAP = "48m";
+    private static final String HEAP_BUDGET = "24m";
+
     private MimicProcessor mimicProcessor;
     private CtClass src;
     private CtClass dst;
@@ -55,6 +96,31 @@ public class MimicProcessorTest {
         cf.setVersionToJava5();
     }
 
+    private void addMimicAnnotationWithMixin(CtClass dst, String sourceClassName, String... mixinNames) {
+        ClassFile cf = dst.getClassFile();
+        ConstPool cp = cf.getConstPool();
+        AnnotationsAttribute attr = new AnnotationsAttribute(cp, AnnotationsAttribute.visibleTag);
+
+        MemberValue[] mixinValues = new MemberValue[mixinNames.length];
+        for (int i = 0; i < mixinNames.length; i++) {
+            Annotation mixin = new Annotation(MimicTemplate.class.getName(), cp);
+            mixin.addMemberValue("sourceClass", new ClassMemberValue(mixinNames[i], cp));
+            EnumMemberValue defaultMimicMode = new EnumMemberValue(cp);
+            defaultMimicMode.setType(MimicMode.class.getName());
+            defaultMimicMode.setValue(MimicMode.AT_BEGINNING.name());
+            mixin.addMemberValue("defaultMimicMode", defaultMimicMode);
+            mixinValues[i] = new AnnotationMemberValue(mixin, cp);
+        }
+        ArrayMemberValue mixins = new ArrayMemberValue(new AnnotationMemberValue(cp), cp);
+        mixins.setValue(mixinValues);
+        Annotation a = new Annotation(Mimic.class.getName(), cp);
+        a.addMemberValue("sourceClass", new ClassMemberValue(sourceClassName, cp));
+        a.addMemberValue("mixins", mixins);
+        attr.setAnnotation(a);
+        cf.addAttribute(attr);
+        cf.setVersionToJava5();
+    }
+
     @Before
     public void setUp() {
         mimicProcessor = new MimicProcessor();
@@ -149,7 +215,8 @@ public class MimicProcessorTest {
                 EasyMock.eq(ClassPool.getDefault().get(
                         TestSourceClass.class.getName())), EasyMock.eq(dst),
                         (MimicMode) EasyMock.anyObject(),
-                        (MimicMethod[]) EasyMock.anyObject());
+                        (MimicMethod[]) EasyMock.anyObject(),
+                        (MimicField[]) EasyMock.anyObject());
         EasyMock.replay(mimicMock);
 
         // WHEN
@@ -169,7 +236,8 @@ public class MimicProcessorTest {
         .injectMembers(mimicProcessor);
         mimicMock.mimicFields(
                 EasyMock.eq(ClassPool.getDefault().get(
-                        TestSourceClass.class.getName())), EasyMock.eq(dst));
+                        TestSourceClass.class.getName())), EasyMock.eq(dst),
+                        (MimicField[]) EasyMock.anyObject());
         EasyMock.replay(mimicMock);
 
         // WHEN
@@ -221,6 +289,845 @@ public class MimicProcessorTest {
         EasyMock.verify(mimicMock);
     }
 
+    @Test
+    public void testConfigure_with_backend() throws Exception {
+        // GIVEN
+        final MimicCreator mimicMock = EasyMock.createMock(MimicCreator.class);
+        Guice.createInjector(new MimicCreatorTestModule(mimicMock)).injectMembers(mimicProcessor);
+        mimicMock.setBackend(WeavingBackend.BYTECODE);
+        EasyMock.replay(mimicMock);
+        Properties properties = new Properties();
+        properties.setProperty(MimicProcessor.PROPERTY_BACKEND, "bytecode");
+
+        // WHEN
+        mimicProcessor.configure(properties);
+
+        // THEN
+        EasyMock.verify(mimicMock);
+    }
+
+    @Test
+    public void testConfigure_with_report_all_field_collisions() throws Exception {
+        // GIVEN
+        final MimicCreator mimicMock = EasyMock.createMock(MimicCreator.class);
+        Guice.createInjector(new MimicCreatorTestModule(mimicMock)).injectMembers(mimicProcessor);
+        mimicMock.setReportingAllFieldCollisions(true);
+        EasyMock.replay(mimicMock);
+        Properties properties = new Properties();
+        properties.setProperty(MimicProcessor.PROPERTY_REPORT_ALL_FIELD_COLLISIONS, "true");
+
+        // WHEN
+        mimicProcessor.configure(properties);
+
+        // THEN
+        EasyMock.verify(mimicMock);
+    }
+
+    @Test
+    public void testConfigure_with_eliminate_dead_fields() throws Exception {
+        // GIVEN
+        final MimicCreator mimicMock = EasyMock.createMock(MimicCreator.class);
+        Guice.createInjector(new MimicCreatorTestModule(mimicMock)).injectMembers(mimicProcessor);
+        mimicMock.setEliminatingDeadFields(true);
+        EasyMock.replay(mimicMock);
+        Properties properties = new Properties();
+        properties.setProperty(MimicProcessor.PROPERTY_ELIMINATE_DEAD_FIELDS, "true");
+
+        // WHEN
+        mimicProcessor.configure(properties);
+
+        // THEN
+        EasyMock.verify(mimicMock);
+    }
+
+    @Test
+    public void testConfigure_with_eliminate_unreachable_methods() throws Exception {
+        // GIVEN
+        final MimicCreator mimicMock = EasyMock.createMock(MimicCreator.class);
+        Guice.createInjector(new MimicCreatorTestModule(mimicMock)).injectMembers(mimicProcessor);
+        mimicMock.setEliminatingUnreachableMethods(true);
+        EasyMock.replay(mimicMock);
+        Properties properties = new Properties();
+        properties.setProperty(MimicProcessor.PROPERTY_ELIMINATE_UNREACHABLE_METHODS, "true");
+
+        // WHEN
+        mimicProcessor.configure(properties);
+
+        // THEN
+        EasyMock.verify(mimicMock);
+    }
+
+    @Test
+    public void testConfigure_with_initialize_unmatched_roots() throws Exception {
+        // GIVEN
+        final MimicCreator mimicMock = EasyMock.createMock(MimicCreator.class);
+        Guice.createInjector(new MimicCreatorTestModule(mimicMock)).injectMembers(mimicProcessor);
+        mimicMock.setInitializingUnmatchedRoots(true);
+        EasyMock.replay(mimicMock);
+        Properties properties = new Properties();
+        properties.setProperty(MimicProcessor.PROPERTY_INITIALIZE_UNMATCHED_ROOTS, "true");
+
+        // WHEN
+        mimicProcessor.configure(properties);
+
+        // THEN
+        EasyMock.verify(mimicMock);
+    }
+
+    @Test
+    public void testConfigure_with_share_template_code() throws Exception {
+        // GIVEN
+        final MimicCreator mimicMock = EasyMock.createMock(MimicCreator.class);
+        Guice.createInjector(new MimicCreatorTestModule(mimicMock)).injectMembers(mimicProcessor);
+        mimicMock.setSharingTemplateCode(true);
+        EasyMock.replay(mimicMock);
+        Properties properties = new Properties();
+        properties.setProperty(MimicProcessor.PROPERTY_SHARE_TEMPLATE_CODE, "true");
+
+        // WHEN
+        mimicProcessor.configure(properties);
+
+        // THEN
+        EasyMock.verify(mimicMock);
+    }
+
+    @Test
+    public void testConfigure_with_size_thresholds() throws Exception {
+        // GIVEN
+        Properties properties = new Properties();
+        properties.setProperty(MimicProcessor.PROPERTY_FREQ_INLINE_SIZE, "100");
+        properties.setProperty(MimicProcessor.PROPERTY_FAIL_ON_SIZE_THRESHOLDS, "true");
+
+        // WHEN
+        mimicProcessor.configure(properties);
+
+        // THEN
+        MethodSizeReport sizeReport = mimicProcessor.getSizeReport();
+        assertNotNull(sizeReport);
+        assertTrue(sizeReport.getSummary().startsWith("MaxInlineSize=35, FreqInlineSize=100, HugeMethodLimit=8000 : "));
+    }
+
+    @Test
+    public void testTransform_in_parallel() throws Exception {
+        // GIVEN
+        File inputDir = createTempDirectory("input");
+        File outputDir = createTempDirectory("output");
+        String[] dstNames = new String[10];
+        for (int i = 0; i < dstNames.length; i++) {
+            CtClass dst = ClassPool.getDefault().makeClass("Dst" + TestCounter.testCounter++);
+            addMimicAnnotation(dst, TestSourceClass.class.getName(), true, true, true, true);
+            dst.writeFile(inputDir.getAbsolutePath());
+            dstNames[i] = dst.getName();
+        }
+        Properties properties = new Properties();
+        properties.setProperty(MimicProcessor.PROPERTY_PARALLELISM, "4");
+        mimicProcessor.configure(properties);
+
+        // WHEN
+        mimicProcessor.transform(inputDir.getAbsolutePath(), outputDir.getAbsolutePath());
+
+        // THEN
+        ClassPool outputPool = new ClassPool(true);
+        outputPool.appendClassPath(outputDir.getAbsolutePath());
+        for (String dstName : dstNames) {
+            CtClass transformedDst = outputPool.get(dstName);
+            assertNotNull(transformedDst.getDeclaredField("foo"));
+            assertEquals(CtClass.intType, transformedDst.getDeclaredField("foo").getType());
+        }
+    }
+
+    @Test
+    public void testTransform_with_metrics() throws Exception {
+        // GIVEN
+        File inputDir = createTempDirectory("input");
+        File metricsFile = new File(createTempDirectory("metrics"), "reports/mimic-metrics.json");
+        String[] dstNames = new String[3];
+        for (int i = 0; i < dstNames.length; i++) {
+            CtClass dst = ClassPool.getDefault().makeClass("Dst" + TestCounter.testCounter++);
+            addMimicAnnotation(dst, TestSourceClass.class.getName(), true, true, true, true);
+            dst.writeFile(inputDir.getAbsolutePath());
+            dstNames[i] = dst.getName();
+        }
+        Properties properties = new Properties();
+        properties.setProperty(MimicProcessor.PROPERTY_METRICS_FILE, metricsFile.getAbsolutePath());
+        mimicProcessor.configure(properties);
+
+        // WHEN
+        mimicProcessor.transform(inputDir.getAbsolutePath(), createTempDirectory("output").getAbsolutePath());
+
+        // THEN
+        MimicMetrics metrics = mimicProcessor.getMetrics();
+        assertEquals(new TreeSet<String>(Arrays.asList(dstNames)), metrics.getClassNames());
+        assertEquals(dstNames.length, metrics.getStatistics(MimicPhase.FIELDS).getCount());
+        assertEquals(dstNames.length, metrics.getStatistics(MimicPhase.FIELDS).getItemCount());
+        assertEquals(dstNames.length, metrics.getStatistics(MimicPhase.BYTECODE).getCount());
+        assertEquals(dstNames.length, metrics.getStatistics(MimicPhase.WRITE).getCount());
+        assertTrue(metricsFile.isFile());
+        assertEquals(metrics.toJson(), new String(Digests.readFully(new FileInputStream(metricsFile)), "UTF-8"));
+    }
+
+    @Test
+    public void testTransform_with_size_report() throws Exception {
+        // GIVEN
+        File classesDir = createTempDirectory("classes");
+        File sizeReportFile = new File(createTempDirectory("sizes"), "reports/mimic-sizes.json");
+        CtClass dst = createTargetOfRunningMixin(classesDir);
+        Properties properties = new Properties();
+        properties.setProperty(MimicProcessor.PROPERTY_SIZE_REPORT_FILE, sizeReportFile.getAbsolutePath());
+        properties.setProperty(MimicProcessor.PROPERTY_MAX_INLINE_SIZE, "2");
+
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(new URLClassLoader(new URL[] {classesDir.toURI().toURL() }, contextClassLoader));
+        try {
+            mimicProcessor.configure(properties);
+
+            // WHEN
+            mimicProcessor.transform(classesDir.getAbsolutePath(), createTempDirectory("output").getAbsolutePath());
+
+            // THEN
+            MethodSizeReport sizeReport = mimicProcessor.getSizeReport();
+            assertEquals(new TreeSet<String>(Arrays.asList(dst.getName())), sizeReport.getClassNames());
+            MethodSize runSize = sizeReport.getSizes(dst.getName()).get("run()V");
+            assertEquals(Integer.valueOf(1), runSize.getBefore());
+            assertEquals(Arrays.asList("MaxInlineSize"), sizeReport.getCrossedThresholds(runSize));
+            assertEquals(1, sizeReport.getCrossings().size());
+            assertTrue(sizeReportFile.isFile());
+            assertEquals(sizeReport.toJson(), new String(Digests.readFully(new FileInputStream(sizeReportFile)), "UTF-8"));
+        } finally {
+            Thread.currentThread().setContextClassLoader(contextClassLoader);
+        }
+    }
+
+    @Test
+    public void testTransform_with_fail_on_size_thresholds() throws Exception {
+        // GIVEN
+        File classesDir = createTempDirectory("classes");
+        CtClass dst = createTargetOfRunningMixin(classesDir);
+        Properties properties = new Properties();
+        properties.setProperty(MimicProcessor.PROPERTY_FAIL_ON_SIZE_THRESHOLDS, "true");
+        properties.setProperty(MimicProcessor.PROPERTY_MAX_INLINE_SIZE, "2");
+
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(new URLClassLoader(new URL[] {classesDir.toURI().toURL() }, contextClassLoader));
+        try {
+            mimicProcessor.configure(properties);
+
+            // WHEN
+            mimicProcessor.transform(classesDir.getAbsolutePath(), createTempDirectory("output").getAbsolutePath());
+            fail();
+        } catch (RuntimeException e) {
+            // THEN
+            assertTrue(e.getCause() instanceof MimicException);
+            assertTrue(e.getMessage().contains(dst.getName() + ".run()V"));
+        } finally {
+            Thread.currentThread().setContextClassLoader(contextClassLoader);
+        }
+    }
+
+    @Test
+    public void testTransform_with_share_template_code() throws Exception {
+        // GIVEN
+        File classesDir = createTempDirectory("classes");
+        File outputDir = createTempDirectory("output");
+        CtClass dst = createTargetOfRunningMixin(classesDir);
+        String mixinName = MimicProcessor.getTemplateNames(dst.getClassFile2()).get(1);
+        Properties properties = new Properties();
+        properties.setProperty(MimicProcessor.PROPERTY_SHARE_TEMPLATE_CODE, "true");
+
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(new URLClassLoader(new URL[] {classesDir.toURI().toURL() }, contextClassLoader));
+        try {
+            mimicProcessor.configure(properties);
+
+            // WHEN
+            mimicProcessor.transform(classesDir.getAbsolutePath(), outputDir.getAbsolutePath());
+
+            // THEN
+            Map<String, byte[]> generatedClasses = mimicProcessor.getGeneratedClasses();
+            assertEquals(new TreeSet<String>(Arrays.asList(mixinName + "$MimicHelper", mixinName + "$MimicReceiver")),
+                    generatedClasses.keySet());
+            for (Map.Entry<String, byte[]> generatedClass : generatedClasses.entrySet()) {
+                assertTrue(Arrays.equals(generatedClass.getValue(), readClassFile(outputDir, generatedClass.getKey())));
+            }
+            CtClass transformedDst = new ClassPool(true).makeClass(new ByteArrayInputStream(readClassFile(outputDir, dst.getName())));
+            assertEquals(Arrays.asList(mixinName + "$MimicReceiver"), Arrays.asList(transformedDst.getClassFile2().getInterfaces()));
+        } finally {
+            Thread.currentThread().setContextClassLoader(contextClassLoader);
+        }
+    }
+
+    @Test
+    public void testTransform_with_pool_batch_size() throws Exception {
+        // GIVEN
+        File inputDir = createTempDirectory("input");
+        File outputDir = createTempDirectory("output");
+        String[] dstNames = new String[10];
+        for (int i = 0; i < dstNames.length; i++) {
+            CtClass dst = ClassPool.getDefault().makeClass("Dst" + TestCounter.testCounter++);
+            addMimicAnnotation(dst, TestSourceClass.class.getName(), true, true, true, true);
+            dst.writeFile(inputDir.getAbsolutePath());
+            dstNames[i] = dst.getName();
+        }
+        Properties properties = new Properties();
+        properties.setProperty(MimicProcessor.PROPERTY_PARALLELISM, "2");
+        properties.setProperty(MimicProcessor.PROPERTY_POOL_BATCH_SIZE, "3");
+        mimicProcessor.configure(properties);
+
+        // WHEN
+        mimicProcessor.transform(inputDir.getAbsolutePath(), outputDir.getAbsolutePath());
+
+        // THEN
+        ClassPool outputPool = new ClassPool(true);
+        outputPool.appendClassPath(outputDir.getAbsolutePath());
+        for (String dstName : dstNames) {
+            CtClass transformedDst = outputPool.get(dstName);
+            assertEquals(CtClass.intType, transformedDst.getDeclaredField("foo").getType());
+        }
+    }
+
+    @Test
+    public void testTransform_with_heap_budget_smaller_than_results() throws Exception {
+        // GIVEN
+        File inputDir = createTempDirectory("input");
+        File outputDir = createTempDirectory("output");
+        String[] dstNames = new String[10];
+        for (int i = 0; i < dstNames.length; i++) {
+            CtClass dst = ClassPool.getDefault().makeClass("Dst" + TestCounter.testCounter++);
+            addMimicAnnotation(dst, TestSourceClass.class.getName(), true, true, true, true);
+            dst.writeFile(inputDir.getAbsolutePath());
+            dstNames[i] = dst.getName();
+        }
+        Properties properties = new Properties();
+        properties.setProperty(MimicProcessor.PROPERTY_PARALLELISM, "3");
+        // workers ahead of the next result to hand over can't buffer any of theirs
+        properties.setProperty(MimicProcessor.PROPERTY_HEAP_BUDGET, "1");
+        mimicProcessor.configure(properties);
+
+        // WHEN
+        mimicProcessor.transform(inputDir.getAbsolutePath(), outputDir.getAbsolutePath());
+
+        // THEN
+        ClassPool outputPool = new ClassPool(true);
+        outputPool.appendClassPath(outputDir.getAbsolutePath());
+        for (String dstName : dstNames) {
+            CtClass transformedDst = outputPool.get(dstName);
+            assertEquals(CtClass.intType, transformedDst.getDeclaredField("foo").getType());
+        }
+    }
+
+    @Test
+    public void testParseSize() throws Exception {
+        assertEquals(64L * 1024 * 1024, HeapBudget.parseSize(" 64M "));
+        assertEquals(512L * 1024, HeapBudget.parseSize("512k"));
+        assertEquals(2L * 1024 * 1024 * 1024, HeapBudget.parseSize("2g"));
+        assertEquals(1000L, HeapBudget.parseSize("1000"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConfigure_with_invalid_heap_budget() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(MimicProcessor.PROPERTY_HEAP_BUDGET, "64 megs");
+        mimicProcessor.configure(properties);
+    }
+
+    @Test
+    public void testTransform_with_heap_budget_under_small_heap() throws Exception {
+        // GIVEN
+        File inputDir = createTempDirectory("input");
+        File outputDir = createTempDirectory("output");
+        CtClass prototype = ClassPool.getDefault().makeClass("Dst" + TestCounter.testCounter++);
+        for (int i = 0; i < LARGE_CLASS_METHOD_COUNT; i++) {
+            prototype.addMethod(CtNewMethod.make("public String m" + i + "() { return \"" + LARGE_CONSTANT + i + "\"; }", prototype));
+        }
+        addMimicAnnotation(prototype, TestSourceClass.class.getName(), true, true, true, true);
+        ClassFile prototypeFile = prototype.getClassFile();
+        String dstNamePrefix = "Dst" + TestCounter.testCounter++ + "_";
+        for (int i = 0; i < LARGE_MODULE_SIZE; i++) {
+            // renaming the class file is much faster than compiling every class
+            String dstName = dstNamePrefix + i;
+            prototypeFile.renameClass(prototypeFile.getName(), dstName);
+            DataOutputStream out = new DataOutputStream(new FileOutputStream(new File(inputDir, dstName + ".class")));
+            try {
+                prototypeFile.write(out);
+            } finally {
+                out.close();
+            }
+        }
+        String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath();
+        ProcessBuilder processBuilder = new ProcessBuilder(java, "-Xmx" + SMALL_HEAP, "-cp", System.getProperty("java.class.path"),
+                HeapBudgetMain.class.getName(), inputDir.getAbsolutePath(), outputDir.getAbsolutePath(), HEAP_BUDGET);
+        processBuilder.redirectErrorStream(true);
+
+        // WHEN
+        Process process = processBuilder.start();
+        String output = new String(Digests.readFully(process.getInputStream()), "UTF-8");
+        int exitValue = process.waitFor();
+
+        // THEN
+        assertEquals(output, 0, exitValue);
+        assertEquals(LARGE_MODULE_SIZE, outputDir.list().length);
+        ClassPool outputPool = new ClassPool(true);
+        outputPool.appendClassPath(outputDir.getAbsolutePath());
+        CtClass transformedDst = outputPool.get(dstNamePrefix + (LARGE_MODULE_SIZE - 1));
+        assertEquals(CtClass.intType, transformedDst.getDeclaredField("foo").getType());
+    }
+
+    @Test
+    public void testIterateClassnames_skips_classes_without_mimic_annotation() throws Exception {
+        // GIVEN
+        File inputDir = createTempDirectory("input");
+        addMimicAnnotation(dst, TestSourceClass.class.getName(), true, true, true, true);
+        dst.writeFile(inputDir.getAbsolutePath());
+        src.writeFile(inputDir.getAbsolutePath());
+
+        // WHEN
+        Iterator<String> classNames = mimicProcessor.iterateClassnames(inputDir.getAbsolutePath());
+
+        // THEN
+        assertEquals(dst.getName(), classNames.next());
+        assertFalse(classNames.hasNext());
+    }
+
+    @Test
+    public void testTransformBytecode() throws Exception {
+        // GIVEN
+        addMimicAnnotation(dst, TestSourceClass.class.getName(), true, true, true, true);
+        byte[] bytecode = dst.toBytecode();
+
+        // WHEN
+        byte[] transformedBytecode = mimicProcessor.transformBytecode(new ClassPool(true), bytecode);
+
+        // THEN
+        assertNotNull(transformedBytecode);
+        ClassPool outputPool = new ClassPool(true);
+        assertNotNull(outputPool.makeClass(new ByteArrayInputStream(transformedBytecode)).getDeclaredField("foo"));
+    }
+
+    @Test
+    public void testTransformBytecode_without_mimic_annotation() throws Exception {
+        // GIVEN
+        byte[] bytecode = dst.toBytecode();
+
+        // WHEN
+        byte[] transformedBytecode = mimicProcessor.transformBytecode(new ClassPool(true), bytecode);
+
+        // THEN
+        assertNull(transformedBytecode);
+    }
+
+    @Test
+    public void testTransform_with_cache() throws Exception {
+        // GIVEN
+        File inputDir = createTempDirectory("input");
+        File cacheDir = createTempDirectory("cache");
+        String[] dstNames = new String[3];
+        for (int i = 0; i < dstNames.length; i++) {
+            CtClass dst = ClassPool.getDefault().makeClass("Dst" + TestCounter.testCounter++);
+            addMimicAnnotation(dst, TestSourceClass.class.getName(), true, true, true, true);
+            dst.writeFile(inputDir.getAbsolutePath());
+            dstNames[i] = dst.getName();
+        }
+        Properties properties = new Properties();
+        properties.setProperty(MimicProcessor.PROPERTY_CACHE_DIRECTORY, cacheDir.getAbsolutePath());
+        mimicProcessor.configure(properties);
+        mimicProcessor.transform(inputDir.getAbsolutePath(), createTempDirectory("output").getAbsolutePath());
+
+        // WHEN
+        MimicProcessor secondMimicProcessor = new MimicProcessor();
+        secondMimicProcessor.configure(properties);
+        File outputDir = createTempDirectory("output");
+        secondMimicProcessor.transform(inputDir.getAbsolutePath(), outputDir.getAbsolutePath());
+
+        // THEN
+        assertEquals(0, mimicProcessor.getCache().getHitCount());
+        assertEquals(dstNames.length, mimicProcessor.getCache().getMissCount());
+        assertEquals(dstNames.length, secondMimicProcessor.getCache().getHitCount());
+        assertEquals(0, secondMimicProcessor.getCache().getMissCount());
+        ClassPool outputPool = new ClassPool(true);
+        outputPool.appendClassPath(outputDir.getAbsolutePath());
+        for (String dstName : dstNames) {
+            CtClass transformedDst = outputPool.get(dstName);
+            assertNotNull(transformedDst.getDeclaredField("foo"));
+        }
+    }
+
+    @Test
+    public void testTransform_with_cache_when_annotation_changes() throws Exception {
+        // GIVEN
+        File inputDir = createTempDirectory("input");
+        CtClass dst = ClassPool.getDefault().makeClass("Dst" + TestCounter.testCounter++);
+        addMimicAnnotation(dst, TestSourceClass.class.getName(), true, true, true, true);
+        dst.writeFile(inputDir.getAbsolutePath());
+        dst.defrost();
+        Properties properties = new Properties();
+        properties.setProperty(MimicProcessor.PROPERTY_CACHE_DIRECTORY, createTempDirectory("cache").getAbsolutePath());
+        mimicProcessor.configure(properties);
+        mimicProcessor.transform(inputDir.getAbsolutePath(), createTempDirectory("output").getAbsolutePath());
+
+        // WHEN
+        addMimicAnnotation(dst, TestSourceClass.class.getName(), true, false, true, true);
+        dst.writeFile(inputDir.getAbsolutePath());
+        File outputDir = createTempDirectory("output");
+        mimicProcessor.transform(inputDir.getAbsolutePath(), outputDir.getAbsolutePath());
+
+        // THEN
+        assertEquals(0, mimicProcessor.getCache().getHitCount());
+        assertEquals(2, mimicProcessor.getCache().getMissCount());
+        ClassPool outputPool = new ClassPool(true);
+        outputPool.appendClassPath(outputDir.getAbsolutePath());
+        assertFalse(hasDeclaredField(outputPool.get(dst.getName()), "foo"));
+    }
+
+    @Test
+    public void testTransform_with_cache_when_superclass_changes() throws Exception {
+        // GIVEN
+        File inputDir = createTempDirectory("input");
+        CtClass superclass = ClassPool.getDefault().makeClass("SuperDst" + TestCounter.testCounter++);
+        superclass.writeFile(inputDir.getAbsolutePath());
+        superclass.defrost();
+        CtClass dst = ClassPool.getDefault().makeClass("Dst" + TestCounter.testCounter++, superclass);
+        addMimicAnnotation(dst, TestSourceClass.class.getName(), true, true, true, true);
+        dst.writeFile(inputDir.getAbsolutePath());
+        Properties properties = new Properties();
+        properties.setProperty(MimicProcessor.PROPERTY_CACHE_DIRECTORY, createTempDirectory("cache").getAbsolutePath());
+        mimicProcessor.configure(properties);
+        mimicProcessor.transform(inputDir.getAbsolutePath(), createTempDirectory("output").getAbsolutePath());
+
+        // WHEN
+        superclass.addMethod(CtNewMethod.make("public void bar() {}", superclass));
+        superclass.writeFile(inputDir.getAbsolutePath());
+        mimicProcessor.transform(inputDir.getAbsolutePath(), createTempDirectory("output").getAbsolutePath());
+
+        // THEN
+        assertEquals(0, mimicProcessor.getCache().getHitCount());
+        assertEquals(2, mimicProcessor.getCache().getMissCount());
+    }
+
+    @Test
+    public void testTransform_with_index_when_template_changes() throws Exception {
+        // GIVEN
+        File classesDir = createTempDirectory("classes");
+        CtClass template = ClassPool.getDefault().makeClass("Template" + TestCounter.testCounter++);
+        template.addField(new CtField(CtClass.intType, "foo", template));
+        template.writeFile(classesDir.getAbsolutePath());
+        CtClass dstOfTemplate = ClassPool.getDefault().makeClass("Dst" + TestCounter.testCounter++);
+        addMimicAnnotation(dstOfTemplate, template.getName(), true, true, true, true);
+        dstOfTemplate.writeFile(classesDir.getAbsolutePath());
+        CtClass dstOfOtherTemplate = ClassPool.getDefault().makeClass("Dst" + TestCounter.testCounter++);
+        addMimicAnnotation(dstOfOtherTemplate, TestSourceClass.class.getName(), true, true, true, true);
+        dstOfOtherTemplate.writeFile(classesDir.getAbsolutePath());
+        Properties properties = new Properties();
+        properties.setProperty(MimicProcessor.PROPERTY_INDEX_DIRECTORY, createTempDirectory("index").getAbsolutePath());
+
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(new URLClassLoader(new URL[] {classesDir.toURI().toURL() }, contextClassLoader));
+        try {
+            // classes are transformed in place, as in a maven build
+            mimicProcessor.configure(properties);
+            mimicProcessor.transform(classesDir.getAbsolutePath(), classesDir.getAbsolutePath());
+            byte[] transformedDstOfOtherTemplate = readClassFile(classesDir, dstOfOtherTemplate.getName());
+            template.defrost();
+            template.addField(new CtField(CtClass.intType, "bar", template));
+            template.writeFile(classesDir.getAbsolutePath());
+
+            // WHEN
+            MimicProcessor secondMimicProcessor = new MimicProcessor();
+            secondMimicProcessor.configure(properties);
+            secondMimicProcessor.transform(classesDir.getAbsolutePath(), classesDir.getAbsolutePath());
+
+            // THEN
+            assertEquals(Arrays.asList(dstOfTemplate.getName()), secondMimicProcessor.getDependencyIndex().getTargets(template.getName()));
+            ClassPool outputPool = new ClassPool(true);
+            outputPool.appendClassPath(classesDir.getAbsolutePath());
+            CtClass transformedDstOfTemplate = outputPool.get(dstOfTemplate.getName());
+            assertTrue(hasDeclaredField(transformedDstOfTemplate, "foo"));
+            assertTrue(hasDeclaredField(transformedDstOfTemplate, "bar"));
+            assertTrue(Arrays.equals(transformedDstOfOtherTemplate, readClassFile(classesDir, dstOfOtherTemplate.getName())));
+        } finally {
+            Thread.currentThread().setContextClassLoader(contextClassLoader);
+        }
+    }
+
+    @Test
+    public void testTransform_with_index_when_mixin_changes() throws Exception {
+        // GIVEN
+        File classesDir = createTempDirectory("classes");
+        CtClass mixin = ClassPool.getDefault().makeClass("Mixin" + TestCounter.testCounter++);
+        mixin.addField(new CtField(CtClass.intType, "bar", mixin));
+        mixin.addMethod(CtNewMethod.make("public void run() { bar++; }", mixin));
+        mixin.writeFile(classesDir.getAbsolutePath());
+        CtClass dst = ClassPool.getDefault().makeClass("Dst" + TestCounter.testCounter++);
+        dst.addMethod(CtNewMethod.make("public void run() { }", dst));
+        addMimicAnnotationWithMixin(dst, TestSourceClass.class.getName(), mixin.getName());
+        dst.writeFile(classesDir.getAbsolutePath());
+        Properties properties = new Properties();
+        properties.setProperty(MimicProcessor.PROPERTY_INDEX_DIRECTORY, createTempDirectory("index").getAbsolutePath());
+
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(new URLClassLoader(new URL[] {classesDir.toURI().toURL() }, contextClassLoader));
+        try {
+            mimicProcessor.configure(properties);
+            mimicProcessor.transform(classesDir.getAbsolutePath(), classesDir.getAbsolutePath());
+            mixin.defrost();
+            mixin.addField(new CtField(CtClass.intType, "baz", mixin));
+            mixin.writeFile(classesDir.getAbsolutePath());
+
+            // WHEN
+            MimicProcessor secondMimicProcessor = new MimicProcessor();
+            secondMimicProcessor.configure(properties);
+            secondMimicProcessor.transform(classesDir.getAbsolutePath(), classesDir.getAbsolutePath());
+
+            // THEN
+            assertEquals(Arrays.asList(dst.getName()), secondMimicProcessor.getDependencyIndex().getTargets(mixin.getName()));
+            assertEquals(Arrays.asList(dst.getName()),
+                    secondMimicProcessor.getDependencyIndex().getTargets(TestSourceClass.class.getName()));
+            ClassPool outputPool = new ClassPool(true);
+            outputPool.appendClassPath(classesDir.getAbsolutePath());
+            CtClass transformedDst = outputPool.get(dst.getName());
+            assertTrue(hasDeclaredField(transformedDst, "foo"));
+            assertTrue(hasDeclaredField(transformedDst, "bar"));
+            assertTrue(hasDeclaredField(transformedDst, "baz"));
+            assertNotNull(transformedDst.getDeclaredMethod("_copy_" + mixin.getSimpleName() + "_run"));
+        } finally {
+            Thread.currentThread().setContextClassLoader(contextClassLoader);
+        }
+    }
+
+    @Test
+    public void testTransform_with_mixins_with_same_simple_names() throws Exception {
+        // GIVEN
+        File classesDir = createTempDirectory("classes");
+        String simpleName = "Keyed" + TestCounter.testCounter++;
+        // the third mixin can't be keyed by its simple name suffixed by its position
+        String[] mixinNames = {simpleName, simpleName + "2", "mixins." + simpleName };
+        for (int i = 0; i < mixinNames.length; i++) {
+            CtClass mixin = ClassPool.getDefault().makeClass(mixinNames[i]);
+            mixin.addField(new CtField(CtClass.intType, "bar" + i, mixin));
+            mixin.addMethod(CtNewMethod.make("public void run() { bar" + i + "++; }", mixin));
+            mixin.writeFile(classesDir.getAbsolutePath());
+        }
+        CtClass dst = ClassPool.getDefault().makeClass("Dst" + TestCounter.testCounter++);
+        dst.addMethod(CtNewMethod.make("public void run() { }", dst));
+        addMimicAnnotationWithMixin(dst, TestSourceClass.class.getName(), mixinNames);
+        dst.writeFile(classesDir.getAbsolutePath());
+
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(new URLClassLoader(new URL[] {classesDir.toURI().toURL() }, contextClassLoader));
+        try {
+            // WHEN
+            mimicProcessor.transform(classesDir.getAbsolutePath(), classesDir.getAbsolutePath());
+
+            // THEN
+            ClassPool outputPool = new ClassPool(true);
+            outputPool.appendClassPath(classesDir.getAbsolutePath());
+            CtClass transformedDst = outputPool.get(dst.getName());
+            assertNotNull(transformedDst.getDeclaredMethod("_copy_" + simpleName + "_run"));
+            assertNotNull(transformedDst.getDeclaredMethod("_copy_" + simpleName + "2_run"));
+            assertNotNull(transformedDst.getDeclaredMethod("_copy_" + simpleName + "3_run"));
+        } finally {
+            Thread.currentThread().setContextClassLoader(contextClassLoader);
+        }
+    }
+
+    @Test
+    public void testTransformJar() throws Exception {
+        // GIVEN
+        File directory = createTempDirectory("jars");
+        File inputJar = new File(directory, "input.jar");
+        File outputJar = new File(directory, "output.jar");
+        CtClass template = ClassPool.getDefault().makeClass("Template" + TestCounter.testCounter++);
+        template.addField(new CtField(CtClass.intType, "foo", template));
+        addMimicAnnotation(dst, template.getName(), true, true, true, true);
+        byte[] resource = LARGE_CONSTANT.getBytes("UTF-8");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(inputJar));
+        try {
+            putEntry(out, "META-INF/MANIFEST.MF", "Manifest-Version: 1.0\n".getBytes("UTF-8"), ZipEntry.DEFLATED);
+            putEntry(out, template.getName() + ".class", template.toBytecode(), ZipEntry.DEFLATED);
+            putEntry(out, dst.getName() + ".class", dst.toBytecode(), ZipEntry.DEFLATED);
+            putEntry(out, "resource.txt", resource, ZipEntry.STORED);
+            putEntry(out, src.getName() + ".class", src.toBytecode(), ZipEntry.DEFLATED);
+        } finally {
+            out.close();
+        }
+
+        // WHEN
+        mimicProcessor.transformJar(inputJar, outputJar);
+
+        // THEN
+        ZipFile input = new ZipFile(inputJar);
+        ZipFile output = new ZipFile(outputJar);
+        List<String> entryNames = new ArrayList<String>();
+        try {
+            for (Enumeration<? extends ZipEntry> entries = input.entries(); entries.hasMoreElements();) {
+                ZipEntry inputEntry = entries.nextElement();
+                ZipEntry outputEntry = output.getEntry(inputEntry.getName());
+                byte[] outputBytes = Digests.readFully(output.getInputStream(outputEntry));
+                if (inputEntry.getName().equals(dst.getName() + ".class")) {
+                    CtClass transformedDst = new ClassPool(true).makeClass(new ByteArrayInputStream(outputBytes));
+                    assertEquals(CtClass.intType, transformedDst.getDeclaredField("foo").getType());
+                } else {
+                    // copied as is, without being compressed again
+                    assertTrue(Arrays.equals(Digests.readFully(input.getInputStream(inputEntry)), outputBytes));
+                    assertEquals(inputEntry.getCompressedSize(), outputEntry.getCompressedSize());
+                }
+                entryNames.add(inputEntry.getName());
+            }
+            List<String> outputEntryNames = new ArrayList<String>();
+            for (Enumeration<? extends ZipEntry> entries = output.entries(); entries.hasMoreElements();) {
+                outputEntryNames.add(entries.nextElement().getName());
+            }
+            assertEquals(entryNames, outputEntryNames);
+        } finally {
+            input.close();
+            output.close();
+        }
+        // local headers are consistent with the central directory
+        ZipInputStream in = new ZipInputStream(new FileInputStream(outputJar));
+        try {
+            int entryCount = 0;
+            while (in.getNextEntry() != null) {
+                Digests.readFully(new FilterInputStream(in) {
+                    @Override
+                    public void close() {
+                    }
+                });
+                entryCount++;
+            }
+            assertEquals(entryNames.size(), entryCount);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testTransformJar_with_share_template_code() throws Exception {
+        // GIVEN
+        File directory = createTempDirectory("jars");
+        File inputJar = new File(directory, "input.jar");
+        File outputJar = new File(directory, "output.jar");
+        CtClass template = ClassPool.getDefault().makeClass("Template" + TestCounter.testCounter++);
+        template.addField(new CtField(CtClass.intType, "foo", template));
+        template.addMethod(CtNewMethod.make("public void run() { foo++; }", template));
+        addMimicAnnotation(dst, template.getName(), true, true, true, true);
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(inputJar));
+        try {
+            putEntry(out, template.getName() + ".class", template.toBytecode(), ZipEntry.DEFLATED);
+            putEntry(out, dst.getName() + ".class", dst.toBytecode(), ZipEntry.DEFLATED);
+        } finally {
+            out.close();
+        }
+        mimicProcessor.setSharingTemplateCode(true);
+
+        // WHEN
+        mimicProcessor.transformJar(inputJar, outputJar);
+
+        // THEN
+        Map<String, byte[]> generatedClasses = mimicProcessor.getGeneratedClasses();
+        assertEquals(2, generatedClasses.size());
+        List<String> entryNames = new ArrayList<String>();
+        ZipInputStream in = new ZipInputStream(new FileInputStream(outputJar));
+        try {
+            for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+                byte[] bytes = Digests.readFully(new FilterInputStream(in) {
+                    @Override
+                    public void close() {
+                    }
+                });
+                String className = entry.getName().substring(0, entry.getName().length() - ".class".length());
+                if (generatedClasses.containsKey(className)) {
+                    assertTrue(Arrays.equals(generatedClasses.get(className), bytes));
+                }
+                entryNames.add(entry.getName());
+            }
+        } finally {
+            in.close();
+        }
+        assertEquals(Arrays.asList(template.getName() + ".class", dst.getName() + ".class", template.getName() + "$MimicHelper.class",
+                template.getName() + "$MimicReceiver.class"), entryNames);
+        ZipFile output = new ZipFile(outputJar);
+        try {
+            assertEquals(entryNames.size(), output.size());
+        } finally {
+            output.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testTransformJar_in_place() throws Exception {
+        File jar = new File(createTempDirectory("jars"), "input.jar");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+        putEntry(out, dst.getName() + ".class", dst.toBytecode(), ZipEntry.DEFLATED);
+        out.close();
+
+        mimicProcessor.transformJar(jar, jar);
+    }
+
+    private void putEntry(ZipOutputStream out, String name, byte[] bytes, int method) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(method);
+        if (method == ZipEntry.STORED) {
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            entry.setSize(bytes.length);
+            entry.setCrc(crc.getValue());
+        }
+        out.putNextEntry(entry);
+        out.write(bytes);
+        out.closeEntry();
+    }
+
+    private byte[] readClassFile(File directory, String className) throws IOException {
+        return Digests.readFully(new FileInputStream(new File(directory, className.replace('.', File.separatorChar) + ".class")));
+    }
+
+    /**
+     * Writes a mixin whose method run() is woven at the beginning of the
+     * method run() of the returned target, and the target, into a directory.
+     */
+    private CtClass createTargetOfRunningMixin(File classesDir) throws Exception {
+        CtClass mixin = ClassPool.getDefault().makeClass("Mixin" + TestCounter.testCounter++);
+        mixin.addField(new CtField(CtClass.intType, "bar", mixin));
+        mixin.addMethod(CtNewMethod.make("public void run() { bar++; }", mixin));
+        mixin.writeFile(classesDir.getAbsolutePath());
+        CtClass target = ClassPool.getDefault().makeClass("Dst" + TestCounter.testCounter++);
+        target.addMethod(CtNewMethod.make("public void run() { }", target));
+        addMimicAnnotationWithMixin(target, TestSourceClass.class.getName(), mixin.getName());
+        target.writeFile(classesDir.getAbsolutePath());
+        return target;
+    }
+
+    private boolean hasDeclaredField(CtClass clazz, String fieldName) {
+        try {
+            clazz.getDeclaredField(fieldName);
+            return true;
+        } catch (NotFoundException e) {
+            return false;
+        }
+    }
+
+    private File createTempDirectory(String prefix) throws IOException {
+        File directory = File.createTempFile(prefix, "");
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("Impossible to create temp directory " + directory);
+        }
+        directory.deleteOnExit();
+        return directory;
+    }
+
+    /** Transforms a directory with a heap budget, in a JVM with a small heap. */
+    public static final class HeapBudgetMain {
+        private HeapBudgetMain() {
+        }
+
+        public static void main(String[] args) throws Exception {
+            Properties properties = new Properties();
+            properties.setProperty(MimicProcessor.PROPERTY_HEAP_BUDGET, args[2]);
+            MimicProcessor mimicProcessor = new MimicProcessor();
+            mimicProcessor.configure(properties);
+            mimicProcessor.transform(args[0], args[1]);
+        }
+    }
+
     private final class MimicCreatorTestModule extends AbstractModule {
         private final MimicCreator mimicMock;
 